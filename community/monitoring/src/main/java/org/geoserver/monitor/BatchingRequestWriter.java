@@ -0,0 +1,438 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.monitor.RequestData.Status;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Persists request data in batches from a single background thread.
+ * <p>
+ * The request threads just record that a request changed, all the changes made to the same
+ * request before the next flush are coalesced into a single write of its latest state. A batch
+ * is flushed as soon as {@link #getBatchSize()} requests are pending, or after
+ * {@link #getFlushInterval()} milliseconds otherwise.
+ * </p>
+ * <p>
+ * The number of pending requests is bounded, when the store cannot keep up the request threads
+ * wait up to {@link #getMaxWait()} milliseconds for room, after which the change is dropped
+ * (a later change to the same request can still make it through). The changes that complete a
+ * request are never dropped, the thread waits for as long as needed, otherwise the request
+ * would be left in running state in the store.
+ * </p>
+ * <p>
+ * A batch that fails to be written is tried again once, then given up and logged.
+ * </p>
+ */
+public class BatchingRequestWriter implements Runnable {
+
+    static Logger LOGGER = Logging.getLogger("org.geoserver.monitor");
+
+    /**
+     * Writes out a batch of requests
+     */
+    public static interface Flusher {
+        void flush(List<RequestData> batch) throws Exception;
+    }
+
+    Flusher flusher;
+
+    int batchSize = 100;
+
+    long flushInterval = 1000;
+
+    int maxBacklog = 10000;
+
+    long maxWait = 0;
+
+    ReentrantLock lock = new ReentrantLock();
+
+    Condition batchReady = lock.newCondition();
+
+    Condition notFull = lock.newCondition();
+
+    /**
+     * The pending requests, by internal id, in arrival order
+     */
+    LinkedHashMap<Long, RequestData> pending = new LinkedHashMap<Long, RequestData>();
+
+    Thread thread;
+
+    volatile boolean running;
+
+    // statistics, guarded by the lock
+    long coalesced;
+
+    long dropped;
+
+    long failed;
+
+    long written;
+
+    long flushes;
+
+    long totalFlushTime;
+
+    long maxFlushTime;
+
+    long lastFlushTime;
+
+    public BatchingRequestWriter(Flusher flusher) {
+        this.flusher = flusher;
+    }
+
+    /**
+     * The number of requests written in a single batch
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * The maximum time, in milliseconds, a change waits before being written
+     */
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = Math.max(1, flushInterval);
+    }
+
+    /**
+     * The maximum number of requests waiting to be written
+     */
+    public int getMaxBacklog() {
+        return maxBacklog;
+    }
+
+    public void setMaxBacklog(int maxBacklog) {
+        this.maxBacklog = Math.max(1, maxBacklog);
+    }
+
+    /**
+     * How long, in milliseconds, a request thread waits for room in a full backlog before
+     * dropping its change. Zero drops immediately, a negative value waits indefinitely. Does not
+     * apply to the changes completing a request, which are never dropped.
+     */
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    public void setMaxWait(long maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "GeoServer monitor writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the writer thread, after it wrote out the pending requests
+     */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        lock.lock();
+        try {
+            batchReady.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            thread.join(Math.max(10000, flushInterval * 2));
+        } catch (InterruptedException e) {
+            // move on
+        }
+        thread = null;
+    }
+
+    /**
+     * Schedules the current state of the request to be written.
+     *
+     * @return false if the change has been dropped because the backlog is full
+     */
+    public boolean write(RequestData data) {
+        boolean completed = isCompleted(data);
+        lock.lock();
+        try {
+            if (pending.containsKey(data.internalid)) {
+                coalesced++;
+                return true;
+            }
+
+            if (pending.size() >= maxBacklog) {
+                long deadline = System.currentTimeMillis() + maxWait;
+                while (pending.size() >= maxBacklog) {
+                    if (completed) {
+                        if (!running) {
+                            // nobody is going to make room, go past the limit, the change will
+                            // be written once the writer is started
+                            break;
+                        }
+                        // check the running flag every now and then, the writer might be
+                        // stopped while we wait
+                        notFull.await(flushInterval, TimeUnit.MILLISECONDS);
+                        continue;
+                    }
+
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (maxWait == 0 || (maxWait > 0 && remaining <= 0) || !running) {
+                        dropped++;
+                        if (LOGGER.isLoggable(Level.FINE)) {
+                            LOGGER.fine("Monitor backlog full, dropping update of request "
+                                    + data.internalid);
+                        }
+                        return false;
+                    }
+                    if (maxWait > 0) {
+                        notFull.await(remaining, TimeUnit.MILLISECONDS);
+                    } else {
+                        notFull.await();
+                    }
+                }
+            }
+
+            pending.put(data.internalid, data);
+            if (pending.size() >= batchSize) {
+                batchReady.signal();
+            }
+            return true;
+        } catch (InterruptedException e) {
+            if (completed) {
+                pending.put(data.internalid, data);
+                Thread.currentThread().interrupt();
+                return true;
+            }
+            dropped++;
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if the request is in its final state, no other change will follow
+     */
+    static boolean isCompleted(RequestData data) {
+        Status status = data.getStatus();
+        return status == Status.FINISHED || status == Status.FAILED
+                || status == Status.CANCELLED || status == Status.INTERRUPTED;
+    }
+
+    public void run() {
+        while (true) {
+            List<RequestData> batch = new ArrayList<RequestData>();
+            lock.lock();
+            try {
+                if (running && pending.size() < batchSize) {
+                    batchReady.await(flushInterval, TimeUnit.MILLISECONDS);
+                }
+                if (!running && pending.isEmpty()) {
+                    return;
+                }
+                for (Iterator<RequestData> it = pending.values().iterator(); it.hasNext()
+                        && batch.size() < batchSize;) {
+                    batch.add(it.next());
+                    it.remove();
+                }
+                notFull.signalAll();
+            } catch (InterruptedException e) {
+                // go on, we exit only when stopped
+            } finally {
+                lock.unlock();
+            }
+
+            if (!batch.isEmpty()) {
+                flush(batch);
+            }
+        }
+    }
+
+    void flush(List<RequestData> batch) {
+        long start = System.currentTimeMillis();
+        boolean success = false;
+        try {
+            flusher.flush(batch);
+            success = true;
+        } catch (Throwable t) {
+            LOGGER.log(Level.WARNING, "Failed to write out " + batch.size()
+                    + " monitored requests, trying again", t);
+            try {
+                flusher.flush(batch);
+                success = true;
+            } catch (Throwable t2) {
+                LOGGER.log(Level.SEVERE, "Failed again to write out the monitored requests, "
+                        + "giving up on " + describe(batch), t2);
+            }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+
+        lock.lock();
+        try {
+            if (success) {
+                written += batch.size();
+            } else {
+                failed += batch.size();
+            }
+            flushes++;
+            totalFlushTime += elapsed;
+            maxFlushTime = Math.max(maxFlushTime, elapsed);
+            lastFlushTime = elapsed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static String describe(List<RequestData> batch) {
+        StringBuilder sb = new StringBuilder();
+        for (RequestData data : batch) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(data.internalid).append(" (").append(data.getPath()).append(" ")
+                    .append(data.getStatus()).append(")");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The number of requests waiting to be written
+     */
+    public int getBacklog() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The number of changes merged into a pending write of the same request
+     */
+    public long getCoalescedCount() {
+        lock.lock();
+        try {
+            return coalesced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The number of changes dropped because the backlog was full
+     */
+    public long getDroppedCount() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The number of request writes that failed, after being tried again
+     */
+    public long getFailedCount() {
+        lock.lock();
+        try {
+            return failed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The number of request writes that succeeded
+     */
+    public long getWrittenCount() {
+        lock.lock();
+        try {
+            return written;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The number of batches flushed
+     */
+    public long getFlushCount() {
+        lock.lock();
+        try {
+            return flushes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The average time, in milliseconds, taken to write a batch
+     */
+    public double getAverageFlushTime() {
+        lock.lock();
+        try {
+            return flushes > 0 ? totalFlushTime / (double) flushes : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The maximum time, in milliseconds, taken to write a batch
+     */
+    public long getMaxFlushTime() {
+        lock.lock();
+        try {
+            return maxFlushTime;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The time, in milliseconds, taken to write the last batch
+     */
+    public long getLastFlushTime() {
+        lock.lock();
+        try {
+            return lastFlushTime;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BatchingRequestWriter(backlog=" + getBacklog() + ", written="
+                + getWrittenCount() + ", coalesced=" + getCoalescedCount() + ", dropped="
+                + getDroppedCount() + ", failed=" + getFailedCount() + ", averageFlush="
+                + getAverageFlushTime() + "ms)";
+    }
+}
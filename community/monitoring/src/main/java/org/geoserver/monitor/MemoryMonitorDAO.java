@@ -9,62 +9,175 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.geoserver.monitor.Query.Comparison;
 import org.geoserver.monitor.Query.SortOrder;
 import org.geoserver.ows.util.OwsUtils;
 
+/**
+ * In memory monitor DAO, keeping the running requests and a bounded history of the completed
+ * ones.
+ * <p>
+ * The history is a fixed capacity ring buffer, the request identifiers and start times are
+ * kept in primitive arrays next to it so that lookups by id and time range do not need to
+ * touch the request objects. The completed requests are also aggregated in
+ * {@link RequestRollups}, which the reports can use instead of scanning the history.
+ * </p>
+ */
 public class MemoryMonitorDAO implements MonitorDAO {
 
-    Queue<RequestData> live = new ConcurrentLinkedQueue<RequestData>();
-    Queue<RequestData> history = new ConcurrentLinkedQueue<RequestData>();
+    /**
+     * Default number of completed requests kept in the history
+     */
+    public static final int DEFAULT_CAPACITY = 1000;
+    
+    /**
+     * The running requests, in the order they started
+     */
+    Map<Long, RequestData> live = 
+        Collections.synchronizedMap(new LinkedHashMap<Long, RequestData>());
+    
+    ReadWriteLock historyLock = new ReentrantReadWriteLock();
+    RequestData[] history;
+    long[] historyIds;
+    long[] historyStartTimes;
+    int next;
+    int size;
+    
+    RequestRollups rollups = new RequestRollups();
     
     AtomicLong REQUEST_ID_GEN = new AtomicLong(1);
     
+    public MemoryMonitorDAO() {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    public MemoryMonitorDAO(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("History capacity must be positive");
+        }
+        history = new RequestData[capacity];
+        historyIds = new long[capacity];
+        historyStartTimes = new long[capacity];
+    }
+    
+    /**
+     * The maximum number of completed requests kept in memory
+     */
+    public int getCapacity() {
+        return history.length;
+    }
+    
+    /**
+     * The per minute and per hour aggregates of the completed requests
+     */
+    public RequestRollups getRollups() {
+        return rollups;
+    }
+    
     public RequestData init(RequestData data) {
         data.setId(REQUEST_ID_GEN.getAndIncrement());
         return data;
     }
     
     public void add(RequestData data) {
-        live.add(data);
+        live.put(data.getId(), data);
     }
 
     public void update(RequestData data) {
     }
 
     public void save(RequestData data) {
-        live.remove(data);
-        history.add(data);
+        live.remove(data.getId());
         
-        if (history.size() > 100) {
-            history.remove();
+        historyLock.writeLock().lock();
+        try {
+            history[next] = data;
+            historyIds[next] = data.getId();
+            historyStartTimes[next] = data.getStartTime() != null ? 
+                data.getStartTime().getTime() : Long.MIN_VALUE;
+            next = (next + 1) % history.length;
+            if (size < history.length) {
+                size++;
+            }
         }
+        finally {
+            historyLock.writeLock().unlock();
+        }
+        
+        rollups.add(data);
     }
     
     public RequestData getRequest(long id) {
-        for (RequestData r : getRequests()) {
-            if (r.getId() == id) {
-                return r;
+        RequestData data = live.get(id);
+        if (data != null) {
+            return data;
+        }
+        
+        historyLock.readLock().lock();
+        try {
+            for (int i = 0; i < size; i++) {
+                if (historyIds[i] == id) {
+                    return history[i];
+                }
             }
         }
+        finally {
+            historyLock.readLock().unlock();
+        }
         return null;
     }
     
     public List<RequestData> getRequests() {
+        return getRequests(Long.MIN_VALUE, Long.MAX_VALUE, true);
+    }
+    
+    /**
+     * Returns the live requests and the completed ones started in the specified time range,
+     * oldest first. The time range is checked against the start time column only, requests
+     * without a start time are returned only if the range is unbounded.
+     */
+    List<RequestData> getRequests(long from, long to, boolean unbounded) {
         List<RequestData> requests = new LinkedList();
-        requests.addAll(live);
-        requests.addAll(history);
+        synchronized (live) {
+            requests.addAll(live.values());
+        }
+        
+        historyLock.readLock().lock();
+        try {
+            int first = size < history.length ? 0 : next;
+            for (int i = 0; i < size; i++) {
+                int idx = (first + i) % history.length;
+                long time = historyStartTimes[idx];
+                if (unbounded || (time != Long.MIN_VALUE && time >= from && time <= to)) {
+                    requests.add(history[idx]);
+                }
+            }
+        }
+        finally {
+            historyLock.readLock().unlock();
+        }
         return requests;
     }
         
     public List<RequestData> getRequests(Query q) {
-        List<RequestData> requests = getRequests();
+        List<RequestData> requests;
+        if (q.getFromDate() != null || q.getToDate() != null) {
+            // pre-filter the history on the start time column
+            requests = getRequests(
+                q.getFromDate() != null ? q.getFromDate().getTime() : Long.MIN_VALUE, 
+                q.getToDate() != null ? q.getToDate().getTime() : Long.MAX_VALUE, false);
+        }
+        else {
+            requests = getRequests();
+        }
        
         List<Predicate> predicates = new ArrayList();
         if (q.getFilter() != null) {
@@ -154,6 +267,7 @@ O:      for (Iterator<RequestData> it = requests.iterator(); it.hasNext();) {
     public void dispose() {
         live.clear();
         live = null;
+        history = null;
     }
     
     static interface Predicate {
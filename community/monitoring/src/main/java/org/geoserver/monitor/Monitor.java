@@ -97,4 +97,12 @@ public class Monitor {
         dao.getRequests(q, visitor);
     }
 
+    /**
+     * Returns the pre-aggregated request statistics, or null if the underlying dao does not
+     * maintain them, in which case reports have to be built by querying the requests.
+     */
+    public RequestRollups getRollups() {
+        return dao instanceof MemoryMonitorDAO ? ((MemoryMonitorDAO) dao).getRollups() : null;
+    }
+
 }
@@ -28,7 +28,7 @@ public class MonitorConfig implements ApplicationContextAware {
     }
     
     public static enum Sync {
-        SYNC, ASYNC, ASYNC_UPDATE;
+        SYNC, ASYNC, ASYNC_UPDATE, BATCH;
     }
     
     Properties props;
@@ -61,6 +61,14 @@ public class MonitorConfig implements ApplicationContextAware {
         return Sync.valueOf(props().getProperty("sync", "async").toUpperCase());
     }
     
+    /**
+     * The number of completed requests kept in memory in live mode
+     */
+    public int getMemoryCapacity() {
+        return Integer.parseInt(props().getProperty("memory.capacity", 
+            String.valueOf(MemoryMonitorDAO.DEFAULT_CAPACITY)));
+    }
+    
     public boolean isEnabled() {
         return enabled;
     }
@@ -85,11 +93,22 @@ public class MonitorConfig implements ApplicationContextAware {
         Mode m = getMode();
         
         if (m == Mode.LIVE) {
-            return new MemoryMonitorDAO();
+            return new MemoryMonitorDAO(getMemoryCapacity());
         }
         
         HibernateMonitorDAO2 dao = (HibernateMonitorDAO2) context.getBean("hibMonitorDAO");
         dao.setMode(m);
+        
+        Properties p = props();
+        BatchingRequestWriter writer = dao.getWriter();
+        writer.setBatchSize(Integer.parseInt(p.getProperty("batch.size", 
+            String.valueOf(writer.getBatchSize()))));
+        writer.setFlushInterval(Long.parseLong(p.getProperty("batch.interval", 
+            String.valueOf(writer.getFlushInterval()))));
+        writer.setMaxBacklog(Integer.parseInt(p.getProperty("batch.backlog", 
+            String.valueOf(writer.getMaxBacklog()))));
+        writer.setMaxWait(Long.parseLong(p.getProperty("batch.maxWait", 
+            String.valueOf(writer.getMaxWait()))));
         dao.setSync(getSync());
         
         return dao;
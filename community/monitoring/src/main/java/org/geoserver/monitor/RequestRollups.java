@@ -0,0 +1,343 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per minute and per hour aggregates of the completed requests, updated as the requests are
+ * saved so that the activity reports do not need to scan the request history.
+ * <p>
+ * Each resolution keeps a fixed number of buckets in a ring, a bucket is recycled when a request
+ * falling in a newer time slot maps to it, so the minute buckets cover the last day and the hour
+ * buckets the last month.
+ * </p>
+ */
+public class RequestRollups {
+
+    public static enum Resolution {
+        MINUTE(60 * 1000l, 24 * 60), HOUR(60 * 60 * 1000l, 24 * 31);
+
+        long millis;
+
+        int slots;
+
+        Resolution(long millis, int slots) {
+            this.millis = millis;
+            this.slots = slots;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public int getSlots() {
+            return slots;
+        }
+    }
+
+    /**
+     * Upper bounds, in milliseconds, of the latency histogram bins. The last bin collects all
+     * the requests slower than the last bound
+     */
+    static final long[] LATENCY_BOUNDS = new long[] { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000,
+            2000, 5000, 10000, 30000, 60000 };
+
+    Bucket[] minutes = new Bucket[Resolution.MINUTE.slots];
+
+    Bucket[] hours = new Bucket[Resolution.HOUR.slots];
+
+    /**
+     * Adds a completed request to the rollups
+     */
+    public synchronized void add(RequestData data) {
+        if (data.getStartTime() == null) {
+            return;
+        }
+        long time = data.getStartTime().getTime();
+        for (Resolution resolution : Resolution.values()) {
+            Bucket b = bucket(resolution == Resolution.MINUTE ? minutes : hours, resolution, time);
+            if (b != null) {
+                b.add(data);
+            }
+        }
+    }
+
+    Bucket bucket(Bucket[] ring, Resolution resolution, long time) {
+        long start = time - (time % resolution.millis);
+        int slot = (int) ((start / resolution.millis) % resolution.slots);
+        Bucket b = ring[slot];
+        if (b == null || b.start != start) {
+            if (b != null && b.start > start) {
+                // a request older than the ring coverage
+                return null;
+            }
+            b = new Bucket(start, resolution.millis);
+            ring[slot] = b;
+        }
+        return b;
+    }
+
+    /**
+     * Returns copies of the buckets overlapping the specified time range, sorted by time. Empty
+     * time slots are not returned.
+     *
+     * @param from the range start, or null for no lower bound
+     * @param to the range end, or null for no upper bound
+     */
+    public synchronized List<Bucket> getBuckets(Resolution resolution, Date from, Date to) {
+        Bucket[] ring = resolution == Resolution.MINUTE ? minutes : hours;
+        long min = from != null ? from.getTime() : Long.MIN_VALUE;
+        long max = to != null ? to.getTime() : Long.MAX_VALUE;
+
+        List<Bucket> result = new ArrayList<Bucket>();
+        for (Bucket b : ring) {
+            if (b != null && b.start + b.length > min && b.start <= max) {
+                result.add(b.copy());
+            }
+        }
+        Collections.sort(result, new Comparator<Bucket>() {
+            public int compare(Bucket b1, Bucket b2) {
+                return b1.start < b2.start ? -1 : (b1.start == b2.start ? 0 : 1);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Merges all the buckets overlapping the specified time range into a single one
+     */
+    public Bucket getTotal(Resolution resolution, Date from, Date to) {
+        List<Bucket> buckets = getBuckets(resolution, from, to);
+        Bucket total = new Bucket(buckets.isEmpty() ? 0 : buckets.get(0).start, 0);
+        for (Bucket b : buckets) {
+            total.merge(b);
+        }
+        if (!buckets.isEmpty()) {
+            Bucket last = buckets.get(buckets.size() - 1);
+            total.length = last.start + last.length - total.start;
+        }
+        return total;
+    }
+
+    /**
+     * Aggregated request statistics for a time slot
+     */
+    public static class Bucket {
+        long start;
+
+        long length;
+
+        long count;
+
+        long errors;
+
+        long totalTime;
+
+        long bytes;
+
+        long[] latencies = new long[LATENCY_BOUNDS.length + 1];
+
+        Map<String, long[]> services = new HashMap<String, long[]>();
+
+        Map<String, long[]> operations = new HashMap<String, long[]>();
+
+        Map<String, long[]> layers = new HashMap<String, long[]>();
+
+        Bucket(long start, long length) {
+            this.start = start;
+            this.length = length;
+        }
+
+        void add(RequestData data) {
+            count++;
+            if (data.getStatus() == RequestData.Status.FAILED) {
+                errors++;
+            }
+            long time = Math.max(0, data.getTotalTime());
+            totalTime += time;
+            long length = Math.max(0, data.getResponseLength());
+            bytes += length;
+            latencies[latencyBin(time)]++;
+
+            if (data.getService() != null) {
+                String service = data.getService().toUpperCase();
+                increment(services, service, length);
+                if (data.getOperation() != null) {
+                    increment(operations, service + "." + data.getOperation().toLowerCase(),
+                            length);
+                }
+            }
+            if (data.getResources() != null) {
+                for (String layer : data.getResources()) {
+                    increment(layers, layer, length);
+                }
+            }
+        }
+
+        static int latencyBin(long time) {
+            for (int i = 0; i < LATENCY_BOUNDS.length; i++) {
+                if (time < LATENCY_BOUNDS[i]) {
+                    return i;
+                }
+            }
+            return LATENCY_BOUNDS.length;
+        }
+
+        static void increment(Map<String, long[]> map, String key, long bytes) {
+            long[] counters = map.get(key);
+            if (counters == null) {
+                counters = new long[2];
+                map.put(key, counters);
+            }
+            counters[0]++;
+            counters[1] += bytes;
+        }
+
+        void merge(Bucket other) {
+            count += other.count;
+            errors += other.errors;
+            totalTime += other.totalTime;
+            bytes += other.bytes;
+            for (int i = 0; i < latencies.length; i++) {
+                latencies[i] += other.latencies[i];
+            }
+            merge(services, other.services);
+            merge(operations, other.operations);
+            merge(layers, other.layers);
+        }
+
+        static void merge(Map<String, long[]> target, Map<String, long[]> source) {
+            for (Map.Entry<String, long[]> e : source.entrySet()) {
+                long[] counters = target.get(e.getKey());
+                if (counters == null) {
+                    target.put(e.getKey(), e.getValue().clone());
+                } else {
+                    counters[0] += e.getValue()[0];
+                    counters[1] += e.getValue()[1];
+                }
+            }
+        }
+
+        Bucket copy() {
+            Bucket copy = new Bucket(start, length);
+            copy.merge(this);
+            return copy;
+        }
+
+        /**
+         * The start of the time slot
+         */
+        public Date getStart() {
+            return new Date(start);
+        }
+
+        /**
+         * The end of the time slot
+         */
+        public Date getEnd() {
+            return new Date(start + length);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrorCount() {
+            return errors;
+        }
+
+        public long getTotalTime() {
+            return totalTime;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public double getAverageTime() {
+            return count > 0 ? totalTime / (double) count : 0;
+        }
+
+        /**
+         * Returns an upper bound of the specified latency percentile, in milliseconds, based on
+         * the latency histogram. Returns {@link Long#MAX_VALUE} if the percentile falls among
+         * the requests slower than the last histogram bound.
+         *
+         * @param percentile a value between 0 and 100
+         */
+        public long getLatencyPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long threshold = (long) Math.ceil(count * percentile / 100d);
+            long seen = 0;
+            for (int i = 0; i < LATENCY_BOUNDS.length; i++) {
+                seen += latencies[i];
+                if (seen >= threshold) {
+                    return LATENCY_BOUNDS[i];
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        /**
+         * Request counts by upper case service name
+         */
+        public Map<String, Long> getServiceCounts() {
+            return counts(services, 0);
+        }
+
+        /**
+         * Response bytes by upper case service name
+         */
+        public Map<String, Long> getServiceBytes() {
+            return counts(services, 1);
+        }
+
+        /**
+         * Request counts keyed by upper case service name and lower case operation, separated
+         * by a dot, e.g. <code>WMS.getmap</code>
+         */
+        public Map<String, Long> getOperationCounts() {
+            return counts(operations, 0);
+        }
+
+        /**
+         * Response bytes keyed by upper case service name and lower case operation
+         */
+        public Map<String, Long> getOperationBytes() {
+            return counts(operations, 1);
+        }
+
+        /**
+         * Request counts by layer
+         */
+        public Map<String, Long> getLayerCounts() {
+            return counts(layers, 0);
+        }
+
+        /**
+         * Response bytes by layer, a request touching more layers is accounted to all of them
+         */
+        public Map<String, Long> getLayerBytes() {
+            return counts(layers, 1);
+        }
+
+        static Map<String, Long> counts(Map<String, long[]> map, int index) {
+            Map<String, Long> result = new HashMap<String, Long>();
+            for (Map.Entry<String, long[]> e : map.entrySet()) {
+                result.put(e.getKey(), e.getValue()[index]);
+            }
+            return result;
+        }
+    }
+}
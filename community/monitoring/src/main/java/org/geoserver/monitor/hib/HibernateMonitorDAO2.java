@@ -8,8 +8,11 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.geoserver.monitor.And;
+import org.geoserver.monitor.BatchingRequestWriter;
 import org.geoserver.monitor.CompositeFilter;
 import org.geoserver.monitor.Filter;
 import org.geoserver.monitor.FilterVisitor;
@@ -27,6 +30,7 @@ import org.geoserver.monitor.MonitorConfig.Sync;
 import org.geoserver.monitor.Query.Comparison;
 import org.geoserver.monitor.Query.SortOrder;
 import org.geoserver.ows.util.OwsUtils;
+import org.geotools.util.logging.Logging;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
@@ -35,9 +39,12 @@ import org.springframework.orm.hibernate3.HibernateCallback;
 import org.springframework.orm.hibernate3.HibernateTemplate;
 
 public class HibernateMonitorDAO2 implements MonitorDAO {
+    
+    static Logger LOGGER = Logging.getLogger("org.geoserver.monitor");
 
     HibernateTemplate hib;
     PipeliningTaskQueue<Thread> tasks;
+    BatchingRequestWriter writer = new BatchingRequestWriter(new BatchFlusher());
     Mode mode = Mode.HISTORY;
     Sync sync = Sync.ASYNC;
     
@@ -48,18 +55,32 @@ public class HibernateMonitorDAO2 implements MonitorDAO {
     
     public void setSync(Sync sync) {
         this.sync = sync;
-        if (sync != Sync.SYNC) {
+        if (sync == Sync.BATCH) {
+            if (tasks != null) {
+                tasks.shutdown();
+                tasks = null;
+            }
+            writer.start();
+        }
+        else if (sync != Sync.SYNC) {
+            writer.stop();
             if (tasks == null) {
                 tasks = new PipeliningTaskQueue<Thread>();
                 tasks.start();
             }
         }
         else {
-            if (tasks != null) {
-                dispose();
-            }
+            dispose();
         }
     }
+    
+    /**
+     * The writer used to persist requests in batch sync mode, exposing the backlog and flush
+     * statistics
+     */
+    public BatchingRequestWriter getWriter() {
+        return writer;
+    }
     public void setMode(Mode mode) {
         this.mode = mode;
     }
@@ -75,7 +96,10 @@ public class HibernateMonitorDAO2 implements MonitorDAO {
     
     public RequestData init(final RequestData data) {
         if (mode != Mode.HISTORY) {
-            if (sync == Sync.ASYNC_UPDATE) {
+            if (sync == Sync.BATCH) {
+                writer.write(data);
+            }
+            else if (sync == Sync.ASYNC_UPDATE) {
                 //async_update means don't run the initial insert asynchronously
                 new Insert(data).run();
             }
@@ -91,7 +115,10 @@ public class HibernateMonitorDAO2 implements MonitorDAO {
     }
     
     public void add(RequestData data) {
-        if (sync == Sync.ASYNC_UPDATE) {
+        if (sync == Sync.BATCH) {
+            writer.write(data);
+        }
+        else if (sync == Sync.ASYNC_UPDATE) {
             //async_update means don't run the initial insert asynchronously
             new Insert(data).run();
         }
@@ -105,6 +132,10 @@ public class HibernateMonitorDAO2 implements MonitorDAO {
     }
     
     public void save(RequestData data) {
+        if (sync == Sync.BATCH) {
+            writer.write(data);
+            return;
+        }
         run(new Save(data));
 //        if(data.getId() == -1) {
 //            run(new Insert(data));
@@ -118,6 +149,7 @@ public class HibernateMonitorDAO2 implements MonitorDAO {
     }
 
     public void dispose() {
+        writer.stop();
         if (tasks != null) {
             tasks.shutdown();
             tasks = null;
@@ -557,6 +589,56 @@ public class HibernateMonitorDAO2 implements MonitorDAO {
 //        }
 //    }
     
+    /**
+     * Writes a batch of requests in a single transaction
+     */
+    class BatchFlusher implements BatchingRequestWriter.Flusher {
+        
+        public void flush(final List<RequestData> batch) throws Exception {
+            hib.execute(new HibernateCallback() {
+                public Object doInHibernate(Session session) throws HibernateException,
+                        SQLException {
+                    List<RequestData> inserted = new ArrayList<RequestData>();
+                    Transaction tx = session.beginTransaction();
+                    boolean committed = false;
+                    try {
+                        for (RequestData data : batch) {
+                            synchronized (data) {
+                                if (data.getId() == -1) {
+                                    data.setId((Long) session.save(data));
+                                    inserted.add(data);
+                                }
+                                else {
+                                    session.update(data);
+                                }
+                            }
+                        }
+                        session.flush();
+                        session.clear();
+                        tx.commit();
+                        committed = true;
+                    }
+                    finally {
+                        if (!committed) {
+                            // whatever the failure, the inserts did not happen, next time try 
+                            // again
+                            for (RequestData data : inserted) {
+                                data.setId(-1);
+                            }
+                            try {
+                                tx.rollback();
+                            }
+                            catch(RuntimeException e) {
+                                LOGGER.log(Level.FINE, "Rollback of the monitor batch failed", e);
+                            }
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+    
     protected void run(Task task) {
         if (tasks != null) {
             tasks.execute(Thread.currentThread(), new Async(task), task.desc);
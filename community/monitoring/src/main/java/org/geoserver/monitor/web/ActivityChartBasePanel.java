@@ -28,6 +28,9 @@ import org.geoserver.monitor.Monitor;
 import org.geoserver.monitor.Query;
 import org.geoserver.monitor.RequestData;
 import org.geoserver.monitor.RequestDataVisitor;
+import org.geoserver.monitor.RequestRollups;
+import org.geoserver.monitor.RequestRollups.Bucket;
+import org.geoserver.monitor.RequestRollups.Resolution;
 import org.geoserver.web.GeoServerApplication;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
@@ -100,13 +103,25 @@ public abstract class ActivityChartBasePanel extends Panel {
     }
     
     BufferedDynamicImageResource queryAndRenderChart(Monitor monitor, Date[] range) {
-        Query q = new Query();
-        q.properties("startTime").between(range[0], range[1]);
-        
-        DataGatherer gatherer = new DataGatherer();
-        monitor.query(q, gatherer);
-        
-        HashMap<RegularTimePeriod,Integer> data = gatherer.getData();
+        HashMap<RegularTimePeriod,Integer> data;
+        RequestRollups rollups = monitor.getRollups();
+        if (rollups != null) {
+            data = new HashMap<RegularTimePeriod, Integer>();
+            for (Bucket b : rollups.getBuckets(getRollupResolution(), range[0], range[1])) {
+                RegularTimePeriod period = getTimePeriod(b.getStart());
+                Integer count = data.get(period);
+                data.put(period, (int) b.getCount() + (count != null ? count : 0));
+            }
+        }
+        else {
+            Query q = new Query();
+            q.properties("startTime").between(range[0], range[1]);
+            
+            DataGatherer gatherer = new DataGatherer();
+            monitor.query(q, gatherer);
+            
+            data = gatherer.getData();
+        }
         
         Class timeUnitClass = getTimePeriod(range[0]).getClass();
         TimeSeries series = new TimeSeries("foo", timeUnitClass);
@@ -177,6 +192,14 @@ public abstract class ActivityChartBasePanel extends Panel {
         return "Activity " + FORMAT.format(range[0]) + " - " + FORMAT.format(range[1]);
     }
     
+    /**
+     * The resolution of the pre-aggregated statistics used to build the chart, must not be
+     * finer than the periods returned by {@link #getTimePeriod(Date)}
+     */
+    protected Resolution getRollupResolution() {
+        return Resolution.HOUR;
+    }
+    
     protected abstract Date[] getDateRange();
     
     protected abstract RegularTimePeriod getTimePeriod(Date time);
@@ -8,6 +8,7 @@ import java.util.Calendar;
 import java.util.Date;
 
 import org.geoserver.monitor.Monitor;
+import org.geoserver.monitor.RequestRollups.Resolution;
 import org.jfree.data.time.Hour;
 import org.jfree.data.time.Minute;
 import org.jfree.data.time.RegularTimePeriod;
@@ -35,9 +36,12 @@ public class DailyActivityPanel extends ActivityChartBasePanel {
     
     @Override
     protected RegularTimePeriod getTimePeriod(Date time) {
-        return new Second(time);
-        //return new Minute(time);
-        //return new Hour(time);
+        return new Minute(time);
+    }
+    
+    @Override
+    protected Resolution getRollupResolution() {
+        return Resolution.MINUTE;
     }
     
     @Override
@@ -11,6 +11,9 @@ import org.geoserver.monitor.Monitor;
 import org.geoserver.monitor.Query;
 import org.geoserver.monitor.RequestData;
 import org.geoserver.monitor.RequestDataVisitor;
+import org.geoserver.monitor.RequestRollups;
+import org.geoserver.monitor.RequestRollups.Bucket;
+import org.geoserver.monitor.RequestRollups.Resolution;
 import org.geoserver.monitor.Query.Comparison;
 
 public class OWSDetailsPanel extends OWSSummaryChartBasePanel {
@@ -26,6 +29,20 @@ public class OWSDetailsPanel extends OWSSummaryChartBasePanel {
     
     @Override
     protected Map<String, Integer> gatherData(Monitor monitor) {
+        RequestRollups rollups = monitor.getRollups();
+        if (rollups != null) {
+            // operations are keyed as SERVICE.operation
+            String prefix = owsService.toUpperCase() + ".";
+            Map<String,Integer> data = new HashMap();
+            Bucket total = rollups.getTotal(Resolution.HOUR, null, null);
+            for (Map.Entry<String, Long> e : total.getOperationCounts().entrySet()) {
+                if (e.getKey().startsWith(prefix)) {
+                    data.put(e.getKey().substring(prefix.length()), e.getValue().intValue());
+                }
+            }
+            return data;
+        }
+        
         DataGatherer g = new DataGatherer();
         monitor.query(new Query().properties("owsOperation")
             .filter("owsService", owsService, Comparison.EQ), g);
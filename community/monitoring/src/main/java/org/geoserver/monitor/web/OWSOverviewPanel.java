@@ -11,6 +11,9 @@ import org.geoserver.monitor.Monitor;
 import org.geoserver.monitor.Query;
 import org.geoserver.monitor.RequestData;
 import org.geoserver.monitor.RequestDataVisitor;
+import org.geoserver.monitor.RequestRollups;
+import org.geoserver.monitor.RequestRollups.Bucket;
+import org.geoserver.monitor.RequestRollups.Resolution;
 import org.geoserver.monitor.Query.Comparison;
 
 public class OWSOverviewPanel extends OWSSummaryChartBasePanel {
@@ -26,6 +29,16 @@ public class OWSOverviewPanel extends OWSSummaryChartBasePanel {
     
     @Override
     protected Map<String,Integer> gatherData(Monitor monitor) {
+        RequestRollups rollups = monitor.getRollups();
+        if (rollups != null) {
+            Map<String,Integer> data = new HashMap();
+            Bucket total = rollups.getTotal(Resolution.HOUR, null, null);
+            for (Map.Entry<String, Long> e : total.getServiceCounts().entrySet()) {
+                data.put(e.getKey(), e.getValue().intValue());
+            }
+            return data;
+        }
+        
         Query q = new Query();
         q.properties("owsService").filter("owsService", null, Comparison.NEQ);
         
@@ -0,0 +1,185 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class BatchingRequestWriterTest extends TestCase {
+
+    RecordingFlusher flusher;
+    BatchingRequestWriter writer;
+
+    @Override
+    protected void setUp() throws Exception {
+        flusher = new RecordingFlusher();
+        writer = new BatchingRequestWriter(flusher);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        flusher.gate.countDown();
+        writer.stop();
+    }
+
+    public void testCoalesce() throws Exception {
+        RequestData r1 = new RequestData();
+        RequestData r2 = new RequestData();
+
+        // not started, the changes pile up
+        assertTrue(writer.write(r1));
+        assertTrue(writer.write(r2));
+        assertTrue(writer.write(r1));
+        assertTrue(writer.write(r1));
+        assertEquals(2, writer.getBacklog());
+        assertEquals(2, writer.getCoalescedCount());
+
+        flusher.gate.countDown();
+        writer.start();
+        writer.stop();
+
+        assertEquals(1, flusher.batches.size());
+        assertEquals(2, flusher.batches.get(0).size());
+        assertSame(r1, flusher.batches.get(0).get(0));
+        assertSame(r2, flusher.batches.get(0).get(1));
+        assertEquals(0, writer.getBacklog());
+        assertEquals(2, writer.getWrittenCount());
+        assertEquals(1, writer.getFlushCount());
+    }
+
+    public void testBatchSize() throws Exception {
+        writer.setBatchSize(2);
+        writer.setFlushInterval(60000);
+        flusher.gate.countDown();
+        writer.start();
+
+        writer.write(new RequestData());
+        writer.write(new RequestData());
+        writer.write(new RequestData());
+
+        // the first two are written right away, without waiting for the flush interval
+        long start = System.currentTimeMillis();
+        while (writer.getWrittenCount() < 2) {
+            if (System.currentTimeMillis() - start > 5000) {
+                fail("The full batch has not been flushed");
+            }
+            Thread.sleep(10);
+        }
+        assertEquals(1, writer.getBacklog());
+
+        writer.stop();
+        assertEquals(3, writer.getWrittenCount());
+        assertEquals(2, flusher.batches.size());
+    }
+
+    public void testDropWhenFull() throws Exception {
+        writer.setBatchSize(1);
+        writer.setMaxBacklog(1);
+        writer.start();
+
+        // the flusher blocks on the first batch
+        writer.write(new RequestData());
+        assertTrue(flusher.flushing.await(5, TimeUnit.SECONDS));
+
+        RequestData r2 = new RequestData();
+        assertTrue(writer.write(r2));
+        assertFalse(writer.write(new RequestData()));
+        // changes to pending requests are still accepted
+        assertTrue(writer.write(r2));
+        assertEquals(1, writer.getDroppedCount());
+
+        // wait a bit before dropping
+        writer.setMaxWait(100);
+        long start = System.currentTimeMillis();
+        assertFalse(writer.write(new RequestData()));
+        assertTrue(System.currentTimeMillis() - start >= 100);
+        assertEquals(2, writer.getDroppedCount());
+
+        flusher.gate.countDown();
+        writer.stop();
+        assertEquals(2, writer.getWrittenCount());
+    }
+
+    public void testCompletedNotDropped() throws Exception {
+        writer.setBatchSize(1);
+        writer.setMaxBacklog(1);
+        writer.start();
+
+        // the flusher blocks on the first batch
+        writer.write(new RequestData());
+        assertTrue(flusher.flushing.await(5, TimeUnit.SECONDS));
+        assertTrue(writer.write(new RequestData()));
+
+        // the backlog is full, but the final state of a request waits for room
+        final RequestData finished = new RequestData();
+        finished.setStatus(RequestData.Status.FINISHED);
+        final CountDownLatch written = new CountDownLatch(1);
+        Thread t = new Thread() {
+            public void run() {
+                if (writer.write(finished)) {
+                    written.countDown();
+                }
+            }
+        };
+        t.start();
+        assertFalse(written.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(0, writer.getDroppedCount());
+
+        flusher.gate.countDown();
+        assertTrue(written.await(5, TimeUnit.SECONDS));
+        writer.stop();
+        assertEquals(3, writer.getWrittenCount());
+        assertEquals(0, writer.getDroppedCount());
+    }
+
+    public void testRetry() throws Exception {
+        flusher.failures = 1;
+        flusher.gate.countDown();
+        writer.write(new RequestData());
+        writer.start();
+        writer.stop();
+
+        assertEquals(2, flusher.attempts);
+        assertEquals(0, writer.getFailedCount());
+        assertEquals(1, writer.getWrittenCount());
+    }
+
+    public void testFailure() throws Exception {
+        flusher.failures = Integer.MAX_VALUE;
+        flusher.gate.countDown();
+        writer.write(new RequestData());
+        writer.start();
+        writer.stop();
+
+        // tried twice, then given up
+        assertEquals(2, flusher.attempts);
+        assertEquals(1, writer.getFailedCount());
+        assertEquals(0, writer.getWrittenCount());
+        assertEquals(0, writer.getBacklog());
+    }
+
+    static class RecordingFlusher implements BatchingRequestWriter.Flusher {
+        List<List<RequestData>> batches =
+            Collections.synchronizedList(new ArrayList<List<RequestData>>());
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        int failures;
+        int attempts;
+
+        public void flush(List<RequestData> batch) throws Exception {
+            flushing.countDown();
+            gate.await();
+            if (attempts++ < failures) {
+                throw new Exception("Simulated failure");
+            }
+            batches.add(new ArrayList<RequestData>(batch));
+        }
+    }
+}
@@ -4,7 +4,16 @@
  */
 package org.geoserver.monitor;
 
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static org.geoserver.monitor.MonitorTestData.assertCovered;
+import static org.geoserver.monitor.MonitorTestData.toDate;
+
+import java.util.List;
+
+import org.geoserver.monitor.RequestRollups.Resolution;
 import org.junit.BeforeClass;
+import org.junit.Test;
 
 public class MemoryMonitorDAOTest extends MonitorDAOTestSupport {
 
@@ -13,4 +22,44 @@ public class MemoryMonitorDAOTest extends MonitorDAOTestSupport {
         dao = new MemoryMonitorDAO();
         setUpData();
     }
+    
+    @Test
+    public void testBoundedHistory() throws Exception {
+        MemoryMonitorDAO small = new MemoryMonitorDAO(3);
+        new MonitorTestData(small).setup();
+        
+        // only the last three requests are kept
+        assertCovered(small.getRequests(), 18, 19, 20);
+        assertNull(small.getRequest(1));
+        assertEquals("/foo", small.getRequest(20).getPath());
+        
+        // but all of them are accounted in the rollups
+        assertEquals(10, small.getRollups().getTotal(Resolution.HOUR, 
+            toDate("2010-08-23T00:00:00"), null).getCount());
+    }
+    
+    @Test
+    public void testHistoryTimeRange() throws Exception {
+        assertCovered(((MemoryMonitorDAO) dao).getRequests(
+            toDate("2010-07-23T15:55:00").getTime(), toDate("2010-07-23T16:17:00").getTime(), 
+            false), 4, 5, 6);
+    }
+    
+    @Test
+    public void testLiveOrder() throws Exception {
+        MemoryMonitorDAO live = new MemoryMonitorDAO(3);
+        for (long id : new long[] { 5, 3, 8, 1 }) {
+            RequestData data = new RequestData();
+            data.setId(id);
+            live.add(data);
+        }
+        
+        // the running requests are returned in the order they started
+        List<RequestData> requests = live.getRequests();
+        assertEquals(4, requests.size());
+        assertEquals(5, requests.get(0).getId());
+        assertEquals(3, requests.get(1).getId());
+        assertEquals(8, requests.get(2).getId());
+        assertEquals(1, requests.get(3).getId());
+    }
 }
@@ -0,0 +1,106 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import static org.geoserver.monitor.MonitorTestData.toDate;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.geoserver.monitor.RequestData.Status;
+import org.geoserver.monitor.RequestRollups.Bucket;
+import org.geoserver.monitor.RequestRollups.Resolution;
+
+public class RequestRollupsTest extends TestCase {
+
+    RequestRollups rollups;
+    
+    @Override
+    protected void setUp() throws Exception {
+        rollups = new RequestRollups();
+        rollups.add(data("2010-07-23T15:26:44", 10, 100, Status.FINISHED, "WMS", "GetMap", "foo"));
+        rollups.add(data("2010-07-23T15:26:50", 30, 300, Status.FINISHED, "WMS", "GetMap", "bar"));
+        rollups.add(data("2010-07-23T15:27:10", 700, 50, Status.FAILED, "WFS", "GetFeature", "foo"));
+        rollups.add(data("2010-07-23T16:01:00", 3, 10, Status.FINISHED, "wms", "GetCapabilities"));
+    }
+    
+    public void testMinuteBuckets() throws Exception {
+        List<Bucket> buckets = rollups.getBuckets(Resolution.MINUTE, null, null);
+        assertEquals(3, buckets.size());
+        
+        Bucket b = buckets.get(0);
+        assertEquals(toDate("2010-07-23T15:26:00"), b.getStart());
+        assertEquals(toDate("2010-07-23T15:27:00"), b.getEnd());
+        assertEquals(2, b.getCount());
+        assertEquals(400, b.getBytes());
+        assertEquals(20.0, b.getAverageTime());
+        assertEquals(2l, b.getOperationCounts().get("WMS.getmap").longValue());
+        
+        assertEquals(1, buckets.get(1).getCount());
+        assertEquals(1, buckets.get(1).getErrorCount());
+        assertEquals(1, buckets.get(2).getCount());
+    }
+    
+    public void testHourBucketsRange() throws Exception {
+        List<Bucket> buckets = rollups.getBuckets(Resolution.HOUR, 
+            toDate("2010-07-23T15:27:30"), toDate("2010-07-23T17:00:00"));
+        // the first bucket overlaps the range
+        assertEquals(2, buckets.size());
+        assertEquals(3, buckets.get(0).getCount());
+        assertEquals(1, buckets.get(1).getCount());
+        
+        assertTrue(rollups.getBuckets(Resolution.HOUR, 
+            toDate("2010-07-24T00:00:00"), null).isEmpty());
+    }
+    
+    public void testTotal() throws Exception {
+        Bucket total = rollups.getTotal(Resolution.HOUR, null, null);
+        assertEquals(4, total.getCount());
+        assertEquals(460, total.getBytes());
+        assertEquals(3l, total.getServiceCounts().get("WMS").longValue());
+        assertEquals(1l, total.getServiceCounts().get("WFS").longValue());
+        assertEquals(410l, total.getServiceBytes().get("WMS").longValue());
+        assertEquals(2l, total.getLayerCounts().get("foo").longValue());
+        assertEquals(150l, total.getLayerBytes().get("foo").longValue());
+        
+        // latencies 3, 10, 30, 700
+        assertEquals(5, total.getLatencyPercentile(25));
+        assertEquals(20, total.getLatencyPercentile(50));
+        assertEquals(1000, total.getLatencyPercentile(100));
+    }
+    
+    public void testRecycle() throws Exception {
+        // a day later the same minute slot is reused
+        rollups.add(data("2010-07-24T15:26:10", 1, 1, Status.FINISHED, "WMS", "GetMap"));
+        List<Bucket> buckets = rollups.getBuckets(Resolution.MINUTE, 
+            toDate("2010-07-23T15:26:00"), toDate("2010-07-23T15:26:59"));
+        assertTrue(buckets.isEmpty());
+        
+        // requests older than the covered period are ignored
+        rollups.add(data("2010-07-23T15:26:20", 1, 1, Status.FINISHED, "WMS", "GetMap"));
+        buckets = rollups.getBuckets(Resolution.MINUTE, 
+            toDate("2010-07-24T15:26:00"), toDate("2010-07-24T15:26:59"));
+        assertEquals(1, buckets.size());
+        assertEquals(1, buckets.get(0).getCount());
+    }
+    
+    RequestData data(String start, long time, long bytes, Status status, String service, 
+            String operation, String... layers) {
+        RequestData data = new RequestData();
+        Date startTime = toDate(start);
+        data.setStartTime(startTime);
+        data.setEndTime(new Date(startTime.getTime() + time));
+        data.setTotalTime(time);
+        data.setResponseLength(bytes);
+        data.setStatus(status);
+        data.setService(service);
+        data.setOperation(operation);
+        data.setResources(Arrays.asList(layers));
+        return data;
+    }
+}
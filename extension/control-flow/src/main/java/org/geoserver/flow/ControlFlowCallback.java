@@ -74,6 +74,13 @@ public class ControlFlowCallback extends AbstractDispatcherCallback implements
         return operation;
     }
 
+    /**
+     * Returns the flow controllers currently in use, e.g., to look up their statistics
+     */
+    public List<FlowController> getControllers() {
+        return Collections.unmodifiableList(controllers);
+    }
+
     /**
      * Reloads the flow controller list and replaces the existing ones
      */
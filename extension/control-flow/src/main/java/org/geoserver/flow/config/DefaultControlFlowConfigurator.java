@@ -6,7 +6,9 @@ package org.geoserver.flow.config;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.logging.Logger;
 
@@ -15,6 +17,8 @@ import org.geoserver.flow.FlowController;
 import org.geoserver.flow.controller.BasicOWSController;
 import org.geoserver.flow.controller.GlobalFlowController;
 import org.geoserver.flow.controller.UserFlowController;
+import org.geoserver.flow.controller.WeightedFairFlowController;
+import org.geoserver.flow.controller.WeightedFairFlowController.FlowKey;
 import org.geoserver.security.PropertyFileWatcher;
 import org.geotools.util.logging.Logging;
 import org.vfny.geoserver.global.GeoserverDataDirectory;
@@ -50,6 +54,7 @@ public class DefaultControlFlowConfigurator implements ControlFlowConfigurator {
 
         Properties p = configFile.getProperties();
         List<FlowController> newControllers = new ArrayList<FlowController>();
+        Map<String, Double> weights = new HashMap<String, Double>();
         for (Object okey : p.keySet()) {
             String key = ((String) okey).trim();
             String value = (String) p.get(okey);
@@ -82,6 +87,18 @@ public class DefaultControlFlowConfigurator implements ControlFlowConfigurator {
                 }
             } else if ("user".equals(keys[0])) {
                 controller = new UserFlowController(queueSize);
+            } else if ("wfq".equals(keys[0]) && keys.length > 2 && "weight".equals(keys[1])) {
+                // the flow id can contain dots (e.g., an ip address)
+                String flow = key.substring("wfq.weight.".length());
+                weights.put(flow, (double) queueSize);
+                continue;
+            } else if ("wfq".equals(keys[0]) && keys.length == 2) {
+                try {
+                    FlowKey flowKey = FlowKey.valueOf(keys[1].toUpperCase());
+                    controller = new WeightedFairFlowController(flowKey, queueSize);
+                } catch (IllegalArgumentException e) {
+                    // unknown flow key, reported below
+                }
             }
 
             if (controller == null) {
@@ -91,6 +108,13 @@ public class DefaultControlFlowConfigurator implements ControlFlowConfigurator {
             }
         }
 
+        // the weights apply to all the weighted fair controllers
+        for (FlowController controller : newControllers) {
+            if (controller instanceof WeightedFairFlowController) {
+                ((WeightedFairFlowController) controller).setWeights(weights);
+            }
+        }
+
         return newControllers;
     }
 
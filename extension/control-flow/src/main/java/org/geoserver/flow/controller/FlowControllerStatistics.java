@@ -0,0 +1,139 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters tracking how the requests went through a flow controller: how many were admitted,
+ * how many of them had to wait in the queue, how many timed out, and how long they waited.
+ * All the updates are lock free, so that they can be performed for every request.
+ */
+public class FlowControllerStatistics {
+
+    /**
+     * Upper bounds, in milliseconds, of the wait time histogram buckets. The last bucket
+     * collects all the waits longer than the last bound
+     */
+    static final long[] HISTOGRAM_BOUNDS = new long[] { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000,
+            2000, 5000, 10000 };
+
+    AtomicLong admitted = new AtomicLong();
+
+    AtomicLong waited = new AtomicLong();
+
+    AtomicLong timedOut = new AtomicLong();
+
+    AtomicLong totalWaitTime = new AtomicLong();
+
+    AtomicLong maxWaitTime = new AtomicLong();
+
+    AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BOUNDS.length + 1);
+
+    /**
+     * Records a request that has been let through after waiting the specified amount of
+     * milliseconds
+     */
+    public void admitted(long waitTime) {
+        admitted.incrementAndGet();
+        histogram.incrementAndGet(bucket(waitTime));
+        if (waitTime > 0) {
+            waited.incrementAndGet();
+            recordWait(waitTime);
+        }
+    }
+
+    /**
+     * Records a request that has been rejected after waiting the specified amount of
+     * milliseconds
+     */
+    public void timedOut(long waitTime) {
+        timedOut.incrementAndGet();
+        histogram.incrementAndGet(bucket(waitTime));
+        recordWait(waitTime);
+    }
+
+    void recordWait(long waitTime) {
+        totalWaitTime.addAndGet(waitTime);
+        long max = maxWaitTime.get();
+        while (waitTime > max && !maxWaitTime.compareAndSet(max, waitTime)) {
+            max = maxWaitTime.get();
+        }
+    }
+
+    static int bucket(long waitTime) {
+        for (int i = 0; i < HISTOGRAM_BOUNDS.length; i++) {
+            if (waitTime < HISTOGRAM_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return HISTOGRAM_BOUNDS.length;
+    }
+
+    /**
+     * The number of requests let through
+     */
+    public long getAdmittedCount() {
+        return admitted.get();
+    }
+
+    /**
+     * The number of requests let through that had to wait in the queue
+     */
+    public long getWaitedCount() {
+        return waited.get();
+    }
+
+    /**
+     * The number of requests rejected because they waited in the queue more than the timeout
+     */
+    public long getTimedOutCount() {
+        return timedOut.get();
+    }
+
+    /**
+     * The average time, in milliseconds, spent in the queue by the requests that had to wait
+     */
+    public double getAverageWaitTime() {
+        long count = waited.get() + timedOut.get();
+        return count > 0 ? totalWaitTime.get() / (double) count : 0;
+    }
+
+    /**
+     * The maximum time, in milliseconds, a request spent in the queue
+     */
+    public long getMaxWaitTime() {
+        return maxWaitTime.get();
+    }
+
+    /**
+     * The upper bounds, in milliseconds, of the wait time histogram buckets
+     */
+    public long[] getWaitTimeHistogramBounds() {
+        return HISTOGRAM_BOUNDS.clone();
+    }
+
+    /**
+     * The wait time histogram, counting both the admitted and the timed out requests. The
+     * element <code>i</code> counts the waits shorter than the <code>i</code>-th bound (and
+     * longer than the previous one), the last element counts the waits longer than all the
+     * bounds
+     */
+    public long[] getWaitTimeHistogram() {
+        long[] result = new long[histogram.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = histogram.get(i);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "admitted=" + getAdmittedCount() + ", waited=" + getWaitedCount() + ", timedOut="
+                + getTimedOutCount() + ", averageWait=" + getAverageWaitTime() + "ms, maxWait="
+                + getMaxWaitTime() + "ms";
+    }
+}
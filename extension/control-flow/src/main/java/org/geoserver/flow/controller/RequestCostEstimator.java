@@ -0,0 +1,177 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import java.util.Map;
+
+import org.geoserver.ows.Request;
+import org.geoserver.ows.util.OwsUtils;
+import org.geoserver.platform.Operation;
+
+/**
+ * Estimates the relative cost of a request, where a cost of one is the cost of a 256x256 map
+ * tile:
+ * <ul>
+ * <li>GetMap: the image area divided by the tile area</li>
+ * <li>GetFeature: the max features divided by {@link #getFeaturesPerUnit()}, or
+ * {@link #getUnboundedFeaturesCost()} if max features is not set</li>
+ * <li>GetCoverage: the output grid size divided by the tile area</li>
+ * </ul>
+ * Any other request costs one, as does any request whose size cannot be determined.
+ */
+public class RequestCostEstimator {
+
+    /**
+     * The number of pixels in a request costing one unit
+     */
+    static final double TILE_AREA = 256 * 256;
+
+    int featuresPerUnit = 1000;
+
+    double unboundedFeaturesCost = 10;
+
+    /**
+     * The number of features returned by a GetFeature costing one unit
+     */
+    public int getFeaturesPerUnit() {
+        return featuresPerUnit;
+    }
+
+    public void setFeaturesPerUnit(int featuresPerUnit) {
+        this.featuresPerUnit = featuresPerUnit;
+    }
+
+    /**
+     * The cost of a GetFeature that does not set max features
+     */
+    public double getUnboundedFeaturesCost() {
+        return unboundedFeaturesCost;
+    }
+
+    public void setUnboundedFeaturesCost(double unboundedFeaturesCost) {
+        this.unboundedFeaturesCost = unboundedFeaturesCost;
+    }
+
+    /**
+     * Returns the estimated cost of the request, never less than one
+     */
+    public double estimate(Request request) {
+        String name = request.getRequest();
+        if (name == null) {
+            return 1;
+        }
+
+        double cost = 1;
+        if ("GetMap".equalsIgnoreCase(name)) {
+            cost = mapCost(request);
+        } else if ("GetFeature".equalsIgnoreCase(name)) {
+            cost = featureCost(request);
+        } else if ("GetCoverage".equalsIgnoreCase(name)) {
+            cost = coverageCost(request);
+        }
+        return Math.max(1, cost);
+    }
+
+    double mapCost(Request request) {
+        Number width = number(request, "width", "WIDTH");
+        Number height = number(request, "height", "HEIGHT");
+        if (width == null || height == null) {
+            return 1;
+        }
+        return width.doubleValue() * height.doubleValue() / TILE_AREA;
+    }
+
+    double featureCost(Request request) {
+        Number maxFeatures = number(request, "maxFeatures", "MAXFEATURES");
+        if (maxFeatures == null || maxFeatures.longValue() <= 0) {
+            return unboundedFeaturesCost;
+        }
+        return maxFeatures.doubleValue() / featuresPerUnit;
+    }
+
+    double coverageCost(Request request) {
+        // WCS 1.0 sets the output size directly
+        Number width = number(request, null, "WIDTH");
+        Number height = number(request, null, "HEIGHT");
+        if (width != null && height != null) {
+            return width.doubleValue() * height.doubleValue() / TILE_AREA;
+        }
+
+        // WCS 1.1 sets the bounding box and the grid offsets
+        double[] bbox = doubles(request, "BOUNDINGBOX");
+        double[] offsets = doubles(request, "GRIDOFFSETS");
+        if (bbox != null && bbox.length >= 4 && offsets != null && offsets.length >= 2) {
+            // offsets can be either 2 (dx, dy) or 4 (a 2x2 matrix) values
+            double dx = offsets[0];
+            double dy = offsets.length >= 4 ? offsets[3] : offsets[1];
+            if (dx != 0 && dy != 0) {
+                double cells = Math.abs((bbox[2] - bbox[0]) / dx)
+                        * Math.abs((bbox[3] - bbox[1]) / dy);
+                return cells / TILE_AREA;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Looks up a numeric property, first in the parsed request object, then in the KVP
+     */
+    Number number(Request request, String property, String kvpKey) {
+        Operation op = request.getOperation();
+        if (property != null && op != null && op.getParameters() != null
+                && op.getParameters().length > 0 && op.getParameters()[0] != null) {
+            Object value = OwsUtils.property(op.getParameters()[0], property, null);
+            if (value instanceof Number) {
+                return (Number) value;
+            }
+        }
+
+        Object value = kvp(request, kvpKey);
+        if (value instanceof Number) {
+            return (Number) value;
+        } else if (value instanceof String) {
+            try {
+                return Double.parseDouble((String) value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses a comma separated list of numbers from the raw KVP, ignoring non numeric values
+     * (e.g., the CRS at the end of a WCS 1.1 bounding box)
+     */
+    double[] doubles(Request request, String kvpKey) {
+        Map rawKvp = request.getRawKvp();
+        Object value = rawKvp != null ? rawKvp.get(kvpKey) : null;
+        if (!(value instanceof String)) {
+            return null;
+        }
+        String[] elements = ((String) value).split(",");
+        double[] result = new double[elements.length];
+        int count = 0;
+        for (String element : elements) {
+            try {
+                result[count++] = Double.parseDouble(element.trim());
+            } catch (NumberFormatException e) {
+                count--;
+            }
+        }
+        double[] trimmed = new double[count];
+        System.arraycopy(result, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+    Object kvp(Request request, String key) {
+        Map kvp = request.getKvp();
+        Object value = kvp != null ? kvp.get(key) : null;
+        if (value == null && request.getRawKvp() != null) {
+            value = request.getRawKvp().get(key);
+        }
+        return value;
+    }
+}
@@ -4,8 +4,7 @@
  */
 package org.geoserver.flow.controller;
 
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -17,6 +16,11 @@ import org.geotools.util.logging.Logging;
 
 /**
  * Base class for flow controllers using a single queue
+ * <p>
+ * The queue is implemented as a fair semaphore with as many permits as the queue size, both
+ * acquiring and releasing a slot are constant time operations, and the uncontended case does
+ * not block at all.
+ * </p>
  * 
  * @author Andrea Aime - OpenGeo
  * 
@@ -24,40 +28,86 @@ import org.geotools.util.logging.Logging;
 public abstract class SingleQueueFlowController implements FlowController {
     static final Logger LOGGER = Logging.getLogger(ControlFlowCallback.class);
 
-    BlockingQueue<Request> queue;
+    Semaphore permits;
 
     int queueSize;
 
+    FlowControllerStatistics statistics = new FlowControllerStatistics();
+
+    /**
+     * Marks the threads that hold a permit, requestComplete is called also for requests that
+     * timed out or have not been matched
+     */
+    ThreadLocal<Boolean> holding = new ThreadLocal<Boolean>();
+
     public SingleQueueFlowController(int queueSize) {
         this.queueSize = queueSize;
-        queue = new ArrayBlockingQueue<Request>(queueSize, true);
+        permits = new Semaphore(queueSize, true);
     }
 
     public int getPriority() {
         return queueSize;
     }
 
+    /**
+     * The admission and wait time statistics
+     */
+    public FlowControllerStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * The number of requests currently running through this controller
+     */
+    public int getRunningCount() {
+        return queueSize - permits.availablePermits();
+    }
+
+    /**
+     * An estimate of the number of requests currently waiting to run
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
     public void requestComplete(Request request) {
-        if (matchesRequest(request)) {
-            queue.remove(request);
+        if (holding.get() != null) {
+            holding.remove();
+            permits.release();
         }
     }
 
     public boolean requestIncoming(Request request, long timeout) {
         boolean retval = true;
         if (matchesRequest(request)) {
+            // fast path, no contention, no clock reading
+            if (permits.tryAcquire()) {
+                holding.set(Boolean.TRUE);
+                statistics.admitted(0);
+                return true;
+            }
+
+            long start = System.currentTimeMillis();
             try {
                 if(timeout > 0) {
-                    retval = queue.offer(request, timeout, TimeUnit.MILLISECONDS);
+                    retval = permits.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+                } else {
+                    permits.acquire();
+                }
+                if (retval) {
+                    holding.set(Boolean.TRUE);
+                    // it did wait, even if for less than a millisecond
+                    statistics.admitted(Math.max(1, System.currentTimeMillis() - start));
                 } else {
-                    queue.put(request);
+                    statistics.timedOut(System.currentTimeMillis() - start);
                 }
             } catch (InterruptedException e) {
                 LOGGER.log(Level.WARNING,
                         "Unexpected interruption while blocking on the request queue");
             }
             if (LOGGER.isLoggable(Level.FINE)) {
-                LOGGER.fine(this + " queue size " + queue.size());
+                LOGGER.fine(this + " running " + getRunningCount() + ", waiting "
+                        + getWaitingCount());
             }
 
         }
@@ -0,0 +1,390 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.geoserver.flow.ControlFlowCallback;
+import org.geoserver.flow.FlowController;
+import org.geoserver.ows.Request;
+import org.geotools.util.logging.Logging;
+import org.springframework.security.Authentication;
+import org.springframework.security.context.SecurityContextHolder;
+import org.springframework.security.providers.anonymous.AnonymousAuthenticationToken;
+
+/**
+ * A flow controller that limits the total estimated cost of the requests running in parallel,
+ * instead of their number, and shares that capacity among flows of requests (users, client IP
+ * addresses or services) with weighted fair queuing.
+ * <p>
+ * The cost of each request is computed by a {@link RequestCostEstimator}, a large GetMap will
+ * use more of the capacity than a small tile. Requests costing more than the whole capacity are
+ * run alone. When the capacity is exhausted the requests are queued and ordered by their
+ * virtual start time (start-time fair queuing): each flow advances its own virtual clock by the
+ * request cost divided by the flow weight, so a client sending lots of expensive requests will
+ * not delay the others more than its share.
+ * </p>
+ * <p>
+ * The queue is strictly ordered, a large request at the head of the queue is not overtaken by
+ * smaller ones even if they would fit in the remaining capacity, to avoid starving it.
+ * </p>
+ */
+public class WeightedFairFlowController implements FlowController {
+    static final Logger LOGGER = Logging.getLogger(ControlFlowCallback.class);
+
+    /**
+     * How the requests are grouped into flows
+     */
+    public enum FlowKey {
+        /**
+         * The authenticated user name, or the client IP for anonymous requests
+         */
+        USER,
+        /**
+         * The client IP address
+         */
+        IP,
+        /**
+         * The OWS service
+         */
+        SERVICE
+    }
+
+    /**
+     * Number of flows after which the idle ones are forgotten
+     */
+    static final int MAX_FLOWS = 1000;
+
+    FlowKey flowKey;
+
+    int capacity;
+
+    Map<String, Double> weights = Collections.emptyMap();
+
+    RequestCostEstimator estimator = new RequestCostEstimator();
+
+    FlowControllerStatistics statistics = new FlowControllerStatistics();
+
+    /**
+     * Guards all the scheduling state below
+     */
+    ReentrantLock lock = new ReentrantLock();
+
+    PriorityQueue<Ticket> queue = new PriorityQueue<Ticket>();
+
+    Map<String, Double> finishTags = new HashMap<String, Double>();
+
+    double virtualTime;
+
+    long running;
+
+    long sequence;
+
+    /**
+     * The ticket of the request being run by the current thread
+     */
+    ThreadLocal<Ticket> current = new ThreadLocal<Ticket>();
+
+    /**
+     * Builds a new controller
+     *
+     * @param flowKey
+     *            how requests are grouped into flows
+     * @param capacity
+     *            the total cost of the requests that can run in parallel, in 256x256 tile
+     *            equivalents
+     */
+    public WeightedFairFlowController(FlowKey flowKey, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive");
+        }
+        this.flowKey = flowKey;
+        this.capacity = capacity;
+    }
+
+    public int getPriority() {
+        return capacity;
+    }
+
+    public FlowKey getFlowKey() {
+        return flowKey;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * The flow weights, keyed by user name, IP address or service depending on the flow key.
+     * Flows not in the map have weight one, a flow with weight two gets twice the capacity of a
+     * flow with weight one when both have queued requests.
+     */
+    public Map<String, Double> getWeights() {
+        return weights;
+    }
+
+    public void setWeights(Map<String, Double> weights) {
+        this.weights = new HashMap<String, Double>(weights);
+    }
+
+    public RequestCostEstimator getEstimator() {
+        return estimator;
+    }
+
+    public void setEstimator(RequestCostEstimator estimator) {
+        this.estimator = estimator;
+    }
+
+    /**
+     * The admission and wait time statistics
+     */
+    public FlowControllerStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * The number of requests currently waiting
+     */
+    public int getQueueLength() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The total cost of the requests currently running
+     */
+    public long getRunningCost() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean requestIncoming(Request request, long timeout) {
+        long cost = Math.min(capacity, Math.max(1, Math.round(estimator.estimate(request))));
+        String flow = getFlowId(request);
+        Double weight = weights.get(flow);
+        if (weight == null || weight <= 0) {
+            weight = 1d;
+        }
+
+        long start = System.currentTimeMillis();
+        Ticket ticket = null;
+        lock.lock();
+        try {
+            Double lastFinish = finishTags.get(flow);
+            double startTag = Math.max(virtualTime, lastFinish != null ? lastFinish : 0);
+            ticket = new Ticket(flow, cost, startTag, startTag + cost / weight, sequence++);
+            finishTags.put(flow, ticket.finishTag);
+            if (finishTags.size() > MAX_FLOWS) {
+                purgeIdleFlows();
+            }
+
+            if (queue.isEmpty() && running + cost <= capacity) {
+                admit(ticket);
+            } else {
+                ticket.condition = lock.newCondition();
+                queue.add(ticket);
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine(this + " queued request of flow " + flow + " with cost " + cost
+                            + ", queue length " + queue.size());
+                }
+
+                long deadline = start + timeout;
+                while (!ticket.admitted) {
+                    if (timeout > 0) {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            withdraw(ticket);
+                            statistics.timedOut(System.currentTimeMillis() - start);
+                            return false;
+                        }
+                        ticket.condition.await(remaining, TimeUnit.MILLISECONDS);
+                    } else {
+                        ticket.condition.await();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.log(Level.WARNING, "Unexpected interruption while waiting in the queue");
+            if (!ticket.admitted) {
+                // let the request go without holding any capacity, as the other controllers do
+                withdraw(ticket);
+                return true;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        statistics.admitted(System.currentTimeMillis() - start);
+        current.set(ticket);
+        return true;
+    }
+
+    public void requestComplete(Request request) {
+        Ticket ticket = current.get();
+        if (ticket == null) {
+            // not admitted by this controller
+            return;
+        }
+        current.remove();
+
+        lock.lock();
+        try {
+            running -= ticket.cost;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lets through the requests at the head of the queue as long as they fit in the available
+     * capacity. Must be called with the lock held.
+     */
+    void dispatch() {
+        Ticket head;
+        while ((head = queue.peek()) != null && running + head.cost <= capacity) {
+            queue.poll();
+            admit(head);
+            head.condition.signal();
+        }
+    }
+
+    /**
+     * Removes a request that gave up waiting from the queue. The request did not use any of the
+     * flow share, so the virtual clock of the flow is moved back by its cost, along with the
+     * start times of the requests the flow queued after it. Must be called with the lock held.
+     */
+    void withdraw(Ticket ticket) {
+        queue.remove(ticket);
+
+        double delta = ticket.finishTag - ticket.startTag;
+        List<Ticket> later = new ArrayList<Ticket>();
+        for (Ticket queued : queue) {
+            if (queued.flow.equals(ticket.flow) && queued.order > ticket.order) {
+                later.add(queued);
+            }
+        }
+        for (Ticket queued : later) {
+            // the start time is part of the queue order, re-insert to keep the heap consistent
+            queue.remove(queued);
+            queued.startTag -= delta;
+            queued.finishTag -= delta;
+            queue.add(queued);
+        }
+        Double lastFinish = finishTags.get(ticket.flow);
+        if (lastFinish != null) {
+            finishTags.put(ticket.flow, lastFinish - delta);
+        }
+
+        // the head of the queue might have changed
+        dispatch();
+    }
+
+    void admit(Ticket ticket) {
+        ticket.admitted = true;
+        running += ticket.cost;
+        virtualTime = Math.max(virtualTime, ticket.startTag);
+    }
+
+    /**
+     * Forgets the flows whose virtual clock is behind the global one, they would restart from
+     * the global virtual time anyways. Must be called with the lock held.
+     */
+    void purgeIdleFlows() {
+        for (Iterator<Double> it = finishTags.values().iterator(); it.hasNext();) {
+            if (it.next() <= virtualTime) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the identifier of the flow the request belongs to
+     */
+    String getFlowId(Request request) {
+        if (flowKey == FlowKey.SERVICE) {
+            return request.getService() != null ? request.getService().toUpperCase() : "";
+        }
+        if (flowKey == FlowKey.USER) {
+            Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+            if (auth != null && !(auth instanceof AnonymousAuthenticationToken)) {
+                return auth.getName();
+            }
+        }
+        return getClientAddress(request.getHttpRequest());
+    }
+
+    static String getClientAddress(HttpServletRequest httpRequest) {
+        if (httpRequest == null) {
+            return "";
+        }
+        // proxies add the original client address in front of the forwarded list
+        String forwarded = httpRequest.getHeader("X-Forwarded-For");
+        if (forwarded != null && forwarded.trim().length() > 0) {
+            return forwarded.split(",")[0].trim();
+        }
+        return httpRequest.getRemoteAddr();
+    }
+
+    @Override
+    public String toString() {
+        return "WeightedFairFlowController(" + flowKey + "," + capacity + ")";
+    }
+
+    /**
+     * A request waiting for, or holding, some of the capacity
+     */
+    static class Ticket implements Comparable<Ticket> {
+        String flow;
+
+        long cost;
+
+        double startTag;
+
+        double finishTag;
+
+        long order;
+
+        boolean admitted;
+
+        Condition condition;
+
+        Ticket(String flow, long cost, double startTag, double finishTag, long order) {
+            this.flow = flow;
+            this.cost = cost;
+            this.startTag = startTag;
+            this.finishTag = finishTag;
+            this.order = order;
+        }
+
+        public int compareTo(Ticket other) {
+            if (startTag != other.startTag) {
+                return startTag < other.startTag ? -1 : 1;
+            }
+            return order < other.order ? -1 : (order == other.order ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.geoserver.flow.ControlFlowCallbackTest.TestingConfigurator;
+import org.geoserver.flow.controller.BasicOWSController;
+import org.geoserver.flow.controller.GlobalFlowController;
+import org.geoserver.flow.controller.SingleQueueFlowController;
+import org.geoserver.ows.HttpErrorCodeException;
+import org.geoserver.ows.Request;
+
+/**
+ * Measures the throughput of {@link ControlFlowCallback} when lots of threads are dispatching
+ * short requests through a global, a per service and a per operation controller, comparing the
+ * permit based controllers with the blocking queue ones they replaced. Not a test, run it
+ * manually with:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.geoserver.flow.ControlFlowCallbackBenchmark
+ * </pre>
+ *
+ * The number of threads, the global queue size and the run duration in seconds can be passed
+ * as arguments.
+ */
+public class ControlFlowCallbackBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int queueSize = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        for (int i = 0; i < 2; i++) {
+            TestingConfigurator queues = new TestingConfigurator();
+            queues.controllers.add(new QueueFlowController(null, null, queueSize));
+            queues.controllers.add(new QueueFlowController("WMS", null, queueSize / 2));
+            queues.controllers.add(new QueueFlowController("WMS", "GetMap", queueSize / 4));
+            run("Queues", queues, threads, seconds);
+
+            TestingConfigurator permits = new TestingConfigurator();
+            permits.controllers.add(new GlobalFlowController(queueSize));
+            permits.controllers.add(new BasicOWSController("WMS", queueSize / 2));
+            permits.controllers.add(new BasicOWSController("WMS", "GetMap", queueSize / 4));
+            run("Permits", permits, threads, seconds);
+            for (FlowController controller : permits.controllers) {
+                System.out.println("  " + controller + ": "
+                        + ((SingleQueueFlowController) controller).getStatistics());
+            }
+        }
+    }
+
+    static void run(String name, TestingConfigurator configurator, int threads, int seconds)
+            throws Exception {
+        final ControlFlowCallback callback = new ControlFlowCallback();
+        configurator.stale = false;
+        callback.configurator = configurator;
+        callback.reloadConfiguration();
+
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final long end = System.currentTimeMillis() + seconds * 1000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        long sink = 0;
+                        while (System.currentTimeMillis() < end) {
+                            Request request = new Request();
+                            request.setService("WMS");
+                            request.setRequest("GetMap");
+                            try {
+                                callback.operationDispatched(request, null);
+                                // a tiny bit of work, to keep the controllers busy
+                                for (int j = 0; j < 1000; j++) {
+                                    sink += j ^ sink;
+                                }
+                                completed.incrementAndGet();
+                            } catch (HttpErrorCodeException e) {
+                                rejected.incrementAndGet();
+                            } finally {
+                                callback.finished(request);
+                            }
+                        }
+                        if (sink == 42) {
+                            System.out.print("");
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            };
+            t.start();
+        }
+        done.await();
+
+        System.out.println(name + ": " + completed.get() / seconds + " req/s, "
+                + rejected.get() + " rejected");
+    }
+
+    /**
+     * The blocking queue based controller used before the permit based one, kept here as a
+     * reference
+     */
+    static class QueueFlowController implements FlowController {
+        String service;
+
+        String method;
+
+        int queueSize;
+
+        BlockingQueue<Request> queue;
+
+        QueueFlowController(String service, String method, int queueSize) {
+            this.service = service;
+            this.method = method;
+            this.queueSize = queueSize;
+            this.queue = new ArrayBlockingQueue<Request>(queueSize, true);
+        }
+
+        public int getPriority() {
+            return queueSize;
+        }
+
+        boolean matchesRequest(Request request) {
+            return (service == null || service.equalsIgnoreCase(request.getService()))
+                    && (method == null || method.equalsIgnoreCase(request.getRequest()));
+        }
+
+        public void requestComplete(Request request) {
+            if (matchesRequest(request)) {
+                queue.remove(request);
+            }
+        }
+
+        public boolean requestIncoming(Request request, long timeout) {
+            if (matchesRequest(request)) {
+                try {
+                    if (timeout > 0) {
+                        return queue.offer(request, timeout, TimeUnit.MILLISECONDS);
+                    } else {
+                        queue.put(request);
+                    }
+                } catch (InterruptedException e) {
+                    // go on
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -12,6 +12,8 @@ import org.geoserver.flow.FlowController;
 import org.geoserver.flow.controller.BasicOWSController;
 import org.geoserver.flow.controller.GlobalFlowController;
 import org.geoserver.flow.controller.UserFlowController;
+import org.geoserver.flow.controller.WeightedFairFlowController;
+import org.geoserver.flow.controller.WeightedFairFlowController.FlowKey;
 import org.geoserver.security.PropertyFileWatcher;
 
 public class DefaultControlFlowConfigurationTest extends TestCase {
@@ -47,6 +49,24 @@ public class DefaultControlFlowConfigurationTest extends TestCase {
         assertEquals(100, gc.getPriority());
     }
     
+    public void testParseWeightedFair() throws Exception {
+        Properties p = new Properties();
+        p.put("wfq.ip", "32");
+        p.put("wfq.weight.192.168.1.10", "3");
+        p.put("wfq.weight.admin", "2");
+        p.put("wfq.unknown", "5");
+        
+        DefaultControlFlowConfigurator configurator = new DefaultControlFlowConfigurator(new FixedWatcher(p));
+        List<FlowController> controllers = configurator.buildFlowControllers();
+        
+        assertEquals(1, controllers.size());
+        WeightedFairFlowController wc = (WeightedFairFlowController) controllers.get(0);
+        assertEquals(FlowKey.IP, wc.getFlowKey());
+        assertEquals(32, wc.getCapacity());
+        assertEquals(2, wc.getWeights().size());
+        assertEquals(3.0, wc.getWeights().get("192.168.1.10"), 0d);
+        assertEquals(2.0, wc.getWeights().get("admin"), 0d);
+    }
     
     static class FixedWatcher extends PropertyFileWatcher {
         boolean stale = true;
@@ -2,6 +2,8 @@ package org.geoserver.flow.controller;
 
 import java.lang.Thread.State;
 
+import org.geoserver.flow.controller.FlowControllerTestingThread.ThreadState;
+
 import junit.framework.TestCase;
 
 /**
@@ -32,6 +34,27 @@ public abstract class AbstractFlowControllerTest extends TestCase {
         }
     }
     
+    /**
+     * Waits until the thread has been let through by the controller
+     * 
+     * @param t
+     *            the thread
+     * @param maxWait
+     *            max amount of time we'll wait
+     */
+    void waitProcessing(FlowControllerTestingThread t, long maxWait) {
+        long start = System.currentTimeMillis();
+        while (t.state != ThreadState.PROCESSING) {
+            if (System.currentTimeMillis() > (start + maxWait))
+                fail("Waited for the thread to be processing more than maxWait: " + maxWait);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                fail("Sometime interrupeted our wait: " + e);
+            }
+        }
+    }
+
     /**
      * Waits until the thread is terminated
      * 
@@ -11,7 +11,7 @@ public class FlowControllerTestingThread extends Thread {
     Request request;
     long timeout;
     long processingDelay;
-    ThreadState state;
+    volatile ThreadState state;
     Throwable error;
     
     
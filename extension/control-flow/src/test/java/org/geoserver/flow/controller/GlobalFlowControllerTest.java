@@ -86,6 +86,13 @@ public class GlobalFlowControllerTest extends AbstractFlowControllerTest {
             
             assertEquals(ThreadState.COMPLETE, t1.state);
             assertEquals(ThreadState.TIMED_OUT, t2.state);
+            
+            FlowControllerStatistics stats = controller.getStatistics();
+            assertEquals(1, stats.getAdmittedCount());
+            assertEquals(0, stats.getWaitedCount());
+            assertEquals(1, stats.getTimedOutCount());
+            assertTrue(stats.getMaxWaitTime() >= 100);
+            assertEquals(0, controller.getRunningCount());
         } finally {
             waitAndKill(t1, MAX_WAIT);
             waitAndKill(t2, MAX_WAIT);
@@ -93,6 +100,47 @@ public class GlobalFlowControllerTest extends AbstractFlowControllerTest {
 
     }
 
-    
+    public void testDepthAndHistogram() throws Exception {
+        GlobalFlowController controller = new GlobalFlowController(1);
+
+        FlowControllerTestingThread t1 = new FlowControllerTestingThread(controller, new Request(),
+                0, Long.MAX_VALUE);
+        FlowControllerTestingThread t2 = new FlowControllerTestingThread(controller, new Request(),
+                0, Long.MAX_VALUE);
+        try {
+            t1.start();
+            waitBlocked(t1, MAX_WAIT);
+            t2.start();
+            waitBlocked(t2, MAX_WAIT);
+            
+            assertEquals(1, controller.getRunningCount());
+            assertEquals(1, controller.getWaitingCount());
+            
+            t1.interrupt();
+            waitTerminated(t1, MAX_WAIT);
+            waitProcessing(t2, MAX_WAIT);
+            t2.interrupt();
+            waitTerminated(t2, MAX_WAIT);
+            
+            assertEquals(0, controller.getRunningCount());
+            assertEquals(0, controller.getWaitingCount());
+            
+            FlowControllerStatistics stats = controller.getStatistics();
+            assertEquals(2, stats.getAdmittedCount());
+            assertEquals(1, stats.getWaitedCount());
+            long[] histogram = stats.getWaitTimeHistogram();
+            assertEquals(stats.getWaitTimeHistogramBounds().length + 1, histogram.length);
+            // the first request did not wait at all
+            assertEquals(1, histogram[0]);
+            long total = 0;
+            for (long count : histogram) {
+                total += count;
+            }
+            assertEquals(2, total);
+        } finally {
+            waitAndKill(t1, MAX_WAIT);
+            waitAndKill(t2, MAX_WAIT);
+        }
+    }
 
 }
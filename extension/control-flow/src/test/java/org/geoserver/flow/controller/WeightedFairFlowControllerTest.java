@@ -0,0 +1,207 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import org.geoserver.flow.controller.FlowControllerTestingThread.ThreadState;
+import org.geoserver.flow.controller.WeightedFairFlowController.FlowKey;
+import org.geoserver.ows.Request;
+import org.geoserver.ows.util.KvpMap;
+
+import com.mockrunner.mock.web.MockHttpServletRequest;
+import com.mockrunner.mock.web.MockHttpServletResponse;
+
+public class WeightedFairFlowControllerTest extends AbstractFlowControllerTest {
+    private static final long MAX_WAIT = 1000;
+
+    public void testCostEstimate() {
+        RequestCostEstimator estimator = new RequestCostEstimator();
+        assertEquals(1.0, estimator.estimate(buildMapRequest("1.2.3.4", 256, 256)), 1e-6);
+        assertEquals(16.0, estimator.estimate(buildMapRequest("1.2.3.4", 1024, 1024)), 1e-6);
+        // small requests still cost one
+        assertEquals(1.0, estimator.estimate(buildMapRequest("1.2.3.4", 10, 10)), 1e-6);
+
+        Request getFeature = buildRequest("1.2.3.4", "GetFeature");
+        assertEquals(10.0, estimator.estimate(getFeature), 1e-6);
+        getFeature.getKvp().put("MAXFEATURES", 5000);
+        assertEquals(5.0, estimator.estimate(getFeature), 1e-6);
+
+        Request getCoverage = buildRequest("1.2.3.4", "GetCoverage");
+        getCoverage.getRawKvp().put("BOUNDINGBOX", "0,0,512,512,urn:ogc:def:crs:EPSG::4326");
+        getCoverage.getRawKvp().put("GRIDOFFSETS", "1,1");
+        assertEquals(4.0, estimator.estimate(getCoverage), 1e-6);
+    }
+
+    public void testCostCapacity() {
+        // room for a single 512x512 map
+        WeightedFairFlowController controller = new WeightedFairFlowController(FlowKey.IP, 4);
+
+        FlowControllerTestingThread t1 = new FlowControllerTestingThread(controller,
+                buildMapRequest("1.2.3.4", 512, 512), 0, Long.MAX_VALUE);
+        FlowControllerTestingThread t2 = new FlowControllerTestingThread(controller,
+                buildMapRequest("1.2.3.5", 256, 256), 0, Long.MAX_VALUE);
+        // a huge request is capped to the capacity, so it can still run alone
+        FlowControllerTestingThread t3 = new FlowControllerTestingThread(controller,
+                buildMapRequest("1.2.3.6", 4096, 4096), 0, Long.MAX_VALUE);
+        try {
+            t1.start();
+            waitBlocked(t1, MAX_WAIT);
+            t2.start();
+            waitBlocked(t2, MAX_WAIT);
+            assertEquals(ThreadState.PROCESSING, t1.state);
+            assertEquals(ThreadState.STARTED, t2.state);
+            assertEquals(4, controller.getRunningCost());
+            assertEquals(1, controller.getQueueLength());
+
+            t1.interrupt();
+            waitTerminated(t1, MAX_WAIT);
+            waitProcessing(t2, MAX_WAIT);
+            assertEquals(1, controller.getRunningCost());
+
+            t3.start();
+            waitBlocked(t3, MAX_WAIT);
+            assertEquals(ThreadState.STARTED, t3.state);
+
+            t2.interrupt();
+            waitTerminated(t2, MAX_WAIT);
+            waitProcessing(t3, MAX_WAIT);
+            assertEquals(4, controller.getRunningCost());
+
+            t3.interrupt();
+            waitTerminated(t3, MAX_WAIT);
+            assertEquals(0, controller.getRunningCost());
+            assertEquals(3, controller.getStatistics().getAdmittedCount());
+            assertEquals(2, controller.getStatistics().getWaitedCount());
+        } finally {
+            waitAndKill(t1, MAX_WAIT);
+            waitAndKill(t2, MAX_WAIT);
+            waitAndKill(t3, MAX_WAIT);
+        }
+    }
+
+    public void testFairness() {
+        WeightedFairFlowController controller = new WeightedFairFlowController(FlowKey.IP, 1);
+
+        // client A fills the capacity and queues two more requests, then client B shows up
+        FlowControllerTestingThread a1 = new FlowControllerTestingThread(controller,
+                buildRequest("10.0.0.1", "GetCapabilities"), 0, Long.MAX_VALUE);
+        FlowControllerTestingThread a2 = new FlowControllerTestingThread(controller,
+                buildRequest("10.0.0.1", "GetCapabilities"), 0, Long.MAX_VALUE);
+        FlowControllerTestingThread a3 = new FlowControllerTestingThread(controller,
+                buildRequest("10.0.0.1", "GetCapabilities"), 0, Long.MAX_VALUE);
+        FlowControllerTestingThread b1 = new FlowControllerTestingThread(controller,
+                buildRequest("10.0.0.2", "GetCapabilities"), 0, Long.MAX_VALUE);
+        try {
+            a1.start();
+            waitBlocked(a1, MAX_WAIT);
+            a2.start();
+            waitBlocked(a2, MAX_WAIT);
+            a3.start();
+            waitBlocked(a3, MAX_WAIT);
+            b1.start();
+            waitBlocked(b1, MAX_WAIT);
+            assertEquals(ThreadState.PROCESSING, a1.state);
+            assertEquals(3, controller.getQueueLength());
+
+            // B jumps ahead of the requests A queued before it
+            a1.interrupt();
+            waitTerminated(a1, MAX_WAIT);
+            waitProcessing(b1, MAX_WAIT);
+            assertEquals(ThreadState.STARTED, a2.state);
+            assertEquals(ThreadState.STARTED, a3.state);
+
+            b1.interrupt();
+            waitTerminated(b1, MAX_WAIT);
+            waitProcessing(a2, MAX_WAIT);
+            assertEquals(ThreadState.STARTED, a3.state);
+        } finally {
+            a2.interrupt();
+            a3.interrupt();
+            waitAndKill(a1, MAX_WAIT);
+            waitAndKill(a2, MAX_WAIT);
+            waitAndKill(a3, MAX_WAIT);
+            waitAndKill(b1, MAX_WAIT);
+        }
+    }
+
+    public void testTimeout() {
+        WeightedFairFlowController controller = new WeightedFairFlowController(FlowKey.IP, 1);
+
+        FlowControllerTestingThread t1 = new FlowControllerTestingThread(controller,
+                buildRequest("10.0.0.1", "GetMap"), 0, Long.MAX_VALUE);
+        FlowControllerTestingThread t2 = new FlowControllerTestingThread(controller,
+                buildRequest("10.0.0.2", "GetMap"), 100, 0);
+        try {
+            t1.start();
+            waitBlocked(t1, MAX_WAIT);
+            t2.start();
+            waitTerminated(t2, MAX_WAIT);
+
+            assertEquals(ThreadState.TIMED_OUT, t2.state);
+            assertEquals(0, controller.getQueueLength());
+            assertEquals(1, controller.getStatistics().getTimedOutCount());
+            assertTrue(controller.getStatistics().getMaxWaitTime() >= 100);
+        } finally {
+            t1.interrupt();
+            waitAndKill(t1, MAX_WAIT);
+        }
+    }
+
+    public void testTimeoutRollsBackFlow() {
+        WeightedFairFlowController controller = new WeightedFairFlowController(FlowKey.IP, 1);
+
+        FlowControllerTestingThread a1 = new FlowControllerTestingThread(controller,
+                buildRequest("10.0.0.1", "GetMap"), 0, Long.MAX_VALUE);
+        FlowControllerTestingThread a2 = new FlowControllerTestingThread(controller,
+                buildRequest("10.0.0.1", "GetMap"), 200, 0);
+        FlowControllerTestingThread a3 = new FlowControllerTestingThread(controller,
+                buildRequest("10.0.0.1", "GetMap"), 0, Long.MAX_VALUE);
+        try {
+            a1.start();
+            waitBlocked(a1, MAX_WAIT);
+            a2.start();
+            waitBlocked(a2, MAX_WAIT);
+            a3.start();
+            waitBlocked(a3, MAX_WAIT);
+            assertEquals(3.0, controller.finishTags.get("10.0.0.1"), 1e-6);
+
+            // the request that gave up waiting does not count against its flow, the one queued
+            // after it takes its place
+            waitTerminated(a2, MAX_WAIT);
+            assertEquals(ThreadState.TIMED_OUT, a2.state);
+            assertEquals(2.0, controller.finishTags.get("10.0.0.1"), 1e-6);
+            assertEquals(1, controller.getQueueLength());
+            assertEquals(1.0, controller.queue.peek().startTag, 1e-6);
+
+            a1.interrupt();
+            waitTerminated(a1, MAX_WAIT);
+            waitProcessing(a3, MAX_WAIT);
+        } finally {
+            a3.interrupt();
+            waitAndKill(a1, MAX_WAIT);
+            waitAndKill(a2, MAX_WAIT);
+            waitAndKill(a3, MAX_WAIT);
+        }
+    }
+
+    Request buildMapRequest(String address, int width, int height) {
+        Request request = buildRequest(address, "GetMap");
+        request.getKvp().put("WIDTH", width);
+        request.getKvp().put("HEIGHT", height);
+        return request;
+    }
+
+    Request buildRequest(String address, String name) {
+        Request request = new Request();
+        MockHttpServletRequest httpRequest = new MockHttpServletRequest();
+        httpRequest.setRemoteAddr(address);
+        request.setHttpRequest(httpRequest);
+        request.setHttpResponse(new MockHttpServletResponse());
+        request.setService("WMS");
+        request.setRequest(name);
+        request.setKvp(new KvpMap());
+        request.setRawKvp(new KvpMap());
+        return request;
+    }
+}
@@ -19,6 +19,7 @@ import net.opengis.wps10.WPSCapabilitiesType;
 
 import org.geoserver.config.GeoServer;
 import org.geoserver.config.GeoServerInfo;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geotools.util.logging.Logging;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
@@ -68,6 +69,15 @@ public class DefaultWebProcessingService implements WebProcessingService, Applic
     	return new Execute(wps,gs,context).run(request);
     }
 
+    /**
+     * @see org.geoserver.wps.WebProcessingService#getExecutionStatus
+     */
+    public ExecutionStatus getExecutionStatus(GetExecutionStatusType request)
+            throws WPSException {
+        return new GetExecutionStatus(GeoServerExtensions.bean(WPSExecutionManager.class,
+                context)).run(request);
+    }
+
     /**
      * @see org.geoserver.wps.WebProcessingService#getSchema
      */
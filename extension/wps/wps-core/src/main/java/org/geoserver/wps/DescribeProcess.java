@@ -115,6 +115,9 @@ public class DescribeProcess {
         pd.setIdentifier( Ows11Util.code( id.getValue() ) );
         pd.setTitle( Ows11Util.languageString(pf.getTitle(name)) );
         pd.setAbstract( Ows11Util.languageString(pf.getDescription(name)) );
+        // all processes can be run asynchronously, see WPSExecutionManager
+        pd.setStoreSupported( true );
+        pd.setStatusSupported( true );
         
         //data inputs
         DataInputsType inputs = wpsf.createDataInputsType();
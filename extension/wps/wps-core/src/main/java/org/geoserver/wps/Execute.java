@@ -40,6 +40,7 @@ import net.opengis.wps10.OutputDefinitionsType;
 import net.opengis.wps10.OutputReferenceType;
 import net.opengis.wps10.ProcessBriefType;
 import net.opengis.wps10.ProcessOutputsType1;
+import net.opengis.wps10.ResponseDocumentType;
 import net.opengis.wps10.Wps10Factory;
 
 import org.apache.commons.httpclient.HttpClient;
@@ -58,6 +59,7 @@ import org.geoserver.ows.URLMangler.URLType;
 import org.geoserver.ows.util.KvpMap;
 import org.geoserver.ows.util.KvpUtils;
 import org.geoserver.ows.util.ResponseUtils;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.wcs.WebCoverageService100;
 import org.geoserver.wcs.WebCoverageService111;
 import org.geoserver.wfs.WebFeatureService;
@@ -112,6 +114,19 @@ public class Execute {
      * @throws IllegalArgumentException
      */
     public ExecuteResponseType run(ExecuteType request) {
+        // asynchronous request? hand it over to the execution manager, which will return the
+        // status document pointing to the stored execute response
+        ResponseDocumentType document = request.getResponseForm().getResponseDocument();
+        if (document != null && document.isStoreExecuteResponse()) {
+            WPSExecutionManager manager = GeoServerExtensions.bean(WPSExecutionManager.class,
+                    context);
+            if (manager == null) {
+                throw new WPSException("Storing the execute response is not supported",
+                        "StorageNotSupported", null);
+            }
+            return manager.submit(this, request);
+        }
+
         // note the current time
         Date started = Calendar.getInstance().getTime();
 
@@ -119,6 +134,22 @@ public class Execute {
         Map<String, ProcessOutput> outputMap = executeInternal(request);
         
         // build the response
+        ExecuteResponseType response = createResponse(request, started);
+        response.getStatus().setProcessSucceeded("Process succeeded.");
+        encodeOutputs(request, response, outputMap);
+
+        return response;
+    }
+
+    /**
+     * Builds the execute response skeleton, process description, status creation time and
+     * lineage, without the status itself and the outputs
+     * 
+     * @param request
+     * @param started
+     * @return
+     */
+    ExecuteResponseType createResponse(ExecuteType request, Date started) {
         Wps10Factory f = Wps10Factory.eINSTANCE;
         ExecuteResponseType response = f.createExecuteResponseType();
         response.setLang("en");
@@ -141,7 +172,6 @@ public class Execute {
         response.setStatus(f.createStatusType());
         response.getStatus().setCreationTime(
                 Converters.convert(started, XMLGregorianCalendar.class));
-        response.getStatus().setProcessSucceeded("Process succeeded.");
 
         // inputs
         response.setDataInputs(f.createDataInputsType1());
@@ -150,6 +180,22 @@ public class Execute {
             response.getDataInputs().getInput().add(EMFUtils.clone(input, f, true));
         }
 
+        return response;
+    }
+
+    /**
+     * Adds the output definitions and the encoded process outputs to the response
+     * 
+     * @param request
+     * @param response
+     * @param outputMap
+     */
+    void encodeOutputs(ExecuteType request, ExecuteResponseType response,
+            Map<String, ProcessOutput> outputMap) {
+        Wps10Factory f = Wps10Factory.eINSTANCE;
+        Name processName = Ows11Util.name(request.getIdentifier());
+        ProcessFactory pf = Processors.createProcessFactory(processName);
+
         // output definitions
         OutputDefinitionsType outputs = f.createOutputDefinitionsType();
         response.setOutputDefinitions(outputs);
@@ -246,11 +292,21 @@ public class Execute {
                 }
             }
         }
-
-        return response;
     }
     
     Map<String, ProcessOutput> executeInternal(ExecuteType request) {
+        return executeInternal(request, new ProcessListener());
+    }
+
+    /**
+     * Parses the inputs and executes the process, reporting the progress to the specified
+     * listener
+     * 
+     * @param request
+     * @param listener
+     * @return
+     */
+    Map<String, ProcessOutput> executeInternal(ExecuteType request, ProcessListener listener) {
     	// load the process factory
         Name processName = Ows11Util.name(request.getIdentifier());
         ProcessFactory pf = Processors.createProcessFactory(processName);
@@ -263,7 +319,6 @@ public class Execute {
 
         // execute the process
         Map<String, Object> result = null;
-        ProcessListener listener = new ProcessListener();
         Throwable exception = null;
         try {
             Process p = pf.create(processName);
@@ -286,6 +341,9 @@ public class Execute {
             	throw new WPSException("InternalError: " + exception.getMessage(), exception);
             }
         }
+        if(listener.isCanceled()) {
+            throw new WPSException("The process execution has been cancelled");
+        }
 
         // filter out the results we have not been asked about
         // and create a direct map between required outputs and
@@ -649,78 +707,73 @@ public class Execute {
     }
     
     /**
-     * A process listener. For the moment just used to check if the process execution failed
+     * A process listener, tracks the process progress, cancellation and failures
      * @author Andrea Aime - OpenGeo
      *
      */
     static class ProcessListener implements ProgressListener {
-        Throwable exception; 
+        volatile Throwable exception; 
+        
+        volatile float progress;
+        
+        volatile boolean canceled;
+        
+        volatile String description;
+        
+        volatile InternationalString task;
 
         public void complete() {
-            // TODO Auto-generated method stub
-            
+            progress(100);
         }
 
         public void dispose() {
-            // TODO Auto-generated method stub
-            
+            // nothing to do
         }
 
         public void exceptionOccurred(Throwable exception) {
             this.exception = exception;
-            
         }
 
         public String getDescription() {
-            // TODO Auto-generated method stub
-            return null;
+            return description;
         }
 
         public float getProgress() {
-            // TODO Auto-generated method stub
-            return 0;
+            return progress;
         }
 
         public InternationalString getTask() {
-            // TODO Auto-generated method stub
-            return null;
+            return task;
         }
 
         public boolean isCanceled() {
-            // TODO Auto-generated method stub
-            return false;
+            return canceled;
         }
 
         public void progress(float percent) {
-            // TODO Auto-generated method stub
-            
+            this.progress = percent;
         }
 
         public void setCanceled(boolean cancel) {
-            // TODO Auto-generated method stub
-            
+            this.canceled = cancel;
         }
 
         public void setDescription(String description) {
-            // TODO Auto-generated method stub
-            
+            this.description = description;
         }
 
         public void setTask(InternationalString task) {
-            // TODO Auto-generated method stub
-            
+            this.task = task;
         }
 
         public void started() {
-            // TODO Auto-generated method stub
-            
+            progress(0);
         }
 
         public void warningOccurred(String source, String location, String warning) {
-            // TODO Auto-generated method stub
-            
+            // nothing to do
         }
         
     }
     
-}
\ No newline at end of file
+}
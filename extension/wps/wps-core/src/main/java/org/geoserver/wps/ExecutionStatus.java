@@ -0,0 +1,123 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wps;
+
+import java.io.File;
+import java.util.Date;
+
+/**
+ * The status of an asynchronous process execution, as tracked by the {@link WPSExecutionManager}
+ */
+public class ExecutionStatus {
+
+    /**
+     * The execution states
+     */
+    public enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+    }
+
+    String executionId;
+
+    String processName;
+
+    File statusFile;
+
+    Date creationTime;
+
+    volatile State state = State.QUEUED;
+
+    volatile long startTime;
+
+    volatile long completionTime;
+
+    volatile long lastAccess;
+
+    volatile Throwable exception;
+
+    public ExecutionStatus(String executionId, String processName, File statusFile) {
+        this.executionId = executionId;
+        this.processName = processName;
+        this.statusFile = statusFile;
+        this.creationTime = new Date();
+        this.lastAccess = creationTime.getTime();
+    }
+
+    /**
+     * The execution identifier, used to poll the status document
+     *
+     * @return
+     */
+    public String getExecutionId() {
+        return executionId;
+    }
+
+    /**
+     * The identifier of the process being run
+     *
+     * @return
+     */
+    public String getProcessName() {
+        return processName;
+    }
+
+    /**
+     * The file containing the last status document for this execution, once the process is
+     * completed it contains the full execute response
+     *
+     * @return
+     */
+    public File getStatusFile() {
+        return statusFile;
+    }
+
+    public Date getCreationTime() {
+        return creationTime;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * The exception that made the process fail, if any
+     *
+     * @return
+     */
+    public Throwable getException() {
+        return exception;
+    }
+
+    /**
+     * Returns true if the process execution is over, no matter if successfully or not
+     *
+     * @return
+     */
+    public boolean isDone() {
+        return state == State.SUCCEEDED || state == State.FAILED || state == State.CANCELLED;
+    }
+
+    void started() {
+        startTime = System.currentTimeMillis();
+        state = State.RUNNING;
+    }
+
+    void completed(State state, Throwable exception) {
+        this.exception = exception;
+        this.completionTime = System.currentTimeMillis();
+        this.state = state;
+    }
+
+    void accessed() {
+        lastAccess = System.currentTimeMillis();
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutionStatus [executionId=" + executionId + ", processName=" + processName
+                + ", state=" + state + "]";
+    }
+
+}
@@ -0,0 +1,33 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wps;
+
+/**
+ * Returns the status of an asynchronous process execution
+ */
+public class GetExecutionStatus {
+
+    WPSExecutionManager manager;
+
+    public GetExecutionStatus(WPSExecutionManager manager) {
+        this.manager = manager;
+    }
+
+    public ExecutionStatus run(GetExecutionStatusType request) {
+        String id = request.getExecutionId();
+        if (id == null) {
+            throw new WPSException("The execution id is missing", "MissingParameterValue",
+                    "executionId");
+        }
+
+        ExecutionStatus status = manager == null ? null : manager.getStatus(id);
+        if (status == null) {
+            throw new WPSException("Unknown execution " + id
+                    + ", it might have expired or never existed", "InvalidParameterValue",
+                    "executionId");
+        }
+        return status;
+    }
+}
@@ -0,0 +1,44 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wps;
+
+/**
+ * The request used to poll the status of an asynchronous process execution, the status
+ * location returned by an Execute request with <code>storeExecuteResponse=true</code> points
+ * to it
+ */
+public class GetExecutionStatusType {
+
+    String service;
+
+    String version;
+
+    String executionId;
+
+    public String getService() {
+        return service;
+    }
+
+    public void setService(String service) {
+        this.service = service;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    public String getExecutionId() {
+        return executionId;
+    }
+
+    public void setExecutionId(String executionId) {
+        this.executionId = executionId;
+    }
+
+}
@@ -0,0 +1,586 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wps;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimerTask;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.opengis.wps10.ExecuteResponseType;
+import net.opengis.wps10.ExecuteType;
+import net.opengis.wps10.ProcessFailedType;
+import net.opengis.wps10.ProcessStartedType;
+import net.opengis.wps10.Wps10Factory;
+
+import org.geoserver.ows.Dispatcher;
+import org.geoserver.ows.Ows11Util;
+import org.geoserver.ows.URLMangler.URLType;
+import org.geoserver.ows.XmlObjectEncodingResponse;
+import org.geoserver.ows.util.ResponseUtils;
+import org.geoserver.platform.ServiceException;
+import org.geoserver.wps.Execute.ProcessListener;
+import org.geoserver.wps.Execute.ProcessOutput;
+import org.geoserver.wps.ExecutionStatus.State;
+import org.geoserver.wps.resource.WPSResourceManager;
+import org.geoserver.wps.xml.WPSConfiguration;
+import org.geotools.process.Processors;
+import org.geotools.util.logging.Logging;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.security.Authentication;
+import org.springframework.security.context.SecurityContextHolder;
+
+/**
+ * Runs the Execute requests asking to store the execute response (
+ * <code>storeExecuteResponse=true</code>) in background, and keeps track of their status.
+ * <p>
+ * The executions are queued into a bounded, prioritized queue (higher priority first, then in
+ * submission order) and run by a fixed size thread pool. While the process runs its progress is
+ * written into a status document in the WPS temporary storage, which is replaced by the full
+ * execute response once the process is done. Clients poll the status document with the
+ * GetExecutionStatus operation pointed by the statusLocation of the response.
+ * </p>
+ * <p>
+ * This class is also a timer task that cancels the executions nobody asked the status of in
+ * the last {@link #getAbandonedTimeout()} seconds, or running for more than
+ * {@link #getMaxExecutionTime()} seconds, and forgets about the completed ones once their
+ * documents have been removed by the {@link WPSStorageHandler}
+ * </p>
+ */
+public class WPSExecutionManager extends TimerTask implements ApplicationListener {
+    static final Logger LOGGER = Logging.getLogger(WPSExecutionManager.class);
+
+    /**
+     * Minimum interval between two progress updates of the same status document, in
+     * milliseconds
+     */
+    static final long STATUS_UPDATE_INTERVAL = 1000;
+
+    WPSStorageHandler storage;
+
+    WPSResourceManager resourceManager;
+
+    ThreadPoolExecutor executor;
+
+    int maxQueuedExecutions = 100;
+
+    long abandonedTimeout = 600;
+
+    long maxExecutionTime = 0;
+
+    Map<String, Integer> processPriorities = new HashMap<String, Integer>();
+
+    ConcurrentHashMap<String, ExecutionJob> executions = new ConcurrentHashMap<String, ExecutionJob>();
+
+    /**
+     * The number of executions holding a slot in the queue, that is, submitted and not yet
+     * started or removed from the queue
+     */
+    AtomicInteger queuedExecutions = new AtomicInteger();
+
+    AtomicLong sequence = new AtomicLong();
+
+    XmlObjectEncodingResponse encoder = new XmlObjectEncodingResponse(ExecuteResponseType.class,
+            "ExecuteResponse", WPSConfiguration.class);
+
+    public WPSExecutionManager(WPSStorageHandler storage, WPSResourceManager resourceManager) {
+        this.storage = storage;
+        this.resourceManager = resourceManager;
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+                    AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "WPS process executor " + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+    }
+
+    /**
+     * The number of processes that can run in parallel, by default the number of available
+     * processors
+     *
+     * @return
+     */
+    public int getMaxRunningExecutions() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public void setMaxRunningExecutions(int maxRunningExecutions) {
+        if (maxRunningExecutions > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(maxRunningExecutions);
+            executor.setCorePoolSize(maxRunningExecutions);
+        } else {
+            executor.setCorePoolSize(maxRunningExecutions);
+            executor.setMaximumPoolSize(maxRunningExecutions);
+        }
+    }
+
+    /**
+     * The number of executions that can be waiting for a free thread, once the queue is full new
+     * asynchronous Execute requests are refused
+     *
+     * @return
+     */
+    public int getMaxQueuedExecutions() {
+        return maxQueuedExecutions;
+    }
+
+    public void setMaxQueuedExecutions(int maxQueuedExecutions) {
+        this.maxQueuedExecutions = maxQueuedExecutions;
+    }
+
+    /**
+     * The time, in seconds, after which an execution whose status has not been requested is
+     * considered abandoned and cancelled. Zero or negative values disable the check
+     *
+     * @return
+     */
+    public long getAbandonedTimeout() {
+        return abandonedTimeout;
+    }
+
+    public void setAbandonedTimeout(long abandonedTimeout) {
+        this.abandonedTimeout = abandonedTimeout;
+    }
+
+    /**
+     * The maximum time, in seconds, a process is allowed to run before being cancelled. Zero or
+     * negative values disable the check
+     *
+     * @return
+     */
+    public long getMaxExecutionTime() {
+        return maxExecutionTime;
+    }
+
+    public void setMaxExecutionTime(long maxExecutionTime) {
+        this.maxExecutionTime = maxExecutionTime;
+    }
+
+    /**
+     * The queue priority of the processes, keyed by process identifier (e.g., "gs:Bounds").
+     * Processes not in the map have priority zero, higher values are run first
+     *
+     * @return
+     */
+    public Map<String, Integer> getProcessPriorities() {
+        return processPriorities;
+    }
+
+    public void setProcessPriorities(Map<String, Integer> processPriorities) {
+        this.processPriorities = processPriorities;
+    }
+
+    /**
+     * Queues the execution of the process and returns the response accepting it, pointing to
+     * the status location the client has to poll
+     *
+     * @param execute
+     * @param request
+     * @return
+     */
+    public ExecuteResponseType submit(Execute execute, ExecuteType request) {
+        String processName = request.getIdentifier().getValue();
+        if (Processors.createProcessFactory(Ows11Util.name(request.getIdentifier())) == null) {
+            throw new WPSException("No such process: " + processName);
+        }
+        if (!reserveQueueSlot()) {
+            throw new WPSException("Too many process executions waiting to be run, "
+                    + "try again later", "ServerBusy", null);
+        }
+
+        boolean queued = false;
+        try {
+            ExecuteResponseType response = queue(execute, request, processName);
+            queued = true;
+            return response;
+        } finally {
+            if (!queued) {
+                queuedExecutions.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Atomically takes a queue slot, if the queue is not full
+     */
+    boolean reserveQueueSlot() {
+        while (true) {
+            int queued = queuedExecutions.get();
+            if (queued >= maxQueuedExecutions) {
+                return false;
+            }
+            if (queuedExecutions.compareAndSet(queued, queued + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Builds the execution job and hands it to the executor, once queued the job releases its
+     * queue slot when it leaves the queue
+     */
+    ExecuteResponseType queue(Execute execute, ExecuteType request, String processName) {
+        // setup the execution status and the directory holding its documents
+        String id = UUID.randomUUID().toString();
+        File directory = new File(storage.getStorage(), id);
+        if (!directory.mkdirs()) {
+            throw new WPSException("Could not create the storage directory for the execution");
+        }
+        ExecutionStatus status = new ExecutionStatus(id, processName, new File(directory,
+                "status.xml"));
+
+        String baseURL = request.getBaseUrl();
+        if (baseURL == null) {
+            baseURL = "http://geoserver/fakeroot";
+        }
+        Map<String, String> kvp = new LinkedHashMap<String, String>();
+        kvp.put("service", "WPS");
+        kvp.put("version", "1.0.0");
+        kvp.put("request", "GetExecutionStatus");
+        kvp.put("executionId", id);
+        String statusLocation = ResponseUtils.buildURL(baseURL, "ows", kvp, URLType.SERVICE);
+
+        Integer priority = processPriorities.get(processName);
+        ExecutionJob job = new ExecutionJob(execute, request, status, statusLocation, baseURL,
+                priority != null ? priority : 0);
+        executions.put(id, job);
+        ExecuteResponseType response = job.writeStatus();
+        try {
+            executor.execute(job);
+        } catch (RuntimeException e) {
+            executions.remove(id);
+            throw e;
+        }
+
+        return response;
+    }
+
+    /**
+     * The number of executions waiting for a free thread
+     *
+     * @return
+     */
+    public int getQueuedExecutions() {
+        return queuedExecutions.get();
+    }
+
+    /**
+     * Returns the status of the specified execution, or null if the execution is not known.
+     * Calling this method marks the execution as still of interest for the client.
+     *
+     * @param executionId
+     * @return
+     */
+    public ExecutionStatus getStatus(String executionId) {
+        ExecutionJob job = executions.get(executionId);
+        if (job == null) {
+            return null;
+        }
+        job.status.accessed();
+        return job.status;
+    }
+
+    /**
+     * Cancels the specified execution. Queued executions will not be run, running processes are
+     * notified via their progress listener and their results are discarded.
+     *
+     * @param executionId
+     * @return true if the execution was found and not yet completed
+     */
+    public boolean cancel(String executionId) {
+        ExecutionJob job = executions.get(executionId);
+        if (job == null || job.status.isDone()) {
+            return false;
+        }
+        job.cancel("cancelled on request");
+        return true;
+    }
+
+    /**
+     * Checks for abandoned and expired executions
+     */
+    @Override
+    public void run() {
+        try {
+            long now = System.currentTimeMillis();
+            for (ExecutionJob job : executions.values()) {
+                ExecutionStatus status = job.status;
+                if (status.isDone()) {
+                    // the documents are removed by the storage handler, forget the execution
+                    // as well once they are gone
+                    if (!status.getStatusFile().exists()) {
+                        executions.remove(status.getExecutionId());
+                    }
+                } else {
+                    if (abandonedTimeout > 0 && now - status.lastAccess > abandonedTimeout * 1000) {
+                        job.cancel("abandoned, the status has not been requested in the last "
+                                + abandonedTimeout + " seconds");
+                    } else if (maxExecutionTime > 0 && status.state == State.RUNNING
+                            && now - status.startTime > maxExecutionTime * 1000) {
+                        job.cancel("the maximum execution time of " + maxExecutionTime
+                                + " seconds has been exceeded");
+                    }
+
+                    // keep the storage handler from removing the documents of the executions
+                    // still in progress
+                    status.getStatusFile().getParentFile().setLastModified(now);
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Error occurred while checking the asynchronous "
+                    + "process executions", e);
+        }
+    }
+
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (event instanceof ContextClosedEvent) {
+            for (ExecutionJob job : executions.values()) {
+                if (!job.status.isDone()) {
+                    job.cancel("the server is shutting down");
+                }
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes the document to the status file, replacing the previous one only once completely
+     * written, so that the clients never see a partial document
+     */
+    void write(ExecuteResponseType response, File file) throws IOException {
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        OutputStream os = null;
+        try {
+            os = new BufferedOutputStream(new FileOutputStream(temp));
+            encoder.write(response, os, null);
+        } finally {
+            if (os != null) {
+                os.close();
+            }
+        }
+        if (!temp.renameTo(file)) {
+            // some platforms do not allow to rename over an existing file
+            file.delete();
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not rename " + temp.getPath() + " to "
+                        + file.getPath());
+            }
+        }
+    }
+
+    /**
+     * A queued process execution, tracks the process progress as well
+     */
+    class ExecutionJob extends ProcessListener implements Runnable, Comparable<ExecutionJob> {
+
+        Execute execute;
+
+        ExecuteType request;
+
+        ExecutionStatus status;
+
+        String statusLocation;
+
+        String baseURL;
+
+        Authentication authentication;
+
+        int priority;
+
+        long order;
+
+        long lastStatusUpdate;
+
+        AtomicBoolean inQueue = new AtomicBoolean(true);
+
+        ExecutionJob(Execute execute, ExecuteType request, ExecutionStatus status,
+                String statusLocation, String baseURL, int priority) {
+            this.execute = execute;
+            this.request = request;
+            this.status = status;
+            this.statusLocation = statusLocation;
+            this.baseURL = baseURL;
+            this.priority = priority;
+            this.order = sequence.incrementAndGet();
+            // the process will run in another thread, it has to see the same user
+            this.authentication = SecurityContextHolder.getContext().getAuthentication();
+        }
+
+        public void run() {
+            dequeued();
+            if (isCanceled()) {
+                // cancelled while waiting in the queue
+                return;
+            }
+
+            // the pool threads inherit the request that was being dispatched when they were
+            // created, make sure it's not used
+            Dispatcher.REQUEST.remove();
+            WPSStorageHandler.BASE_URL.set(baseURL);
+            SecurityContextHolder.getContext().setAuthentication(authentication);
+            try {
+                status.started();
+                writeStatus();
+
+                Map<String, ProcessOutput> outputs = execute.executeInternal(request, this);
+
+                // write out the full response and then mark the execution as done
+                ExecuteResponseType response = execute.createResponse(request, status
+                        .getCreationTime());
+                response.setStatusLocation(statusLocation);
+                response.getStatus().setProcessSucceeded("Process succeeded.");
+                execute.encodeOutputs(request, response, outputs);
+                synchronized (this) {
+                    write(response, status.getStatusFile());
+                    status.completed(State.SUCCEEDED, null);
+                }
+            } catch (Throwable t) {
+                if (isCanceled()) {
+                    LOGGER.log(Level.FINE, "Process execution " + status.getExecutionId()
+                            + " cancelled", t);
+                    completed(State.CANCELLED, status.getException());
+                } else {
+                    LOGGER.log(Level.WARNING, "Process execution " + status.getExecutionId()
+                            + " failed", t);
+                    completed(State.FAILED, t);
+                }
+            } finally {
+                // release the resources the process allocated and the references to the
+                // request and its inputs
+                resourceManager.releaseProcessResources();
+                WPSStorageHandler.BASE_URL.remove();
+                SecurityContextHolder.clearContext();
+                execute = null;
+                request = null;
+            }
+        }
+
+        @Override
+        public void progress(float percent) {
+            super.progress(percent);
+            if (status.state == State.RUNNING
+                    && System.currentTimeMillis() - lastStatusUpdate > STATUS_UPDATE_INTERVAL) {
+                writeStatus();
+            }
+        }
+
+        /**
+         * Cancels the execution, removing it from the queue if it has not been started yet
+         */
+        void cancel(String reason) {
+            if (status.isDone()) {
+                return;
+            }
+            WPSException exception = new WPSException("The process execution has been "
+                    + "cancelled: " + reason);
+            synchronized (this) {
+                status.exception = exception;
+                setCanceled(true);
+            }
+            if (executor.remove(this)) {
+                // never started, nobody else will update the status
+                dequeued();
+                completed(State.CANCELLED, exception);
+                execute = null;
+                request = null;
+            }
+        }
+
+        /**
+         * Gives back the queue slot, the first time the job leaves the queue
+         */
+        void dequeued() {
+            if (inQueue.compareAndSet(true, false)) {
+                queuedExecutions.decrementAndGet();
+            }
+        }
+
+        synchronized void completed(State state, Throwable exception) {
+            status.completed(state, exception);
+            writeStatus();
+        }
+
+        /**
+         * Writes the current status document and returns it
+         */
+        synchronized ExecuteResponseType writeStatus() {
+            Wps10Factory f = Wps10Factory.eINSTANCE;
+            ExecuteResponseType response = null;
+            try {
+                if (request != null) {
+                    response = execute.createResponse(request, status.getCreationTime());
+                } else {
+                    // the request has been released, we just need to report a failure
+                    response = f.createExecuteResponseType();
+                    response.setStatus(f.createStatusType());
+                }
+                response.setStatusLocation(statusLocation);
+
+                State state = status.getState();
+                if (state == State.QUEUED) {
+                    response.getStatus().setProcessAccepted("Process accepted.");
+                } else if (state == State.RUNNING) {
+                    ProcessStartedType started = f.createProcessStartedType();
+                    started.setValue(getTask() != null ? getTask().toString()
+                            : "Process started.");
+                    int percent = Math.max(0, Math.min(99, Math.round(getProgress())));
+                    started.setPercentCompleted(BigInteger.valueOf(percent));
+                    response.getStatus().setProcessStarted(started);
+                } else {
+                    Throwable t = status.getException();
+                    ServiceException se;
+                    if (t instanceof ServiceException) {
+                        se = (ServiceException) t;
+                    } else {
+                        se = new WPSException("Process failed during execution", t);
+                    }
+                    ProcessFailedType failed = f.createProcessFailedType();
+                    failed.setExceptionReport(Ows11Util.exceptionReport(se, false));
+                    response.getStatus().setProcessFailed(failed);
+                }
+
+                write(response, status.getStatusFile());
+                lastStatusUpdate = System.currentTimeMillis();
+            } catch (Exception e) {
+                // the next update will try again
+                LOGGER.log(Level.WARNING, "Failed to write the status document of execution "
+                        + status.getExecutionId(), e);
+            }
+            return response;
+        }
+
+        public int compareTo(ExecutionJob other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return order < other.order ? -1 : (order == other.order ? 0 : 1);
+        }
+    }
+}
@@ -32,6 +32,12 @@ import org.geotools.util.logging.Logging;
 public class WPSStorageHandler extends TimerTask {
     Logger LOGGER = Logging.getLogger(WCSStorageCleaner.class);
 
+    /**
+     * The base URL used to build the links when not running inside a dispatched request, e.g.,
+     * during an asynchronous process execution
+     */
+    static final ThreadLocal<String> BASE_URL = new ThreadLocal<String>();
+
     long expirationDelay;
 
     private File storage;
@@ -103,6 +109,8 @@ public class WPSStorageHandler extends TimerTask {
         String baseURL = "http://geoserver/fakeroot";
         if(Dispatcher.REQUEST.get()!= null) {
             baseURL = ResponseUtils.baseURL(Dispatcher.REQUEST.get().getHttpRequest());
+        } else if(BASE_URL.get() != null) {
+            baseURL = BASE_URL.get();
         }
         
         String path = "temp/wps/" + storage.toURI().relativize(file.toURI()).getPath();
@@ -36,6 +36,11 @@ public interface WebProcessingService {
      */
     ExecuteResponseType execute(ExecuteType reques) throws WPSException;
 
+    /**
+     * Returns the status of an asynchronous process execution
+     */
+    ExecutionStatus getExecutionStatus(GetExecutionStatusType request) throws WPSException;
+
     /**
      * Executes a get schema request and writes the output to the Servlet response
      *
@@ -63,6 +63,9 @@ public class ExecuteKvpRequestReader extends EMFKvpRequestReader implements Appl
         
         if(rawKvp.containsKey("responseDocument")) {
             execute.setResponseForm(parseResponseDocument(pf.getResultInfo(processName, null), (String) rawKvp.get("responseDocument")));
+            ResponseDocumentType document = execute.getResponseForm().getResponseDocument();
+            document.setStoreExecuteResponse(Boolean.parseBoolean((String) rawKvp.get("storeExecuteResponse")));
+            document.setStatus(Boolean.parseBoolean((String) rawKvp.get("status")));
         } else if(rawKvp.containsKey("rawDataOutput")) {
             execute.setResponseForm(parseRawDataOutput(pf.getResultInfo(processName, null), (String) rawKvp.get("rawDataOutput")));
         }
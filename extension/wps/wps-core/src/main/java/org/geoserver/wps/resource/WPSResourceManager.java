@@ -71,6 +71,15 @@ public class WPSResourceManager implements DispatcherCallback, ApplicationListen
     // -----------------------------------------------------------------
 
     public void finished(Request request) {
+        releaseProcessResources();
+    }
+
+    /**
+     * Cleans up the resources registered by the current thread and unbinds the process id.
+     * Called at the end of each request, and by the asynchronous executions that run outside
+     * of the dispatcher
+     */
+    public void releaseProcessResources() {
         // if we did not generate any process id, no resources have been added
         if (processId.get() == null) {
             return;
@@ -90,8 +99,13 @@ public class WPSResourceManager implements DispatcherCallback, ApplicationListen
      * @param id
      */
     void cleanProcess(UUID id) {
+        List<WPSResource> resources = resourceCache.get(id);
+        if (resources == null) {
+            return;
+        }
+        
         // delete all resources associated with the process 
-        for (WPSResource resource : resourceCache.get(id)) {
+        for (WPSResource resource : resources) {
             try {
                 resource.delete();
             } catch (Throwable t) {
@@ -0,0 +1,53 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wps.response;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.geoserver.ows.Response;
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.ServiceException;
+import org.geoserver.wps.ExecutionStatus;
+import org.geoserver.wps.WPSException;
+
+/**
+ * Writes out the status document stored for an asynchronous process execution
+ */
+public class ExecutionStatusResponse extends Response {
+
+    public ExecutionStatusResponse() {
+        super(ExecutionStatus.class);
+    }
+
+    @Override
+    public String getMimeType(Object value, Operation operation) throws ServiceException {
+        return "application/xml";
+    }
+
+    @Override
+    public void write(Object value, OutputStream output, Operation operation)
+            throws IOException, ServiceException {
+        ExecutionStatus status = (ExecutionStatus) value;
+        File file = status.getStatusFile();
+        if (!file.exists()) {
+            throw new WPSException("The status of execution " + status.getExecutionId()
+                    + " is not available anymore");
+        }
+
+        InputStream is = null;
+        try {
+            is = new FileInputStream(file);
+            IOUtils.copy(is, output);
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+}
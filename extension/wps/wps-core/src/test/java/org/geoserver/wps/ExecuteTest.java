@@ -14,6 +14,7 @@ import java.util.zip.ZipInputStream;
 
 import net.opengis.ows11.BoundingBoxType;
 
+import org.custommonkey.xmlunit.XMLUnit;
 import org.geoserver.test.RemoteOWSTestSupport;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.geojson.feature.FeatureJSON;
@@ -433,6 +434,37 @@ public class ExecuteTest extends WPSTestSupport {
          assertEquals("14.0", response.getOutputStreamContent());
     }
     
+    public void testPlainAdditionAsynchronous() throws Exception {
+        String request = "wps?service=WPS&version=1.0.0&request=Execute&Identifier=gt:DoubleAddition" +
+        "&DataInputs=" + urlEncode("input_a=7;input_b=7") + "&ResponseDocument=result" + 
+        "&storeExecuteResponse=true&status=true";
+        
+        // the process is accepted and we get back the location of the status document
+        Document dom = getAsDOM(request);
+        assertXpathExists("/wps:ExecuteResponse/wps:Status/wps:ProcessAccepted", dom);
+        String location = XMLUnit.newXpathEngine().evaluate("/wps:ExecuteResponse/@statusLocation", dom);
+        assertTrue(location.contains("request=GetExecutionStatus"));
+        String executionId = location.substring(location.indexOf("executionId=") + 12);
+        
+        // poll until the process is done
+        String statusRequest = "wps?service=WPS&version=1.0.0&request=GetExecutionStatus&executionId=" + executionId;
+        for (int i = 0; i < 100; i++) {
+            dom = getAsDOM(statusRequest);
+            if(XMLUnit.newXpathEngine().getMatchingNodes("//wps:ProcessSucceeded", dom).getLength() > 0) {
+                break;
+            }
+            assertXpathNotExists("//wps:ProcessFailed", dom);
+            Thread.sleep(100);
+        }
+        assertXpathExists("/wps:ExecuteResponse/wps:Status/wps:ProcessSucceeded", dom);
+        assertXpathEvaluatesTo("14.0", "//wps:Output/wps:Data/wps:LiteralData", dom);
+    }
+    
+    public void testUnknownExecutionStatus() throws Exception {
+        Document dom = getAsDOM("wps?service=WPS&version=1.0.0&request=GetExecutionStatus&executionId=foo");
+        assertXpathEvaluatesTo("InvalidParameterValue", "//ows:Exception/@exceptionCode", dom);
+    }
+    
     /**
      * Tests a process execution with a BoudingBox as the output and check internal layer
      * request handling as well
@@ -0,0 +1,165 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wps;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.custommonkey.xmlunit.XMLUnit;
+import org.geoserver.wps.ExecutionStatus.State;
+import org.geoserver.wps.WPSExecutionManager.ExecutionJob;
+import org.w3c.dom.Document;
+
+public class WPSExecutionManagerTest extends WPSTestSupport {
+
+    static final String ADDITION = "Identifier=gt:DoubleAddition&DataInputs="
+            + "input_a%3D7%3Binput_b%3D7&ResponseDocument=result";
+
+    static final String BUFFER = "Identifier=gt:buffer&DataInputs="
+            + "geom1%3DPOLYGON((1%201%2C%202%201%2C%202%202%2C%201%202%2C%201%201))"
+            + "%40mimetype%3Dapplication%2Fwkt%3Bbuffer%3D1&ResponseDocument=result";
+
+    WPSExecutionManager manager;
+
+    ThreadPoolExecutor executor;
+
+    Map<String, Integer> priorities;
+
+    CountDownLatch blocker;
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        super.setUpInternal();
+        manager = (WPSExecutionManager) applicationContext.getBean("wpsExecutionManager");
+        priorities = manager.getProcessPriorities();
+        manager.setProcessPriorities(new HashMap<String, Integer>());
+
+        // run the executions on a single thread, kept busy until the test releases it, so that
+        // the submitted executions stay in the queue
+        executor = manager.executor;
+        manager.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>());
+        blocker = new CountDownLatch(1);
+        manager.executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    // fine, the test is over
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void tearDownInternal() throws Exception {
+        blocker.countDown();
+        manager.executor.shutdownNow();
+        manager.executor = executor;
+        manager.setProcessPriorities(priorities);
+        super.tearDownInternal();
+    }
+
+    public void testPriority() throws Exception {
+        manager.getProcessPriorities().put("gt:buffer", 10);
+        String addition = submit(ADDITION);
+        String buffer = submit(BUFFER);
+        assertEquals(2, manager.getQueuedExecutions());
+
+        // the higher priority execution is dequeued first, even if submitted later
+        ExecutionJob first = (ExecutionJob) manager.executor.getQueue().peek();
+        assertEquals(buffer, first.status.getExecutionId());
+
+        blocker.countDown();
+        waitForCompletion(addition);
+        waitForCompletion(buffer);
+        assertEquals(State.SUCCEEDED, manager.getStatus(buffer).getState());
+        assertEquals(State.SUCCEEDED, manager.getStatus(addition).getState());
+        assertTrue(manager.getStatus(buffer).startTime <= manager.getStatus(addition).startTime);
+        assertEquals(0, manager.getQueuedExecutions());
+    }
+
+    public void testCancelQueued() throws Exception {
+        String id = submit(ADDITION);
+        assertEquals(1, manager.getQueuedExecutions());
+
+        assertTrue(manager.cancel(id));
+        assertEquals(State.CANCELLED, manager.getStatus(id).getState());
+        assertEquals(0, manager.getQueuedExecutions());
+        assertTrue(manager.executor.getQueue().isEmpty());
+        // cannot cancel twice
+        assertFalse(manager.cancel(id));
+
+        // the execution is not run once the thread is free
+        blocker.countDown();
+        Thread.sleep(200);
+        assertEquals(State.CANCELLED, manager.getStatus(id).getState());
+        Document dom = getAsDOM(statusRequest(id));
+        assertXpathExists("/wps:ExecuteResponse/wps:Status/wps:ProcessFailed", dom);
+    }
+
+    public void testAbandoned() throws Exception {
+        String id = submit(ADDITION);
+        ExecutionJob job = manager.executions.get(id);
+        assertNotNull(job.request);
+
+        // nobody asked for the status in a long time
+        job.status.lastAccess = 0;
+        manager.run();
+
+        assertEquals(State.CANCELLED, job.status.getState());
+        assertEquals(0, manager.getQueuedExecutions());
+        assertTrue(manager.executor.getQueue().isEmpty());
+        // the request and its inputs are released
+        assertNull(job.request);
+        assertNull(job.execute);
+    }
+
+    public void testQueueFull() throws Exception {
+        int maxQueued = manager.getMaxQueuedExecutions();
+        try {
+            manager.setMaxQueuedExecutions(1);
+            submit(ADDITION);
+
+            Document dom = getAsDOM(executeRequest(ADDITION));
+            assertXpathEvaluatesTo("ServerBusy", "//ows:Exception/@exceptionCode", dom);
+            assertEquals(1, manager.getQueuedExecutions());
+        } finally {
+            manager.setMaxQueuedExecutions(maxQueued);
+        }
+    }
+
+    /**
+     * Submits an asynchronous execution and returns its identifier
+     */
+    String submit(String process) throws Exception {
+        Document dom = getAsDOM(executeRequest(process));
+        assertXpathExists("/wps:ExecuteResponse/wps:Status/wps:ProcessAccepted", dom);
+        String location = XMLUnit.newXpathEngine().evaluate(
+                "/wps:ExecuteResponse/@statusLocation", dom);
+        return location.substring(location.indexOf("executionId=") + 12);
+    }
+
+    String executeRequest(String process) {
+        return "wps?service=WPS&version=1.0.0&request=Execute&" + process
+                + "&storeExecuteResponse=true&status=true";
+    }
+
+    String statusRequest(String executionId) {
+        return "wps?service=WPS&version=1.0.0&request=GetExecutionStatus&executionId="
+                + executionId;
+    }
+
+    void waitForCompletion(String executionId) throws Exception {
+        for (int i = 0; i < 100 && !manager.getStatus(executionId).isDone(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(manager.getStatus(executionId).isDone());
+    }
+}
@@ -0,0 +1,90 @@
+/* Copyright (c) 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc;
+
+import java.nio.ByteBuffer;
+
+import org.geowebcache.mime.MimeType;
+
+/**
+ * A tile served by the direct WMS integration, either coming from GeoWebCache or from the
+ * {@link TileMemoryCache in memory tier}.
+ * <p>
+ * The contents can be kept in a direct buffer, out of the Java heap, in which case they are
+ * copied on each {@link #getContent()} call.
+ * </p>
+ */
+public class CachedTile {
+
+    private final byte[] content;
+
+    private final ByteBuffer directContent;
+
+    private final MimeType mimeType;
+
+    private final long tsCreated;
+
+    /**
+     * The time the tile entered the {@link TileMemoryCache}, guarded by its lock
+     */
+    long admitted;
+
+    /**
+     * @param content
+     *            the tile contents
+     * @param mimeType
+     *            the tile format
+     * @param tsCreated
+     *            the time the tile has been created, used as its ETag
+     * @param offHeap
+     *            whether to store the contents out of the Java heap
+     */
+    public CachedTile(byte[] content, MimeType mimeType, long tsCreated, boolean offHeap) {
+        if (offHeap) {
+            this.content = null;
+            this.directContent = ByteBuffer.allocateDirect(content.length);
+            this.directContent.put(content);
+        } else {
+            this.content = content;
+            this.directContent = null;
+        }
+        this.mimeType = mimeType;
+        this.tsCreated = tsCreated;
+    }
+
+    /**
+     * The tile contents, the returned array must not be modified
+     */
+    public byte[] getContent() {
+        if (content != null) {
+            return content;
+        }
+        byte[] result = new byte[directContent.capacity()];
+        // work on a duplicate, the buffer position is shared among the threads
+        ByteBuffer buffer = directContent.duplicate();
+        buffer.rewind();
+        buffer.get(result);
+        return result;
+    }
+
+    public MimeType getMimeType() {
+        return mimeType;
+    }
+
+    public long getTSCreated() {
+        return tsCreated;
+    }
+
+    /**
+     * The number of bytes used by the tile contents
+     */
+    public int getSize() {
+        return content != null ? content.length : directContent.capacity();
+    }
+
+    public boolean isOffHeap() {
+        return directContent != null;
+    }
+}
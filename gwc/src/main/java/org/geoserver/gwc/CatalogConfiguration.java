@@ -5,16 +5,19 @@
 package org.geoserver.gwc;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 import java.util.logging.Logger;
 
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.LayerGroupInfo;
 import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StyleInfo;
 import org.geoserver.ows.Dispatcher;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
@@ -23,6 +26,8 @@ import org.geowebcache.GeoWebCacheException;
 import org.geowebcache.config.Configuration;
 import org.geowebcache.config.meta.ServiceInformation;
 import org.geowebcache.filter.parameters.ParameterFilter;
+import org.geowebcache.filter.parameters.RegexParameterFilter;
+import org.geowebcache.filter.parameters.StringParameterFilter;
 import org.geowebcache.grid.BoundingBox;
 import org.geowebcache.grid.GridSetBroker;
 import org.geowebcache.grid.GridSubset;
@@ -48,6 +53,10 @@ public class CatalogConfiguration implements Configuration {
 
     private final List<String> mimeFormats;
 
+    private List<String> cachedParameters = Collections.singletonList("STYLES");
+
+    private List<String> cachedEnvKeys = Collections.emptyList();
+
     /**
      * 
      * @param cat
@@ -83,6 +92,39 @@ public class CatalogConfiguration implements Configuration {
         return cat;
     }
 
+    /**
+     * The GetMap parameters whose values are cached, each value getting its own set of tiles.
+     * {@code STYLES} is cached for the styles associated to the layer, {@code ENV} for the keys
+     * listed in {@link #getCachedEnvKeys()}, any other parameter for any value. Requests using a
+     * parameter that is not listed here are never served from the cache.
+     * <p>
+     * Changes are applied to the tile layers created afterwards.
+     * </p>
+     */
+    public List<String> getCachedParameters() {
+        return cachedParameters;
+    }
+
+    public void setCachedParameters(List<String> cachedParameters) {
+        List<String> upperCase = new ArrayList<String>(cachedParameters.size());
+        for (String parameter : cachedParameters) {
+            upperCase.add(parameter.toUpperCase());
+        }
+        this.cachedParameters = upperCase;
+    }
+
+    /**
+     * The {@code ENV} keys that can be used in cached requests, when {@code ENV} is among the
+     * {@link #getCachedParameters() cached parameters}. If empty any key is accepted.
+     */
+    public List<String> getCachedEnvKeys() {
+        return cachedEnvKeys;
+    }
+
+    public void setCachedEnvKeys(List<String> cachedEnvKeys) {
+        this.cachedEnvKeys = cachedEnvKeys;
+    }
+
     /**
      * 
      * @see org.geowebcache.config.Configuration#getServiceInformation()
@@ -136,7 +178,7 @@ public class CatalogConfiguration implements Configuration {
         final String wmsStyles = null;
         final String wmsLayers = resourceInfno.getPrefixedName();
         final Hashtable<String, GridSubset> subSets = getGrids(resourceInfno.getLatLonBoundingBox());
-        final List<ParameterFilter> parameterFilters = null;
+        final List<ParameterFilter> parameterFilters = getParameterFilters(li);
         final String vendorParams = null;
         final boolean queryable = true;
 
@@ -172,7 +214,7 @@ public class CatalogConfiguration implements Configuration {
         final String wmsStyles = null;
         final String wmsLayers = lgi.getName();
         final Hashtable<String, GridSubset> subSets = getGrids(latLonBounds);
-        final List<ParameterFilter> parameterFilters = null;
+        final List<ParameterFilter> parameterFilters = getParameterFilters(null);
         final String vendorParams = null;
         final boolean queryable = true;
 
@@ -187,6 +229,57 @@ public class CatalogConfiguration implements Configuration {
         return retLayer;
     }
 
+    /**
+     * Builds the parameter filters for the {@link #getCachedParameters() cached parameters}
+     * 
+     * @param li
+     *            the layer, or {@code null} for a layer group, whose styles cannot be chosen
+     * @return the filters, or {@code null} if no parameter is cached
+     */
+    List<ParameterFilter> getParameterFilters(LayerInfo li) {
+        List<ParameterFilter> filters = new ArrayList<ParameterFilter>();
+        for (String parameter : cachedParameters) {
+            if ("STYLES".equals(parameter)) {
+                if (li == null) {
+                    continue;
+                }
+                StringParameterFilter filter = new StringParameterFilter();
+                filter.key = parameter;
+                filter.defaultValue = li.getDefaultStyle() != null ? li.getDefaultStyle()
+                        .getName() : "";
+                filter.values = new ArrayList<String>();
+                filter.values.add(filter.defaultValue);
+                for (StyleInfo style : li.getStyles()) {
+                    if (style != null && !filter.values.contains(style.getName())) {
+                        filter.values.add(style.getName());
+                    }
+                }
+                // no need for a filter if the default style is the only one, this also keeps
+                // the truncation of the layer tiles limited to the modified area. Requests
+                // naming the default style are matched by GWC.dispatch as if they did not
+                if (filter.values.size() > 1) {
+                    filters.add(filter);
+                }
+            } else {
+                RegexParameterFilter filter = new RegexParameterFilter();
+                filter.key = parameter;
+                filter.defaultValue = "";
+                if ("ENV".equals(parameter) && !cachedEnvKeys.isEmpty()) {
+                    // a semicolon separated list of key:value pairs, using the listed keys only
+                    StringBuilder keys = new StringBuilder();
+                    for (String key : cachedEnvKeys) {
+                        keys.append(keys.length() > 0 ? "|" : "").append(Pattern.quote(key));
+                    }
+                    filter.regex = "((" + keys + "):[^;]*;?)*";
+                } else {
+                    filter.regex = ".*";
+                }
+                filters.add(filter);
+            }
+        }
+        return filters.isEmpty() ? null : filters;
+    }
+
     private String[] getWMSUrl() {
         String[] strs = { wmsUrl };
         return strs;
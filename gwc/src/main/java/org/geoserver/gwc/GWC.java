@@ -7,8 +7,14 @@ package org.geoserver.gwc;
 import static org.geowebcache.seed.GWCTask.TYPE.TRUNCATE;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import javax.servlet.http.HttpServletRequest;
@@ -18,8 +24,10 @@ import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.LayerGroupInfo;
 import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.StyleInfo;
 import org.geoserver.config.GeoServer;
 import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.MapLayerInfo;
 import org.geoserver.wms.WMSInfo;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
@@ -30,6 +38,8 @@ import org.geowebcache.diskquota.DiskQuotaConfig;
 import org.geowebcache.diskquota.DiskQuotaMonitor;
 import org.geowebcache.diskquota.storage.BDBQuotaStore;
 import org.geowebcache.diskquota.storage.Quota;
+import org.geowebcache.filter.parameters.ParameterException;
+import org.geowebcache.filter.parameters.ParameterFilter;
 import org.geowebcache.grid.BoundingBox;
 import org.geowebcache.grid.GridMismatchException;
 import org.geowebcache.grid.GridSet;
@@ -65,6 +75,48 @@ public class GWC implements DisposableBean, ApplicationContextAware {
 
     public static final String WMS_INTEGRATION_ENABLED_KEY = "GWC_WMS_Integration";
 
+    /**
+     * {@link WMSInfo} metadata key for the size, in megabytes, of the in memory tier of the direct
+     * WMS integration, {@code 0} or no value disable it
+     */
+    public static final String MEMORY_CACHE_SIZE_KEY = "GWC_MemoryCache_Size";
+
+    /**
+     * {@link WMSInfo} metadata key telling whether the in memory tier keeps the tiles out of the
+     * Java heap
+     */
+    public static final String MEMORY_CACHE_OFF_HEAP_KEY = "GWC_MemoryCache_OffHeap";
+
+    /**
+     * {@link WMSInfo} metadata key for the time, in seconds, a tile is kept by the in memory tier,
+     * bounding for how long it serves the tiles truncated behind its back, through the
+     * GeoWebCache REST API or seeding pages. {@code 0} keeps the tiles until evicted.
+     */
+    public static final String MEMORY_CACHE_MAX_AGE_KEY = "GWC_MemoryCache_MaxAge";
+
+    /**
+     * Default value for {@link #MEMORY_CACHE_MAX_AGE_KEY}
+     */
+    public static final int DEFAULT_MEMORY_CACHE_MAX_AGE = 60;
+
+    /**
+     * How often, in milliseconds, the truncate tasks are checked for completion
+     */
+    static final long TRUNCATE_POLL_INTERVAL = 500;
+
+    /**
+     * How long, in milliseconds, the truncate tasks are waited for, a task that is never run
+     * would keep the watcher polling forever otherwise
+     */
+    static final long TRUNCATE_MAX_WAIT = 10 * 60 * 1000;
+
+    /**
+     * The GetMap parameters that change the contents of a tile, requests using them can be served
+     * from the cache only if the tile layer has a parameter filter for them
+     */
+    static final String[] FILTERED_PARAMETERS = { "STYLES", "TIME", "ELEVATION", "CQL_FILTER",
+            "ENV" };
+
     private static Logger log = Logging.getLogger("org.geoserver.gwc.GWC");
 
     private final CatalogConfiguration config;
@@ -81,6 +133,13 @@ public class GWC implements DisposableBean, ApplicationContextAware {
 
     private final BDBQuotaStore quotaStore;
 
+    private volatile TileMemoryCache memoryCache;
+
+    /**
+     * Invalidates the in memory tier once the truncate tasks are done
+     */
+    private final ScheduledExecutorService truncateWatcher;
+
     public GWC(final StorageBroker sb, final TileLayerDispatcher tld,
             final TileBreeder tileBreeder, final CatalogConfiguration config, GeoServer geoserver,
             BDBQuotaStore quotaStore) {
@@ -90,6 +149,13 @@ public class GWC implements DisposableBean, ApplicationContextAware {
         this.config = config;
         this.geoserver = geoserver;
         this.quotaStore = quotaStore;
+        this.truncateWatcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "GWC truncate watcher");
+                t.setDaemon(true);
+                return t;
+            }
+        });
     }
 
     /**
@@ -112,12 +178,100 @@ public class GWC implements DisposableBean, ApplicationContextAware {
         return enabled;
     }
 
+    /**
+     * Returns the in memory tier of the direct WMS integration, as configured by the
+     * {@link #MEMORY_CACHE_SIZE_KEY} and {@link #MEMORY_CACHE_OFF_HEAP_KEY} {@link WMSInfo}
+     * metadata keys. A configuration change replaces the tier with an empty one.
+     * 
+     * @return the in memory tier, or {@code null} if disabled
+     */
+    public TileMemoryCache getMemoryCache() {
+        long maxSize = 0;
+        boolean offHeap = false;
+        long maxAge = DEFAULT_MEMORY_CACHE_MAX_AGE * 1000L;
+        WMSInfo service = geoserver.getService(WMSInfo.class);
+        if (service != null && service.getMetadata() != null) {
+            Integer megabytes = service.getMetadata().get(MEMORY_CACHE_SIZE_KEY, Integer.class);
+            if (megabytes != null) {
+                maxSize = megabytes.longValue() * 1024 * 1024;
+            }
+            Boolean storedValue = service.getMetadata().get(MEMORY_CACHE_OFF_HEAP_KEY,
+                    Boolean.class);
+            offHeap = storedValue != null && storedValue.booleanValue();
+            Integer seconds = service.getMetadata().get(MEMORY_CACHE_MAX_AGE_KEY, Integer.class);
+            if (seconds != null) {
+                maxAge = Math.max(0, seconds.longValue() * 1000);
+            }
+        }
+
+        TileMemoryCache cache = memoryCache;
+        if (maxSize <= 0) {
+            if (cache != null) {
+                memoryCache = null;
+            }
+            return null;
+        }
+        if (cache == null || cache.getMaxSize() != maxSize || cache.isOffHeap() != offHeap
+                || cache.getMaxAge() != maxAge) {
+            synchronized (this) {
+                cache = memoryCache;
+                if (cache == null || cache.getMaxSize() != maxSize
+                        || cache.isOffHeap() != offHeap || cache.getMaxAge() != maxAge) {
+                    cache = new TileMemoryCache(maxSize, offHeap, maxAge);
+                    memoryCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    private void invalidateMemoryCache(final String layerName) {
+        TileMemoryCache cache = memoryCache;
+        if (cache != null) {
+            cache.invalidate(layerName);
+        }
+    }
+
+    /**
+     * Invalidates the in memory tier once the truncate tasks are done, a tile read while they
+     * were running might have been put back in memory before being deleted from the storage. The
+     * tier is invalidated anyways if the tasks are not done after {@link #TRUNCATE_MAX_WAIT}.
+     */
+    private void invalidateMemoryCacheWhenDone(final String layerName, final GWCTask[] tasks) {
+        if (memoryCache == null) {
+            return;
+        }
+        final long deadline = System.currentTimeMillis() + TRUNCATE_MAX_WAIT;
+        try {
+            truncateWatcher.schedule(new Runnable() {
+                public void run() {
+                    for (GWCTask task : tasks) {
+                        GWCTask.STATE state = task.getState();
+                        if (state != GWCTask.STATE.DONE && state != GWCTask.STATE.DEAD
+                                && System.currentTimeMillis() < deadline) {
+                            truncateWatcher.schedule(this, TRUNCATE_POLL_INTERVAL,
+                                    TimeUnit.MILLISECONDS);
+                            return;
+                        }
+                    }
+                    invalidateMemoryCache(layerName);
+                }
+            }, TRUNCATE_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down
+        }
+    }
+
     public void truncate(final String layerName) {
+        invalidateMemoryCache(layerName);
         try {
             // TODO: async
             storageBroker.delete(layerName);
         } catch (StorageException e) {
             throw new RuntimeException(e);
+        } finally {
+            // drop the tiles read while deleting
+            invalidateMemoryCache(layerName);
         }
     }
 
@@ -125,6 +279,14 @@ public class GWC implements DisposableBean, ApplicationContextAware {
             throws GeoWebCacheException {
 
         final TileLayer tileLayer = tld.getTileLayer(layerName);
+        // the in memory tier just drops the whole layer, it's cheap to refill
+        invalidateMemoryCache(layerName);
+        if (tileLayer.getParameterFilters() != null && !tileLayer.getParameterFilters().isEmpty()) {
+            // the truncate tasks only cover the tiles with the default parameters, wipe out the
+            // tiles cached for the other parameter values as well
+            truncate(layerName);
+            return;
+        }
 
         List<GWCTask> truncateTasks = new ArrayList<GWCTask>(tileLayer.getGridSubsets().size()
                 * tileLayer.getMimeTypes().size());
@@ -187,6 +349,7 @@ public class GWC implements DisposableBean, ApplicationContextAware {
 
         GWCTask[] tasks = truncateTasks.toArray(new GWCTask[truncateTasks.size()]);
         tileBreeder.dispatchTasks(tasks);
+        invalidateMemoryCacheWhenDone(layerName, tasks);
     }
 
     /**
@@ -194,6 +357,8 @@ public class GWC implements DisposableBean, ApplicationContextAware {
      * @see org.springframework.beans.factory.DisposableBean#destroy()
      */
     public void destroy() throws Exception {
+        truncateWatcher.shutdownNow();
+        memoryCache = null;
     }
 
     public void addOrReplaceLayer(TileLayer layer) {
@@ -205,14 +370,21 @@ public class GWC implements DisposableBean, ApplicationContextAware {
     public synchronized void removeLayer(String prefixedName) {
         config.removeLayer(prefixedName);
         tld.remove(prefixedName);
+        invalidateMemoryCache(prefixedName);
         try {
             storageBroker.delete(prefixedName);
         } catch (StorageException e) {
             throw new RuntimeException(e);
+        } finally {
+            invalidateMemoryCache(prefixedName);
         }
     }
 
     public void reload() {
+        TileMemoryCache cache = memoryCache;
+        if (cache != null) {
+            cache.clear();
+        }
         try {
             tld.reInit();
         } catch (GeoWebCacheException gwce) {
@@ -232,8 +404,8 @@ public class GWC implements DisposableBean, ApplicationContextAware {
 
     /**
      * Tries to dispatch a tile request represented by a GeoServer WMS {@link GetMapRequest} through
-     * GeoWebCache, and returns the {@link ConveyorTile} if succeeded or {@code null} if it wasn't
-     * possible.
+     * GeoWebCache, and returns the tile if succeeded or {@code null} if it wasn't possible. The
+     * tile comes from the {@link #getMemoryCache() in memory tier} when enabled and holding it.
      * <p>
      * Preconditions:
      * <ul>
@@ -245,7 +417,7 @@ public class GWC implements DisposableBean, ApplicationContextAware {
      * @param request
      * @return
      */
-    public final ConveyorTile dispatch(final GetMapRequest request) {
+    public final CachedTile dispatch(final GetMapRequest request) {
         // Assert.isTrue(request.isTiled(), "isTiled");
         // Assert.notNull(request.getTilesOrigin(), "getTilesOrigin");
 
@@ -254,16 +426,30 @@ public class GWC implements DisposableBean, ApplicationContextAware {
         }
 
         // request.isTransparent()??
-        // request.getEnv()??
         // request.getFormatOptions()??
-        final String layerName = request.getRawKvp().get("LAYERS");
+        final Map<String, String> rawKvp = request.getRawKvp();
+        String layerName = rawKvp.get("LAYERS");
+        String styles = rawKvp.get("STYLES");
         /*
          * This is a quick way of checking if the request was for a single layer. We can't really
          * use request.getLayers() because in the event that a layerGroup was requested, the request
-         * parser turned it into a list of actual Layers
+         * parser turned it into a list of actual Layers. A list of layers can still be the
+         * expansion of a layer group, in which case the styles must be the group ones too
          */
         if (layerName.indexOf(',') != -1) {
-            return null;
+            layerName = findLayerGroup(request.getLayers(), styles);
+            if (layerName == null) {
+                return null;
+            }
+            styles = null;
+        } else if (styles != null && styles.length() > 0) {
+            // the default style is cached as the empty one, layers with just the default style
+            // have no STYLES parameter filter at all
+            LayerInfo layer = config.getCatalog().getLayerByName(layerName);
+            if (layer != null && layer.getDefaultStyle() != null
+                    && styles.equals(layer.getDefaultStyle().getName())) {
+                styles = null;
+            }
         }
 
         final TileLayer tileLayer;
@@ -273,6 +459,24 @@ public class GWC implements DisposableBean, ApplicationContextAware {
             return null;
         }
 
+        final Map<String, String> fullParameters = new HashMap<String, String>();
+        final Map<String, String> modifiedParameters = new HashMap<String, String>();
+        Map<String, String> values = new HashMap<String, String>();
+        for (String key : FILTERED_PARAMETERS) {
+            String value = "STYLES".equals(key) ? styles : rawKvp.get(key);
+            if (value != null && value.length() > 0) {
+                values.put(key, value);
+            }
+        }
+        try {
+            if (!applyParameterFilters(tileLayer, values, fullParameters, modifiedParameters)) {
+                return null;
+            }
+        } catch (ParameterException e) {
+            // not a value we cache
+            return null;
+        }
+
         GridSubset gridSubset;
         try {
             String srs = request.getSRS();
@@ -301,7 +505,7 @@ public class GWC implements DisposableBean, ApplicationContextAware {
             // not a GWC supported format
             return null;
         }
-        ConveyorTile tileResp = null;
+        CachedTile tileResp = null;
 
         try {
             HttpServletRequest servletReq = null;
@@ -318,19 +522,119 @@ public class GWC implements DisposableBean, ApplicationContextAware {
                 return null;
             }
 
-            Map<String, String> fullParameters = null;
-            Map<String, String> modifiedParameters = null;
+            final TileMemoryCache memoryCache = getMemoryCache();
+            TileMemoryCache.TileKey tileKey = null;
+            long generation = 0;
+            if (memoryCache != null) {
+                // read before the tile, so that a truncation happening meanwhile is noticed
+                generation = memoryCache.getGeneration(layerName);
+                tileKey = new TileMemoryCache.TileKey(layerName, gridSetId, tileIndex, mimeType
+                        .getFormat(), modifiedParameters);
+                CachedTile cached = memoryCache.get(tileKey);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+
             ConveyorTile tileReq;
             tileReq = new ConveyorTile(storageBroker, layerName, gridSetId, tileIndex, mimeType,
-                    fullParameters, modifiedParameters, servletReq, servletResp);
-
-            tileResp = tileLayer.getTile(tileReq);
+                    fullParameters.isEmpty() ? null : fullParameters,
+                    modifiedParameters.isEmpty() ? null : modifiedParameters, servletReq,
+                    servletResp);
+
+            ConveyorTile conveyorTile = tileLayer.getTile(tileReq);
+            if (conveyorTile != null && conveyorTile.getContent() != null) {
+                if (memoryCache != null) {
+                    tileResp = memoryCache.put(tileKey, conveyorTile.getContent(), conveyorTile
+                            .getMimeType(), conveyorTile.getTSCreated(), generation);
+                } else {
+                    tileResp = new CachedTile(conveyorTile.getContent(), conveyorTile
+                            .getMimeType(), conveyorTile.getTSCreated(), false);
+                }
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
         return tileResp;
     }
 
+    /**
+     * Maps the values of the {@link #FILTERED_PARAMETERS} used in a request to the tile layer
+     * parameters
+     * 
+     * @param values
+     *            the parameter values of the request, keyed by upper case parameter name
+     * @param fullParameters
+     *            filled with the value of all the tile layer parameters
+     * @param modifiedParameters
+     *            filled with the tile layer parameters whose value is not the default one
+     * @return {@code false} if the request uses parameters the tile layer does not cache
+     * @throws ParameterException
+     *             if a value is not among the cached ones
+     */
+    boolean applyParameterFilters(TileLayer tileLayer, Map<String, String> values,
+            Map<String, String> fullParameters, Map<String, String> modifiedParameters)
+            throws ParameterException {
+        values = new HashMap<String, String>(values);
+        List<ParameterFilter> filters = tileLayer.getParameterFilters();
+        if (filters != null) {
+            for (ParameterFilter filter : filters) {
+                String value = values.remove(filter.getKey().toUpperCase());
+                String applied = value == null ? filter.getDefaultValue() : filter.apply(value);
+                fullParameters.put(filter.getKey(), applied);
+                if (applied != null && !applied.equals(filter.getDefaultValue())) {
+                    modifiedParameters.put(filter.getKey(), applied);
+                }
+            }
+        }
+        return values.isEmpty();
+    }
+
+    /**
+     * Looks for the layer group whose layers are the requested ones, in the same order, drawn with
+     * the same styles. A style that is not specified stands for the layer default one.
+     * 
+     * @return the name of the layer group, or {@code null} if not found
+     */
+    String findLayerGroup(List<MapLayerInfo> layers, String styles) {
+        String[] requestedStyles = styles == null || styles.length() == 0 ? new String[0]
+                : styles.split(",", -1);
+        for (LayerGroupInfo group : config.getCatalog().getLayerGroups()) {
+            List<LayerInfo> groupLayers = group.getLayers();
+            if (groupLayers.size() != layers.size()
+                    || (requestedStyles.length > 0 && requestedStyles.length != layers.size())) {
+                continue;
+            }
+            boolean matches = true;
+            for (int i = 0; i < groupLayers.size() && matches; i++) {
+                LayerInfo layer = groupLayers.get(i);
+                MapLayerInfo requested = layers.get(i);
+                if (requested.getResource() == null
+                        || !layer.getResource().getPrefixedName().equals(
+                                requested.getResource().getPrefixedName())) {
+                    matches = false;
+                } else {
+                    // an empty style is drawn with the layer default one, whatever the group uses
+                    String requestedStyle = requestedStyles.length > 0
+                            && requestedStyles[i].length() > 0 ? requestedStyles[i] : null;
+                    if (requestedStyle == null && layer.getDefaultStyle() != null) {
+                        requestedStyle = layer.getDefaultStyle().getName();
+                    }
+                    StyleInfo style = group.getStyles().size() > i ? group.getStyles().get(i)
+                            : null;
+                    if (style == null) {
+                        style = layer.getDefaultStyle();
+                    }
+                    matches = style != null && style.getName().equals(requestedStyle);
+                }
+            }
+            if (matches) {
+                return group.getName();
+            }
+        }
+        return null;
+    }
+
     /**
      * Determines whether the given {@link GetMapRequest} is a candidate to match a GWC tile or not.
      * 
@@ -351,12 +655,6 @@ public class GWC implements DisposableBean, ApplicationContextAware {
         if (0 != request.getBuffer()) {
             return false;
         }
-        if (null != request.getCQLFilter() && !request.getCQLFilter().isEmpty()) {
-            return false;
-        }
-        if (!Double.isNaN(request.getElevation())) {
-            return false;
-        }
         if (null != request.getFeatureId() && !request.getFeatureId().isEmpty()) {
             return false;
         }
@@ -375,9 +673,6 @@ public class GWC implements DisposableBean, ApplicationContextAware {
         if (null != request.getStartIndex()) {
             return false;
         }
-        if (null != request.getTime() && !request.getTime().isEmpty()) {
-            return false;
-        }
         if (null != request.getViewParams() && !request.getViewParams().isEmpty()) {
             return false;
         }
@@ -101,6 +101,9 @@ public class GWCCatalogListener implements CatalogListener {
                     layerNameList.add(prefixedName);
                     //TODO: truncate/delete only the tileset associated to the style
                     gwc.truncate(prefixedName);
+                } else if (usesStyle(li, styleName)) {
+                    // the tiles for the alternate styles are cached as well
+                    gwc.truncate(li.getResource().getPrefixedName());
                 }
             }
 
@@ -146,6 +149,15 @@ public class GWCCatalogListener implements CatalogListener {
 
     }
 
+    private boolean usesStyle(LayerInfo li, String styleName) {
+        for (StyleInfo style : li.getStyles()) {
+            if (style != null && styleName.equals(style.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * 
      * @see org.geoserver.catalog.event.CatalogListener#handleRemoveEvent(org.geoserver.catalog.event.CatalogRemoveEvent)
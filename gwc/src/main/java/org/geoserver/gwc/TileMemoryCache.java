@@ -0,0 +1,384 @@
+/* Copyright (c) 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.geowebcache.mime.MimeType;
+
+/**
+ * An in memory tier in front of the GeoWebCache storage, keeping the most requested tiles within
+ * a byte budget so that they are not read from the blob store on each hit.
+ * <p>
+ * The tiles are evicted in least recently used order, but a new tile is admitted only if it has
+ * been requested more often than the tiles it would evict, so that a scan of rarely requested
+ * tiles does not flush the hot ones. The request frequencies are tracked, for all the tiles, in
+ * a small fixed size sketch whose counters are periodically halved so that the frequencies
+ * follow the changes in the load.
+ * </p>
+ * <p>
+ * The cache is invalidated by {@link GWC} whenever a layer is truncated. A tile read from the
+ * storage while the layer was being invalidated might be an old one, so each layer has a
+ * {@link #getGeneration(String) generation} that changes on each invalidation: the tile is
+ * admitted only if the generation did not change since before it was read. Truncations made
+ * through the GeoWebCache own REST API or seeding pages are not tracked, a maximum age limits
+ * for how long the old tiles can be served in that case.
+ * </p>
+ */
+public class TileMemoryCache {
+
+    /**
+     * Number of counters in each row of the frequency sketch
+     */
+    static final int SKETCH_SIZE = 1 << 16;
+
+    /**
+     * Frequencies are capped to this value, old popularity should not keep a tile in forever
+     */
+    static final int MAX_FREQUENCY = 15;
+
+    /**
+     * Number of recorded requests after which the frequencies are halved
+     */
+    static final int SAMPLE_SIZE = SKETCH_SIZE * 8;
+
+    private final long maxSize;
+
+    private final boolean offHeap;
+
+    private final long maxAge;
+
+    private final LinkedHashMap<TileKey, CachedTile> tiles = new LinkedHashMap<TileKey, CachedTile>(
+            16, 0.75f, true);
+
+    private final byte[][] sketch = new byte[2][SKETCH_SIZE];
+
+    private int samples;
+
+    private long size;
+
+    /**
+     * Generation counter, incremented on each invalidation
+     */
+    private long version;
+
+    /**
+     * The generation of the invalidated layers, by layer name
+     */
+    private final Map<String, Long> generations = new HashMap<String, Long>();
+
+    /**
+     * The generation of the last full clear
+     */
+    private long cleared;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong rejections = new AtomicLong();
+
+    /**
+     * Builds a cache whose tiles never expire
+     *
+     * @param maxSize
+     *            the maximum number of bytes used by the tile contents
+     * @param offHeap
+     *            whether to keep the tile contents out of the Java heap
+     */
+    public TileMemoryCache(long maxSize, boolean offHeap) {
+        this(maxSize, offHeap, 0);
+    }
+
+    /**
+     * @param maxSize
+     *            the maximum number of bytes used by the tile contents
+     * @param offHeap
+     *            whether to keep the tile contents out of the Java heap
+     * @param maxAge
+     *            the time, in milliseconds, a tile is kept in memory, {@code 0} for no limit
+     */
+    public TileMemoryCache(long maxSize, boolean offHeap, long maxAge) {
+        this.maxSize = maxSize;
+        this.offHeap = offHeap;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Looks up a tile, recording the request
+     *
+     * @return the tile, or {@code null} if not cached
+     */
+    public synchronized CachedTile get(TileKey key) {
+        recordRequest(key);
+        CachedTile tile = tiles.get(key);
+        if (tile != null && maxAge > 0 && System.currentTimeMillis() - tile.admitted > maxAge) {
+            tiles.remove(key);
+            size -= tile.getSize();
+            tile = null;
+        }
+        if (tile != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return tile;
+    }
+
+    /**
+     * Returns the generation of the layer tiles, to be read before reading a tile from the
+     * storage and passed to {@link #put(TileKey, byte[], MimeType, long, long)}
+     */
+    public synchronized long getGeneration(String layerName) {
+        Long generation = generations.get(layerName);
+        return generation != null ? Math.max(generation, cleared) : cleared;
+    }
+
+    /**
+     * Offers a tile read from the storage, the tile is cached if the layer has not been
+     * invalidated since the tile was read, and if there is room for it or if it is requested
+     * more often than the tiles it would replace
+     *
+     * @param generation
+     *            the {@link #getGeneration(String) generation} of the layer before the tile was
+     *            read
+     * @return the tile to serve, the one stored in the cache if admitted, or a heap based one
+     *         otherwise
+     */
+    public CachedTile put(TileKey key, byte[] content, MimeType mimeType, long tsCreated,
+            long generation) {
+        // builds the tile out of the lock, the off heap copy might take a while
+        CachedTile tile = new CachedTile(content, mimeType, tsCreated, offHeap);
+        if (!admit(key, tile, generation) && offHeap) {
+            return new CachedTile(content, mimeType, tsCreated, false);
+        }
+        return tile;
+    }
+
+    synchronized boolean admit(TileKey key, CachedTile tile, long generation) {
+        if (getGeneration(key.layerName) != generation) {
+            // the layer got invalidated while the tile was being read, it might be an old one
+            return false;
+        }
+        if (tile.getSize() > maxSize) {
+            rejections.incrementAndGet();
+            return false;
+        }
+        CachedTile previous = tiles.remove(key);
+        if (previous != null) {
+            size -= previous.getSize();
+        }
+
+        // collect the victims first, the tile might not be worth any of them
+        List<TileKey> victims = new ArrayList<TileKey>();
+        long freed = 0;
+        if (size + tile.getSize() > maxSize) {
+            int frequency = frequency(key);
+            for (Iterator<Map.Entry<TileKey, CachedTile>> it = tiles.entrySet().iterator(); it
+                    .hasNext()
+                    && size - freed + tile.getSize() > maxSize;) {
+                Map.Entry<TileKey, CachedTile> entry = it.next();
+                if (frequency(entry.getKey()) >= frequency) {
+                    rejections.incrementAndGet();
+                    return false;
+                }
+                victims.add(entry.getKey());
+                freed += entry.getValue().getSize();
+            }
+        }
+        for (TileKey victim : victims) {
+            tiles.remove(victim);
+            evictions.incrementAndGet();
+        }
+        size -= freed;
+
+        tile.admitted = System.currentTimeMillis();
+        tiles.put(key, tile);
+        size += tile.getSize();
+        return true;
+    }
+
+    /**
+     * Removes all the tiles of a layer, the tiles of the layer read from the storage before the
+     * call will not be admitted
+     */
+    public synchronized void invalidate(String layerName) {
+        generations.put(layerName, ++version);
+        for (Iterator<Map.Entry<TileKey, CachedTile>> it = tiles.entrySet().iterator(); it
+                .hasNext();) {
+            Map.Entry<TileKey, CachedTile> entry = it.next();
+            if (entry.getKey().layerName.equals(layerName)) {
+                size -= entry.getValue().getSize();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all the tiles, the tiles read from the storage before the call will not be
+     * admitted
+     */
+    public synchronized void clear() {
+        cleared = ++version;
+        tiles.clear();
+        size = 0;
+    }
+
+    void recordRequest(TileKey key) {
+        int hash = key.hashCode();
+        increment(sketch[0], index(hash, 0));
+        increment(sketch[1], index(hash, 1));
+        if (++samples >= SAMPLE_SIZE) {
+            samples = 0;
+            for (byte[] row : sketch) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = (byte) (row[i] >> 1);
+                }
+            }
+        }
+    }
+
+    int frequency(TileKey key) {
+        int hash = key.hashCode();
+        return Math.min(sketch[0][index(hash, 0)], sketch[1][index(hash, 1)]);
+    }
+
+    private void increment(byte[] row, int index) {
+        if (row[index] < MAX_FREQUENCY) {
+            row[index]++;
+        }
+    }
+
+    private int index(int hash, int row) {
+        if (row == 1) {
+            // re-mix the bits so that the two rows do not collide on the same keys
+            hash *= 0x9E3779B9;
+            hash ^= hash >>> 16;
+        }
+        return hash & (SKETCH_SIZE - 1);
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * The time, in milliseconds, a tile is kept in memory, {@code 0} if there is no limit
+     */
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * The number of bytes used by the cached tiles
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getTileCount() {
+        return tiles.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * The number of tiles removed to make room for more requested ones
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * The number of tiles not cached because less requested than the cached ones
+     */
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    @Override
+    public String toString() {
+        return "TileMemoryCache(tiles=" + getTileCount() + ", size=" + getSize() + "/"
+                + maxSize + ", hits=" + getHits() + ", misses=" + getMisses() + ")";
+    }
+
+    /**
+     * Identifies a tile of a layer, for a given grid set, format and set of parameters
+     */
+    public static class TileKey {
+        final String layerName;
+
+        final String gridSetId;
+
+        final long[] index;
+
+        final String format;
+
+        final String parameters;
+
+        final int hashCode;
+
+        public TileKey(String layerName, String gridSetId, long[] index, String format,
+                Map<String, String> parameters) {
+            this.layerName = layerName;
+            this.gridSetId = gridSetId;
+            this.index = index.clone();
+            this.format = format;
+            this.parameters = parameters == null || parameters.isEmpty() ? null
+                    : new TreeMap<String, String>(parameters).toString();
+
+            int hash = layerName.hashCode();
+            hash = hash * 31 + gridSetId.hashCode();
+            hash = hash * 31 + Arrays.hashCode(index);
+            hash = hash * 31 + format.hashCode();
+            hash = hash * 31 + (this.parameters != null ? this.parameters.hashCode() : 0);
+            this.hashCode = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TileKey)) {
+                return false;
+            }
+            TileKey other = (TileKey) obj;
+            return hashCode == other.hashCode && layerName.equals(other.layerName)
+                    && gridSetId.equals(other.gridSetId) && Arrays.equals(index, other.index)
+                    && format.equals(other.format)
+                    && (parameters == null ? other.parameters == null : parameters
+                            .equals(other.parameters));
+        }
+
+        @Override
+        public String toString() {
+            return layerName + "/" + gridSetId + "/" + Arrays.toString(index) + "/" + format
+                    + (parameters != null ? parameters : "");
+        }
+    }
+}
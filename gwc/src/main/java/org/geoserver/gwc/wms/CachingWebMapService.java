@@ -12,6 +12,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
+import org.geoserver.gwc.CachedTile;
 import org.geoserver.gwc.GWC;
 import org.geoserver.ows.Dispatcher;
 import org.geoserver.ows.HttpErrorCodeException;
@@ -20,7 +21,6 @@ import org.geoserver.wms.WebMap;
 import org.geoserver.wms.WebMapService;
 import org.geoserver.wms.map.RawMap;
 import org.geotools.util.logging.Logging;
-import org.geowebcache.conveyor.ConveyorTile;
 import org.springframework.util.Assert;
 
 /**
@@ -63,7 +63,7 @@ public class CachingWebMapService implements MethodInterceptor {
         final GetMapRequest request = (GetMapRequest) arguments[0];
         boolean tiled = request.isTiled();
         if (tiled) {
-            ConveyorTile cachedTile = gwc.dispatch(request);
+            CachedTile cachedTile = gwc.dispatch(request);
             if (cachedTile != null) {
                 if (LOGGER.isLoggable(Level.FINEST)) {
                     LOGGER.finest("GetMap request intercepted, serving cached content: " + request);
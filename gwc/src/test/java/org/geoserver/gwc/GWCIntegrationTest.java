@@ -1,6 +1,11 @@
 package org.geoserver.gwc;
 
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogBuilder;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
 import org.geoserver.data.test.MockData;
+import org.geoserver.wms.WMSInfo;
 import org.geoserver.test.GeoServerTestSupport;
 
 import com.mockrunner.mock.web.MockHttpServletResponse;
@@ -15,4 +20,111 @@ public class GWCIntegrationTest extends GeoServerTestSupport {
         assertEquals(200, sr.getErrorCode());
         assertEquals("image/png", sr.getContentType());
     }
+
+    public void testDirectWMSIntegrationStyles() throws Exception {
+        enableWMSIntegration();
+        Catalog catalog = getCatalog();
+        String layerId = getLayerId(MockData.BASIC_POLYGONS);
+        LayerInfo layer = catalog.getLayerByName(layerId);
+        layer.getStyles().add(catalog.getStyleByName("polygon"));
+        catalog.save(layer);
+
+        // the default and the alternate styles are served from the cache
+        assertNotNull(getTile(layerId, "").getHeader("ETag"));
+        assertNotNull(getTile(layerId, "polygon").getHeader("ETag"));
+        // the styles not associated to the layer are not
+        MockHttpServletResponse sr = getTile(layerId, "line");
+        assertEquals("image/png", sr.getContentType());
+        assertNull(sr.getHeader("ETag"));
+    }
+
+    public void testDirectWMSIntegrationDefaultStyle() throws Exception {
+        enableWMSIntegration();
+        // a layer with just the default style
+        String layerId = getLayerId(MockData.LAKES);
+        String defaultStyle = getCatalog().getLayerByName(layerId).getDefaultStyle().getName();
+
+        String etag = getTile(layerId, "").getHeader("ETag");
+        assertNotNull(etag);
+        // naming the default style is the same as leaving it out
+        MockHttpServletResponse sr = getTile(layerId, defaultStyle);
+        assertEquals("image/png", sr.getContentType());
+        assertEquals(etag, sr.getHeader("ETag"));
+    }
+
+    public void testDirectWMSIntegrationLayerGroup() throws Exception {
+        enableWMSIntegration();
+        Catalog catalog = getCatalog();
+        LayerGroupInfo group = catalog.getFactory().createLayerGroup();
+        group.setName("polysAndLines");
+        group.getLayers().add(catalog.getLayerByName(getLayerId(MockData.BASIC_POLYGONS)));
+        group.getLayers().add(catalog.getLayerByName(getLayerId(MockData.LINES)));
+        group.getStyles().add(null);
+        group.getStyles().add(null);
+        new CatalogBuilder(catalog).calculateLayerGroupBounds(group);
+        catalog.add(group);
+
+        // the group, either by name or expanded into its layers, comes from the cache
+        assertNotNull(getTile("polysAndLines", "").getHeader("ETag"));
+        String layers = getLayerId(MockData.BASIC_POLYGONS) + "," + getLayerId(MockData.LINES);
+        assertNotNull(getTile(layers, ",").getHeader("ETag"));
+        // a different order is not the group
+        layers = getLayerId(MockData.LINES) + "," + getLayerId(MockData.BASIC_POLYGONS);
+        assertNull(getTile(layers, "").getHeader("ETag"));
+    }
+
+    public void testDirectWMSIntegrationLayerGroupStyles() throws Exception {
+        enableWMSIntegration();
+        Catalog catalog = getCatalog();
+        LayerGroupInfo group = catalog.getFactory().createLayerGroup();
+        group.setName("styledForestsAndPonds");
+        group.getLayers().add(catalog.getLayerByName(getLayerId(MockData.FORESTS)));
+        group.getLayers().add(catalog.getLayerByName(getLayerId(MockData.PONDS)));
+        group.getStyles().add(catalog.getStyleByName("polygon"));
+        group.getStyles().add(null);
+        new CatalogBuilder(catalog).calculateLayerGroupBounds(group);
+        catalog.add(group);
+
+        String layers = getLayerId(MockData.FORESTS) + "," + getLayerId(MockData.PONDS);
+        // the group styles, the default one being left out, come from the cache
+        assertNotNull(getTile(layers, "polygon,").getHeader("ETag"));
+        // empty styles are the layer default ones, not the group ones
+        MockHttpServletResponse sr = getTile(layers, "");
+        assertEquals("image/png", sr.getContentType());
+        assertNull(sr.getHeader("ETag"));
+        assertNull(getTile(layers, ",").getHeader("ETag"));
+    }
+
+    public void testDirectWMSIntegrationMemoryCache() throws Exception {
+        enableWMSIntegration();
+        WMSInfo wms = getGeoServer().getService(WMSInfo.class);
+        wms.getMetadata().put(GWC.MEMORY_CACHE_SIZE_KEY, 16);
+        getGeoServer().save(wms);
+        GWC gwc = (GWC) applicationContext.getBean("gwcFacade");
+
+        String layerId = getLayerId(MockData.BASIC_POLYGONS);
+        String etag = getTile(layerId, "").getHeader("ETag");
+        assertNotNull(etag);
+        MockHttpServletResponse sr = getTile(layerId, "");
+        assertEquals("image/png", sr.getContentType());
+        assertEquals(etag, sr.getHeader("ETag"));
+        assertEquals(1, gwc.getMemoryCache().getHits());
+        assertEquals(1, gwc.getMemoryCache().getMisses());
+
+        // truncation empties the memory cache as well
+        gwc.truncate(layerId);
+        assertEquals(0, gwc.getMemoryCache().getTileCount());
+    }
+
+    void enableWMSIntegration() {
+        WMSInfo wms = getGeoServer().getService(WMSInfo.class);
+        wms.getMetadata().put(GWC.WMS_INTEGRATION_ENABLED_KEY, Boolean.TRUE);
+        getGeoServer().save(wms);
+    }
+
+    MockHttpServletResponse getTile(String layers, String styles) throws Exception {
+        return getAsServletResponse("wms?service=WMS&version=1.1.1&request=GetMap&layers="
+                + layers + "&styles=" + styles + "&srs=EPSG:4326&bbox=-180,-90,0,90"
+                + "&width=256&height=256&format=image/png&tiled=true");
+    }
 }
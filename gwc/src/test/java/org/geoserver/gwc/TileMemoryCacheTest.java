@@ -0,0 +1,152 @@
+/* Copyright (c) 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc;
+
+import java.util.Collections;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.geoserver.gwc.TileMemoryCache.TileKey;
+import org.geowebcache.mime.ImageMime;
+
+public class TileMemoryCacheTest extends TestCase {
+
+    public void testHitMiss() throws Exception {
+        TileMemoryCache cache = new TileMemoryCache(1024, false);
+        TileKey key = key("topp:states", 0, null);
+        assertNull(cache.get(key));
+        CachedTile tile = cache.put(key, new byte[10], ImageMime.png, 1234, 0);
+
+        assertSame(tile, cache.get(key));
+        assertEquals(1234, cache.get(key).getTSCreated());
+        assertEquals(ImageMime.png, cache.get(key).getMimeType());
+        assertEquals(1, cache.getMisses());
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getTileCount());
+        assertEquals(10, cache.getSize());
+    }
+
+    public void testParameters() throws Exception {
+        TileMemoryCache cache = new TileMemoryCache(1024, false);
+        Map<String, String> styles = Collections.singletonMap("STYLES", "polygon");
+        cache.put(key("topp:states", 0, null), new byte[10], ImageMime.png, 1, 0);
+
+        assertNull(cache.get(key("topp:states", 0, styles)));
+        assertNull(cache.get(key("topp:states", 1, null)));
+        assertNotNull(cache.get(key("topp:states", 0, Collections.<String, String> emptyMap())));
+    }
+
+    public void testAdmission() throws Exception {
+        TileMemoryCache cache = new TileMemoryCache(30, false);
+        TileKey a = key("topp:states", 0, null);
+        TileKey b = key("topp:states", 1, null);
+        TileKey c = key("topp:states", 2, null);
+        for (TileKey key : new TileKey[] { a, b, c }) {
+            cache.get(key);
+            cache.put(key, new byte[10], ImageMime.png, 1, 0);
+        }
+        // a and b are hot, c is the least recently used one
+        for (int i = 0; i < 5; i++) {
+            cache.get(a);
+            cache.get(b);
+        }
+
+        // requested once, d is not worth c
+        TileKey d = key("topp:states", 3, null);
+        assertNull(cache.get(d));
+        cache.put(d, new byte[10], ImageMime.png, 1, 0);
+        assertEquals(1, cache.getRejections());
+        assertNull(cache.get(d));
+
+        // requested twice it is
+        cache.put(d, new byte[10], ImageMime.png, 1, 0);
+        assertNotNull(cache.get(d));
+        assertNull(cache.get(c));
+        assertNotNull(cache.get(a));
+        assertNotNull(cache.get(b));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(30, cache.getSize());
+
+        // a tile bigger than the whole budget is never cached
+        TileKey big = key("topp:states", 4, null);
+        cache.put(big, new byte[31], ImageMime.png, 1, 0);
+        assertNull(cache.get(big));
+    }
+
+    public void testInvalidate() throws Exception {
+        TileMemoryCache cache = new TileMemoryCache(1024, false);
+        cache.put(key("topp:states", 0, null), new byte[10], ImageMime.png, 1, 0);
+        cache.put(key("topp:states", 1, null), new byte[10], ImageMime.png, 1, 0);
+        cache.put(key("topp:roads", 0, null), new byte[20], ImageMime.png, 1, 0);
+
+        cache.invalidate("topp:states");
+        assertNull(cache.get(key("topp:states", 0, null)));
+        assertNull(cache.get(key("topp:states", 1, null)));
+        assertNotNull(cache.get(key("topp:roads", 0, null)));
+        assertEquals(20, cache.getSize());
+
+        cache.clear();
+        assertEquals(0, cache.getTileCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testGeneration() throws Exception {
+        TileMemoryCache cache = new TileMemoryCache(1024, false);
+        TileKey states = key("topp:states", 0, null);
+        TileKey roads = key("topp:roads", 0, null);
+        long statesGeneration = cache.getGeneration("topp:states");
+        long roadsGeneration = cache.getGeneration("topp:roads");
+
+        // the layer got truncated while the tile was being read, it might be an old one
+        cache.invalidate("topp:states");
+        assertTrue(statesGeneration != cache.getGeneration("topp:states"));
+        CachedTile tile = cache.put(states, new byte[10], ImageMime.png, 1, statesGeneration);
+        assertNotNull(tile);
+        assertNull(cache.get(states));
+        // the other layers are not affected
+        cache.put(roads, new byte[10], ImageMime.png, 1, roadsGeneration);
+        assertNotNull(cache.get(roads));
+
+        // the tiles read after the invalidation are fine
+        cache.put(states, new byte[10], ImageMime.png, 1, cache.getGeneration("topp:states"));
+        assertNotNull(cache.get(states));
+
+        // a full clear affects all the layers
+        roadsGeneration = cache.getGeneration("topp:roads");
+        cache.clear();
+        cache.put(roads, new byte[10], ImageMime.png, 1, roadsGeneration);
+        assertNull(cache.get(roads));
+    }
+
+    public void testMaxAge() throws Exception {
+        TileMemoryCache cache = new TileMemoryCache(1024, false, 100);
+        TileKey key = key("topp:states", 0, null);
+        cache.put(key, new byte[10], ImageMime.png, 1, 0);
+        assertNotNull(cache.get(key));
+
+        Thread.sleep(200);
+        assertNull(cache.get(key));
+        assertEquals(0, cache.getTileCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testOffHeap() throws Exception {
+        TileMemoryCache cache = new TileMemoryCache(1024, true);
+        byte[] content = { 1, 2, 3 };
+        cache.put(key("topp:states", 0, null), content, ImageMime.png, 1, 0);
+
+        CachedTile tile = cache.get(key("topp:states", 0, null));
+        assertTrue(tile.isOffHeap());
+        assertEquals(3, tile.getSize());
+        assertNotSame(content, tile.getContent());
+        assertEquals(2, tile.getContent()[1]);
+        assertEquals(2, tile.getContent()[1]);
+    }
+
+    TileKey key(String layer, long x, Map<String, String> parameters) {
+        return new TileKey(layer, "EPSG:4326", new long[] { x, 0, 0 }, "image/png", parameters);
+    }
+}
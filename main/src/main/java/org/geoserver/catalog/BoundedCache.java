@@ -0,0 +1,216 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent map bounded in size, evicting the least recently accessed entries when full and
+ * optionally the entries that have not been accessed for a configurable amount of time.
+ * <p>
+ * Lookups never lock, they just record the access time on the entry. When a put makes the map
+ * grow over its maximum size a single thread at a time scans the entries and evicts the least
+ * recently used ones, removing some extra entries beyond the limit so that the scan cost is
+ * amortized over a number of subsequent puts.
+ * </p>
+ */
+class BoundedCache<K, V> extends AbstractMap<K, V> {
+
+    /**
+     * Percentage of the max size that gets evicted in excess to make room for new entries
+     */
+    static final int EVICTION_BATCH_PERCENTAGE = 10;
+
+    final ConcurrentHashMap<K, CacheEntry<V>> entries = new ConcurrentHashMap<K, CacheEntry<V>>();
+
+    final ReentrantLock evictionLock = new ReentrantLock();
+
+    final CacheStatistics statistics;
+
+    volatile int maxSize;
+
+    volatile long idleTime;
+
+    /**
+     * Creates the cache.
+     *
+     * @param maxSize The max number of entries in the cache
+     * @param idleTime Time in milliseconds after which an entry that has not been accessed is
+     *        evicted, zero or negative to disable expiration
+     * @param statistics The statistics that will be notified about the evictions
+     */
+    BoundedCache(int maxSize, long idleTime, CacheStatistics statistics) {
+        this.maxSize = maxSize;
+        this.idleTime = idleTime;
+        this.statistics = statistics;
+    }
+
+    @Override
+    public V get(Object key) {
+        CacheEntry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        if (isExpired(entry, now)) {
+            if (entries.remove(key, entry)) {
+                statistics.evicted();
+            }
+            return null;
+        }
+        entry.lastAccess = now;
+        return entry.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        CacheEntry<V> old = entries.put(key, new CacheEntry<V>(value, System.currentTimeMillis()));
+        if (entries.size() > maxSize) {
+            evict();
+        }
+        return old != null ? old.value : null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        CacheEntry<V> old = entries.remove(key);
+        return old != null ? old.value : null;
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns a snapshot of the current cache contents
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Map<K, V> snapshot = new HashMap<K, V>();
+        for (Map.Entry<K, CacheEntry<V>> e : entries.entrySet()) {
+            snapshot.put(e.getKey(), e.getValue().value);
+        }
+        return Collections.unmodifiableMap(snapshot).entrySet();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the max number of entries, evicting the exceeding ones if necessary
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        evict();
+    }
+
+    public long getIdleTime() {
+        return idleTime;
+    }
+
+    /**
+     * Sets the idle time in milliseconds, zero or negative to disable expiration
+     */
+    public void setIdleTime(long idleTime) {
+        this.idleTime = idleTime;
+        evict();
+    }
+
+    boolean isExpired(CacheEntry<V> entry, long now) {
+        long idle = idleTime;
+        return idle > 0 && now - entry.lastAccess > idle;
+    }
+
+    /**
+     * Removes the expired entries and, if the cache is still over its limit, the least recently
+     * accessed ones. Does nothing if another thread is already evicting.
+     */
+    void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            List<Candidate<K, V>> candidates = new ArrayList<Candidate<K, V>>();
+            for (Map.Entry<K, CacheEntry<V>> e : entries.entrySet()) {
+                if (isExpired(e.getValue(), now)) {
+                    if (entries.remove(e.getKey(), e.getValue())) {
+                        statistics.evicted();
+                    }
+                } else {
+                    candidates.add(new Candidate<K, V>(e.getKey(), e.getValue()));
+                }
+            }
+
+            int excess = entries.size() - maxSize;
+            if (excess <= 0) {
+                return;
+            }
+            excess = Math.min(candidates.size(), excess + maxSize * EVICTION_BATCH_PERCENTAGE
+                    / 100);
+
+            // sort on the access times snapshot, the live ones keep on changing
+            Collections.sort(candidates);
+            for (int i = 0; i < excess; i++) {
+                Candidate<K, V> c = candidates.get(i);
+                if (entries.remove(c.key, c.entry)) {
+                    statistics.evicted();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    static class Candidate<K, V> implements Comparable<Candidate<K, V>> {
+        final K key;
+
+        final CacheEntry<V> entry;
+
+        final long lastAccess;
+
+        Candidate(K key, CacheEntry<V> entry) {
+            this.key = key;
+            this.entry = entry;
+            this.lastAccess = entry.lastAccess;
+        }
+
+        public int compareTo(Candidate<K, V> other) {
+            return lastAccess < other.lastAccess ? -1 : (lastAccess == other.lastAccess ? 0 : 1);
+        }
+    }
+
+    static class CacheEntry<V> {
+        final V value;
+
+        volatile long lastAccess;
+
+        CacheEntry(V value, long lastAccess) {
+            this.value = value;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
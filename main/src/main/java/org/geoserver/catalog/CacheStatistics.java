@@ -0,0 +1,142 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Usage counters for one of the {@link ResourcePool} caches.
+ * <p>
+ * A <em>hit</em> is a lookup satisfied from the cache, a <em>miss</em> is a lookup that had to
+ * either load the resource or wait for another thread loading it. Load counters and load times
+ * only account for the loads actually performed.
+ * </p>
+ */
+public class CacheStatistics {
+
+    final String name;
+
+    final AtomicLong hits = new AtomicLong();
+
+    final AtomicLong misses = new AtomicLong();
+
+    final AtomicLong loads = new AtomicLong();
+
+    final AtomicLong loadFailures = new AtomicLong();
+
+    final AtomicLong loadTime = new AtomicLong();
+
+    final AtomicLong evictions = new AtomicLong();
+
+    public CacheStatistics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * The name of the cache the statistics refer to.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Number of lookups satisfied by the cache.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Number of lookups that did not find the resource in the cache.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Ratio between hits and total lookups, or 1 if no lookup has been performed yet.
+     */
+    public double getHitRatio() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return total == 0 ? 1d : ((double) hits) / total;
+    }
+
+    /**
+     * Number of loads that successfully created a resource.
+     */
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    /**
+     * Number of loads that failed with an exception.
+     */
+    public long getLoadFailureCount() {
+        return loadFailures.get();
+    }
+
+    /**
+     * Total time spent loading resources, in milliseconds.
+     */
+    public long getTotalLoadTime() {
+        return loadTime.get();
+    }
+
+    /**
+     * Average time spent performing a load, in milliseconds.
+     */
+    public double getAverageLoadTime() {
+        long count = getLoadCount() + getLoadFailureCount();
+        return count == 0 ? 0d : ((double) getTotalLoadTime()) / count;
+    }
+
+    /**
+     * Number of entries removed from the cache to make room for new ones.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Resets all the counters.
+     */
+    public void reset() {
+        hits.set(0);
+        misses.set(0);
+        loads.set(0);
+        loadFailures.set(0);
+        loadTime.set(0);
+        evictions.set(0);
+    }
+
+    void hit() {
+        hits.incrementAndGet();
+    }
+
+    void miss() {
+        misses.incrementAndGet();
+    }
+
+    void loaded(long time, boolean success) {
+        loadTime.addAndGet(time);
+        if (success) {
+            loads.incrementAndGet();
+        } else {
+            loadFailures.incrementAndGet();
+        }
+    }
+
+    void evicted() {
+        evictions.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return name + "[hits=" + getHitCount() + ", misses=" + getMissCount() + ", loads="
+                + getLoadCount() + ", failures=" + getLoadFailureCount() + ", avgLoadTime="
+                + getAverageLoadTime() + "ms, evictions=" + getEvictionCount() + "]";
+    }
+}
@@ -0,0 +1,34 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+/**
+ * A thread local flag that switches the catalog lookups to read only mode.
+ * <p>
+ * While enabled the catalog hands out lightweight read only views of its objects instead of the
+ * copy on write proxies that allow to modify and save them, which are more expensive to create
+ * and to use. Code that only reads the catalog (e.g., the capabilities and map generation) can
+ * enable it, code that needs to modify catalog objects must not.
+ * </p>
+ */
+public class ReadOnlyCatalogAccess {
+
+    /**
+     * the read only thread local
+     */
+    static ThreadLocal<Boolean> readOnly = new ThreadLocal<Boolean>();
+
+    public static void set(boolean value) {
+        readOnly.set(value);
+    }
+
+    public static boolean get() {
+        return Boolean.TRUE.equals(readOnly.get());
+    }
+
+    public static void remove() {
+        readOnly.remove();
+    }
+}
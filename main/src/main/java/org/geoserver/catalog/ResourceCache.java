@@ -0,0 +1,226 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Front end to one of the {@link ResourcePool} caches that performs loads on a per key basis.
+ * <p>
+ * Concurrent callers asking for the same key wait on a single in flight load, while callers
+ * asking for different keys load in parallel. The backing map is only locked for the time
+ * needed to look up or store an entry, never while the resource is being created, so a slow
+ * store connection does not block access to the other ones.
+ * </p>
+ * <p>
+ * Clearing a key while it's being loaded makes sure the result of the load is not stored in the
+ * cache, as it might have been computed against stale configuration. The stale result is
+ * {@link #dispose(Object, Object) disposed} and the load is performed again for all the callers
+ * waiting on it.
+ * </p>
+ * <p>
+ * The backing map is provided by subclasses, and is used as the lock for the cache access.
+ * </p>
+ */
+abstract class ResourceCache<K, V> {
+
+    /**
+     * The loads in progress
+     */
+    ConcurrentHashMap<K, Load> loading = new ConcurrentHashMap<K, Load>();
+
+    CacheStatistics statistics;
+
+    ResourceCache(String name) {
+        this.statistics = new CacheStatistics(name);
+    }
+
+    /**
+     * The backing map, usually a LRU map disposing the evicted resources
+     */
+    abstract Map<K, V> map();
+
+    /**
+     * Releases a loaded value that could not be cached because its key got cleared during the
+     * load. Does nothing by default, subclasses holding resources such as connection pools
+     * should dispose them here.
+     */
+    void dispose(K key, V value) {
+    }
+
+    /**
+     * Returns the cached value for the key, without triggering any load.
+     */
+    V get(K key) {
+        Map<K, V> map = map();
+        synchronized (map) {
+            return map.get(key);
+        }
+    }
+
+    /**
+     * Returns the cached value for the key, loading it with the specified loader if missing.
+     *
+     * @param key The key, if <code>null</code> the resource is loaded and not cached
+     * @param loader Creates the resource
+     *
+     * @throws IOException Any error occurred while loading the resource
+     */
+    V get(K key, Callable<V> loader) throws IOException {
+        if (key == null) {
+            return load(loader);
+        }
+
+        V value = get(key);
+        if (value != null) {
+            statistics.hit();
+            return value;
+        }
+        statistics.miss();
+
+        while (true) {
+            Load task = new Load(key, loader);
+            Load running = loading.putIfAbsent(key, task);
+            if (running != null) {
+                // someone else is already loading it, wait for it
+                value = await(running);
+            } else {
+                try {
+                    // the load might have completed just before we registered
+                    value = get(key);
+                    if (value != null) {
+                        return value;
+                    }
+
+                    long start = System.currentTimeMillis();
+                    task.run();
+                    value = await(task, start);
+                } finally {
+                    loading.remove(key, task);
+                }
+                running = task;
+            }
+
+            if (!running.stale) {
+                return value;
+            }
+            // the key got cleared during the load, the value has been disposed, load again
+        }
+    }
+
+    /**
+     * Loads a resource without caching it.
+     */
+    V load(Callable<V> loader) throws IOException {
+        FutureTask<V> task = new FutureTask<V>(loader);
+        long start = System.currentTimeMillis();
+        task.run();
+        return await(task, start);
+    }
+
+    V await(FutureTask<V> task, long start) throws IOException {
+        boolean success = false;
+        try {
+            V value = await(task);
+            success = true;
+            return value;
+        } finally {
+            statistics.loaded(System.currentTimeMillis() - start, success);
+        }
+    }
+
+    V await(FutureTask<V> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw (IOException) new IOException("Interrupted while waiting for resource load")
+                    .initCause(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (IOException) new IOException().initCause(cause);
+        }
+    }
+
+    /**
+     * Removes the cached value, and makes sure any load in progress for the key won't be cached.
+     */
+    V remove(K key) {
+        if (key == null) {
+            return null;
+        }
+        loading.remove(key);
+        Map<K, V> map = map();
+        synchronized (map) {
+            return map.remove(key);
+        }
+    }
+
+    /**
+     * Clears the cache.
+     */
+    void clear() {
+        loading.clear();
+        Map<K, V> map = map();
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    CacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * A load for a key, caching the loaded value before handing it to the waiting callers, or
+     * disposing it if the key got cleared in the meantime
+     */
+    class Load extends FutureTask<V> {
+
+        final K key;
+
+        /**
+         * Set before the load completes, so it's visible to anyone that got the value
+         */
+        volatile boolean stale;
+
+        Load(K key, Callable<V> loader) {
+            super(loader);
+            this.key = key;
+        }
+
+        @Override
+        protected void set(V value) {
+            if (value != null) {
+                Map<K, V> map = map();
+                synchronized (map) {
+                    if (loading.get(key) == this) {
+                        map.put(key, value);
+                    } else {
+                        stale = true;
+                    }
+                }
+                if (stale) {
+                    dispose(key, value);
+                }
+            }
+            super.set(value);
+        }
+    }
+}
@@ -27,6 +27,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.logging.Level;
@@ -132,24 +133,105 @@ public class ResourcePool {
      */
     static int FEATURETYPE_CACHE_SIZE_DEFAULT = 100;
     
+    /**
+     * Default max number of parsed styles kept in memory
+     */
+    static int STYLE_CACHE_SIZE_DEFAULT = 1000;
+    
+    /**
+     * Default max number of coordinate reference systems kept in memory
+     */
+    static int CRS_CACHE_SIZE_DEFAULT = 1000;
+    
     private static final String IMAGE_PYRAMID = "ImagePyramid";
     private static final String IMAGE_MOSAIC = "ImageMosaic";
 
     Catalog catalog;
-    HashMap<String, CoordinateReferenceSystem> crsCache;
+    BoundedCache<String, CoordinateReferenceSystem> crsCache;
     DataStoreCache dataStoreCache;
     FeatureTypeCache featureTypeCache;
     FeatureTypeAttributeCache featureTypeAttributeCache;
     WMSCache wmsCache;
     CoverageReaderCache coverageReaderCache;
     CoverageReaderCache hintCoverageReaderCache;
-    HashMap<StyleInfo,Style> styleCache;
+    BoundedCache<StyleInfo,Style> styleCache;
     List<Listener> listeners;
     ThreadPoolExecutor coverageExecutor;
     
+    /**
+     * Per key loading front ends for the caches, they make sure resources for different keys
+     * are loaded in parallel while loads of the same key are performed only once
+     */
+    ResourceCache<String, DataAccess> dataStores = new ResourceCache<String, DataAccess>("dataStores") {
+        Map<String, DataAccess> map() {
+            return dataStoreCache;
+        }
+        
+        void dispose(String key, DataAccess value) {
+            dataStoreCache.dispose(key, value);
+        }
+    };
+    ResourceCache<String, FeatureType> featureTypes = new ResourceCache<String, FeatureType>("featureTypes") {
+        Map<String, FeatureType> map() {
+            return featureTypeCache;
+        }
+    };
+    ResourceCache<String, List<AttributeTypeInfo>> featureTypeAttributes = 
+        new ResourceCache<String, List<AttributeTypeInfo>>("featureTypeAttributes") {
+        Map<String, List<AttributeTypeInfo>> map() {
+            return featureTypeAttributeCache;
+        }
+    };
+    ResourceCache<CoverageStoreInfo, GridCoverageReader> coverageReaders = 
+        new ResourceCache<CoverageStoreInfo, GridCoverageReader>("coverageReaders") {
+        Map<CoverageStoreInfo, GridCoverageReader> map() {
+            return coverageReaderCache;
+        }
+        
+        void dispose(CoverageStoreInfo key, GridCoverageReader value) {
+            coverageReaderCache.dispose(key, value);
+        }
+    };
+    ResourceCache<CoverageStoreInfo, GridCoverageReader> hintCoverageReaders = 
+        new ResourceCache<CoverageStoreInfo, GridCoverageReader>("hintCoverageReaders") {
+        Map<CoverageStoreInfo, GridCoverageReader> map() {
+            return hintCoverageReaderCache;
+        }
+        
+        void dispose(CoverageStoreInfo key, GridCoverageReader value) {
+            hintCoverageReaderCache.dispose(key, value);
+        }
+    };
+    ResourceCache<String, WebMapServer> webMapServers = new ResourceCache<String, WebMapServer>("webMapServers") {
+        Map<String, WebMapServer> map() {
+            return wmsCache;
+        }
+    };
+    ResourceCache<StyleInfo, Style> styles = new ResourceCache<StyleInfo, Style>("styles") {
+        Map<StyleInfo, Style> map() {
+            return styleCache;
+        }
+        
+        Style get(StyleInfo key) {
+            // bounded caches are concurrent, no need to lock on lookup
+            return styleCache.get(key);
+        }
+    };
+    ResourceCache<String, CoordinateReferenceSystem> crss = 
+        new ResourceCache<String, CoordinateReferenceSystem>("crs") {
+        Map<String, CoordinateReferenceSystem> map() {
+            return crsCache;
+        }
+        
+        CoordinateReferenceSystem get(String key) {
+            return crsCache.get(key);
+        }
+    };
+    
     public ResourcePool(Catalog catalog) {
         this.catalog = catalog;
-        crsCache = new HashMap<String, CoordinateReferenceSystem>();
+        crsCache = new BoundedCache<String, CoordinateReferenceSystem>(CRS_CACHE_SIZE_DEFAULT, 0, 
+                crss.getStatistics());
         dataStoreCache = new DataStoreCache();
         featureTypeCache = new FeatureTypeCache(FEATURETYPE_CACHE_SIZE_DEFAULT);
         
@@ -159,7 +241,8 @@ public class ResourcePool {
         
         wmsCache = new WMSCache();
         
-        styleCache = new HashMap<StyleInfo, Style>();
+        styleCache = new BoundedCache<StyleInfo, Style>(STYLE_CACHE_SIZE_DEFAULT, 0, 
+                styles.getStatistics());
         listeners = new CopyOnWriteArrayList<Listener>();
         
         catalog.addListener( new CacheClearingListener() );
@@ -173,13 +256,90 @@ public class ResourcePool {
      */
     public void setFeatureTypeCacheSize(int featureTypeCacheSize) {
         synchronized (this) {
-            featureTypeCache.clear();
+            featureTypes.clear();
             featureTypeCache = new FeatureTypeCache(featureTypeCacheSize);
-            featureTypeAttributeCache.clear();
+            featureTypeAttributes.clear();
             featureTypeAttributeCache = new FeatureTypeAttributeCache(featureTypeCacheSize);
         }
     }
     
+    /**
+     * Sets the max number of parsed styles kept in memory.
+     */
+    public void setStyleCacheSize(int styleCacheSize) {
+        styleCache.setMaxSize(styleCacheSize);
+    }
+    
+    /**
+     * Sets the max number of coordinate reference systems kept in memory.
+     */
+    public void setCRSCacheSize(int crsCacheSize) {
+        crsCache.setMaxSize(crsCacheSize);
+    }
+    
+    /**
+     * Sets the time, in seconds, after which styles and coordinate reference systems that have 
+     * not been used are evicted from their caches. Zero or a negative value disables the 
+     * expiration.
+     */
+    public void setCacheIdleTime(int seconds) {
+        styleCache.setIdleTime(seconds * 1000l);
+        crsCache.setIdleTime(seconds * 1000l);
+    }
+    
+    /**
+     * Returns the usage statistics of the data store cache.
+     */
+    public CacheStatistics getDataStoreCacheStatistics() {
+        return dataStores.getStatistics();
+    }
+    
+    /**
+     * Returns the usage statistics of the feature type cache.
+     */
+    public CacheStatistics getFeatureTypeCacheStatistics() {
+        return featureTypes.getStatistics();
+    }
+    
+    /**
+     * Returns the usage statistics of the coverage reader caches, the one used for readers
+     * created without hints and the one used for readers created with hints.
+     */
+    public List<CacheStatistics> getCoverageReaderCacheStatistics() {
+        return Arrays.asList(coverageReaders.getStatistics(), hintCoverageReaders.getStatistics());
+    }
+    
+    /**
+     * Returns the usage statistics of the web map server cache.
+     */
+    public CacheStatistics getWebMapServerCacheStatistics() {
+        return webMapServers.getStatistics();
+    }
+    
+    /**
+     * Returns the usage statistics of the style cache.
+     */
+    public CacheStatistics getStyleCacheStatistics() {
+        return styles.getStatistics();
+    }
+    
+    /**
+     * Returns the usage statistics of the coordinate reference system cache.
+     */
+    public CacheStatistics getCRSCacheStatistics() {
+        return crss.getStatistics();
+    }
+    
+    /**
+     * Returns the usage statistics of all the caches in the pool.
+     */
+    public List<CacheStatistics> getCacheStatistics() {
+        return Arrays.asList(dataStores.getStatistics(), featureTypes.getStatistics(),
+                featureTypeAttributes.getStatistics(), coverageReaders.getStatistics(),
+                hintCoverageReaders.getStatistics(), webMapServers.getStatistics(), 
+                styles.getStatistics(), crss.getStatistics());
+    }
+    
     /**
      * Sets the size of the feature type cache.
      * <p>
@@ -223,29 +383,22 @@ public class ResourcePool {
      * @throws IOException In the event the srsName can not be parsed or leads 
      * to an exception in the underlying call to CRS.decode.
      */
-    public CoordinateReferenceSystem getCRS( String srsName )
+    public CoordinateReferenceSystem getCRS( final String srsName )
         throws IOException {
         
         if(srsName == null)
             return null;
         
-        CoordinateReferenceSystem crs = crsCache.get( srsName );
-        if ( crs == null ) {
-            synchronized (crsCache) {
-                crs = crsCache.get( srsName );
-                if ( crs == null ) {
-                    try {
-                        crs = CRS.decode( srsName );
-                        crsCache.put( srsName, crs );
-                    }
-                    catch( Exception e) {
-                        throw (IOException) new IOException().initCause(e);
-                    }
+        return crss.get(srsName, new Callable<CoordinateReferenceSystem>() {
+            public CoordinateReferenceSystem call() throws Exception {
+                try {
+                    return CRS.decode( srsName );
+                }
+                catch( Exception e) {
+                    throw (IOException) new IOException().initCause(e);
                 }
             }
-        }
-        
-        return crs;
+        });
     }
     
     /**
@@ -285,89 +438,80 @@ public class ResourcePool {
      * 
      * @throws IOException Any errors that occur connecting to the resource.
      */
-    public DataAccess<? extends FeatureType, ? extends Feature> getDataStore( DataStoreInfo info ) throws IOException {
+    public DataAccess<? extends FeatureType, ? extends Feature> getDataStore( final DataStoreInfo info ) throws IOException {
         try {
-            String id = info.getId();
-            DataAccess<? extends FeatureType, ? extends Feature> dataStore;
-            dataStore = (DataAccess<? extends FeatureType, ? extends Feature>) dataStoreCache.get(id);
-            if ( dataStore == null ) {
-                synchronized (dataStoreCache) {
-                    dataStore = (DataAccess<? extends FeatureType, ? extends Feature>) dataStoreCache.get( id );
-                    if ( dataStore == null ) {
-                        //create data store
-                        Map<String, Serializable> connectionParameters = info.getConnectionParameters();
-                        
-                        //call this methdo to execute the hack which recognizes 
-                        // urls which are relative to the data directory
-                        // TODO: find a better way to do this
-                        connectionParameters = DataStoreUtils.getParams(connectionParameters,null);
-                        
-                        //ensure that the namespace parameter is set for the datastore
-                        if (!connectionParameters.containsKey( "namespace")) {
-                            //obtain the factory
-                            DataAccessFactory factory = null;
-                            try {
-                                factory = getDataStoreFactory(info);
-                            }
-                            catch(Exception e ) {
-                                //ignore, it will fail later
-                            }
-                            
-                            //if we grabbed the factory, check that the factory actually supports
-                            // a namespace parameter, if we could not get the factory, assume that
-                            // it does
-                            boolean supportsNamespace = true;
-                            if ( factory != null ) {
-                                supportsNamespace = false;
-                                Param[] params = factory.getParametersInfo();
-                                for ( Param p : params ) {
-                                    if ( "namespace".equalsIgnoreCase( p.key ) ) {
-                                        supportsNamespace = true;
-                                        break;
-                                    }
-                                }
-                            }
-                            
-                            if ( supportsNamespace ) {
-                                WorkspaceInfo ws = info.getWorkspace();
-                                NamespaceInfo ns = info.getCatalog().getNamespaceByPrefix( ws.getName() );
-                                if ( ns == null ) {
-                                    ns = info.getCatalog().getDefaultNamespace();
-                                }
-                                if ( ns != null ) {
-                                    connectionParameters.put( "namespace", ns.getURI() );
-                                }    
-                            }
+            // cache only if the id is not null, no need to cache the stores
+            // returned from un-saved DataStoreInfo objects (it would be actually
+            // harmful, NPE when trying to dispose of them)
+            return dataStores.get(info.getId(), new Callable<DataAccess>() {
+                public DataAccess call() throws Exception {
+                    DataAccess<? extends FeatureType, ? extends Feature> dataStore;
+                    //create data store
+                    Map<String, Serializable> connectionParameters = info.getConnectionParameters();
+                
+                    //call this methdo to execute the hack which recognizes 
+                    // urls which are relative to the data directory
+                    // TODO: find a better way to do this
+                    connectionParameters = DataStoreUtils.getParams(connectionParameters,null);
+                
+                    //ensure that the namespace parameter is set for the datastore
+                    if (!connectionParameters.containsKey( "namespace")) {
+                        //obtain the factory
+                        DataAccessFactory factory = null;
+                        try {
+                            factory = getDataStoreFactory(info);
                         }
-                        
-                        dataStore = DataStoreUtils.getDataAccess(connectionParameters);
-                        if (dataStore == null) {
-                            /*
-                             * Preserve DataStore retyping behaviour by calling
-                             * DataAccessFinder.getDataStore after the call to
-                             * DataStoreUtils.getDataStore above.
-                             * 
-                             * TODO: DataAccessFinder can also find DataStores, and when retyping is
-                             * supported for DataAccess, we can use a single mechanism.
-                             */
-                            dataStore = DataAccessFinder.getDataStore(connectionParameters);
+                        catch(Exception e ) {
+                            //ignore, it will fail later
                         }
-                        
-                        if ( dataStore == null ) {
-                            throw new NullPointerException("Could not acquire data access '" + info.getName() + "'");
+                    
+                        //if we grabbed the factory, check that the factory actually supports
+                        // a namespace parameter, if we could not get the factory, assume that
+                        // it does
+                        boolean supportsNamespace = true;
+                        if ( factory != null ) {
+                            supportsNamespace = false;
+                            Param[] params = factory.getParametersInfo();
+                            for ( Param p : params ) {
+                                if ( "namespace".equalsIgnoreCase( p.key ) ) {
+                                    supportsNamespace = true;
+                                    break;
+                                }
+                            }
                         }
-                        
-                        // cache only if the id is not null, no need to cache the stores
-                        // returned from un-saved DataStoreInfo objects (it would be actually
-                        // harmful, NPE when trying to dispose of them)
-                        if(id != null) {
-                            dataStoreCache.put( id, dataStore );
+                    
+                        if ( supportsNamespace ) {
+                            WorkspaceInfo ws = info.getWorkspace();
+                            NamespaceInfo ns = info.getCatalog().getNamespaceByPrefix( ws.getName() );
+                            if ( ns == null ) {
+                                ns = info.getCatalog().getDefaultNamespace();
+                            }
+                            if ( ns != null ) {
+                                connectionParameters.put( "namespace", ns.getURI() );
+                            }    
                         }
                     }
-                } 
-            }
-            
-            return dataStore;
+                
+                    dataStore = DataStoreUtils.getDataAccess(connectionParameters);
+                    if (dataStore == null) {
+                        /*
+                         * Preserve DataStore retyping behaviour by calling
+                         * DataAccessFinder.getDataStore after the call to
+                         * DataStoreUtils.getDataStore above.
+                         * 
+                         * TODO: DataAccessFinder can also find DataStores, and when retyping is
+                         * supported for DataAccess, we can use a single mechanism.
+                         */
+                        dataStore = DataAccessFinder.getDataStore(connectionParameters);
+                    }
+                
+                    if ( dataStore == null ) {
+                        throw new NullPointerException("Could not acquire data access '" + info.getName() + "'");
+                    }
+                
+                    return dataStore;
+                }
+            });
         } 
         catch (IOException ioe){
             throw ioe;
@@ -423,10 +567,10 @@ public class ResourcePool {
      * @param info The data store metadata.
      */
     public void clear( DataStoreInfo info ) {
-        dataStoreCache.remove( info.getId() );
+        dataStores.remove( info.getId() );
     }
     
-    public List<AttributeTypeInfo> getAttributes(FeatureTypeInfo info) throws IOException {
+    public List<AttributeTypeInfo> getAttributes(final FeatureTypeInfo info) throws IOException {
         //first check the feature type itself
         //      workaround for GEOS-3294, upgrading from 2.0 data directory,
         //      simply ignore any stored attributes
@@ -438,33 +582,24 @@ public class ResourcePool {
             return info.getAttributes();
         }
         
-        //check the cache
-        List<AttributeTypeInfo> atts = (List<AttributeTypeInfo>) featureTypeAttributeCache.get(info.getId());
-        if (atts == null) {
-            synchronized (featureTypeAttributeCache) {
-                atts = (List<AttributeTypeInfo>) featureTypeAttributeCache.get(info.getId());
-                if (atts == null) {
-                    //load from feature type
-                    atts = loadAttributes(info);
-                    
-                    //check for a schema override
-                    try {
-                        handleSchemaOverride(atts,info);
-                    }
-                    catch( Exception e ) {
-                        LOGGER.log( Level.WARNING, 
-                            "Error occured applying schema override for "+info.getName(), e);
-                    }
-                    
-                    // cache attributes only if the id is not null -> the feature type is not new
-                    if(info.getId() != null) {
-                        featureTypeAttributeCache.put(info.getId(), atts);
-                    }
+        //check the cache, cache attributes only if the id is not null -> the feature type is not new
+        return featureTypeAttributes.get(info.getId(), new Callable<List<AttributeTypeInfo>>() {
+            public List<AttributeTypeInfo> call() throws Exception {
+                //load from feature type
+                List<AttributeTypeInfo> atts = loadAttributes(info);
+                
+                //check for a schema override
+                try {
+                    handleSchemaOverride(atts,info);
+                }
+                catch( Exception e ) {
+                    LOGGER.log( Level.WARNING, 
+                        "Error occured applying schema override for "+info.getName(), e);
                 }
+                
+                return atts;
             }
-        }
-        
-        return atts;
+        });
     }
     
     public List<AttributeTypeInfo> loadAttributes(FeatureTypeInfo info) throws IOException {
@@ -589,98 +724,108 @@ public class ResourcePool {
         return getFeatureType(info, true);
     }
     
-    FeatureType getFeatureType( FeatureTypeInfo info, boolean handleProjectionPolicy ) throws IOException {
-        boolean cacheable = isCacheable(info) && handleProjectionPolicy;
-        FeatureType ft = (FeatureType) featureTypeCache.get( info.getId() );
-        if ( ft == null || !cacheable ) {
-            synchronized ( featureTypeCache ) {
-                ft = (FeatureType) featureTypeCache.get( info.getId() );
-                if ( ft == null || !cacheable) {
-                    
-                    //grab the underlying feature type
-                    DataAccess<? extends FeatureType, ? extends Feature> dataAccess = getDataStore(info.getStore());
-                    
-                    // sql view handling
-                    VirtualTable vt = null;
-                    String vtName = null;
-                    if(dataAccess instanceof JDBCDataStore && info.getMetadata() != null &&
-                            (info.getMetadata().get(FeatureTypeInfo.JDBC_VIRTUAL_TABLE) instanceof VirtualTable)) {
-                        JDBCDataStore jstore = (JDBCDataStore) dataAccess;
-                        vt = info.getMetadata().get(FeatureTypeInfo.JDBC_VIRTUAL_TABLE, VirtualTable.class);
-                        
-                        if(!cacheable) {
-                            // use a highly random name, we don't want to actually add the
-                            // virtual table to the store as this feature type is not cacheable,
-                            // it is "dirty" or un-saved. The renaming below will take care
-                            // of making the user see the actual name
-                            final String[] typeNames = jstore.getTypeNames();
-                            do {
-                                vtName = UUID.randomUUID().toString();
-                            } while (Arrays.asList(typeNames).contains(vtName));
-    
-                            // try adding the vt and see if that works
-                            jstore.addVirtualTable(new VirtualTable(vtName, vt));
-                            ft = jstore.getSchema(vtName);
-                        } else {
-                            vtName = vt.getName();
-                            jstore.addVirtualTable(vt);
-                            ft = jstore.getSchema(vt.getName());
-                        }
-                    } else {
-                        ft = dataAccess.getSchema(info.getQualifiedNativeName());
+    FeatureType getFeatureType( final FeatureTypeInfo info, final boolean handleProjectionPolicy ) throws IOException {
+        final boolean cacheable = isCacheable(info) && handleProjectionPolicy;
+        Callable<FeatureType> loader = new Callable<FeatureType>() {
+            public FeatureType call() throws Exception {
+                return loadFeatureType(info, handleProjectionPolicy, cacheable);
+            }
+        };
+        
+        if (cacheable) {
+            return featureTypes.get(info.getId(), loader);
+        }
+        else {
+            return featureTypes.load(loader);
+        }
+    }
+    
+    /*
+     * Loads the feature type from the underlying store, without caching it
+     */
+    FeatureType loadFeatureType( FeatureTypeInfo info, boolean handleProjectionPolicy, 
+            boolean cacheable ) throws IOException {
+        FeatureType ft;
+        
+        //grab the underlying feature type
+        DataAccess<? extends FeatureType, ? extends Feature> dataAccess = getDataStore(info.getStore());
+        
+        // sql view handling
+        VirtualTable vt = null;
+        String vtName = null;
+        if(dataAccess instanceof JDBCDataStore && info.getMetadata() != null &&
+                (info.getMetadata().get(FeatureTypeInfo.JDBC_VIRTUAL_TABLE) instanceof VirtualTable)) {
+            JDBCDataStore jstore = (JDBCDataStore) dataAccess;
+            vt = info.getMetadata().get(FeatureTypeInfo.JDBC_VIRTUAL_TABLE, VirtualTable.class);
+            
+            if(!cacheable) {
+                // use a highly random name, we don't want to actually add the
+                // virtual table to the store as this feature type is not cacheable,
+                // it is "dirty" or un-saved. The renaming below will take care
+                // of making the user see the actual name
+                final String[] typeNames = jstore.getTypeNames();
+                do {
+                    vtName = UUID.randomUUID().toString();
+                } while (Arrays.asList(typeNames).contains(vtName));
+    
+                // try adding the vt and see if that works
+                jstore.addVirtualTable(new VirtualTable(vtName, vt));
+                ft = jstore.getSchema(vtName);
+            } else {
+                vtName = vt.getName();
+                jstore.addVirtualTable(vt);
+                ft = jstore.getSchema(vt.getName());
+            }
+        } else {
+            ft = dataAccess.getSchema(info.getQualifiedNativeName());
+        }
+        
+        // TODO: support reprojection for non-simple FeatureType
+        if (ft instanceof SimpleFeatureType) {
+            SimpleFeatureType sft = (SimpleFeatureType) ft;
+            //create the feature type so it lines up with the "declared" schema
+            SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+            tb.setName( info.getName() );
+            tb.setNamespaceURI( info.getNamespace().getURI() );
+
+            if ( info.getAttributes() == null || info.getAttributes().isEmpty() ) {
+                //take this to mean just load all native
+                for ( PropertyDescriptor pd : ft.getDescriptors() ) {
+                    if ( !( pd instanceof AttributeDescriptor ) ) {
+                        continue;
                     }
                     
-                    // TODO: support reprojection for non-simple FeatureType
-                    if (ft instanceof SimpleFeatureType) {
-                        SimpleFeatureType sft = (SimpleFeatureType) ft;
-                        //create the feature type so it lines up with the "declared" schema
-                        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
-                        tb.setName( info.getName() );
-                        tb.setNamespaceURI( info.getNamespace().getURI() );
-
-                        if ( info.getAttributes() == null || info.getAttributes().isEmpty() ) {
-                            //take this to mean just load all native
-                            for ( PropertyDescriptor pd : ft.getDescriptors() ) {
-                                if ( !( pd instanceof AttributeDescriptor ) ) {
-                                    continue;
-                                }
-                                
-                                AttributeDescriptor ad = (AttributeDescriptor) pd;
-                                if(handleProjectionPolicy) {
-                                    ad = handleDescriptor(ad, info);
-                                }
-                                tb.add( ad );
-                            }
-                        }
-                        else {
-                            //only load native attributes configured
-                            for ( AttributeTypeInfo att : info.getAttributes() ) {
-                                String attName = att.getName();
-                                
-                                //load the actual underlying attribute type
-                                PropertyDescriptor pd = ft.getDescriptor( attName );
-                                if ( pd == null || !( pd instanceof AttributeDescriptor) ) {
-                                    throw new IOException("the SimpleFeatureType " + info.getPrefixedName()
-                                            + " does not contains the configured attribute " + attName
-                                            + ". Check your schema configuration");
-                                }
-                            
-                                AttributeDescriptor ad = (AttributeDescriptor) pd;
-                                ad = handleDescriptor(ad, info);
-                                tb.add( (AttributeDescriptor) ad );
-                            }
-                        }
-                        ft = tb.buildFeatureType();
-                    } // end special case for SimpleFeatureType
+                    AttributeDescriptor ad = (AttributeDescriptor) pd;
+                    if(handleProjectionPolicy) {
+                        ad = handleDescriptor(ad, info);
+                    }
+                    tb.add( ad );
+                }
+            }
+            else {
+                //only load native attributes configured
+                for ( AttributeTypeInfo att : info.getAttributes() ) {
+                    String attName = att.getName();
                     
-                    if(cacheable) {
-                        featureTypeCache.put( info.getId(), ft );
-                    } else if(vtName != null) {
-                        JDBCDataStore jstore = (JDBCDataStore) dataAccess;
-                        jstore.removeVirtualTable(vtName);
+                    //load the actual underlying attribute type
+                    PropertyDescriptor pd = ft.getDescriptor( attName );
+                    if ( pd == null || !( pd instanceof AttributeDescriptor) ) {
+                        throw new IOException("the SimpleFeatureType " + info.getPrefixedName()
+                                + " does not contains the configured attribute " + attName
+                                + ". Check your schema configuration");
                     }
+                
+                    AttributeDescriptor ad = (AttributeDescriptor) pd;
+                    ad = handleDescriptor(ad, info);
+                    tb.add( (AttributeDescriptor) ad );
                 }
             }
+            ft = tb.buildFeatureType();
+        } // end special case for SimpleFeatureType
+        
+        if(!cacheable && vtName != null) {
+            JDBCDataStore jstore = (JDBCDataStore) dataAccess;
+            jstore.removeVirtualTable(vtName);
         }
         
         return ft;
@@ -794,8 +939,8 @@ public class ResourcePool {
      * @param info The feature type metadata.
      */
     public void clear( FeatureTypeInfo info ) {
-        featureTypeCache.remove( info.getId() );
-        featureTypeAttributeCache.remove( info.getId() );
+        featureTypes.remove( info.getId() );
+        featureTypeAttributes.remove( info.getId() );
     }
     
     /**
@@ -927,29 +1072,13 @@ public class ResourcePool {
      * @throws IOException Any errors that occur loading the reader.
      */
     @SuppressWarnings("deprecation")
-    public GridCoverageReader getGridCoverageReader( CoverageStoreInfo info, Hints hints ) 
+    public GridCoverageReader getGridCoverageReader( final CoverageStoreInfo info, final Hints hints ) 
         throws IOException {
         
-        GridCoverageReader reader = null;
-        if ( hints != null ) {
-            reader = (GridCoverageReader) hintCoverageReaderCache.get( info );    
-        }
-        else {
-            reader = (GridCoverageReader) coverageReaderCache.get( info );
-        }
-        
-        if (reader != null) {
-            return reader;
-        }
-
-        
-        synchronized ( hints != null ? hintCoverageReaderCache : coverageReaderCache ) {
-            if (hints != null) {
-                reader = (GridCoverageReader) hintCoverageReaderCache.get(info);
-            } else {
-                reader = (GridCoverageReader) coverageReaderCache.get(info);
-            }
-            if (reader == null) {
+        ResourceCache<CoverageStoreInfo, GridCoverageReader> readers = 
+            hints != null ? hintCoverageReaders : coverageReaders;
+        return readers.get(info, new Callable<GridCoverageReader>() {
+            public GridCoverageReader call() throws Exception {
                 /////////////////////////////////////////////////////////
                 //
                 // Getting coverage reader using the format and the real path.
@@ -960,29 +1089,26 @@ public class ResourcePool {
                 // XXX CACHING READERS HERE
                 final AbstractGridFormat gridFormat = info.getFormat();
                 final String formatName = gridFormat.getName();
+                Hints readHints = hints;
                 if (formatName.equalsIgnoreCase(IMAGE_MOSAIC) || formatName.equalsIgnoreCase(IMAGE_PYRAMID)){
                     if (coverageExecutor != null){
-                        if (hints != null){
-                            hints.add(new RenderingHints(Hints.EXECUTOR_SERVICE, coverageExecutor));
+                        if (readHints != null){
+                            readHints.add(new RenderingHints(Hints.EXECUTOR_SERVICE, coverageExecutor));
                         } else {
-                            hints = new Hints(new RenderingHints(Hints.EXECUTOR_SERVICE, coverageExecutor));
+                            readHints = new Hints(new RenderingHints(Hints.EXECUTOR_SERVICE, coverageExecutor));
                         }
                     }
                 }
-                reader = gridFormat.getReader(obj,hints);
-                (hints != null ? hintCoverageReaderCache : coverageReaderCache ).put(info, reader);
+                return gridFormat.getReader(obj,readHints);
             }
-        }
-        
-        return reader;
-            
+        });
     }
     
     /**
      * Clears any cached readers for the coverage.
      */
     public void clear(CoverageStoreInfo info) {
-        coverageReaderCache.remove(info);
+        coverageReaders.remove(info);
     }
     
     /**
@@ -1132,22 +1258,13 @@ public class ResourcePool {
      * @param info The WMS configuration
      * @throws IOException
      */
-    public WebMapServer getWebMapServer(WMSStoreInfo info) throws IOException {
+    public WebMapServer getWebMapServer(final WMSStoreInfo info) throws IOException {
         try {
-            String id = info.getId();
-            WebMapServer wms = (WebMapServer) wmsCache.get(id);
-            if (wms == null) {
-                synchronized (wmsCache) {
-                    wms = (WebMapServer) wmsCache.get(id);
-                    if (wms == null) {
-                        wms = new WebMapServer(new URL(info.getCapabilitiesURL()));
-
-                        wmsCache.put(id, wms);
-                    }
+            return webMapServers.get(info.getId(), new Callable<WebMapServer>() {
+                public WebMapServer call() throws Exception {
+                    return new WebMapServer(new URL(info.getCapabilitiesURL()));
                 }
-            }
-
-            return wms;
+            });
         } catch (IOException ioe) {
             throw ioe;
         } catch (Exception e) {
@@ -1183,7 +1300,7 @@ public class ResourcePool {
      * Clears the cached resource for a web map server
      */
     public void clear( WMSStoreInfo info ) {
-        wmsCache.remove( info.getId() );
+        webMapServers.remove( info.getId() );
     }
     
     /**
@@ -1196,32 +1313,25 @@ public class ResourcePool {
      * 
      * @throws IOException Any parsing errors.
      */
-    public Style getStyle( StyleInfo info ) throws IOException {
-        Style style = styleCache.get( info );
-        if ( style == null ) {
-            synchronized (styleCache) {
-                style = styleCache.get( info );
-                if ( style == null ) {
-                    
-                    //JD: it is important that we call the SLDParser(File) constructor because
-                    // if not the sourceURL will not be set which will mean it will fail to 
-                    //resolve relative references to online resources
-                    File styleFile = GeoserverDataDirectory.findStyleFile( info.getFilename() );
-                    if ( styleFile == null ){
-                        throw new IOException( "No such file: " + info.getFilename());
-                    }
-                    
-                    style = Styles.style(Styles.parse(styleFile, info.getSLDVersion()));
-                    
-                    //set the name of the style to be the name of hte style metadata
-                    // remove this when wms works off style info
-                    style.setName( info.getName() );
-                    styleCache.put( info, style );
+    public Style getStyle( final StyleInfo info ) throws IOException {
+        return styles.get(info, new Callable<Style>() {
+            public Style call() throws Exception {
+                //JD: it is important that we call the SLDParser(File) constructor because
+                // if not the sourceURL will not be set which will mean it will fail to 
+                //resolve relative references to online resources
+                File styleFile = GeoserverDataDirectory.findStyleFile( info.getFilename() );
+                if ( styleFile == null ){
+                    throw new IOException( "No such file: " + info.getFilename());
                 }
+                
+                Style style = Styles.style(Styles.parse(styleFile, info.getSLDVersion()));
+                
+                //set the name of the style to be the name of hte style metadata
+                // remove this when wms works off style info
+                style.setName( info.getName() );
+                return style;
             }
-        }
-        
-        return style;
+        });
     }
     
     /**
@@ -1230,7 +1340,7 @@ public class ResourcePool {
      * @param info The style metadata.
      */
     public void clear(StyleInfo info) {
-        styleCache.remove( info );
+        styles.remove( info );
     }
     
     /**
@@ -1331,14 +1441,14 @@ public class ResourcePool {
      *
      */
     public void dispose() {
-        crsCache.clear();
-        dataStoreCache.clear();
-        featureTypeCache.clear();
-        featureTypeAttributeCache.clear();
-        coverageReaderCache.clear();
-        hintCoverageReaderCache.clear();
-        wmsCache.clear();
-        styleCache.clear();
+        crss.clear();
+        dataStores.clear();
+        featureTypes.clear();
+        featureTypeAttributes.clear();
+        coverageReaders.clear();
+        hintCoverageReaders.clear();
+        webMapServers.clear();
+        styles.clear();
         listeners.clear();
     }
     
@@ -1353,6 +1463,7 @@ public class ResourcePool {
             FeatureType featureType = (FeatureType) entry.getValue();
             FeatureTypeInfo info = catalog.getFeatureType(id);
             LOGGER.info( "Disposing feature type '" + info.getName() + "'");
+            featureTypes.getStatistics().evicted();
             
             fireDisposed(info, featureType);
             return super.removeLRU(entry);
@@ -1363,6 +1474,7 @@ public class ResourcePool {
         protected boolean removeLRU(LinkEntry entry) {
             String name = (String) entry.getKey();
             dispose(name,(DataAccess) entry.getValue());
+            dataStores.getStatistics().evicted();
             
             return super.removeLRU(entry);
         }
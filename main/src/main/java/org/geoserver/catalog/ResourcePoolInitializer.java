@@ -29,6 +29,7 @@ public class ResourcePoolInitializer implements GeoServerInitializer {
         if (cacheSize > 0) {
             gs.getCatalog().getResourcePool().setFeatureTypeCacheSize(cacheSize);
         }
+        configureStyleAndCRSCaches(global);
         
         geoServer.addListener(new ConfigurationListenerAdapter() {
             @Override
@@ -39,9 +40,27 @@ public class ResourcePoolInitializer implements GeoServerInitializer {
                     Number featureTypeCacheSize = (Number) newValues.get(i);
                     gs.getCatalog().getResourcePool().setFeatureTypeCacheSize(featureTypeCacheSize.intValue());
                 }
+                if (propertyNames.contains("styleCacheSize") || propertyNames.contains("cRSCacheSize")
+                        || propertyNames.contains("cacheIdleTime")) {
+                    configureStyleAndCRSCaches(global);
+                }
                 gs.getCatalog().getResourcePool().setCoverageExecutor(global.getCoverageAccess().getThreadPoolExecutor());
             }
         });
     }
     
+    /**
+     * Applies the style and CRS cache settings, non positive sizes leave the pool defaults alone
+     */
+    void configureStyleAndCRSCaches(GeoServerInfo global) {
+        ResourcePool pool = gs.getCatalog().getResourcePool();
+        if (global.getStyleCacheSize() > 0) {
+            pool.setStyleCacheSize(global.getStyleCacheSize());
+        }
+        if (global.getCRSCacheSize() > 0) {
+            pool.setCRSCacheSize(global.getCRSCacheSize());
+        }
+        pool.setCacheIdleTime(global.getCacheIdleTime());
+    }
+    
 }
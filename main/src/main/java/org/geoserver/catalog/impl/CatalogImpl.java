@@ -93,7 +93,7 @@ public class CatalogImpl implements Catalog {
     protected GeoServerResourceLoader resourceLoader;
 
     public CatalogImpl() {
-        facade = new DefaultCatalogFacade(this);
+        facade = new IndexedCatalogFacade(this);
         resourcePool = new ResourcePool(this);
     }
     
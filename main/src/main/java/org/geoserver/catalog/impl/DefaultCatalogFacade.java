@@ -29,6 +29,7 @@ import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.MapInfo;
 import org.geoserver.catalog.MetadataMap;
 import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ReadOnlyCatalogAccess;
 import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.catalog.StoreInfo;
 import org.geoserver.catalog.StyleInfo;
@@ -166,7 +167,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
         for (Iterator i = l.iterator(); i.hasNext();) {
             StoreInfo store = (StoreInfo) i.next();
             if (id.equals(store.getId())) {
-                return ModificationProxy.create( (T) store, clazz );
+                return proxy( (T) store, clazz );
             }
         }
 
@@ -188,7 +189,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
             }
             
             if ( matches.size() == 1 ) {
-                return ModificationProxy.create( (T) matches.get( 0 ), clazz);
+                return proxy( (T) matches.get( 0 ), clazz);
             }
         }
         else {
@@ -196,7 +197,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
             for (Iterator i = l.iterator(); i.hasNext();) {
                 StoreInfo store = (StoreInfo) i.next();
                 if (name.equals(store.getName()) && store.getWorkspace().equals( workspace )) {
-                    return ModificationProxy.create( (T) store, clazz );
+                    return proxy( (T) store, clazz );
                 }
             }
         }
@@ -222,17 +223,17 @@ public class DefaultCatalogFacade implements CatalogFacade {
             }
         }
 
-        return ModificationProxy.createList(matches,clazz);
+        return proxyList(matches,clazz);
     }
     
     public List getStores(Class clazz) {
-        return ModificationProxy.createList(lookup(clazz, stores) , clazz);
+        return proxyList(lookup(clazz, stores) , clazz);
     }
     
     public DataStoreInfo getDefaultDataStore(WorkspaceInfo workspace) {
         if(defaultStores.containsKey(workspace.getId())) {
             DataStoreInfo defaultStore = defaultStores.get(workspace.getId());
-            return ModificationProxy.create(defaultStore, DataStoreInfo.class);
+            return proxy(defaultStore, DataStoreInfo.class);
         } else {
             return null;
         }
@@ -286,7 +287,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
         for (Iterator i = l.iterator(); i.hasNext();) {
             ResourceInfo resource = (ResourceInfo) i.next();
             if (id.equals(resource.getId())) {
-                return ModificationProxy.create((T) resource, clazz );
+                return proxy((T) resource, clazz );
             }
         }
 
@@ -308,7 +309,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
             }
             
             if ( matches.size() == 1 ) {
-                return ModificationProxy.create( (T) matches.get( 0 ), clazz );
+                return proxy( (T) matches.get( 0 ), clazz );
             }
         }
         else {
@@ -317,7 +318,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
                 if (name.equals(resource.getName())) {
                     NamespaceInfo namespace1 = resource.getNamespace();
                     if (namespace1 != null && namespace1.equals( namespace )) {
-                            return ModificationProxy.create( (T) resource, clazz );
+                            return proxy( (T) resource, clazz );
                     }
                 }
             }
@@ -327,7 +328,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
     }
  
     public List getResources(Class clazz) {
-        return ModificationProxy.createList( lookup(clazz,resources), clazz );
+        return proxyList( lookup(clazz,resources), clazz );
     }
     
     public List getResourcesByNamespace(NamespaceInfo namespace, Class clazz) {
@@ -352,7 +353,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
             }
         }
 
-        return ModificationProxy.createList( matches, clazz );
+        return proxyList( matches, clazz );
     }
     
     public <T extends ResourceInfo> T getResourceByStore(StoreInfo store,
@@ -361,7 +362,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
         for (Iterator r = all.iterator(); r.hasNext(); ) {
             ResourceInfo resource = (ResourceInfo) r.next();
             if ( name.equals( resource.getName() ) && store.equals( resource.getStore() ) ) {
-                return ModificationProxy.create((T)resource, clazz);
+                return proxy((T)resource, clazz);
             }
         }
         
@@ -380,7 +381,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
             }
         }
 
-        return  ModificationProxy.createList( matches, clazz );
+        return  proxyList( matches, clazz );
     }
     
     //
@@ -408,7 +409,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
     public LayerInfo getLayer(String id) {
         for (LayerInfo layer : layers) {
             if (id.equals(layer.getId())) {
-                return ModificationProxy.create( layer, LayerInfo.class );
+                return proxy( layer, LayerInfo.class );
             }
         }
 
@@ -418,7 +419,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
     public LayerInfo getLayerByName(String name) {
         for (LayerInfo layer : layers) {
             if ( name.equals( layer.getName() ) ) {
-                return ModificationProxy.create( layer, LayerInfo.class );
+                return proxy( layer, LayerInfo.class );
             }
         }
       
@@ -433,7 +434,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
             }
         }
 
-        return ModificationProxy.createList(matches,LayerInfo.class);
+        return proxyList(matches,LayerInfo.class);
     }
     
     public List<LayerInfo> getLayers(StyleInfo style) {
@@ -444,11 +445,11 @@ public class DefaultCatalogFacade implements CatalogFacade {
             }
         }
 
-        return ModificationProxy.createList(matches,LayerInfo.class);
+        return proxyList(matches,LayerInfo.class);
     }
     
     public List<LayerInfo> getLayers() {
-        return ModificationProxy.createList( new ArrayList(layers), LayerInfo.class );
+        return proxyList( new ArrayList(layers), LayerInfo.class );
     }
     
     //
@@ -480,7 +481,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
     public MapInfo getMap(String id) {
         for (MapInfo map : maps) {
             if (id.equals(map.getId())) {
-                return ModificationProxy.create(map,MapInfo.class);
+                return proxy(map,MapInfo.class);
             }
         }
 
@@ -490,7 +491,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
     public MapInfo getMapByName(String name) {
         for (MapInfo map : maps) {
             if (name.equals(map.getName())) {
-                return ModificationProxy.create(map,MapInfo.class);
+                return proxy(map,MapInfo.class);
             }
         }
 
@@ -498,7 +499,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
     }
     
     public List<MapInfo> getMaps() {
-        return ModificationProxy.createList( new ArrayList(maps), MapInfo.class );
+        return proxyList( new ArrayList(maps), MapInfo.class );
     }
     
     //
@@ -533,13 +534,13 @@ public class DefaultCatalogFacade implements CatalogFacade {
     }
     
     public List<LayerGroupInfo> getLayerGroups() {
-        return ModificationProxy.createList( new ArrayList(layerGroups), LayerGroupInfo.class );
+        return proxyList( new ArrayList(layerGroups), LayerGroupInfo.class );
     }
     
     public LayerGroupInfo getLayerGroup(String id) {
         for (LayerGroupInfo layerGroup : layerGroups ) {
             if ( id.equals( layerGroup.getId() ) ) {
-                return ModificationProxy.create(layerGroup,LayerGroupInfo.class);
+                return proxy(layerGroup,LayerGroupInfo.class);
             }
         }
         
@@ -549,7 +550,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
     public LayerGroupInfo getLayerGroupByName(String name) {
         for (LayerGroupInfo layerGroup : layerGroups ) {
             if ( name.equals( layerGroup.getName() ) ) {
-                return ModificationProxy.create(layerGroup,LayerGroupInfo.class);
+                return proxy(layerGroup,LayerGroupInfo.class);
             }
         }
         
@@ -601,7 +602,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
     
     public NamespaceInfo getDefaultNamespace() {
         return namespaces.containsKey(null) ? 
-                ModificationProxy.create(namespaces.get( null ),NamespaceInfo.class) : null;
+                proxy(namespaces.get( null ),NamespaceInfo.class) : null;
     }
 
     public void setDefaultNamespace(NamespaceInfo defaultNamespace) {
@@ -619,7 +620,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
     public NamespaceInfo getNamespace(String id) {
         for (NamespaceInfo namespace : namespaces.values() ) {
             if (id.equals(namespace.getId())) {
-                return ModificationProxy.create( namespace, NamespaceInfo.class ); 
+                return proxy( namespace, NamespaceInfo.class ); 
             }
         }
 
@@ -628,13 +629,13 @@ public class DefaultCatalogFacade implements CatalogFacade {
 
     public NamespaceInfo getNamespaceByPrefix(String prefix) {
         NamespaceInfo ns = namespaces.get( prefix ); 
-        return ns != null ? ModificationProxy.create(ns, NamespaceInfo.class ) : null;
+        return ns != null ? proxy(ns, NamespaceInfo.class ) : null;
     }
 
     public NamespaceInfo getNamespaceByURI(String uri) {
         for (NamespaceInfo namespace : namespaces.values() ) {
             if (uri.equals(namespace.getURI())) {
-                return ModificationProxy.create( namespace, NamespaceInfo.class );
+                return proxy( namespace, NamespaceInfo.class );
             }
         }
 
@@ -649,7 +650,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
             ns.add( e.getValue() );
         }
         
-        return ModificationProxy.createList( ns, NamespaceInfo.class );
+        return proxyList( ns, NamespaceInfo.class );
     }
 
     //
@@ -691,7 +692,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
 
     public WorkspaceInfo getDefaultWorkspace() {
         return workspaces.containsKey( null ) ? 
-                ModificationProxy.create( workspaces.get( null ), WorkspaceInfo.class ) : null;
+                proxy( workspaces.get( null ), WorkspaceInfo.class ) : null;
     }
     
     public void setDefaultWorkspace(WorkspaceInfo workspace) {
@@ -727,13 +728,13 @@ public class DefaultCatalogFacade implements CatalogFacade {
             ws.add( e.getValue() );
         }
         
-        return ModificationProxy.createList( ws, WorkspaceInfo.class );
+        return proxyList( ws, WorkspaceInfo.class );
     }
     
     public WorkspaceInfo getWorkspace(String id) {
         for ( WorkspaceInfo ws : workspaces.values() ) {
             if ( id.equals( ws.getId() ) ) {
-                return ModificationProxy.create(ws,WorkspaceInfo.class);
+                return proxy(ws,WorkspaceInfo.class);
             }
         }
         
@@ -742,7 +743,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
     
     public WorkspaceInfo getWorkspaceByName(String name) {
         return workspaces.containsKey(name) ? 
-                ModificationProxy.create( workspaces.get( name ), WorkspaceInfo.class ) : null;
+                proxy( workspaces.get( name ), WorkspaceInfo.class ) : null;
     }
     
     //
@@ -774,7 +775,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
         for (Iterator s = styles.iterator(); s.hasNext();) {
             StyleInfo style = (StyleInfo) s.next();
             if (id.equals(style.getId())) {
-                return ModificationProxy.create(style,StyleInfo.class);
+                return proxy(style,StyleInfo.class);
             }
         }
 
@@ -785,7 +786,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
         for (Iterator s = styles.iterator(); s.hasNext();) {
             StyleInfo style = (StyleInfo) s.next();
             if (name.equals(style.getName())) {
-                return ModificationProxy.create(style,StyleInfo.class);
+                return proxy(style,StyleInfo.class);
             }
         }
 
@@ -793,12 +794,36 @@ public class DefaultCatalogFacade implements CatalogFacade {
     }
 
     public List getStyles() {
-        return ModificationProxy.createList(styles,StyleInfo.class);
+        return proxyList(styles,StyleInfo.class);
     }
     
     //
     // Utilities
     //
+    /**
+     * Wraps a catalog object in the proxy handed out to the callers, a read only one if 
+     * {@link ReadOnlyCatalogAccess} is enabled, a {@link ModificationProxy} otherwise
+     */
+    protected <T> T proxy(T object, Class<T> clazz) {
+        if (object == null) {
+            return null;
+        }
+        if (ReadOnlyCatalogAccess.get()) {
+            return ReadOnlyProxy.create(object, clazz);
+        }
+        return ModificationProxy.create(object, clazz);
+    }
+    
+    /**
+     * Same as {@link #proxy(Object, Class)} for a list of catalog objects
+     */
+    protected <T> List<T> proxyList(List<T> list, Class<T> clazz) {
+        if (ReadOnlyCatalogAccess.get()) {
+            return ReadOnlyProxy.createList(list, clazz);
+        }
+        return ModificationProxy.createList(list, clazz);
+    }
+    
     public static <T> T unwrap(T obj) {
         return ModificationProxy.unwrap(obj);
     }
@@ -1024,6 +1049,13 @@ public class DefaultCatalogFacade implements CatalogFacade {
         }
     }
     
+    /**
+     * Called on the target facade after its contents have been replaced by an optimized
+     * {@link #syncTo(CatalogFacade)}, subclasses can override to rebuild any derived state.
+     */
+    protected void synced() {
+    }
+    
     public void syncTo(CatalogFacade dao) {
         if (dao instanceof DefaultCatalogFacade) {
             //do an optimized sync
@@ -1038,6 +1070,7 @@ public class DefaultCatalogFacade implements CatalogFacade {
             other.maps = maps;
             other.layerGroups = layerGroups;
             other.styles = styles;
+            other.synced();
         }
         else {
             //do a manual import
@@ -0,0 +1,640 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.MapInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+
+/**
+ * Catalog facade that keeps the same in memory storage as {@link DefaultCatalogFacade} but
+ * maintains hash indexes on top of it so that lookups by id and by name do not require a
+ * linear scan of the catalog contents.
+ * <p>
+ * Indexes are kept in concurrent maps holding copy on write lists, readers never lock, while
+ * modifications to the indexes are serialized among themselves. Indexes are updated on add,
+ * remove and save (to track renames), and are rebuilt from scratch when the facade is resolved
+ * or synched from another facade.
+ * </p>
+ */
+public class IndexedCatalogFacade extends DefaultCatalogFacade {
+
+    /**
+     * Guards modifications of the indexes, lookups do not use it
+     */
+    private transient Object indexLock = new Object();
+
+    // all the indexes are transient so that they are not persisted along with the catalog,
+    // they get rebuilt on resolve()
+    transient Index storesById;
+
+    transient Index storesByName;
+
+    transient Index storesByWorkspaceAndName;
+
+    transient Index resourcesById;
+
+    transient Index resourcesByName;
+
+    transient Index resourcesByNamespaceAndName;
+
+    transient Index resourcesByStoreAndName;
+
+    transient Index layersById;
+
+    transient Index layersByName;
+
+    transient Index layersByResource;
+
+    transient Index layersByStyle;
+
+    transient Index layerGroupsById;
+
+    transient Index layerGroupsByName;
+
+    transient Index stylesById;
+
+    transient Index stylesByName;
+
+    transient Index mapsById;
+
+    transient Index mapsByName;
+
+    transient Index namespacesById;
+
+    transient Index namespacesByURI;
+
+    transient Index workspacesById;
+
+    public IndexedCatalogFacade(Catalog catalog) {
+        super(catalog);
+        initIndexes();
+    }
+
+    //
+    // Stores
+    //
+    @Override
+    public StoreInfo add(StoreInfo store) {
+        StoreInfo added = super.add(store);
+        indexed(store);
+        return added;
+    }
+
+    @Override
+    public void remove(StoreInfo store) {
+        super.remove(store);
+        unindexed(unwrap(store));
+    }
+
+    @Override
+    public <T extends StoreInfo> T getStore(String id, Class<T> clazz) {
+        return proxy(storesById.first(id, clazz), clazz);
+    }
+
+    @Override
+    public <T extends StoreInfo> T getStoreByName(WorkspaceInfo workspace, String name,
+            Class<T> clazz) {
+        if (workspace == ANY_WORKSPACE) {
+            return proxy(storesByName.unique(name, clazz), clazz);
+        }
+        if (workspace == null) {
+            return null;
+        }
+        return proxy(storesByWorkspaceAndName.first(key(workspace.getId(), name), clazz), clazz);
+    }
+
+    //
+    // Resources
+    //
+    @Override
+    public ResourceInfo add(ResourceInfo resource) {
+        ResourceInfo added = super.add(resource);
+        indexed(resource);
+        return added;
+    }
+
+    @Override
+    public void remove(ResourceInfo resource) {
+        super.remove(resource);
+        unindexed(unwrap(resource));
+    }
+
+    @Override
+    public <T extends ResourceInfo> T getResource(String id, Class<T> clazz) {
+        return proxy(resourcesById.first(id, clazz), clazz);
+    }
+
+    @Override
+    public <T extends ResourceInfo> T getResourceByName(NamespaceInfo namespace, String name,
+            Class<T> clazz) {
+        if (namespace == ANY_NAMESPACE) {
+            return proxy(resourcesByName.unique(name, clazz), clazz);
+        }
+        if (namespace == null) {
+            return null;
+        }
+        return proxy(resourcesByNamespaceAndName.first(key(namespace.getId(), name), clazz),
+                clazz);
+    }
+
+    @Override
+    public <T extends ResourceInfo> T getResourceByStore(StoreInfo store, String name,
+            Class<T> clazz) {
+        return proxy(resourcesByStoreAndName.first(key(store.getId(), name), clazz), clazz);
+    }
+
+    //
+    // Layers
+    //
+    @Override
+    public LayerInfo add(LayerInfo layer) {
+        LayerInfo added = super.add(layer);
+        indexed(layer);
+        return added;
+    }
+
+    @Override
+    public void remove(LayerInfo layer) {
+        super.remove(layer);
+        unindexed(unwrap(layer));
+    }
+
+    @Override
+    public LayerInfo getLayer(String id) {
+        return proxy(layersById.first(id, LayerInfo.class), LayerInfo.class);
+    }
+
+    @Override
+    public LayerInfo getLayerByName(String name) {
+        return proxy(layersByName.first(name, LayerInfo.class), LayerInfo.class);
+    }
+
+    @Override
+    public List<LayerInfo> getLayers(ResourceInfo resource) {
+        return proxyList(
+                layersByResource.all(resource.getId(), LayerInfo.class), LayerInfo.class);
+    }
+
+    @Override
+    public List<LayerInfo> getLayers(StyleInfo style) {
+        return proxyList(layersByStyle.all(style.getId(), LayerInfo.class),
+                LayerInfo.class);
+    }
+
+    //
+    // Maps
+    //
+    @Override
+    public MapInfo add(MapInfo map) {
+        MapInfo added = super.add(map);
+        indexed(map);
+        return added;
+    }
+
+    @Override
+    public void remove(MapInfo map) {
+        super.remove(map);
+        unindexed(unwrap(map));
+    }
+
+    @Override
+    public MapInfo getMap(String id) {
+        return proxy(mapsById.first(id, MapInfo.class), MapInfo.class);
+    }
+
+    @Override
+    public MapInfo getMapByName(String name) {
+        return proxy(mapsByName.first(name, MapInfo.class), MapInfo.class);
+    }
+
+    //
+    // Layer groups
+    //
+    @Override
+    public LayerGroupInfo add(LayerGroupInfo layerGroup) {
+        LayerGroupInfo added = super.add(layerGroup);
+        indexed(layerGroup);
+        return added;
+    }
+
+    @Override
+    public void remove(LayerGroupInfo layerGroup) {
+        super.remove(layerGroup);
+        unindexed(unwrap(layerGroup));
+    }
+
+    @Override
+    public LayerGroupInfo getLayerGroup(String id) {
+        return proxy(layerGroupsById.first(id, LayerGroupInfo.class), LayerGroupInfo.class);
+    }
+
+    @Override
+    public LayerGroupInfo getLayerGroupByName(String name) {
+        return proxy(layerGroupsByName.first(name, LayerGroupInfo.class), LayerGroupInfo.class);
+    }
+
+    //
+    // Namespaces
+    //
+    @Override
+    public NamespaceInfo add(NamespaceInfo namespace) {
+        NamespaceInfo added = super.add(namespace);
+        indexed(namespace);
+        return added;
+    }
+
+    @Override
+    public void remove(NamespaceInfo namespace) {
+        super.remove(namespace);
+        unindexed(unwrap(namespace));
+    }
+
+    @Override
+    public NamespaceInfo getNamespace(String id) {
+        return proxy(namespacesById.first(id, NamespaceInfo.class), NamespaceInfo.class);
+    }
+
+    @Override
+    public NamespaceInfo getNamespaceByURI(String uri) {
+        return proxy(namespacesByURI.first(uri, NamespaceInfo.class), NamespaceInfo.class);
+    }
+
+    //
+    // Workspaces
+    //
+    @Override
+    public WorkspaceInfo add(WorkspaceInfo workspace) {
+        WorkspaceInfo added = super.add(workspace);
+        indexed(workspace);
+        return added;
+    }
+
+    @Override
+    public void remove(WorkspaceInfo workspace) {
+        super.remove(workspace);
+        unindexed(unwrap(workspace));
+    }
+
+    @Override
+    public WorkspaceInfo getWorkspace(String id) {
+        return proxy(workspacesById.first(id, WorkspaceInfo.class), WorkspaceInfo.class);
+    }
+
+    //
+    // Styles
+    //
+    @Override
+    public StyleInfo add(StyleInfo style) {
+        StyleInfo added = super.add(style);
+        indexed(style);
+        return added;
+    }
+
+    @Override
+    public void remove(StyleInfo style) {
+        super.remove(style);
+        unindexed(unwrap(style));
+    }
+
+    @Override
+    public StyleInfo getStyle(String id) {
+        return proxy(stylesById.first(id, StyleInfo.class), StyleInfo.class);
+    }
+
+    @Override
+    public StyleInfo getStyleByName(String name) {
+        return proxy(stylesByName.first(name, StyleInfo.class), StyleInfo.class);
+    }
+
+    //
+    // Life cycle
+    //
+    @Override
+    protected void saved(CatalogInfo object) {
+        CatalogInfo real = unwrap(object);
+
+        // gather the entries of the object before the changes are committed, a resource
+        // rename also renames the layers publishing it
+        List<Entry> before = entries(real);
+        List<LayerInfo> dependents = Collections.emptyList();
+        if (real instanceof ResourceInfo) {
+            dependents = layersByResource.all(real.getId(), LayerInfo.class);
+            for (LayerInfo l : dependents) {
+                before.addAll(entries(l));
+            }
+        }
+
+        super.saved(object);
+
+        List<Entry> after = entries(real);
+        for (LayerInfo l : dependents) {
+            after.addAll(entries(l));
+        }
+        synchronized (indexLock) {
+            for (Entry e : before) {
+                e.index.remove(e.key, e.info);
+            }
+            for (Entry e : after) {
+                e.index.add(e.key, e.info);
+            }
+        }
+    }
+
+    @Override
+    public void resolve() {
+        super.resolve();
+        reindex();
+    }
+
+    @Override
+    protected void synced() {
+        reindex();
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        synchronized (indexLock) {
+            for (Index index : indexes()) {
+                index.clear();
+            }
+        }
+    }
+
+    /**
+     * Rebuilds all the indexes from the contents of the facade.
+     */
+    protected void reindex() {
+        if (indexLock == null) {
+            // depersisted by xstream
+            indexLock = new Object();
+        }
+        synchronized (indexLock) {
+            initIndexes();
+
+            for (Iterator i = stores.values().iterator(); i.hasNext();) {
+                indexed((CatalogInfo) i.next());
+            }
+            for (Iterator i = resources.values().iterator(); i.hasNext();) {
+                indexed((CatalogInfo) i.next());
+            }
+            for (Map.Entry<String, WorkspaceInfo> e : workspaces.entrySet()) {
+                if (e.getKey() != null && !Catalog.DEFAULT.equals(e.getKey())) {
+                    indexed(e.getValue());
+                }
+            }
+            for (Map.Entry<String, NamespaceInfo> e : namespaces.entrySet()) {
+                if (e.getKey() != null && !Catalog.DEFAULT.equals(e.getKey())) {
+                    indexed(e.getValue());
+                }
+            }
+            for (LayerInfo l : layers) {
+                indexed(l);
+            }
+            for (LayerGroupInfo lg : layerGroups) {
+                indexed(lg);
+            }
+            for (StyleInfo s : styles) {
+                indexed(s);
+            }
+            for (MapInfo m : maps) {
+                indexed(m);
+            }
+        }
+    }
+
+    void initIndexes() {
+        storesById = new Index();
+        storesByName = new Index();
+        storesByWorkspaceAndName = new Index();
+        resourcesById = new Index();
+        resourcesByName = new Index();
+        resourcesByNamespaceAndName = new Index();
+        resourcesByStoreAndName = new Index();
+        layersById = new Index();
+        layersByName = new Index();
+        layersByResource = new Index();
+        layersByStyle = new Index();
+        layerGroupsById = new Index();
+        layerGroupsByName = new Index();
+        stylesById = new Index();
+        stylesByName = new Index();
+        mapsById = new Index();
+        mapsByName = new Index();
+        namespacesById = new Index();
+        namespacesByURI = new Index();
+        workspacesById = new Index();
+    }
+
+    Index[] indexes() {
+        return new Index[] { storesById, storesByName, storesByWorkspaceAndName, resourcesById,
+                resourcesByName, resourcesByNamespaceAndName, resourcesByStoreAndName, layersById,
+                layersByName, layersByResource, layersByStyle, layerGroupsById, layerGroupsByName,
+                stylesById, stylesByName, mapsById, mapsByName, namespacesById, namespacesByURI,
+                workspacesById };
+    }
+
+    void indexed(CatalogInfo info) {
+        List<Entry> entries = entries(info);
+        synchronized (indexLock) {
+            for (Entry e : entries) {
+                e.index.add(e.key, e.info);
+            }
+        }
+    }
+
+    void unindexed(CatalogInfo info) {
+        List<Entry> entries = entries(info);
+        synchronized (indexLock) {
+            for (Entry e : entries) {
+                e.index.remove(e.key, e.info);
+            }
+        }
+    }
+
+    /**
+     * Computes the index entries of an object given its current state.
+     */
+    List<Entry> entries(CatalogInfo info) {
+        List<Entry> entries = new ArrayList<Entry>();
+        if (info instanceof StoreInfo) {
+            StoreInfo store = (StoreInfo) info;
+            entries.add(new Entry(storesById, store.getId(), store));
+            entries.add(new Entry(storesByName, store.getName(), store));
+            if (store.getWorkspace() != null) {
+                entries.add(new Entry(storesByWorkspaceAndName, key(store.getWorkspace().getId(),
+                        store.getName()), store));
+            }
+        } else if (info instanceof ResourceInfo) {
+            ResourceInfo resource = (ResourceInfo) info;
+            entries.add(new Entry(resourcesById, resource.getId(), resource));
+            entries.add(new Entry(resourcesByName, resource.getName(), resource));
+            if (resource.getNamespace() != null) {
+                entries.add(new Entry(resourcesByNamespaceAndName, key(resource.getNamespace()
+                        .getId(), resource.getName()), resource));
+            }
+            if (resource.getStore() != null) {
+                entries.add(new Entry(resourcesByStoreAndName, key(resource.getStore().getId(),
+                        resource.getName()), resource));
+            }
+        } else if (info instanceof LayerInfo) {
+            LayerInfo layer = (LayerInfo) info;
+            entries.add(new Entry(layersById, layer.getId(), layer));
+            if (layer.getResource() != null) {
+                entries.add(new Entry(layersByName, layer.getName(), layer));
+                entries.add(new Entry(layersByResource, layer.getResource().getId(), layer));
+            }
+            if (layer.getDefaultStyle() != null) {
+                entries.add(new Entry(layersByStyle, layer.getDefaultStyle().getId(), layer));
+            }
+            for (StyleInfo style : layer.getStyles()) {
+                if (style != null) {
+                    entries.add(new Entry(layersByStyle, style.getId(), layer));
+                }
+            }
+        } else if (info instanceof LayerGroupInfo) {
+            entries.add(new Entry(layerGroupsById, info.getId(), info));
+            entries.add(new Entry(layerGroupsByName, ((LayerGroupInfo) info).getName(), info));
+        } else if (info instanceof StyleInfo) {
+            entries.add(new Entry(stylesById, info.getId(), info));
+            entries.add(new Entry(stylesByName, ((StyleInfo) info).getName(), info));
+        } else if (info instanceof MapInfo) {
+            entries.add(new Entry(mapsById, info.getId(), info));
+            entries.add(new Entry(mapsByName, ((MapInfo) info).getName(), info));
+        } else if (info instanceof NamespaceInfo) {
+            entries.add(new Entry(namespacesById, info.getId(), info));
+            entries.add(new Entry(namespacesByURI, ((NamespaceInfo) info).getURI(), info));
+        } else if (info instanceof WorkspaceInfo) {
+            entries.add(new Entry(workspacesById, info.getId(), info));
+        }
+        return entries;
+    }
+
+    static String key(String prefix, String name) {
+        if (prefix == null || name == null) {
+            return null;
+        }
+        return prefix + ":" + name;
+    }
+
+    /**
+     * A single index entry, an object registered under a key in a specific index
+     */
+    static class Entry {
+        Index index;
+
+        String key;
+
+        CatalogInfo info;
+
+        Entry(Index index, String key, CatalogInfo info) {
+            this.index = index;
+            this.key = key;
+            this.info = info;
+        }
+    }
+
+    /**
+     * A concurrent multi valued map from key to catalog objects. Values are identified by id
+     * when removed, since the catalog objects equals method compares the full state.
+     */
+    static class Index {
+
+        ConcurrentHashMap<String, List<CatalogInfo>> map = new ConcurrentHashMap<String, List<CatalogInfo>>();
+
+        void add(String key, CatalogInfo info) {
+            if (key == null) {
+                return;
+            }
+            List<CatalogInfo> values = map.get(key);
+            if (values == null) {
+                values = new CopyOnWriteArrayList<CatalogInfo>();
+                map.put(key, values);
+            }
+            for (CatalogInfo value : values) {
+                if (value == info) {
+                    return;
+                }
+            }
+            values.add(info);
+        }
+
+        void remove(String key, CatalogInfo info) {
+            if (key == null) {
+                return;
+            }
+            List<CatalogInfo> values = map.get(key);
+            if (values == null) {
+                return;
+            }
+            for (CatalogInfo value : values) {
+                if (value == info
+                        || (value.getId() != null && value.getId().equals(info.getId()))) {
+                    values.remove(value);
+                    break;
+                }
+            }
+            if (values.isEmpty()) {
+                map.remove(key);
+            }
+        }
+
+        <T> T first(String key, Class<T> clazz) {
+            if (key == null) {
+                return null;
+            }
+            List<CatalogInfo> values = map.get(key);
+            if (values != null) {
+                for (CatalogInfo value : values) {
+                    if (clazz.isInstance(value)) {
+                        return (T) value;
+                    }
+                }
+            }
+            return null;
+        }
+
+        <T> T unique(String key, Class<T> clazz) {
+            List<T> matches = all(key, clazz);
+            return matches.size() == 1 ? matches.get(0) : null;
+        }
+
+        <T> List<T> all(String key, Class<T> clazz) {
+            List<T> matches = new ArrayList<T>();
+            if (key == null) {
+                return matches;
+            }
+            List<CatalogInfo> values = map.get(key);
+            if (values != null) {
+                for (CatalogInfo value : values) {
+                    if (clazz.isInstance(value)) {
+                        matches.add((T) value);
+                    }
+                }
+            }
+            return matches;
+        }
+
+        void clear() {
+            map.clear();
+        }
+    }
+}
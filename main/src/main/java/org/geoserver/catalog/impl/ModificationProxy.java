@@ -481,7 +481,7 @@ public class ModificationProxy implements InvocationHandler, Serializable {
      * <p>
      * This method is safe in that if the object passed in is not a proxy it is
      * simply returned. If the proxy is not an instance of {@link ModificationProxy}
-     * it is also returned untouched. 
+     * (or {@link ReadOnlyProxy}) it is also returned untouched. 
      *</p>
      * 
      */
@@ -491,6 +491,10 @@ public class ModificationProxy implements InvocationHandler, Serializable {
             if ( h != null ) {
                 return (T) h.getProxyObject();
             }
+            ReadOnlyProxy ro = ReadOnlyProxy.handler( object );
+            if ( ro != null ) {
+                return (T) ro.getProxyObject();
+            }
         }
         if ( object instanceof ProxyList ) {
             return (T) ((ProxyList)object).proxyList;
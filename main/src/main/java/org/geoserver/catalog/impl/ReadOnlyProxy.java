@@ -0,0 +1,252 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.Info;
+import org.geoserver.catalog.ReadOnlyCatalogAccess;
+
+/**
+ * A lightweight, read only alternative to {@link ModificationProxy}, handed out by the catalog
+ * facades when {@link ReadOnlyCatalogAccess} is enabled.
+ * <p>
+ * Setters throw an {@link UnsupportedOperationException}, collections and maps are returned as
+ * unmodifiable views of the live ones instead of being copied, and other catalog objects are
+ * returned wrapped in read only proxies as well. Unlike {@link ModificationProxy} the handler
+ * keeps no state besides the proxied object, the decision of how to handle each method is taken
+ * once and cached, and the proxy constructors are cached too, making the proxies cheap to create
+ * and to call.
+ * </p>
+ * <p>
+ * Read only proxies cannot be saved back into the catalog, code that needs to modify catalog
+ * objects must look them up with the read only access disabled.
+ * </p>
+ */
+public class ReadOnlyProxy implements InvocationHandler {
+
+    static final int DELEGATE = 0;
+
+    static final int SETTER = 1;
+
+    static final int INFO = 2;
+
+    static final int LIST = 3;
+
+    static final int SORTED_SET = 4;
+
+    static final int SET = 5;
+
+    static final int COLLECTION = 6;
+
+    static final int SORTED_MAP = 7;
+
+    static final int MAP = 8;
+
+    /**
+     * A map or collection of a concrete type, which has to be copied
+     */
+    static final int COPY = 9;
+
+    static final ConcurrentHashMap<Method, Integer> METHODS = new ConcurrentHashMap<Method, Integer>();
+
+    static final ConcurrentHashMap<List<Class>, Constructor> CONSTRUCTORS = new ConcurrentHashMap<List<Class>, Constructor>();
+
+    final Object proxyObject;
+
+    ReadOnlyProxy(Object proxyObject) {
+        this.proxyObject = proxyObject;
+    }
+
+    public Object getProxyObject() {
+        return proxyObject;
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        Integer kind = METHODS.get(method);
+        if (kind == null) {
+            kind = classify(method);
+            METHODS.put(method, kind);
+        }
+
+        if (kind == SETTER) {
+            throw new UnsupportedOperationException("Cannot call " + method.getName()
+                    + ", the catalog object has been looked up in read only mode");
+        }
+
+        Object result;
+        try {
+            result = method.invoke(proxyObject, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+        if (result == null) {
+            return null;
+        }
+
+        switch (kind) {
+        case INFO:
+            return handler(result) != null ? result : create(result, (Class) method
+                    .getReturnType());
+        case LIST:
+            return Collections.unmodifiableList((List) result);
+        case SORTED_SET:
+            return Collections.unmodifiableSortedSet((SortedSet) result);
+        case SET:
+            return Collections.unmodifiableSet((Set) result);
+        case COLLECTION:
+            return Collections.unmodifiableCollection((Collection) result);
+        case SORTED_MAP:
+            return Collections.unmodifiableSortedMap((SortedMap) result);
+        case MAP:
+            return Collections.unmodifiableMap((Map) result);
+        case COPY:
+            return copy(result);
+        default:
+            return result;
+        }
+    }
+
+    /**
+     * Decides how a method has to be handled based on its name and return type
+     */
+    static Integer classify(Method method) {
+        String name = method.getName();
+        Class<?> type = method.getReturnType();
+        Class[] params = method.getParameterTypes();
+        if (name.startsWith("set") && params.length == 1) {
+            return SETTER;
+        }
+        if (params.length > 0 || !(name.startsWith("get") || name.startsWith("is"))) {
+            return DELEGATE;
+        }
+        if (Info.class.isAssignableFrom(type) && !Catalog.class.isAssignableFrom(type)) {
+            return INFO;
+        }
+        if (type == List.class) {
+            return LIST;
+        }
+        if (type == SortedSet.class) {
+            return SORTED_SET;
+        }
+        if (type == Set.class) {
+            return SET;
+        }
+        if (type == Collection.class) {
+            return COLLECTION;
+        }
+        if (type == SortedMap.class) {
+            return SORTED_MAP;
+        }
+        if (type == Map.class) {
+            return MAP;
+        }
+        if (Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type)) {
+            return COPY;
+        }
+        return DELEGATE;
+    }
+
+    static Object copy(Object original) throws Exception {
+        if (original instanceof Collection) {
+            Collection copy = (Collection) original.getClass().newInstance();
+            copy.addAll((Collection) original);
+            return copy;
+        } else {
+            Map copy = (Map) original.getClass().newInstance();
+            copy.putAll((Map) original);
+            return copy;
+        }
+    }
+
+    /**
+     * Wraps an object in a read only proxy, returns null if the object is null
+     */
+    public static <T> T create(T proxyObject, Class<T> clazz) {
+        if (proxyObject == null) {
+            return null;
+        }
+
+        // in case the object is already wrapped in a modification proxy
+        proxyObject = ModificationProxy.unwrap(proxyObject);
+
+        List<Class> key = Arrays.asList(new Class[] { proxyObject.getClass(), clazz });
+        Constructor constructor = CONSTRUCTORS.get(key);
+        try {
+            if (constructor == null) {
+                // proxy all interfaces implemented by the object, plus the requested one
+                List<Class> interfaces = new ArrayList<Class>(Arrays.asList(proxyObject
+                        .getClass().getInterfaces()));
+                boolean add = true;
+                for (Class i : interfaces) {
+                    if (clazz.isAssignableFrom(i)) {
+                        add = false;
+                        break;
+                    }
+                }
+                if (add) {
+                    interfaces.add(clazz);
+                }
+                Class proxyClass = Proxy.getProxyClass(clazz.getClassLoader(), interfaces
+                        .toArray(new Class[interfaces.size()]));
+                constructor = proxyClass.getConstructor(new Class[] { InvocationHandler.class });
+                CONSTRUCTORS.put(key, constructor);
+            }
+            return (T) constructor.newInstance(new Object[] { new ReadOnlyProxy(proxyObject) });
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Wraps a list in a decorator which wraps each item in a read only proxy
+     */
+    public static <T> List<T> createList(List<T> proxyList, Class<T> clazz) {
+        return new list(proxyList, clazz);
+    }
+
+    /**
+     * Returns the read only handler of a proxy, or null if the object is not a read only proxy
+     */
+    public static ReadOnlyProxy handler(Object object) {
+        if (object instanceof Proxy) {
+            InvocationHandler h = Proxy.getInvocationHandler(object);
+            if (h instanceof ReadOnlyProxy) {
+                return (ReadOnlyProxy) h;
+            }
+        }
+        return null;
+    }
+
+    static class list<T> extends ProxyList {
+
+        list(List<T> list, Class<T> clazz) {
+            super(list, clazz);
+        }
+
+        protected <T> T createProxy(T proxyObject, Class<T> proxyInterface) {
+            return ReadOnlyProxy.create(proxyObject, proxyInterface);
+        }
+
+        protected <U> U unwrapProxy(U proxy, java.lang.Class<U> proxyInterface) {
+            return ModificationProxy.unwrap(proxy);
+        }
+    }
+}
@@ -0,0 +1,473 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.impl.ModificationProxy;
+import org.geoserver.config.util.XStreamPersister;
+import org.geoserver.config.util.XStreamPersisterFactory;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.geotools.util.logging.Logging;
+
+/**
+ * A compact binary copy of the catalog, used to speed up the startup of servers with large
+ * catalogs by avoiding to list, open and parse thousands of small XML files.
+ * <p>
+ * The snapshot is a single file in the root of the data directory holding the catalog objects
+ * encoded with the xstream binary format, in the order they need to be added to the catalog. It
+ * also records the modification time and size of each XML file in the catalog tree, and it's
+ * used on startup only if the XML files are still the same, so that any change made to the data
+ * directory while GeoServer was down (or by a different node sharing the same data directory)
+ * results in the usual XML loading. The file is memory mapped while reading.
+ * </p>
+ * <p>
+ * The snapshot is rewritten in background, a few seconds after the catalog changes, and is not
+ * meant to be edited or moved across GeoServer versions, in case of any problem it's simply
+ * ignored. It is disabled by default, set the CATALOG_SNAPSHOT system variable (or servlet
+ * context parameter) to true to enable it.
+ * </p>
+ */
+public class CatalogSnapshot implements CatalogListener {
+
+    static final Logger LOGGER = Logging.getLogger(CatalogSnapshot.class);
+
+    static final String SNAPSHOT_FILE = "catalog.snapshot";
+
+    static final int MAGIC = 0x47534353;
+
+    static final int VERSION = 1;
+
+    static final byte END = 0;
+
+    static final byte STYLE = 1;
+
+    static final byte WORKSPACE = 2;
+
+    static final byte NAMESPACE = 3;
+
+    static final byte STORE = 4;
+
+    static final byte RESOURCE = 5;
+
+    static final byte LAYER = 6;
+
+    static final byte LAYER_GROUP = 7;
+
+    static final byte DEFAULT_WORKSPACE = 8;
+
+    static final byte DEFAULT_NAMESPACE = 9;
+
+    static final Class[] TYPES = { null, StyleInfo.class, WorkspaceInfo.class,
+            NamespaceInfo.class, StoreInfo.class, ResourceInfo.class, LayerInfo.class,
+            LayerGroupInfo.class };
+
+    GeoServerResourceLoader resourceLoader;
+
+    XStreamPersister xp;
+
+    Catalog catalog;
+
+    ScheduledExecutorService executor;
+
+    AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * Milliseconds between a catalog change and the snapshot update, so that bursts of changes
+     * result in a single write
+     */
+    long delay = 5000;
+
+    public CatalogSnapshot(GeoServerResourceLoader resourceLoader, XStreamPersisterFactory xpf) {
+        this.resourceLoader = resourceLoader;
+        this.xp = xpf.createXMLPersister();
+    }
+
+    /**
+     * The snapshot file
+     */
+    public File getFile() {
+        return new File(resourceLoader.getBaseDirectory(), SNAPSHOT_FILE);
+    }
+
+    /**
+     * Loads the snapshot into the catalog, provided the snapshot exists and matches the XML
+     * files.
+     *
+     * @param catalog The catalog to fill, must be empty
+     * @param xp The persister, configured to resolve references against the catalog
+     *
+     * @return true if the catalog was loaded, false if the snapshot is missing, stale or
+     *         could not be read, in which case the catalog might have been partially filled and
+     *         should be discarded
+     */
+    public boolean read(Catalog catalog, XStreamPersister xp) {
+        File file = getFile();
+        if (!file.exists()) {
+            return false;
+        }
+
+        try {
+            FileInputStream fis = new FileInputStream(file);
+            try {
+                FileChannel channel = fis.getChannel();
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel
+                        .size());
+                return read(buffer, catalog, xp);
+            } finally {
+                fis.close();
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to load the catalog snapshot, "
+                    + "loading the catalog from the XML files", e);
+            return false;
+        }
+    }
+
+    boolean read(ByteBuffer buffer, Catalog catalog, XStreamPersister xp) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteBufferInputStream(buffer));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            LOGGER.info("Ignoring catalog snapshot written by a different GeoServer version");
+            return false;
+        }
+
+        Map<String, long[]> files = new TreeMap<String, long[]>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            files.put(in.readUTF(), new long[] { in.readLong(), in.readLong() });
+        }
+        if (!isFresh(files)) {
+            LOGGER.info("The catalog snapshot is out of date, loading the XML files");
+            return false;
+        }
+
+        byte type;
+        while ((type = in.readByte()) != END) {
+            if (type == DEFAULT_WORKSPACE) {
+                catalog.setDefaultWorkspace(catalog.getWorkspaceByName(in.readUTF()));
+            } else if (type == DEFAULT_NAMESPACE) {
+                catalog.setDefaultNamespace(catalog.getNamespaceByPrefix(in.readUTF()));
+            } else if (type > END && type < TYPES.length) {
+                // stores disabled on startup because they could not connect are enabled
+                // in the XML files
+                boolean enable = type == STORE && in.readBoolean();
+                int length = in.readInt();
+                ByteBuffer record = buffer.slice();
+                record.limit(length);
+                buffer.position(buffer.position() + length);
+
+                Object obj = xp.loadBinary(new ByteBufferInputStream(record), TYPES[type]);
+                if (enable) {
+                    ((StoreInfo) obj).setEnabled(true);
+                }
+                add(catalog, type, obj);
+            } else {
+                throw new IOException("Invalid catalog snapshot record type " + type);
+            }
+        }
+
+        LOGGER.info("Loaded the catalog from the snapshot, " + files.size() + " files skipped");
+        return true;
+    }
+
+    void add(Catalog catalog, byte type, Object obj) {
+        switch (type) {
+        case STYLE:
+            catalog.add((StyleInfo) obj);
+            break;
+        case WORKSPACE:
+            catalog.add((WorkspaceInfo) obj);
+            break;
+        case NAMESPACE:
+            catalog.add((NamespaceInfo) obj);
+            break;
+        case STORE:
+            catalog.add((StoreInfo) obj);
+            break;
+        case RESOURCE:
+            catalog.add((ResourceInfo) obj);
+            break;
+        case LAYER:
+            catalog.add((LayerInfo) obj);
+            break;
+        case LAYER_GROUP:
+            catalog.add((LayerGroupInfo) obj);
+            break;
+        }
+    }
+
+    /**
+     * Returns true if the XML files are the same ones the snapshot was written from
+     */
+    boolean isFresh(Map<String, long[]> files) {
+        Map<String, long[]> current = scan();
+        if (current.size() != files.size()) {
+            return false;
+        }
+        for (Map.Entry<String, long[]> e : files.entrySet()) {
+            if (!Arrays.equals(e.getValue(), current.get(e.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collects the modification time and size of the XML files in the catalog tree, keyed by
+     * their path relative to the data directory
+     */
+    Map<String, long[]> scan() {
+        Map<String, long[]> files = new TreeMap<String, long[]>();
+        File base = resourceLoader.getBaseDirectory();
+        scan(new File(base, "styles"), "styles/", 0, files);
+        scan(new File(base, "workspaces"), "workspaces/", 3, files);
+        scan(new File(base, "layergroups"), "layergroups/", 0, files);
+        return files;
+    }
+
+    void scan(File dir, String path, int depth, Map<String, long[]> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File f : children) {
+            if (f.isDirectory()) {
+                if (depth > 0) {
+                    scan(f, path + f.getName() + "/", depth - 1, files);
+                }
+            } else if (f.getName().endsWith(".xml")) {
+                files.put(path + f.getName(), new long[] { f.lastModified(), f.length() });
+            }
+        }
+    }
+
+    /**
+     * Writes out the snapshot of the catalog
+     */
+    public void write() throws IOException {
+        if (catalog == null) {
+            throw new IllegalStateException("No catalog to write");
+        }
+
+        // scan the files before encoding the catalog, so that changes happening in between
+        // result in a stale snapshot rather than in a snapshot with stale contents
+        Map<String, long[]> files = scan();
+
+        File file = getFile();
+        File tmp = new File(file.getParentFile(), SNAPSHOT_FILE + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp), 64 * 1024));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(files.size());
+            for (Map.Entry<String, long[]> e : files.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue()[0]);
+                out.writeLong(e.getValue()[1]);
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+            for (StyleInfo s : catalog.getStyles()) {
+                record(out, bytes, STYLE, s);
+            }
+            for (WorkspaceInfo ws : catalog.getWorkspaces()) {
+                record(out, bytes, WORKSPACE, ws);
+            }
+            for (NamespaceInfo ns : catalog.getNamespaces()) {
+                record(out, bytes, NAMESPACE, ns);
+            }
+            WorkspaceInfo defaultWorkspace = catalog.getDefaultWorkspace();
+            if (defaultWorkspace != null) {
+                out.writeByte(DEFAULT_WORKSPACE);
+                out.writeUTF(defaultWorkspace.getName());
+            }
+            NamespaceInfo defaultNamespace = catalog.getDefaultNamespace();
+            if (defaultNamespace != null) {
+                out.writeByte(DEFAULT_NAMESPACE);
+                out.writeUTF(defaultNamespace.getPrefix());
+            }
+            for (StoreInfo s : catalog.getStores(StoreInfo.class)) {
+                record(out, bytes, STORE, s);
+            }
+            for (ResourceInfo r : catalog.getResources(ResourceInfo.class)) {
+                record(out, bytes, RESOURCE, r);
+            }
+            for (LayerInfo l : catalog.getLayers()) {
+                record(out, bytes, LAYER, l);
+            }
+            for (LayerGroupInfo lg : catalog.getLayerGroups()) {
+                record(out, bytes, LAYER_GROUP, lg);
+            }
+            out.writeByte(END);
+        } finally {
+            out.close();
+        }
+
+        // the old file might still be mapped, on some platforms it has to be removed first
+        if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+            tmp.delete();
+            throw new IOException("Could not replace the catalog snapshot " + file.getPath());
+        }
+    }
+
+    void record(DataOutputStream out, ByteArrayOutputStream bytes, byte type, Object obj)
+            throws IOException {
+        obj = ModificationProxy.unwrap(obj);
+        bytes.reset();
+        xp.saveBinary(obj, bytes);
+
+        out.writeByte(type);
+        if (type == STORE) {
+            StoreInfo store = (StoreInfo) obj;
+            out.writeBoolean(!store.isEnabled() && store.getError() != null);
+        }
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    /**
+     * Starts tracking the changes to the catalog, updating the snapshot accordingly
+     */
+    public synchronized void attach(Catalog catalog) {
+        if (this.catalog == catalog) {
+            return;
+        }
+        if (this.catalog != null) {
+            this.catalog.removeListener(this);
+        }
+        this.catalog = catalog;
+        catalog.addListener(this);
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "CatalogSnapshotWriter");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+    }
+
+    /**
+     * Schedules a write of the snapshot, unless one is already pending
+     */
+    public void scheduleWrite() {
+        if (executor == null || !scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        executor.schedule(new Runnable() {
+            public void run() {
+                scheduled.set(false);
+                try {
+                    write();
+                } catch (Throwable t) {
+                    LOGGER.log(Level.WARNING, "Failed to write the catalog snapshot", t);
+                    getFile().delete();
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops tracking the catalog changes
+     */
+    public synchronized void dispose() {
+        if (catalog != null) {
+            catalog.removeListener(this);
+            catalog = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        scheduleWrite();
+    }
+
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        scheduleWrite();
+    }
+
+    public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+        // we use the post event
+    }
+
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        scheduleWrite();
+    }
+
+    public void reloaded() {
+        scheduleWrite();
+    }
+
+    /**
+     * Reads from a (possibly memory mapped) buffer without copying it
+     */
+    static class ByteBufferInputStream extends InputStream {
+        ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
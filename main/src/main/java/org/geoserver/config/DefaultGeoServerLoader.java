@@ -39,6 +39,9 @@ public class DefaultGeoServerLoader extends GeoServerLoader {
         if ( !legacy ) {
             //add the listener which will persist changes
             catalog.addListener( new GeoServerPersister( resourceLoader, xp ) );
+            
+            //keep the binary snapshot in synch, if enabled
+            trackCatalogSnapshot( catalog );
         }
     }
     
@@ -212,6 +212,38 @@ public interface GeoServerInfo extends Info {
      * Sets the size of the cache for feature type objects.
      */
     void setFeatureTypeCacheSize(int featureTypeCacheSize);
+    
+    /**
+     * The max number of parsed styles kept in memory.
+     */
+    int getStyleCacheSize();
+    
+    /**
+     * Sets the max number of parsed styles kept in memory.
+     */
+    void setStyleCacheSize(int styleCacheSize);
+    
+    /**
+     * The max number of coordinate reference systems kept in memory.
+     */
+    int getCRSCacheSize();
+    
+    /**
+     * Sets the max number of coordinate reference systems kept in memory.
+     */
+    void setCRSCacheSize(int crsCacheSize);
+    
+    /**
+     * The time, in seconds, after which unused styles and coordinate reference systems are 
+     * evicted from their caches. Zero disables the expiration.
+     */
+    int getCacheIdleTime();
+    
+    /**
+     * Sets the time, in seconds, after which unused styles and coordinate reference systems are 
+     * evicted from their caches.
+     */
+    void setCacheIdleTime(int cacheIdleTime);
    
     /**
      * Flag determining if access to services should occur only through "virtual services". 
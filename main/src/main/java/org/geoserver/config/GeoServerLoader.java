@@ -8,6 +8,7 @@ import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -15,6 +16,12 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -23,20 +30,18 @@ import org.apache.commons.io.filefilter.DirectoryFileFilter;
 import org.apache.commons.io.filefilter.IOFileFilter;
 import org.apache.commons.io.filefilter.SuffixFileFilter;
 import org.geoserver.catalog.Catalog;
-import org.geoserver.catalog.CatalogFactory;
-import org.geoserver.catalog.CoverageInfo;
 import org.geoserver.catalog.CoverageStoreInfo;
 import org.geoserver.catalog.DataStoreInfo;
-import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.LayerGroupInfo;
 import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
 import org.geoserver.catalog.StyleInfo;
-import org.geoserver.catalog.WMSLayerInfo;
-import org.geoserver.catalog.WMSStoreInfo;
 import org.geoserver.catalog.WorkspaceInfo;
 import org.geoserver.catalog.Wrapper;
 import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.catalog.impl.ModificationProxy;
 import org.geoserver.catalog.util.LegacyCatalogImporter;
 import org.geoserver.catalog.util.LegacyCatalogReader;
 import org.geoserver.catalog.util.LegacyFeatureTypeInfoReader;
@@ -78,6 +83,22 @@ public abstract class GeoServerLoader {
     // this ugly hack can die
     static boolean legacy = false;
     
+    /**
+     * Number of threads used to parse the catalog files, if not positive it's read from the
+     * GEOSERVER_LOADER_THREADS variable, defaulting to the number of processors
+     */
+    int loaderThreads = -1;
+    
+    /**
+     * The binary copy of the catalog, null if not enabled
+     */
+    CatalogSnapshot snapshot;
+    
+    /**
+     * Whether the catalog was loaded from the XML files and the snapshot needs to be rewritten
+     */
+    boolean snapshotOutdated;
+    
     public GeoServerLoader( GeoServerResourceLoader resourceLoader ) {
         this.resourceLoader = resourceLoader;
     }
@@ -229,36 +250,115 @@ public abstract class GeoServerLoader {
     
     /**
      * Reads the catalog from disk.
+     * <p>
+     * The files are parsed in parallel, one phase for each level of the catalog hierarchy
+     * (styles, workspaces, stores, resources, layers and layer groups), and then added to the
+     * catalog in the same order a serial load would, so that the references to the objects
+     * loaded in the previous phases can be resolved. The number of parsing threads can be set
+     * with the GEOSERVER_LOADER_THREADS variable, and defaults to the number of processors.
+     * </p>
      */
     Catalog readCatalog( XStreamPersister xp ) throws Exception {
+        LoadingReport report = new LoadingReport();
+        ExecutorService executor = createLoaderExecutor();
+        try {
+            Catalog catalog = null;
+            CatalogSnapshot snapshot = getCatalogSnapshot();
+            if ( snapshot != null ) {
+                report.start();
+                catalog = newCatalog( xp );
+                if ( snapshot.read( catalog, xp ) ) {
+                    report.end("snapshot", 1);
+                    
+                    List<StoreInfo> stores = new ArrayList<StoreInfo>();
+                    for ( StoreInfo store : catalog.getStores( StoreInfo.class ) ) {
+                        stores.add( ModificationProxy.unwrap( store ) );
+                    }
+                    connectDataStores( stores, executor, report );
+                }
+                else {
+                    //partially loaded, start over from the xml files
+                    catalog = null;
+                }
+            }
+            if ( catalog == null ) {
+                catalog = newCatalog( xp );
+                readCatalog(catalog, xp, executor, report);
+                if ( snapshot != null ) {
+                    snapshotOutdated = true;
+                }
+            }
+            LOGGER.info(report.toString());
+            
+            return catalog;
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    Catalog newCatalog( XStreamPersister xp ) {
         Catalog catalog = new CatalogImpl();
         catalog.setResourceLoader(resourceLoader);
         xp.setCatalog( catalog );
-        
-        CatalogFactory factory = catalog.getFactory();
-       
+        return catalog;
+    }
+    
+    /**
+     * Returns the catalog snapshot, or null if the snapshot is not enabled thru the 
+     * CATALOG_SNAPSHOT variable
+     */
+    CatalogSnapshot getCatalogSnapshot() {
+        if ( snapshot == null && Boolean.valueOf( GeoServerExtensions.getProperty( "CATALOG_SNAPSHOT" ) ) ) {
+            snapshot = new CatalogSnapshot( resourceLoader, xpf );
+        }
+        return snapshot;
+    }
+    
+    /**
+     * Keeps the catalog snapshot up to date with the catalog changes, writing it right away if 
+     * the catalog was loaded from the XML files
+     */
+    void trackCatalogSnapshot( Catalog catalog ) {
+        if ( snapshot != null ) {
+            snapshot.attach( catalog );
+            if ( snapshotOutdated ) {
+                snapshotOutdated = false;
+                snapshot.scheduleWrite();
+            }
+        }
+    }
+    
+    void readCatalog(final Catalog catalog, XStreamPersister xp, ExecutorService executor, 
+            LoadingReport report) throws Exception {
         //styles
+        report.start();
         File styles = resourceLoader.find( "styles" );
+        List<File> styleFiles = new ArrayList<File>();
         for ( File sf : list(styles,new SuffixFileFilter(".xml") ) ) {
+            //handle the .xml.xml case
+            if (!new File(styles,sf.getName()+".xml").exists()) {
+                styleFiles.add(sf);
+            }
+        }
+        List<Parsed<StyleInfo>> parsedStyles = 
+            depersist(xp, executor, styleFiles, StyleInfo.class);
+        for ( Parsed<StyleInfo> p : parsedStyles ) {
             try {
-                //handle the .xml.xml case
-                if (new File(styles,sf.getName()+".xml").exists()) {
-                    continue;
-                }
-                
-                StyleInfo s = depersist( xp, sf, StyleInfo.class );
+                StyleInfo s = p.get();
                 catalog.add( s );
                 
                 LOGGER.info( "Loaded style '" + s.getName() + "'" );
             }
             catch( Exception e ) {
-                LOGGER.log( Level.WARNING, "Failed to load style from file '" + sf.getName() + "'" , e );
+                LOGGER.log( Level.WARNING, "Failed to load style from file '" + p.file.getName() + "'" , e );
             }
         }
+        report.end("styles", styleFiles.size());
         
         //workspaces, stores, and resources
         File workspaces = resourceLoader.find( "workspaces" );
         if ( workspaces != null ) {
+            report.start();
             //do a first quick scan over all workspaces, setting the default
             File dws = new File(workspaces, "default.xml");
             WorkspaceInfo defaultWorkspace = null;
@@ -275,30 +375,42 @@ public abstract class GeoServerLoader {
                 LOGGER.warning("No default workspace was found.");
             }
             
+            List<File> workspaceFiles = new ArrayList<File>();
+            List<File> namespaceFiles = new ArrayList<File>();
             for ( File wsd : list(workspaces, DirectoryFileFilter.INSTANCE ) ) {
                 File f = new File( wsd, "workspace.xml");
-                if ( !f.exists() ) {
-                    continue;
+                if ( f.exists() ) {
+                    workspaceFiles.add( f );
+                    namespaceFiles.add( new File( wsd, "namespace.xml" ) );
                 }
-                
+            }
+            List<Parsed<WorkspaceInfo>> parsedWorkspaces = 
+                depersist(xp, executor, workspaceFiles, WorkspaceInfo.class);
+            List<Parsed<NamespaceInfo>> parsedNamespaces = 
+                depersist(xp, executor, namespaceFiles, NamespaceInfo.class);
+            
+            List<File> workspaceDirs = new ArrayList<File>();
+            for ( int i = 0; i < parsedWorkspaces.size(); i++ ) {
+                File wsd = workspaceFiles.get(i).getParentFile();
                 WorkspaceInfo ws = null;
                 try {
-                    ws = depersist( xp, f, WorkspaceInfo.class );
+                    ws = parsedWorkspaces.get(i).get();
                     catalog.add( ws );    
                 }
                 catch( Exception e ) {
                     LOGGER.log( Level.WARNING, "Failed to load workspace '" + wsd.getName() + "'" , e );
                     continue;
                 }
+                workspaceDirs.add( wsd );
                 
                 LOGGER.info( "Loaded workspace '" + ws.getName() +"'");
                 
                 //load the namespace
-                File nsf = new File( wsd, "namespace.xml" );
+                Parsed<NamespaceInfo> nsp = parsedNamespaces.get(i);
                 NamespaceInfo ns = null; 
-                if ( nsf.exists() ) {
+                if ( nsp.file.exists() ) {
                     try {
-                        ns = depersist( xp, nsf, NamespaceInfo.class );
+                        ns = nsp.get();
                         catalog.add( ns );
                     }
                     catch( Exception e ) {
@@ -332,178 +444,111 @@ public abstract class GeoServerLoader {
                 }
                 
             }
+            report.end("workspaces", workspaceFiles.size() + namespaceFiles.size());
             
+            //stores
+            report.start();
+            List<File> storeFiles = new ArrayList<File>();
             for ( File wsd : list(workspaces, DirectoryFileFilter.INSTANCE ) ) {
-                
-                //load the stores for this workspace
                 for ( File sd : list(wsd, DirectoryFileFilter.INSTANCE) ) {
                     File f = new File( sd, "datastore.xml");
+                    if ( !f.exists() ) {
+                        f = new File( sd, "coveragestore.xml" );
+                    }
+                    if ( !f.exists() ) {
+                        f = new File( sd, "wmsstore.xml" );
+                    }
                     if ( f.exists() ) {
-                        //load as a datastore
-                        DataStoreInfo ds = null;
-                        try {    
-                            ds = depersist( xp, f, DataStoreInfo.class );
-                            catalog.add( ds );
-                            
-                            LOGGER.info( "Loaded data store '" + ds.getName() +"'");
-                            
-                            if (ds.isEnabled()) {
-                                //connect to the datastore to determine if we should disable it
-                                try {
-                                    ds.getDataStore(null);
-                                }
-                                catch( Throwable t ) {
-                                    LOGGER.warning( "Error connecting to '" + ds.getName() + "'. Disabling." );
-                                    LOGGER.log( Level.INFO, "", t );
-                                    
-                                    ds.setError(t);
-                                    ds.setEnabled(false);
-                                }
-                            }
-                        }
-                        catch( Exception e ) {
-                            LOGGER.log( Level.WARNING, "Failed to load data store '" + sd.getName() +"'", e);
-                            continue;
-                        }
-                        
-                        //load feature types
-                        for ( File ftd : list(sd,DirectoryFileFilter.INSTANCE) ) {
-                            f = new File( ftd, "featuretype.xml" );
-                            if( f.exists() ) {
-                                FeatureTypeInfo ft = null;
-                                try {
-                                    ft = depersist(xp,f,FeatureTypeInfo.class);
-                                }
-                                catch( Exception e ) {
-                                    LOGGER.log( Level.WARNING, "Failed to load feature type '" + ftd.getName() +"'", e);
-                                    continue;
-                                }
-                                
-                                catalog.add( ft );
-                                
-                                LOGGER.info( "Loaded feature type '" + ds.getName() +"'");
-                                
-                                f = new File( ftd, "layer.xml" );
-                                if ( f.exists() ) {
-                                    try {
-                                        LayerInfo l = depersist(xp, f, LayerInfo.class );
-                                        catalog.add( l );
-                                        
-                                        LOGGER.info( "Loaded layer '" + l.getName() + "'" );
-                                    }
-                                    catch( Exception e ) {
-                                        LOGGER.log( Level.WARNING, "Failed to load layer for feature type '" + ft.getName() +"'", e);
-                                    }
-                                }
-                            }
-                            else {
-                                LOGGER.warning( "Ignoring feature type directory " + ftd.getAbsolutePath() );
-                            }
-                        }
+                        storeFiles.add( f );
                     } else {
-                        //look for a coverage store
-                        f = new File( sd, "coveragestore.xml" );
-                        if ( f.exists() ) {
-                            CoverageStoreInfo cs = null;
-                            try {
-                                cs = depersist( xp, f, CoverageStoreInfo.class );
-                                catalog.add( cs );
-                            
-                                LOGGER.info( "Loaded coverage store '" + cs.getName() +"'");
-                            }
-                            catch( Exception e ) {
-                                LOGGER.log( Level.WARNING, "Failed to load coverage store '" + sd.getName() +"'", e);
-                                continue;
-                            }
-                            
-                            //load coverages
-                            for ( File cd : list(sd,DirectoryFileFilter.INSTANCE) ) {
-                                f = new File( cd, "coverage.xml" );
-                                if( f.exists() ) {
-                                    CoverageInfo c = null;
-                                    try {
-                                        c = depersist(xp,f,CoverageInfo.class);
-                                        catalog.add( c );
-                                        
-                                        LOGGER.info( "Loaded coverage '" + cs.getName() +"'");
-                                    }
-                                    catch( Exception e ) {
-                                        LOGGER.log( Level.WARNING, "Failed to load coverage '" + cd.getName() +"'", e);
-                                        continue;
-                                    }
-                                    
-                                    f = new File( cd, "layer.xml" );
-                                    if ( f.exists() ) {
-                                        try {
-                                            LayerInfo l = depersist(xp, f, LayerInfo.class );
-                                            catalog.add( l );
-                                            
-                                            LOGGER.info( "Loaded layer '" + l.getName() + "'" );
-                                        }
-                                        catch( Exception e ) {
-                                            LOGGER.log( Level.WARNING, "Failed to load layer coverage '" + c.getName() +"'", e);
-                                        }
-                                    }
-                                }
-                                else {
-                                    LOGGER.warning( "Ignoring coverage directory " + cd.getAbsolutePath() );
-                                }
-                            }
-                        } else {
-                            f = new File( sd, "wmsstore.xml" );
-                            if(f.exists()) {
-                                WMSStoreInfo wms = null;
-                                try {
-                                    wms = depersist( xp, f, WMSStoreInfo.class );
-                                    catalog.add( wms );
-                                
-                                    LOGGER.info( "Loaded wmsstore '" + wms.getName() +"'");
-                                } catch( Exception e ) {
-                                    LOGGER.log( Level.WARNING, "Failed to load wms store '" + sd.getName() +"'", e);
-                                    continue;
-                                }
-                                
-                                //load wms layers
-                                for ( File cd : list(sd,DirectoryFileFilter.INSTANCE) ) {
-                                    f = new File( cd, "wmslayer.xml" );
-                                    if( f.exists() ) {
-                                        WMSLayerInfo wl = null;
-                                        try {
-                                            wl = depersist(xp,f,WMSLayerInfo.class);
-                                            catalog.add( wl );
-                                            
-                                            LOGGER.info( "Loaded wms layer'" + wl.getName() +"'");
-                                        }
-                                        catch( Exception e ) {
-                                            LOGGER.log( Level.WARNING, "Failed to load wms layer '" + cd.getName() +"'", e);
-                                            continue;
-                                        }
-                                        
-                                        f = new File( cd, "layer.xml" );
-                                        if ( f.exists() ) {
-                                            try {
-                                                LayerInfo l = depersist(xp, f, LayerInfo.class );
-                                                catalog.add( l );
-                                                
-                                                LOGGER.info( "Loaded layer '" + l.getName() + "'" );
-                                            }
-                                            catch( Exception e ) {
-                                                LOGGER.log( Level.WARNING, "Failed to load cascaded wms layer '" + wl.getName() +"'", e);
-                                            }
-                                        }
-                                    }
-                                    else {
-                                        LOGGER.warning( "Ignoring coverage directory " + cd.getAbsolutePath() );
-                                    }
-                                }
-                            } else {
-                                LOGGER.warning( "Ignoring store directory '" + sd.getName() +  "'");
-                                continue;
-                            }
-                        }
+                        LOGGER.warning( "Ignoring store directory '" + sd.getName() +  "'");
+                    }
+                }
+            }
+            List<Parsed<StoreInfo>> parsedStores = 
+                depersist(xp, executor, storeFiles, StoreInfo.class);
+            List<StoreInfo> stores = new ArrayList<StoreInfo>();
+            List<File> storeDirs = new ArrayList<File>();
+            for ( Parsed<StoreInfo> p : parsedStores ) {
+                File sd = p.file.getParentFile();
+                String type = storeType(p.file);
+                try {
+                    StoreInfo store = p.get();
+                    catalog.add( store );
+                    stores.add( store );
+                    storeDirs.add( sd );
+                    
+                    LOGGER.info( "Loaded " + type + " '" + store.getName() +"'");
+                }
+                catch( Exception e ) {
+                    LOGGER.log( Level.WARNING, "Failed to load " + type + " '" + sd.getName() +"'", e);
+                }
+            }
+            report.end("stores", storeFiles.size());
+            
+            //connect to the datastores to determine if we should disable them
+            connectDataStores( stores, executor, report );
+            
+            //resources
+            report.start();
+            List<File> resourceFiles = new ArrayList<File>();
+            for ( int i = 0; i < stores.size(); i++ ) {
+                StoreInfo store = stores.get(i);
+                String resourceFile = store instanceof DataStoreInfo ? "featuretype.xml" 
+                        : store instanceof CoverageStoreInfo ? "coverage.xml" : "wmslayer.xml";
+                for ( File rd : list(storeDirs.get(i),DirectoryFileFilter.INSTANCE) ) {
+                    File f = new File( rd, resourceFile );
+                    if( f.exists() ) {
+                        resourceFiles.add( f );
                     }
+                    else {
+                        LOGGER.warning( "Ignoring " + (store instanceof DataStoreInfo ? 
+                            "feature type" : "coverage") + " directory " + rd.getAbsolutePath() );
+                    }
+                }
+            }
+            List<Parsed<ResourceInfo>> parsedResources = 
+                depersist(xp, executor, resourceFiles, ResourceInfo.class);
+            List<File> layerFiles = new ArrayList<File>();
+            List<ResourceInfo> resources = new ArrayList<ResourceInfo>();
+            for ( Parsed<ResourceInfo> p : parsedResources ) {
+                File rd = p.file.getParentFile();
+                String type = resourceType(p.file);
+                try {
+                    ResourceInfo r = p.get();
+                    catalog.add( r );
+                    
+                    LOGGER.info( "Loaded " + type + " '" + r.getName() +"'");
+                    
+                    File f = new File( rd, "layer.xml" );
+                    if ( f.exists() ) {
+                        layerFiles.add( f );
+                        resources.add( r );
+                    }
+                }
+                catch( Exception e ) {
+                    LOGGER.log( Level.WARNING, "Failed to load " + type + " '" + rd.getName() +"'", e);
                 }
             }
+            report.end("resources", resourceFiles.size());
+            
+            //layers
+            report.start();
+            List<Parsed<LayerInfo>> parsedLayers = 
+                depersist(xp, executor, layerFiles, LayerInfo.class);
+            for ( int i = 0; i < parsedLayers.size(); i++ ) {
+                try {
+                    LayerInfo l = parsedLayers.get(i).get();
+                    catalog.add( l );
+                    
+                    LOGGER.info( "Loaded layer '" + l.getName() + "'" );
+                }
+                catch( Exception e ) {
+                    LOGGER.log( Level.WARNING, "Failed to load layer for '" + 
+                        resources.get(i).getName() +"'", e);
+                }
+            }
+            report.end("layers", layerFiles.size());
         }
         else {
             LOGGER.warning( "No 'workspaces' directory found, unable to load any stores." );
@@ -514,9 +559,11 @@ public abstract class GeoServerLoader {
         //layergroups
         File layergroups = resourceLoader.find( "layergroups" );
         if ( layergroups != null ) {
-            for ( File lgf : list( layergroups, new SuffixFileFilter( ".xml" ) ) ) {
+            report.start();
+            List<File> groupFiles = new ArrayList<File>(list( layergroups, new SuffixFileFilter( ".xml" ) ));
+            for ( Parsed<LayerGroupInfo> p : depersist(xp, executor, groupFiles, LayerGroupInfo.class) ) {
                 try {
-                    LayerGroupInfo lg = depersist( xp, lgf, LayerGroupInfo.class );
+                    LayerGroupInfo lg = p.get();
                     if(lg.getLayers() == null || lg.getLayers().size() == 0) {
                         LOGGER.warning("Skipping empty layer group '" + lg.getName() + "', it is invalid");
                         continue;
@@ -526,12 +573,165 @@ public abstract class GeoServerLoader {
                     LOGGER.info( "Loaded layer group '" + lg.getName() + "'" );    
                 }
                 catch( Exception e ) {
-                    LOGGER.log( Level.WARNING, "Failed to load layer group '" + lgf.getName() + "'", e );
+                    LOGGER.log( Level.WARNING, "Failed to load layer group '" + p.file.getName() + "'", e );
                 }
             }
+            report.end("layer groups", groupFiles.size());
+        }
+    }
+    
+    /**
+     * Connects to the enabled data stores in parallel, disabling the ones that fail
+     */
+    void connectDataStores( List<StoreInfo> stores, ExecutorService executor, LoadingReport report ) 
+        throws Exception {
+        report.start();
+        List<Future<?>> connections = new ArrayList<Future<?>>();
+        for ( StoreInfo store : stores ) {
+            if ( store instanceof DataStoreInfo && store.isEnabled() ) {
+                final DataStoreInfo ds = (DataStoreInfo) store;
+                connections.add( executor.submit( new Runnable() {
+                    public void run() {
+                        try {
+                            ds.getDataStore(null);
+                        }
+                        catch( Throwable t ) {
+                            LOGGER.warning( "Error connecting to '" + ds.getName() + "'. Disabling." );
+                            LOGGER.log( Level.INFO, "", t );
+                            
+                            ds.setError(t);
+                            ds.setEnabled(false);
+                        }
+                    }
+                }));
+            }
+        }
+        for ( Future<?> f : connections ) {
+            f.get();
+        }
+        report.end("store connections", connections.size());
+    }
+    
+    String storeType( File f ) {
+        String name = f.getName();
+        if ( "datastore.xml".equals( name ) ) {
+            return "data store";
+        } else if ( "coveragestore.xml".equals( name ) ) {
+            return "coverage store";
+        }
+        return "wms store";
+    }
+    
+    String resourceType( File f ) {
+        String name = f.getName();
+        if ( "featuretype.xml".equals( name ) ) {
+            return "feature type";
+        } else if ( "coverage.xml".equals( name ) ) {
+            return "coverage";
+        }
+        return "wms layer";
+    }
+    
+    /**
+     * Creates the pool used to parse the catalog files
+     */
+    ExecutorService createLoaderExecutor() {
+        int threads = loaderThreads;
+        if ( threads <= 0 ) {
+            threads = Runtime.getRuntime().availableProcessors();
+            String value = GeoServerExtensions.getProperty( "GEOSERVER_LOADER_THREADS" );
+            if ( value != null ) {
+                try {
+                    threads = Math.max( 1, Integer.parseInt( value ) );
+                }
+                catch( NumberFormatException e ) {
+                    LOGGER.warning( "Invalid GEOSERVER_LOADER_THREADS value " + value + 
+                        ", using " + threads + " threads" );
+                }
+            }
+        }
+        return Executors.newFixedThreadPool( threads, new ThreadFactory() {
+            int count = 0;
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread( r, "GeoServerLoader-" + (++count) );
+                t.setDaemon( true );
+                return t;
+            }
+        });
+    }
+    
+    /**
+     * Parses the files in parallel, returning the results in the same order as the files
+     */
+    <T> List<Parsed<T>> depersist( final XStreamPersister xp, ExecutorService executor, 
+            List<File> files, final Class<T> clazz ) {
+        List<Parsed<T>> result = new ArrayList<Parsed<T>>( files.size() );
+        for ( final File f : files ) {
+            Future<T> future = null;
+            if ( f.exists() ) {
+                future = executor.submit( new Callable<T>() {
+                    public T call() throws Exception {
+                        return depersist( xp, f, clazz );
+                    }
+                });
+            }
+            result.add( new Parsed<T>( f, future ) );
+        }
+        return result;
+    }
+    
+    /**
+     * A file being parsed
+     */
+    static class Parsed<T> {
+        File file;
+        Future<T> future;
+        
+        Parsed( File file, Future<T> future ) {
+            this.file = file;
+            this.future = future;
+        }
+        
+        T get() throws Exception {
+            if ( future == null ) {
+                throw new FileNotFoundException( file.getPath() );
+            }
+            try {
+                return future.get();
+            }
+            catch( ExecutionException e ) {
+                if ( e.getCause() instanceof Exception ) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+    
+    /**
+     * Collects the number of files parsed and time spent in each loading phase
+     */
+    static class LoadingReport {
+        StringBuilder report = new StringBuilder();
+        long total;
+        long start;
+        int files;
+        
+        void start() {
+            start = System.currentTimeMillis();
+        }
+        
+        void end( String phase, int count ) {
+            long elapsed = System.currentTimeMillis() - start;
+            total += elapsed;
+            files += count;
+            report.append( "\n  " ).append( phase ).append( ": " ).append( count )
+                .append( " files in " ).append( elapsed ).append( " ms" );
+        }
+        
+        public String toString() {
+            return "Catalog loaded, " + files + " files in " + total + " ms" + report;
         }
-                
-        return catalog;
     }
     
     /**
@@ -705,6 +905,9 @@ public abstract class GeoServerLoader {
     
     public void destroy() throws Exception {
         //dispose
+        if ( snapshot != null ) {
+            snapshot.dispose();
+        }
         geoserver.dispose();
     }
 }
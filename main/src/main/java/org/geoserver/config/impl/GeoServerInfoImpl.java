@@ -51,6 +51,12 @@ public class GeoServerInfoImpl implements GeoServerInfo {
     protected String adminPassword;
     
     protected int featureTypeCacheSize;
+    
+    protected int styleCacheSize;
+    
+    protected int crsCacheSize;
+    
+    protected int cacheIdleTime;
 
     protected Boolean globalServices = true;
     
@@ -195,6 +201,30 @@ public class GeoServerInfoImpl implements GeoServerInfo {
     public void setFeatureTypeCacheSize(int featureTypeCacheSize) {
         this.featureTypeCacheSize = featureTypeCacheSize;
     }
+    
+    public int getStyleCacheSize() {
+        return styleCacheSize;
+    }
+    
+    public void setStyleCacheSize(int styleCacheSize) {
+        this.styleCacheSize = styleCacheSize;
+    }
+    
+    public int getCRSCacheSize() {
+        return crsCacheSize;
+    }
+    
+    public void setCRSCacheSize(int crsCacheSize) {
+        this.crsCacheSize = crsCacheSize;
+    }
+    
+    public int getCacheIdleTime() {
+        return cacheIdleTime;
+    }
+    
+    public void setCacheIdleTime(int cacheIdleTime) {
+        this.cacheIdleTime = cacheIdleTime;
+    }
 
     public Boolean isGlobalServices() {
         return globalServices;
@@ -254,6 +284,9 @@ public class GeoServerInfoImpl implements GeoServerInfo {
         result = prime * result + (verbose ? 1231 : 1237);
         result = prime * result + (verboseExceptions ? 1231 : 1237);
         result = prime * result + (globalServices ? 1231 : 1237);
+        result = prime * result + styleCacheSize;
+        result = prime * result + crsCacheSize;
+        result = prime * result + cacheIdleTime;
         return result;
     }
 
@@ -321,6 +354,12 @@ public class GeoServerInfoImpl implements GeoServerInfo {
             return false;
         if (globalServices != other.isGlobalServices())
             return false;
+        if (styleCacheSize != other.getStyleCacheSize())
+            return false;
+        if (crsCacheSize != other.getCRSCacheSize())
+            return false;
+        if (cacheIdleTime != other.getCacheIdleTime())
+            return false;
         return true;
     }
 
@@ -113,6 +113,8 @@ import com.thoughtworks.xstream.converters.reflection.Sun14ReflectionProvider;
 import com.thoughtworks.xstream.io.HierarchicalStreamDriver;
 import com.thoughtworks.xstream.io.HierarchicalStreamReader;
 import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
 import com.thoughtworks.xstream.mapper.ClassAliasingMapper;
 import com.thoughtworks.xstream.mapper.Mapper;
 import com.vividsolutions.jts.geom.Geometry;
@@ -443,6 +445,37 @@ public class XStreamPersister {
         xs.toXML(obj, new OutputStreamWriter( out, "UTF-8" ));
     }
     
+    /**
+     * Saves an object using the compact xstream binary format instead of XML.
+     * <p>
+     * The binary format is not meant to be edited nor to be stable across versions, it's only
+     * used for the caches that can be rebuilt from the XML files, such as the catalog snapshot. 
+     * </p>
+     * 
+     * @param obj The object to save. 
+     * @param out The stream to save the object to.
+     * 
+     * @throws IOException
+     */
+    public void saveBinary(Object obj, OutputStream out) throws IOException {
+        obj = unwrapProxies( obj );
+        BinaryStreamWriter writer = new BinaryStreamWriter( out );
+        xs.marshal( obj, writer );
+        writer.flush();
+    }
+    
+    /**
+     * Loads an object saved with {@link #saveBinary(Object, OutputStream)}.
+     * 
+     * @param in The input stream to read the object from.
+     * @param clazz The class of the expected object.
+     * 
+     * @throws IOException
+     */
+    public <T> T loadBinary(InputStream in, Class<T> clazz) throws IOException {
+        return clazz.cast( xs.unmarshal( new BinaryStreamReader( in ) ) );
+    }
+    
     /**
      * Unwraps any proxies around the object.
      * <p>
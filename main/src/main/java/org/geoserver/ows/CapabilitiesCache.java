@@ -0,0 +1,354 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.config.ConfigurationListener;
+import org.geoserver.config.GeoServer;
+import org.geoserver.config.GeoServerInfo;
+import org.geoserver.config.LoggingInfo;
+import org.geoserver.config.ServiceInfo;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.util.logging.Logging;
+import org.springframework.security.Authentication;
+import org.springframework.security.GrantedAuthority;
+import org.springframework.security.context.SecurityContextHolder;
+
+/**
+ * Caches the encoded capabilities documents, so that the clients fetching them over and over do
+ * not cause the whole catalog to be scanned and encoded each time.
+ * <p>
+ * The documents are keyed on the service, version, base URL, virtual service (local workspace and
+ * layer) and the roles of the current user, as they determine which layers the secure catalog
+ * will expose, plus any request parameter affecting the output (e.g., the namespace filter).
+ * Each document is tagged with the {@link GeoServerInfo#getUpdateSequence()} it was generated
+ * at, and is regenerated as soon as the update sequence changes. The whole cache is also
+ * emptied on catalog and configuration changes to release the stale documents early.
+ * </p>
+ * <p>
+ * Concurrent requests for the same missing document wait for a single generation. The cache is
+ * disabled by default, set the CAPABILITIES_CACHE system variable (or servlet context parameter)
+ * to true to enable it, and CAPABILITIES_CACHE_SIZE to control the max number of cached
+ * documents (100 by default).
+ * </p>
+ */
+public class CapabilitiesCache implements CatalogListener, ConfigurationListener {
+
+    static final Logger LOGGER = Logging.getLogger(CapabilitiesCache.class);
+
+    /**
+     * Writes out a capabilities document
+     */
+    public interface Generator {
+        void write(OutputStream output) throws IOException;
+    }
+
+    GeoServer geoServer;
+
+    boolean enabled;
+
+    int maxSize = 100;
+
+    ConcurrentHashMap<String, CachedDocument> documents = new ConcurrentHashMap<String, CachedDocument>();
+
+    AtomicLong hits = new AtomicLong();
+
+    AtomicLong misses = new AtomicLong();
+
+    public CapabilitiesCache(GeoServer geoServer) {
+        this.geoServer = geoServer;
+        this.enabled = Boolean.valueOf(GeoServerExtensions.getProperty("CAPABILITIES_CACHE"));
+        String size = GeoServerExtensions.getProperty("CAPABILITIES_CACHE_SIZE");
+        if (size != null) {
+            try {
+                maxSize = Integer.parseInt(size);
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid CAPABILITIES_CACHE_SIZE value " + size
+                        + ", using the default " + maxSize);
+            }
+        }
+
+        geoServer.getCatalog().addListener(this);
+        geoServer.addListener(this);
+    }
+
+    /**
+     * Writes the capabilities document to the output, using the cached copy if the cache is
+     * available and enabled, or generating it directly otherwise.
+     *
+     * @param service The service id, e.g. "wms"
+     * @param version The service version
+     * @param baseUrl The request base URL
+     * @param parameters The request parameters affecting the document contents, can be
+     *        <code>null</code>
+     * @param output The destination
+     * @param generator Generates the document
+     */
+    public static void write(String service, String version, String baseUrl,
+            String parameters, OutputStream output, Generator generator) throws IOException {
+        CapabilitiesCache cache = GeoServerExtensions.bean(CapabilitiesCache.class);
+        if (cache == null || !cache.isEnabled()) {
+            generator.write(output);
+        } else {
+            String key = buildKey(service, version, baseUrl, parameters);
+            output.write(cache.getDocument(key, generator));
+        }
+    }
+
+    /**
+     * Builds the cache key, adding to the request parameters the virtual service and the
+     * current user roles
+     */
+    static String buildKey(String service, String version, String baseUrl, String parameters) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(service).append('|').append(version).append('|').append(baseUrl);
+        sb.append('|').append(parameters);
+
+        WorkspaceInfo ws = LocalWorkspace.get();
+        sb.append('|').append(ws != null ? ws.getName() : "");
+        LayerInfo layer = LocalLayer.get();
+        sb.append('|').append(layer != null ? layer.getName() : "");
+
+        // the data access rules are role based, users with the same roles see the same layers
+        sb.append('|');
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null && auth.getAuthorities() != null) {
+            List<String> roles = new ArrayList<String>();
+            for (GrantedAuthority authority : auth.getAuthorities()) {
+                roles.add(authority.getAuthority());
+            }
+            Collections.sort(roles);
+            sb.append(roles);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Returns the cached document, generating it if missing or out of date
+     */
+    byte[] getDocument(String key, final Generator generator) throws IOException {
+        final long updateSequence = geoServer.getGlobal().getUpdateSequence();
+        CachedDocument document = documents.get(key);
+        if (document != null && document.updateSequence == updateSequence) {
+            hits.incrementAndGet();
+            return document.get();
+        }
+        misses.incrementAndGet();
+
+        CachedDocument created = new CachedDocument(updateSequence, new Callable<byte[]>() {
+            public byte[] call() throws Exception {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                generator.write(bos);
+                return bos.toByteArray();
+            }
+        });
+        boolean registered = document == null ? documents.putIfAbsent(key, created) == null
+                : documents.replace(key, document, created);
+        if (!registered) {
+            // someone else is generating it, use theirs if current
+            CachedDocument other = documents.get(key);
+            if (other != null && other.updateSequence == updateSequence) {
+                return other.get();
+            }
+            // otherwise generate without caching
+            created.task.run();
+            return created.get();
+        }
+
+        created.task.run();
+        try {
+            byte[] result = created.get();
+            if (documents.size() > maxSize) {
+                evict(key);
+            }
+            return result;
+        } catch (IOException e) {
+            documents.remove(key, created);
+            throw e;
+        } catch (RuntimeException e) {
+            documents.remove(key, created);
+            throw e;
+        }
+    }
+
+    /**
+     * Removes the least recently used documents until the cache is back within its size
+     */
+    void evict(String keep) {
+        List<Map.Entry<String, CachedDocument>> entries = new ArrayList<Map.Entry<String, CachedDocument>>(
+                documents.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, CachedDocument>>() {
+            public int compare(Map.Entry<String, CachedDocument> e1,
+                    Map.Entry<String, CachedDocument> e2) {
+                long a1 = e1.getValue().lastAccess;
+                long a2 = e2.getValue().lastAccess;
+                return a1 < a2 ? -1 : (a1 == a2 ? 0 : 1);
+            }
+        });
+        int excess = documents.size() - maxSize;
+        for (int i = 0; i < entries.size() && excess > 0; i++) {
+            Map.Entry<String, CachedDocument> e = entries.get(i);
+            if (!e.getKey().equals(keep) && documents.remove(e.getKey(), e.getValue())) {
+                excess--;
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Number of documents served from the cache
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Number of documents that had to be generated
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * The number of cached documents
+     */
+    public int size() {
+        return documents.size();
+    }
+
+    /**
+     * Drops all the cached documents
+     */
+    public void clear() {
+        documents.clear();
+    }
+
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        clear();
+    }
+
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        clear();
+    }
+
+    public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+        // we use the post event
+    }
+
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        clear();
+    }
+
+    public void reloaded() {
+        clear();
+    }
+
+    public void handleGlobalChange(GeoServerInfo global, List<String> propertyNames,
+            List<Object> oldValues, List<Object> newValues) {
+        // we use the post event
+    }
+
+    public void handlePostGlobalChange(GeoServerInfo global) {
+        clear();
+    }
+
+    public void handleLoggingChange(LoggingInfo logging, List<String> propertyNames,
+            List<Object> oldValues, List<Object> newValues) {
+        // not part of the capabilities
+    }
+
+    public void handlePostLoggingChange(LoggingInfo logging) {
+        // not part of the capabilities
+    }
+
+    public void handleServiceChange(ServiceInfo service, List<String> propertyNames,
+            List<Object> oldValues, List<Object> newValues) {
+        // we use the post event
+    }
+
+    public void handlePostServiceChange(ServiceInfo service) {
+        clear();
+    }
+
+    /**
+     * A document, possibly still being generated
+     */
+    static class CachedDocument {
+        final long updateSequence;
+
+        final FutureTask<byte[]> task;
+
+        volatile long lastAccess = System.currentTimeMillis();
+
+        CachedDocument(long updateSequence, Callable<byte[]> generator) {
+            this.updateSequence = updateSequence;
+            this.task = new FutureTask<byte[]>(generator);
+        }
+
+        byte[] get() throws IOException {
+            lastAccess = System.currentTimeMillis();
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw (IOException) new IOException(
+                        "Interrupted while waiting for the capabilities document").initCause(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw (IOException) new IOException().initCause(cause);
+            }
+        }
+    }
+}
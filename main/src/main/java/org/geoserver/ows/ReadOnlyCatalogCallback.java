@@ -0,0 +1,82 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.geoserver.catalog.ReadOnlyCatalogAccess;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.Service;
+import org.geoserver.platform.ServiceException;
+
+/**
+ * Dispatcher callback that enables the {@link ReadOnlyCatalogAccess} for the operations that
+ * only read the catalog, and clears it at the end of the request.
+ * <p>
+ * The operations are listed, comma separated and case insensitive, in the
+ * CATALOG_READ_ONLY_OPERATIONS system variable (or servlet context parameter), for example
+ * "GetCapabilities,GetMap,GetFeature". By default the list is empty, and all requests get the
+ * usual modifiable catalog objects.
+ * </p>
+ */
+public class ReadOnlyCatalogCallback implements DispatcherCallback {
+
+    Set<String> operations = new HashSet<String>();
+
+    public ReadOnlyCatalogCallback() {
+        String value = GeoServerExtensions.getProperty("CATALOG_READ_ONLY_OPERATIONS");
+        if (value != null) {
+            for (String op : value.split(",")) {
+                if (op.trim().length() > 0) {
+                    operations.add(op.trim().toLowerCase());
+                }
+            }
+        }
+    }
+
+    public Set<String> getOperations() {
+        return operations;
+    }
+
+    public void setOperations(Set<String> operations) {
+        this.operations = new HashSet<String>();
+        for (String op : operations) {
+            this.operations.add(op.toLowerCase());
+        }
+    }
+
+    public Request init(Request request) {
+        return request;
+    }
+
+    public Service serviceDispatched(Request request, Service service) throws ServiceException {
+        // the operation is known at this point, enable the read only mode before the request
+        // is parsed, as parsing looks up the layers as well
+        String op = request.getRequest();
+        if (op != null && operations.contains(op.toLowerCase())) {
+            ReadOnlyCatalogAccess.set(true);
+        }
+        return service;
+    }
+
+    public Operation operationDispatched(Request request, Operation operation) {
+        return operation;
+    }
+
+    public Object operationExecuted(Request request, Operation operation, Object result) {
+        return result;
+    }
+
+    public Response responseDispatched(Request request, Operation operation, Object result,
+            Response response) {
+        return response;
+    }
+
+    public void finished(Request request) {
+        ReadOnlyCatalogAccess.remove();
+    }
+}
@@ -6,11 +6,18 @@ package org.geoserver.security.impl;
 
 import static org.geoserver.security.impl.DataAccessRule.*;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.springframework.security.Authentication;
+import org.springframework.security.GrantedAuthority;
 import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.catalog.WorkspaceInfo;
@@ -45,14 +52,25 @@ import org.geotools.util.logging.Logging;
  * If no {@link Properties} is provided, one will be looked upon in
  * <code>GEOSERVER_DATA_DIR/security/layers.properties, and the class will
  * keep up to date vs changes in the file</code>
+ * <p>
+ * The access decisions only depend on the rule node matching the resource and on the roles of
+ * the user, so they are computed once per set of roles for all the nodes of the rule tree and
+ * kept until the rules are reloaded
  * 
  * @author Andrea Aime - TOPP
  */
 public class DefaultDataAccessManager implements DataAccessManager {
     static final Logger LOGGER = Logging.getLogger(DataAccessManager.class);
 
+    /**
+     * Maximum number of role sets whose decisions are cached, past it the cache is cleared
+     */
+    static final int MAX_CACHED_ROLE_SETS = 1000;
+
     SecureTreeNode root;
 
+    volatile AccessDecisions decisions;
+
 //    Catalog catalog;
     
     DataAccessRuleDAO dao;
@@ -62,6 +80,7 @@ public class DefaultDataAccessManager implements DataAccessManager {
     public DefaultDataAccessManager(DataAccessRuleDAO dao) {
         this.dao = dao;
         this.root = buildAuthorizationTree(dao);
+        this.decisions = new AccessDecisions(root);
     }
 
     public CatalogMode getMode() {
@@ -70,8 +89,7 @@ public class DefaultDataAccessManager implements DataAccessManager {
 
     public boolean canAccess(Authentication user, WorkspaceInfo workspace, AccessMode mode) {
         checkPropertyFile();
-        SecureTreeNode node = root.getDeepestNode(new String[] { workspace.getName() });
-        return node.canAccess(user, mode);
+        return decisions.canAccess(user, new String[] { workspace.getName() }, mode);
     }
 
     public boolean canAccess(Authentication user, LayerInfo layer, AccessMode mode) {
@@ -99,14 +117,14 @@ public class DefaultDataAccessManager implements DataAccessManager {
             return true;
         }
 
-        SecureTreeNode node = root.getDeepestNode(new String[] { workspace, resource.getName() });
-        return node.canAccess(user, mode);
+        return decisions.canAccess(user, new String[] { workspace, resource.getName() }, mode);
     }
 
     void checkPropertyFile() {
         long daoLastModified = dao.getLastModified();
         if(lastLoaded < daoLastModified) {
             root = buildAuthorizationTree(dao);
+            decisions = new AccessDecisions(root);
             lastLoaded = daoLastModified;
         }
     }
@@ -155,4 +173,79 @@ public class DefaultDataAccessManager implements DataAccessManager {
         
         return root;
     }
+
+    /**
+     * Returns the number of role sets whose access decisions are currently cached
+     */
+    public int getCachedRoleSets() {
+        return decisions.decisions.size();
+    }
+
+    /**
+     * The access decisions for a rule tree. The nodes of the tree are numbered, and for each
+     * set of roles the decisions for all nodes are stored in a bit set per access mode, so
+     * that checking a resource boils down to finding its node and looking up a bit.
+     */
+    static class AccessDecisions {
+        SecureTreeNode root;
+
+        List<SecureTreeNode> nodes = new ArrayList<SecureTreeNode>();
+
+        ConcurrentHashMap<Set<String>, BitSet[]> decisions = new ConcurrentHashMap<Set<String>, BitSet[]>();
+
+        AccessDecisions(SecureTreeNode root) {
+            this.root = root;
+            index(root);
+        }
+
+        void index(SecureTreeNode node) {
+            node.index = nodes.size();
+            nodes.add(node);
+            for (SecureTreeNode child : node.children.values()) {
+                index(child);
+            }
+        }
+
+        boolean canAccess(Authentication user, String[] path, AccessMode mode) {
+            SecureTreeNode node = root.getDeepestNode(path);
+            return getDecisions(user)[mode.ordinal()].get(node.index);
+        }
+
+        BitSet[] getDecisions(Authentication user) {
+            Set<String> roles = roles(user);
+            BitSet[] result = decisions.get(roles);
+            if (result == null) {
+                AccessMode[] modes = AccessMode.values();
+                result = new BitSet[modes.length];
+                for (AccessMode mode : modes) {
+                    BitSet bits = new BitSet(nodes.size());
+                    for (SecureTreeNode node : nodes) {
+                        if (node.canAccess(user, mode)) {
+                            bits.set(node.index);
+                        }
+                    }
+                    result[mode.ordinal()] = bits;
+                }
+                if (decisions.size() >= MAX_CACHED_ROLE_SETS) {
+                    decisions.clear();
+                }
+                decisions.put(roles, result);
+            }
+            return result;
+        }
+
+        /**
+         * The set of roles of the user, the only part of the authentication the decisions
+         * depend upon
+         */
+        Set<String> roles(Authentication user) {
+            Set<String> roles = new HashSet<String>();
+            if (user != null && user.getAuthorities() != null) {
+                for (GrantedAuthority authority : user.getAuthorities()) {
+                    roles.add(authority.getAuthority());
+                }
+            }
+            return roles;
+        }
+    }
 }
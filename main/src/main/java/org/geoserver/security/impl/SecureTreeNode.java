@@ -36,6 +36,11 @@ class SecureTreeNode {
 
     SecureTreeNode parent;
 
+    /**
+     * Position of the node in the tree, used to look up the cached access decisions
+     */
+    int index;
+
     /**
      * A map from access mode to set of roles that can perform that kind of
      * access. Given a certain access mode, the intepretation of the associated
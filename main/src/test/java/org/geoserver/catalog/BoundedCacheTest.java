@@ -0,0 +1,52 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import junit.framework.TestCase;
+
+public class BoundedCacheTest extends TestCase {
+
+    CacheStatistics statistics = new CacheStatistics("test");
+
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        BoundedCache<String, String> cache = new BoundedCache<String, String>(10, 0, statistics);
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, "value" + i);
+            // make sure access times differ
+            Thread.sleep(2);
+        }
+        // touch the oldest entry, it should survive the eviction
+        assertEquals("value0", cache.get("key0"));
+
+        cache.put("key10", "value10");
+        assertTrue(cache.size() <= 10);
+        assertEquals("value0", cache.get("key0"));
+        assertEquals("value10", cache.get("key10"));
+        assertNull(cache.get("key1"));
+        assertEquals(11 - cache.size(), statistics.getEvictionCount());
+    }
+
+    public void testIdleExpiration() throws Exception {
+        BoundedCache<String, String> cache = new BoundedCache<String, String>(10, 50, statistics);
+        cache.put("key", "value");
+        assertEquals("value", cache.get("key"));
+
+        Thread.sleep(100);
+        assertNull(cache.get("key"));
+        assertEquals(0, cache.size());
+        assertEquals(1, statistics.getEvictionCount());
+    }
+
+    public void testShrink() {
+        BoundedCache<String, String> cache = new BoundedCache<String, String>(100, 0, statistics);
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+        assertEquals(100, cache.size());
+
+        cache.setMaxSize(10);
+        assertTrue(cache.size() <= 10);
+    }
+}
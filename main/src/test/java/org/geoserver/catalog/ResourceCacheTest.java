@@ -0,0 +1,173 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class ResourceCacheTest extends TestCase {
+
+    Map<String, String> map = new HashMap<String, String>();
+
+    List<String> disposed = new ArrayList<String>();
+
+    ResourceCache<String, String> cache = new ResourceCache<String, String>("test") {
+        Map<String, String> map() {
+            return map;
+        }
+
+        void dispose(String key, String value) {
+            disposed.add(value);
+        }
+    };
+
+    public void testSingleLoadPerKey() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<String> loader = new Callable<String>() {
+            public String call() throws Exception {
+                loads.incrementAndGet();
+                release.await();
+                return "value";
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future[] futures = new Future[4];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        return cache.get("key", loader);
+                    }
+                });
+            }
+            // give the threads some time to pile up on the same load
+            Thread.sleep(200);
+            release.countDown();
+            for (Future f : futures) {
+                assertEquals("value", f.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getStatistics().getLoadCount());
+        assertEquals("value", map.get("key"));
+    }
+
+    public void testDifferentKeysLoadInParallel() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> slow = executor.submit(new Callable<String>() {
+                public String call() throws Exception {
+                    return cache.get("slow", new Callable<String>() {
+                        public String call() throws Exception {
+                            blocked.countDown();
+                            release.await();
+                            return "slowValue";
+                        }
+                    });
+                }
+            });
+
+            blocked.await();
+            // the slow load must not prevent this one from completing
+            assertEquals("fastValue", cache.get("fast", new Callable<String>() {
+                public String call() throws Exception {
+                    return "fastValue";
+                }
+            }));
+
+            release.countDown();
+            assertEquals("slowValue", slow.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testFailedLoadIsRetried() throws Exception {
+        try {
+            cache.get("key", new Callable<String>() {
+                public String call() throws Exception {
+                    throw new IOException("failed");
+                }
+            });
+            fail("Should have thrown an exception");
+        } catch (IOException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertEquals(1, cache.getStatistics().getLoadFailureCount());
+
+        assertEquals("value", cache.get("key", new Callable<String>() {
+            public String call() throws Exception {
+                return "value";
+            }
+        }));
+        assertEquals("value", cache.get("key"));
+    }
+
+    public void testRemoveDuringLoad() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger loads = new AtomicInteger();
+        final Callable<String> loader = new Callable<String>() {
+            public String call() throws Exception {
+                if (loads.incrementAndGet() == 1) {
+                    blocked.countDown();
+                    release.await();
+                    return "stale";
+                }
+                return "fresh";
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> load = executor.submit(new Callable<String>() {
+                public String call() throws Exception {
+                    return cache.get("key", loader);
+                }
+            });
+            blocked.await();
+            Future<String> waiting = executor.submit(new Callable<String>() {
+                public String call() throws Exception {
+                    return cache.get("key", loader);
+                }
+            });
+            // give the second caller some time to wait on the first load
+            Thread.sleep(200);
+
+            cache.remove("key");
+            release.countDown();
+            assertEquals("fresh", load.get(5, TimeUnit.SECONDS));
+            assertEquals("fresh", waiting.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+
+        // the result of the load was computed before the clear, it must have been disposed
+        // and not cached
+        assertEquals(1, disposed.size());
+        assertEquals("stale", disposed.get(0));
+        assertEquals("fresh", cache.get("key"));
+    }
+}
@@ -213,4 +213,47 @@ public class ResourcePoolTest extends GeoServerTestSupport {
         Catalog catalog = getCatalog();
         assertEquals(200, catalog.getResourcePool().featureTypeCache.maxSize());
     }
+    
+    public void testDataStoreCacheStatistics() throws IOException {
+        Catalog catalog = getCatalog();
+        ResourcePool pool = new ResourcePool(catalog);
+        catalog.setResourcePool(pool);
+
+        DataStoreInfo info = catalog.getDataStores().get(0);
+        DataAccess<? extends FeatureType, ? extends Feature> ds1 = pool.getDataStore(info);
+        DataAccess<? extends FeatureType, ? extends Feature> ds2 = pool.getDataStore(info);
+        assertSame(ds1, ds2);
+
+        CacheStatistics stats = pool.getDataStoreCacheStatistics();
+        assertEquals(1, stats.getMissCount());
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1, stats.getLoadCount());
+        assertEquals(0, stats.getLoadFailureCount());
+    }
+    
+    public void testConfigureStyleAndCRSCaches() throws Exception {
+        GeoServer gs = getGeoServer();
+        GeoServerInfo global = gs.getGlobal();
+        global.setStyleCacheSize(50);
+        global.setCRSCacheSize(60);
+        global.setCacheIdleTime(120);
+        gs.save(global);
+
+        ResourcePool pool = getCatalog().getResourcePool();
+        assertEquals(50, pool.styleCache.getMaxSize());
+        assertEquals(60, pool.crsCache.getMaxSize());
+        assertEquals(120000, pool.styleCache.getIdleTime());
+        assertEquals(120000, pool.crsCache.getIdleTime());
+    }
+    
+    public void testCRSCacheStatistics() throws Exception {
+        ResourcePool pool = new ResourcePool(getCatalog());
+        assertNotNull(pool.getCRS("EPSG:4326"));
+        assertNotNull(pool.getCRS("EPSG:4326"));
+        
+        CacheStatistics stats = pool.getCRSCacheStatistics();
+        assertEquals(1, stats.getMissCount());
+        assertEquals(1, stats.getHitCount());
+        assertEquals(0.5, stats.getHitRatio(), 0d);
+    }
 }
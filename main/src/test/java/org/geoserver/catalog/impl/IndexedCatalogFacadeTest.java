@@ -0,0 +1,100 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.StyleInfo;
+
+public class IndexedCatalogFacadeTest extends CatalogImplTest {
+
+    @Override
+    protected Catalog createCatalog() {
+        CatalogImpl catalog = new CatalogImpl();
+        catalog.setFacade(new IndexedCatalogFacade(catalog));
+        return catalog;
+    }
+
+    public void testRenameDataStore() {
+        addDataStore();
+
+        DataStoreInfo ds2 = catalog.getDataStoreByName(ws.getName(), ds.getName());
+        ds2.setName("dsRenamed");
+        catalog.save(ds2);
+
+        assertNull(catalog.getDataStoreByName(ws.getName(), "dsName"));
+        assertEquals(ds.getId(), catalog.getDataStoreByName(ws.getName(), "dsRenamed").getId());
+        assertEquals(ds.getId(), catalog.getDataStoreByName("dsRenamed").getId());
+    }
+
+    public void testRenameFeatureTypeRenamesLayer() {
+        addLayer();
+
+        FeatureTypeInfo ft2 = catalog.getFeatureTypeByName(ns.getPrefix(), ft.getName());
+        ft2.setName("ftRenamed");
+        catalog.save(ft2);
+
+        assertNull(catalog.getFeatureTypeByName(ns.getPrefix(), "ftName"));
+        assertNotNull(catalog.getFeatureTypeByName(ns.getPrefix(), "ftRenamed"));
+        assertNotNull(catalog.getFeatureTypeByDataStore(ds, "ftRenamed"));
+
+        assertNull(catalog.getLayerByName("ftName"));
+        LayerInfo renamed = catalog.getLayerByName("ftRenamed");
+        assertNotNull(renamed);
+        assertEquals(l.getId(), renamed.getId());
+        assertNotNull(catalog.getLayerByName(ns.getPrefix() + ":ftRenamed"));
+    }
+
+    public void testChangeLayerStyle() {
+        addLayer();
+
+        StyleInfo s2 = catalog.getFactory().createStyle();
+        s2.setName("styleName2");
+        s2.setFilename("styleFilename2");
+        catalog.add(s2);
+
+        LayerInfo l2 = catalog.getLayerByName(l.getName());
+        l2.setDefaultStyle(catalog.getStyleByName("styleName2"));
+        catalog.save(l2);
+
+        assertTrue(catalog.getLayers(catalog.getStyleByName("styleName")).isEmpty());
+        assertEquals(1, catalog.getLayers(catalog.getStyleByName("styleName2")).size());
+    }
+
+    public void testRenameStyle() {
+        addStyle();
+
+        StyleInfo s2 = catalog.getStyleByName(s.getName());
+        s2.setName("styleRenamed");
+        catalog.save(s2);
+
+        assertNull(catalog.getStyleByName("styleName"));
+        assertEquals(s.getId(), catalog.getStyleByName("styleRenamed").getId());
+    }
+
+    public void testRemoveLayerUnindexes() {
+        addLayer();
+
+        catalog.remove(catalog.getLayerByName(l.getName()));
+        assertNull(catalog.getLayer(l.getId()));
+        assertNull(catalog.getLayerByName(l.getName()));
+        assertTrue(catalog.getLayers(ft).isEmpty());
+        assertTrue(catalog.getLayers(s).isEmpty());
+    }
+
+    public void testSyncRebuildsIndexes() {
+        addLayer();
+
+        CatalogImpl other = (CatalogImpl) createCatalog();
+        other.sync((CatalogImpl) catalog);
+
+        assertNotNull(other.getLayer(l.getId()));
+        assertNotNull(other.getLayerByName(l.getName()));
+        assertNotNull(other.getStyleByName(s.getName()));
+        assertEquals(1, other.getLayers(ft).size());
+    }
+}
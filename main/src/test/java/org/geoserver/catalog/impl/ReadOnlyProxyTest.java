@@ -0,0 +1,120 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogFactory;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ReadOnlyCatalogAccess;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+
+public class ReadOnlyProxyTest extends TestCase {
+
+    Catalog catalog;
+
+    @Override
+    protected void setUp() throws Exception {
+        catalog = new CatalogImpl();
+        CatalogFactory factory = catalog.getFactory();
+
+        WorkspaceInfo ws = factory.createWorkspace();
+        ws.setName("wsName");
+        catalog.add(ws);
+
+        NamespaceInfo ns = factory.createNamespace();
+        ns.setPrefix("wsName");
+        ns.setURI("nsURI");
+        catalog.add(ns);
+
+        DataStoreInfo ds = factory.createDataStore();
+        ds.setName("dsName");
+        ds.setWorkspace(ws);
+        catalog.add(ds);
+
+        FeatureTypeInfo ft = factory.createFeatureType();
+        ft.setName("ftName");
+        ft.setStore(ds);
+        ft.setNamespace(ns);
+        ft.getKeywords().add("keyword");
+        catalog.add(ft);
+
+        StyleInfo s = factory.createStyle();
+        s.setName("styleName");
+        s.setFilename("styleFilename");
+        catalog.add(s);
+
+        LayerInfo l = factory.createLayer();
+        l.setResource(ft);
+        l.setDefaultStyle(s);
+        catalog.add(l);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ReadOnlyCatalogAccess.remove();
+    }
+
+    public void testModifiableByDefault() {
+        LayerInfo l = catalog.getLayerByName("ftName");
+        assertNotNull(ModificationProxy.handler(l));
+        assertNull(ReadOnlyProxy.handler(l));
+    }
+
+    public void testReadOnly() {
+        ReadOnlyCatalogAccess.set(true);
+        LayerInfo l = catalog.getLayerByName("ftName");
+        assertNotNull(ReadOnlyProxy.handler(l));
+        assertEquals("ftName", l.getName());
+
+        // nested objects are read only too
+        FeatureTypeInfo ft = (FeatureTypeInfo) l.getResource();
+        assertNotNull(ReadOnlyProxy.handler(ft));
+        assertNotNull(ReadOnlyProxy.handler(ft.getStore()));
+        assertEquals("dsName", ft.getStore().getName());
+        assertEquals("styleName", l.getDefaultStyle().getName());
+
+        try {
+            l.setName("foo");
+            fail("Setters should not be allowed");
+        } catch (UnsupportedOperationException e) {
+            // fine
+        }
+        try {
+            ft.getKeywords().add("another");
+            fail("Collections should be unmodifiable");
+        } catch (UnsupportedOperationException e) {
+            // fine
+        }
+        assertEquals(1, ft.getKeywords().size());
+    }
+
+    public void testReadOnlyLists() {
+        ReadOnlyCatalogAccess.set(true);
+        List<LayerInfo> layers = catalog.getLayers();
+        assertEquals(1, layers.size());
+        assertNotNull(ReadOnlyProxy.handler(layers.get(0)));
+        assertTrue(layers.get(0) instanceof Proxy);
+    }
+
+    public void testUnwrap() {
+        ReadOnlyCatalogAccess.set(true);
+        LayerInfo l = catalog.getLayerByName("ftName");
+        LayerInfo raw = ModificationProxy.unwrap(l);
+        assertTrue(raw instanceof LayerInfoImpl);
+
+        ReadOnlyCatalogAccess.set(false);
+        assertSame(raw, ModificationProxy.unwrap(catalog.getLayerByName("ftName")));
+        assertEquals(raw, ModificationProxy.unwrap(catalog.getLayers().get(0)));
+    }
+}
@@ -0,0 +1,93 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.config.util.XStreamPersister;
+import org.geoserver.config.util.XStreamPersisterFactory;
+import org.geoserver.data.test.MockData;
+import org.geoserver.test.GeoServerTestSupport;
+
+public class CatalogSnapshotTest extends GeoServerTestSupport {
+
+    CatalogSnapshot snapshot;
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        super.setUpInternal();
+        snapshot = new CatalogSnapshot(getResourceLoader(), new XStreamPersisterFactory());
+        snapshot.attach(getCatalog());
+    }
+
+    @Override
+    protected void tearDownInternal() throws Exception {
+        snapshot.dispose();
+        snapshot.getFile().delete();
+        super.tearDownInternal();
+    }
+
+    Catalog readSnapshot() {
+        Catalog catalog = new CatalogImpl();
+        catalog.setResourceLoader(getResourceLoader());
+        XStreamPersister xp = new XStreamPersisterFactory().createXMLPersister();
+        xp.setCatalog(catalog);
+        return snapshot.read(catalog, xp) ? catalog : null;
+    }
+
+    public void testRoundTrip() throws Exception {
+        snapshot.write();
+        assertTrue(snapshot.getFile().exists());
+
+        Catalog original = getCatalog();
+        Catalog copy = readSnapshot();
+        assertNotNull(copy);
+
+        assertEquals(original.getStyles().size(), copy.getStyles().size());
+        assertEquals(original.getWorkspaces().size(), copy.getWorkspaces().size());
+        assertEquals(original.getNamespaces().size(), copy.getNamespaces().size());
+        assertEquals(original.getStores(StoreInfo.class).size(),
+                copy.getStores(StoreInfo.class).size());
+        assertEquals(original.getResources(ResourceInfo.class).size(),
+                copy.getResources(ResourceInfo.class).size());
+        assertEquals(original.getLayers().size(), copy.getLayers().size());
+        assertEquals(original.getLayerGroups().size(), copy.getLayerGroups().size());
+        assertEquals(original.getDefaultWorkspace().getName(),
+                copy.getDefaultWorkspace().getName());
+
+        String name = getLayerId(MockData.BUILDINGS);
+        LayerInfo layer = copy.getLayerByName(name);
+        assertNotNull(layer);
+        assertNotNull(layer.getResource().getStore().getWorkspace());
+        assertEquals(original.getLayerByName(name).getDefaultStyle().getName(),
+                layer.getDefaultStyle().getName());
+    }
+
+    public void testOutOfDate() throws Exception {
+        snapshot.write();
+        assertNotNull(readSnapshot());
+
+        // a file added to the data directory while the server was down
+        File style = new File(getResourceLoader().findOrCreateDirectory("styles"),
+                "snapshotTest.xml");
+        FileUtils.writeStringToFile(style, "<style/>");
+        try {
+            assertNull(readSnapshot());
+        } finally {
+            style.delete();
+        }
+    }
+
+    public void testCorrupted() throws Exception {
+        FileUtils.writeStringToFile(snapshot.getFile(), "not a snapshot");
+        assertNull(readSnapshot());
+    }
+}
@@ -0,0 +1,132 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogFactory;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.config.util.XStreamPersister;
+import org.geoserver.config.util.XStreamPersisterFactory;
+import org.geoserver.data.test.MockData;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Compares the time needed to read a large data directory with a single thread and with one
+ * thread per processor. The data directory is built by replicating the {@link MockData} vector
+ * layers in a number of copies of its workspaces. Not a test, run it manually with:
+ * 
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.geoserver.config.GeoServerLoaderBenchmark -Dexec.args=200
+ * </pre>
+ */
+public class GeoServerLoaderBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int copies = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        Logger logger = Logging.getLogger("org.geoserver");
+        logger.setLevel(Level.WARNING);
+
+        MockData data = new MockData();
+        data.setUp();
+        GeoServerResourceLoader rl = new GeoServerResourceLoader(data.getDataDirectoryRoot());
+        DefaultGeoServerLoader loader = new DefaultGeoServerLoader(rl);
+        XStreamPersister xp = new XStreamPersisterFactory().createXMLPersister();
+
+        // converts the mock data to the 2.x layout, then replicates it
+        Catalog catalog = new CatalogImpl();
+        catalog.setResourceLoader(rl);
+        xp.setCatalog(catalog);
+        loader.readCatalog(catalog, xp);
+        catalog.addListener(new GeoServerPersister(rl, xp));
+        for (int i = 0; i < copies; i++) {
+            replicate(catalog, i);
+        }
+        System.out.println("Built a data directory with " + catalog.getLayers().size()
+                + " layers in " + data.getDataDirectoryRoot());
+
+        int[] threads = new int[] { 1, Runtime.getRuntime().availableProcessors() };
+        for (int run = 0; run < 2; run++) {
+            for (int t : threads) {
+                loader.loaderThreads = t;
+                long start = System.currentTimeMillis();
+                Catalog read = loader.readCatalog(new XStreamPersisterFactory()
+                        .createXMLPersister());
+                System.out.println(t + " threads: " + read.getLayers().size() + " layers in "
+                        + (System.currentTimeMillis() - start) + " ms");
+                read.dispose();
+            }
+        }
+    }
+
+    static void replicate(Catalog catalog, int copy) {
+        CatalogFactory factory = catalog.getFactory();
+        List<DataStoreInfo> stores = new ArrayList<DataStoreInfo>(catalog.getDataStores());
+        for (DataStoreInfo store : stores) {
+            if (store.getName().contains("__")) {
+                // a copy made in a previous round
+                continue;
+            }
+            WorkspaceInfo origWs = store.getWorkspace();
+            String name = origWs.getName() + "__" + copy;
+            WorkspaceInfo ws = catalog.getWorkspaceByName(name);
+            NamespaceInfo ns = catalog.getNamespaceByPrefix(name);
+            if (ws == null) {
+                ws = factory.createWorkspace();
+                ws.setName(name);
+                catalog.add(ws);
+
+                ns = factory.createNamespace();
+                ns.setPrefix(name);
+                ns.setURI(catalog.getNamespaceByPrefix(origWs.getName()).getURI() + "/" + copy);
+                catalog.add(ns);
+            }
+
+            DataStoreInfo ds = factory.createDataStore();
+            ds.setName(store.getName() + "__" + copy);
+            ds.setWorkspace(ws);
+            ds.setType(store.getType());
+            ds.setEnabled(store.isEnabled());
+            ds.getConnectionParameters().putAll(store.getConnectionParameters());
+            ds.getConnectionParameters().put("namespace", ns.getURI());
+            catalog.add(ds);
+
+            for (FeatureTypeInfo orig : catalog.getFeatureTypesByDataStore(store)) {
+                FeatureTypeInfo ft = factory.createFeatureType();
+                ft.setName(orig.getName());
+                ft.setNativeName(orig.getNativeName());
+                ft.setNamespace(ns);
+                ft.setStore(ds);
+                ft.setSRS(orig.getSRS());
+                ft.setNativeCRS(orig.getNativeCRS());
+                ft.setNativeBoundingBox(orig.getNativeBoundingBox());
+                ft.setLatLonBoundingBox(orig.getLatLonBoundingBox());
+                ft.setProjectionPolicy(orig.getProjectionPolicy());
+                ft.setEnabled(orig.isEnabled());
+                catalog.add(ft);
+
+                for (LayerInfo origLayer : catalog.getLayers(orig)) {
+                    LayerInfo layer = factory.createLayer();
+                    layer.setResource(ft);
+                    layer.setType(origLayer.getType());
+                    layer.setDefaultStyle(origLayer.getDefaultStyle());
+                    layer.setEnabled(origLayer.isEnabled());
+                    catalog.add(layer);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import junit.framework.TestCase;
+
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.config.GeoServerInfo;
+import org.geoserver.config.impl.GeoServerImpl;
+
+public class CapabilitiesCacheTest extends TestCase {
+
+    GeoServerImpl geoServer;
+
+    CapabilitiesCache cache;
+
+    CountingGenerator generator;
+
+    @Override
+    protected void setUp() throws Exception {
+        geoServer = new GeoServerImpl();
+        geoServer.setCatalog(new CatalogImpl());
+        geoServer.setGlobal(geoServer.getFactory().createGlobal());
+        cache = new CapabilitiesCache(geoServer);
+        cache.setEnabled(true);
+        generator = new CountingGenerator();
+    }
+
+    public void testCached() throws Exception {
+        String key = CapabilitiesCache.buildKey("wms", "1.1.1", "http://localhost/geoserver",
+                null);
+        assertEquals("1", new String(cache.getDocument(key, generator)));
+        assertEquals("1", new String(cache.getDocument(key, generator)));
+        assertEquals(1, generator.count);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // a different key gets its own document
+        String other = CapabilitiesCache.buildKey("wms", "1.3.0", "http://localhost/geoserver",
+                null);
+        assertEquals("2", new String(cache.getDocument(other, generator)));
+        assertEquals(2, cache.size());
+    }
+
+    public void testUpdateSequence() throws Exception {
+        String key = CapabilitiesCache.buildKey("wfs", "1.1.0", "http://localhost/geoserver",
+                null);
+        assertEquals("1", new String(cache.getDocument(key, generator)));
+
+        // saving the global config empties the cache
+        GeoServerInfo global = geoServer.getGlobal();
+        global.setUpdateSequence(global.getUpdateSequence() + 1);
+        geoServer.save(global);
+        assertEquals(0, cache.size());
+
+        assertEquals("2", new String(cache.getDocument(key, generator)));
+        assertEquals("2", new String(cache.getDocument(key, generator)));
+        assertEquals(2, generator.count);
+    }
+
+    public void testFailure() throws Exception {
+        String key = CapabilitiesCache.buildKey("wcs", "1.1.1", "http://localhost/geoserver",
+                null);
+        generator.fail = true;
+        try {
+            cache.getDocument(key, generator);
+            fail("The generation error should have been reported");
+        } catch (IOException e) {
+            // fine
+        }
+        assertEquals(0, cache.size());
+
+        generator.fail = false;
+        assertEquals("2", new String(cache.getDocument(key, generator)));
+    }
+
+    public void testMaxSize() throws Exception {
+        cache.setMaxSize(2);
+        for (int i = 0; i < 5; i++) {
+            cache.getDocument("key" + i, generator);
+            Thread.sleep(2);
+        }
+        assertEquals(2, cache.size());
+        // the most recent are still there
+        cache.getDocument("key4", generator);
+        assertEquals(5, generator.count);
+    }
+
+    static class CountingGenerator implements CapabilitiesCache.Generator {
+        int count;
+
+        boolean fail;
+
+        public void write(OutputStream output) throws IOException {
+            count++;
+            if (fail) {
+                throw new IOException("Failed on purpose");
+            }
+            output.write(String.valueOf(count).getBytes());
+        }
+    }
+}
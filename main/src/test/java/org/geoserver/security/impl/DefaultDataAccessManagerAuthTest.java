@@ -1,5 +1,8 @@
 package org.geoserver.security.impl;
 import org.springframework.security.Authentication;
+import org.springframework.security.GrantedAuthority;
+import org.springframework.security.GrantedAuthorityImpl;
+import org.springframework.security.providers.TestingAuthenticationToken;
 import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.security.AccessMode;
 import org.geoserver.security.CatalogMode;
@@ -126,5 +129,27 @@ public class DefaultDataAccessManagerAuthTest extends AbstractAuthorizationTest
         // should fall back on the default and complain in the logger
         assertEquals(CatalogMode.HIDE, wo.getMode());
     }
-    
+
+    public void testDecisionCache() throws Exception {
+        DefaultDataAccessManager wo = (DefaultDataAccessManager) buildLegacyAccessManager("complex.properties");
+        assertTrue(wo.canAccess(roUser, statesLayer, AccessMode.READ));
+        assertFalse(wo.canAccess(roUser, basesLayer, AccessMode.READ));
+        assertEquals(1, wo.getCachedRoleSets());
+
+        // the decisions are shared among the users with the same roles, whatever their order
+        Authentication wrUser = new TestingAuthenticationToken("wr", "supersecret",
+                new GrantedAuthority[] { new GrantedAuthorityImpl("WRITER"),
+                        new GrantedAuthorityImpl("READER") });
+        assertTrue(wo.canAccess(rwUser, statesLayer, AccessMode.WRITE));
+        assertTrue(wo.canAccess(wrUser, statesLayer, AccessMode.WRITE));
+        assertFalse(wo.canAccess(wrUser, basesLayer, AccessMode.WRITE));
+        assertEquals(2, wo.getCachedRoleSets());
+
+        // anonymous and users without roles get the same decisions
+        assertFalse(wo.canAccess(anonymous, statesLayer, AccessMode.READ));
+        assertFalse(wo.canAccess(null, statesLayer, AccessMode.READ));
+        assertTrue(wo.canAccess(null, roadsLayer, AccessMode.READ));
+        assertEquals(3, wo.getCachedRoleSets());
+    }
+
 }
@@ -20,11 +20,9 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -48,6 +46,9 @@ import org.geotools.util.Version;
 import org.geotools.xml.EMFUtils;
 import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.AbstractController;
 import org.xml.sax.SAXException;
@@ -106,7 +107,7 @@ import org.xmlpull.v1.XmlPullParserFactory;
  * @author Justin Deoliveira, The Open Planning Project, jdeolive@openplans.org
  *
  */
-public class Dispatcher extends AbstractController {
+public class Dispatcher extends AbstractController implements ApplicationListener {
     /**
      * Logging instance
      */
@@ -129,6 +130,12 @@ public class Dispatcher extends AbstractController {
      * list of callbacks 
      */
     List<DispatcherCallback> callbacks = Collections.EMPTY_LIST;
+
+    /**
+     * The services, readers and responses lookup table, built on first use and discarded when
+     * the application context is refreshed
+     */
+    volatile DispatcherRoutingTable routes;
     
     /**
      * Sets the flag to control wether the dispatcher is cite compliante.
@@ -171,6 +178,22 @@ public class Dispatcher extends AbstractController {
         }
     }
     
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (event instanceof ContextRefreshedEvent) {
+            // the extensions might have changed
+            routes = null;
+        }
+    }
+
+    DispatcherRoutingTable getRoutes() {
+        DispatcherRoutingTable result = routes;
+        if (result == null) {
+            result = new DispatcherRoutingTable();
+            routes = result;
+        }
+        return result;
+    }
+
     protected void preprocessRequest(HttpServletRequest request)
         throws Exception {
         //set the charset
@@ -445,9 +468,13 @@ public class Dispatcher extends AbstractController {
 
         // lookup the operation, initial lookup based on (service,request)
         Object serviceBean = serviceDescriptor.getService();
-        Method operation = OwsUtils.method(serviceBean.getClass(), req.getRequest());
+        if (!exists) {
+            String msg = "No such operation " + req;
+            throw new ServiceException(msg, "OperationNotSupported", req.getRequest());
+        }
+        Method operation = getRoutes().findOperation(serviceBean.getClass(), req.getRequest());
 
-        if (operation == null || !exists) {
+        if (operation == null) {
             String msg = "No such operation " + req;
             throw new ServiceException(msg, "OperationNotSupported", req.getRequest());
         }
@@ -578,6 +605,7 @@ public class Dispatcher extends AbstractController {
         }
 
         Operation op = new Operation(req.getRequest(), serviceDescriptor, operation, parameters);
+        req.setOperation(op);
         return fireOperationDispatchedCallback(req,op);
     }
 
@@ -585,6 +613,7 @@ public class Dispatcher extends AbstractController {
         for ( DispatcherCallback cb : callbacks ) {
             Operation o = cb.operationDispatched( req, op );
             op = o != null ? o : op;
+            req.setOperation(op);
         }
         return op;
     }
@@ -643,37 +672,13 @@ public class Dispatcher extends AbstractController {
         throws Throwable {
         //step 6: write response
         if (result != null) {
-            //look up respones
-            List responses = GeoServerExtensions.extensions(Response.class);
-
-            //first filter by binding, and canHandle
-         O: for (Iterator itr = responses.iterator(); itr.hasNext();) {
-                Response response = (Response) itr.next();
-
-                Class binding = response.getBinding();
-
-                if (!binding.isAssignableFrom(result.getClass())
-                        || !response.canHandle(opDescriptor)) {
-                    itr.remove();
-
-                    continue;
-                }
-
-                //filter by output format
-                Set outputFormats = response.getOutputFormats();
-
-                if ((req.getOutputFormat() != null) && (!outputFormats.isEmpty())
-                        && !outputFormats.contains(req.getOutputFormat())) {
-                    
-                    //must do a case insensitive check
-                    for ( Iterator of = outputFormats.iterator(); of.hasNext(); ) {
-                        String outputFormat = (String) of.next();
-                        if( req.getOutputFormat().equalsIgnoreCase( outputFormat ) ) {
-                            continue O;
-                        }
-                    }
-                    
-                    itr.remove();
+            //look up the responses matching the binding and output format, 
+            // sorted by class hierarchy, and filter them by canHandle
+            List<Response> responses = new ArrayList<Response>();
+            for (Response response : getRoutes().findResponses(result.getClass(),
+                    req.getOutputFormat())) {
+                if (response.canHandle(opDescriptor)) {
+                    responses.add(response);
                 }
             }
 
@@ -690,29 +695,6 @@ public class Dispatcher extends AbstractController {
             }
 
             if (responses.size() > 1) {
-                //sort by class hierarchy
-                Collections.sort(responses,
-                    new Comparator() {
-                        public int compare(Object o1, Object o2) {
-                            Class c1 = ((Response) o1).getBinding();
-                            Class c2 = ((Response) o2).getBinding();
-
-                            if (c1.equals(c2)) {
-                                return 0;
-                            }
-
-                            if (c1.isAssignableFrom(c2)) {
-                                return 1;
-                            }
-
-                            if (c2.isAssignableFrom(c1)) {
-                                ;
-                            }
-
-                            return -1;
-                        }
-                    });
-
                 //check first two and make sure bindings are not equal
                 Response r1 = (Response) responses.get(0);
                 Response r2 = (Response) responses.get(1);
@@ -771,160 +753,20 @@ public class Dispatcher extends AbstractController {
     }
     
     Collection loadServices() {
-        Collection services = GeoServerExtensions.extensions(Service.class);
-
-        if (!(new HashSet(services).size() == services.size())) {
-            String msg = "Two identical service descriptors found";
-            throw new IllegalStateException(msg);
-        }
-
-        return services;
+        return getRoutes().getServices();
     }
 
     Service findService(String id, String ver) throws ServiceException {
-        Version version = (ver != null) ? new Version(ver) : null;
-        Collection services = loadServices();
-
-        //first just match on service,request
-        List matches = new ArrayList();
-
-        for (Iterator itr = services.iterator(); itr.hasNext();) {
-            Service sBean = (Service) itr.next();
-
-            if (sBean.getId().equalsIgnoreCase(id)) {
-                matches.add(sBean);
-            }
-        }
-
-        if (matches.isEmpty()) {
-            return null;
-        }
-
-        Service sBean = null;
-
-        //if multiple, use version to filter match
-        if (matches.size() > 1) {
-            List vmatches = new ArrayList(matches);
-
-            //match up the version
-            if (version != null) {
-                //version specified, look for a match
-                for (Iterator itr = vmatches.iterator(); itr.hasNext();) {
-                    Service s = (Service) itr.next();
-
-                    if (version.equals(s.getVersion())) {
-                        continue;
-                    }
-
-                    itr.remove();
-                }
-
-                if (vmatches.isEmpty()) {
-                    //no matching version found, drop out and next step 
-                    // will sort to return highest version
-                    vmatches = new ArrayList(matches);
-                }
-            }
-
-            //multiple services found, sort by version
-            if (vmatches.size() > 1) {
-                //use highest version
-                Comparator comparator = new Comparator() {
-                        public int compare(Object o1, Object o2) {
-                            Service s1 = (Service) o1;
-                            Service s2 = (Service) o2;
-
-                            return s1.getVersion().compareTo(s2.getVersion());
-                        }
-                    };
-
-                Collections.sort(vmatches, comparator);
-            }
-
-            sBean = (Service) vmatches.get(vmatches.size() - 1);
-        } else {
-            //only a single match, that was easy
-            sBean = (Service) matches.get(0);
-        }
-
-        return sBean;
-    }
-
-    Collection loadKvpRequestReaders() {
-        Collection kvpReaders = GeoServerExtensions.extensions(KvpRequestReader.class);
-
-        if (!(new HashSet(kvpReaders).size() == kvpReaders.size())) {
-            String msg = "Two identical kvp readers found";
-            throw new IllegalStateException(msg);
-        }
-
-        return kvpReaders;
+        return getRoutes().findService(id, ver);
     }
 
     KvpRequestReader findKvpRequestReader(Class type) {
-        Collection kvpReaders = loadKvpRequestReaders();
-
-        List matches = new ArrayList();
-
-        for (Iterator itr = kvpReaders.iterator(); itr.hasNext();) {
-            KvpRequestReader kvpReader = (KvpRequestReader) itr.next();
-
-            if (kvpReader.getRequestBean().isAssignableFrom(type)) {
-                matches.add(kvpReader);
-            }
-        }
-
-        if (matches.isEmpty()) {
-            return null;
-        }
-
-        if (matches.size() > 1) {
-            //sort by class hierarchy
-            Comparator comparator = new Comparator() {
-                    public int compare(Object o1, Object o2) {
-                        KvpRequestReader kvp1 = (KvpRequestReader) o1;
-                        KvpRequestReader kvp2 = (KvpRequestReader) o2;
-
-                        if (kvp2.getRequestBean().isAssignableFrom(kvp1.getRequestBean())) {
-                            return -1;
-                        }
-
-                        return 1;
-                    }
-                };
-
-            Collections.sort(matches, comparator);
-        }
-
-        return (KvpRequestReader) matches.get(0);
-    }
-
-    Collection loadXmlReaders() {
-        List<XmlRequestReader> xmlReaders = GeoServerExtensions.extensions(XmlRequestReader.class);
-
-        if (!(new HashSet<XmlRequestReader>(xmlReaders).size() == xmlReaders.size())) {
-        
-            String msg = "Two identical xml readers found";
-            for (int i = 0; i < xmlReaders.size(); i++) {
-                XmlRequestReader r1 = xmlReaders.get(i);
-                for (int j = i + 1; j < xmlReaders.size(); j++) {
-                    XmlRequestReader r2 = xmlReaders.get(j);
-                    if(r1.equals(r2)) {
-                        msg += ": " + r1 + " and " + r2;
-                        break;
-                    }
-                }
-                
-            }
-            
-            throw new IllegalStateException(msg);
-        }
-
-        return xmlReaders;
+        return getRoutes().findKvpRequestReader(type);
     }
 
     XmlRequestReader findXmlReader(String namespace, String element, String serviceId, String ver) {
-        Collection xmlReaders = loadXmlReaders();
+        // the readers whose element matches, regardless of the case
+        Collection xmlReaders = getRoutes().getXmlReaders(element);
 
         //first just match on namespace, element
         List matches = new ArrayList();
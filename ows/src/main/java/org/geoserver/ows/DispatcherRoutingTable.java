@@ -0,0 +1,419 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.geoserver.ows.util.OwsUtils;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.Service;
+import org.geotools.util.Version;
+
+/**
+ * The routing information used by the {@link Dispatcher}, computed out of the extensions found
+ * in the application context so that dispatching a request does not need to look them up, check
+ * them for duplicates and sort them every time.
+ * <p>
+ * Services and xml readers are indexed up front, kvp readers, operation methods and response
+ * candidates are memoized as requests come in. Extensions that are not singletons (a new instance
+ * is returned by each lookup) are never memoized, the routes involving them are looked up at
+ * each request as before.
+ * </p>
+ * <p>
+ * The table is built against a snapshot of the extensions, the dispatcher discards it when the
+ * application context is refreshed.
+ * </p>
+ */
+class DispatcherRoutingTable {
+
+    /**
+     * Max number of memoized entries for the routes keyed on user provided values, such as the
+     * output format
+     */
+    static final int MAX_MEMOIZED = 1000;
+
+    /**
+     * Services by lower case id, sorted by version
+     */
+    Map<String, List<Service>> services = new HashMap<String, List<Service>>();
+
+    List<Service> allServices;
+
+    List<KvpRequestReader> kvpReaders;
+
+    /**
+     * Xml readers by lower case element name
+     */
+    Map<String, List<XmlRequestReader>> xmlReaders = new HashMap<String, List<XmlRequestReader>>();
+
+    List<Response> responses;
+
+    /**
+     * Extensions returning a new instance on each lookup, with their position in the lookup
+     * results
+     */
+    Map<Object, Integer> prototypes = new IdentityHashMap<Object, Integer>();
+
+    /**
+     * Duplicate extension errors, reported when the routes are used, as the dispatcher did
+     * before
+     */
+    String servicesError;
+
+    String kvpReadersError;
+
+    String xmlReadersError;
+
+    Map<Class, KvpRequestReader> kvpReaderRoutes = new ConcurrentHashMap<Class, KvpRequestReader>();
+
+    Map<OperationKey, Method> operationRoutes = new ConcurrentHashMap<OperationKey, Method>();
+
+    Map<ResponseKey, List<Response>> responseRoutes = new ConcurrentHashMap<ResponseKey, List<Response>>();
+
+    DispatcherRoutingTable() {
+        allServices = lookup(Service.class);
+        if (new HashSet<Service>(allServices).size() != allServices.size()) {
+            servicesError = "Two identical service descriptors found";
+        }
+        for (Service service : allServices) {
+            String id = service.getId().toLowerCase(Locale.ENGLISH);
+            List<Service> matches = services.get(id);
+            if (matches == null) {
+                matches = new ArrayList<Service>();
+                services.put(id, matches);
+            }
+            matches.add(service);
+        }
+        for (List<Service> matches : services.values()) {
+            if (matches.size() > 1) {
+                Collections.sort(matches, new Comparator<Service>() {
+                    public int compare(Service s1, Service s2) {
+                        return s1.getVersion().compareTo(s2.getVersion());
+                    }
+                });
+            }
+        }
+
+        kvpReaders = lookup(KvpRequestReader.class);
+        if (new HashSet<KvpRequestReader>(kvpReaders).size() != kvpReaders.size()) {
+            kvpReadersError = "Two identical kvp readers found";
+        }
+
+        List<XmlRequestReader> readers = lookup(XmlRequestReader.class);
+        if (new HashSet<XmlRequestReader>(readers).size() != readers.size()) {
+            xmlReadersError = "Two identical xml readers found";
+            for (int i = 0; i < readers.size(); i++) {
+                XmlRequestReader r1 = readers.get(i);
+                for (int j = i + 1; j < readers.size(); j++) {
+                    XmlRequestReader r2 = readers.get(j);
+                    if (r1.equals(r2)) {
+                        xmlReadersError += ": " + r1 + " and " + r2;
+                        break;
+                    }
+                }
+            }
+        }
+        for (XmlRequestReader reader : readers) {
+            String element = reader.getElement().getLocalPart().toLowerCase(Locale.ENGLISH);
+            List<XmlRequestReader> matches = xmlReaders.get(element);
+            if (matches == null) {
+                matches = new ArrayList<XmlRequestReader>();
+                xmlReaders.put(element, matches);
+            }
+            matches.add(reader);
+        }
+
+        responses = lookup(Response.class);
+    }
+
+    /**
+     * Looks up the extensions, and tracks the ones that are not singletons by performing the
+     * lookup twice
+     */
+    <T> List<T> lookup(Class<T> extensionPoint) {
+        List<T> extensions = GeoServerExtensions.extensions(extensionPoint);
+        List<T> again = GeoServerExtensions.extensions(extensionPoint);
+        for (int i = 0; i < extensions.size(); i++) {
+            if (i >= again.size() || extensions.get(i) != again.get(i)) {
+                prototypes.put(extensions.get(i), i);
+            }
+        }
+        return extensions;
+    }
+
+    boolean isPrototype(Object extension) {
+        return prototypes.containsKey(extension);
+    }
+
+    boolean containsPrototype(List<?> extensions) {
+        for (Object extension : extensions) {
+            if (isPrototype(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    List<Service> getServices() {
+        if (servicesError != null) {
+            throw new IllegalStateException(servicesError);
+        }
+        return allServices;
+    }
+
+    /**
+     * Returns the service matching the id, and the version if more than one matches, or the
+     * highest version one otherwise
+     */
+    Service findService(String id, String ver) {
+        if (servicesError != null) {
+            throw new IllegalStateException(servicesError);
+        }
+        List<Service> matches = id != null ? services.get(id.toLowerCase(Locale.ENGLISH))
+                : null;
+        if (matches == null) {
+            return null;
+        }
+        Service service = matches.size() == 1 ? matches.get(0) : pick(matches, ver);
+        return fresh(service, Service.class);
+    }
+
+    Service pick(List<Service> matches, String ver) {
+        if (ver != null) {
+            Version version = new Version(ver);
+            for (int i = matches.size() - 1; i >= 0; i--) {
+                if (version.equals(matches.get(i).getVersion())) {
+                    return matches.get(i);
+                }
+            }
+        }
+        // no version, or no matching version, use the highest one
+        return matches.get(matches.size() - 1);
+    }
+
+    /**
+     * Returns a new instance of a prototype extension, or the extension itself otherwise
+     */
+    <T> T fresh(T extension, Class<T> extensionPoint) {
+        Integer index = prototypes.get(extension);
+        if (index == null) {
+            return extension;
+        }
+        List<T> extensions = GeoServerExtensions.extensions(extensionPoint);
+        if (index < extensions.size()
+                && extensions.get(index).getClass() == extension.getClass()) {
+            return extensions.get(index);
+        }
+        return extension;
+    }
+
+    /**
+     * Returns the kvp reader for the most specific request bean the type is assignable to
+     */
+    KvpRequestReader findKvpRequestReader(Class type) {
+        if (kvpReadersError != null) {
+            throw new IllegalStateException(kvpReadersError);
+        }
+        KvpRequestReader reader = kvpReaderRoutes.get(type);
+        if (reader != null) {
+            return reader;
+        }
+
+        List<KvpRequestReader> matches = new ArrayList<KvpRequestReader>();
+        for (KvpRequestReader kvpReader : kvpReaders) {
+            if (kvpReader.getRequestBean().isAssignableFrom(type)) {
+                matches.add(kvpReader);
+            }
+        }
+        if (matches.isEmpty()) {
+            return null;
+        }
+        if (matches.size() > 1) {
+            // sort by class hierarchy
+            Collections.sort(matches, new Comparator<KvpRequestReader>() {
+                public int compare(KvpRequestReader kvp1, KvpRequestReader kvp2) {
+                    if (kvp2.getRequestBean().isAssignableFrom(kvp1.getRequestBean())) {
+                        return -1;
+                    }
+                    return 1;
+                }
+            });
+        }
+
+        reader = matches.get(0);
+        if (isPrototype(reader)) {
+            return fresh(reader, KvpRequestReader.class);
+        }
+        if (kvpReaderRoutes.size() < MAX_MEMOIZED) {
+            kvpReaderRoutes.put(type, reader);
+        }
+        return reader;
+    }
+
+    List<XmlRequestReader> getXmlReaders(String element) {
+        if (xmlReadersError != null) {
+            throw new IllegalStateException(xmlReadersError);
+        }
+        List<XmlRequestReader> readers = element != null ? xmlReaders.get(element
+                .toLowerCase(Locale.ENGLISH)) : null;
+        if (readers == null) {
+            return Collections.emptyList();
+        }
+        if (containsPrototype(readers)) {
+            List<XmlRequestReader> result = new ArrayList<XmlRequestReader>(readers.size());
+            for (XmlRequestReader reader : readers) {
+                result.add(fresh(reader, XmlRequestReader.class));
+            }
+            return result;
+        }
+        return readers;
+    }
+
+    /**
+     * Returns the method implementing the operation in the service bean class
+     */
+    Method findOperation(Class serviceClass, String request) {
+        OperationKey key = new OperationKey(serviceClass, request);
+        Method method = operationRoutes.get(key);
+        if (method == null) {
+            method = OwsUtils.method(serviceClass, request);
+            if (method != null && operationRoutes.size() < MAX_MEMOIZED) {
+                operationRoutes.put(key, method);
+            }
+        }
+        return method;
+    }
+
+    /**
+     * Returns the responses whose binding and output formats match the result, most specific
+     * binding first. The caller still has to check if they can handle the operation.
+     */
+    List<Response> findResponses(Class resultClass, String outputFormat) {
+        ResponseKey key = new ResponseKey(resultClass, outputFormat);
+        List<Response> matches = responseRoutes.get(key);
+        if (matches != null) {
+            return matches;
+        }
+
+        matches = new ArrayList<Response>();
+        for (Response response : responses) {
+            if (!response.getBinding().isAssignableFrom(resultClass)) {
+                continue;
+            }
+            if (matchesOutputFormat(response.getOutputFormats(), outputFormat)) {
+                matches.add(response);
+            }
+        }
+
+        if (matches.size() > 1) {
+            // sort by class hierarchy
+            Collections.sort(matches, new Comparator<Response>() {
+                public int compare(Response r1, Response r2) {
+                    Class c1 = r1.getBinding();
+                    Class c2 = r2.getBinding();
+                    if (c1.equals(c2)) {
+                        return 0;
+                    }
+                    if (c1.isAssignableFrom(c2)) {
+                        return 1;
+                    }
+                    return -1;
+                }
+            });
+        }
+
+        if (containsPrototype(matches)) {
+            List<Response> result = new ArrayList<Response>(matches.size());
+            for (Response response : matches) {
+                result.add(fresh(response, Response.class));
+            }
+            return result;
+        }
+        matches = Collections.unmodifiableList(matches);
+        if (responseRoutes.size() < MAX_MEMOIZED) {
+            responseRoutes.put(key, matches);
+        }
+        return matches;
+    }
+
+    boolean matchesOutputFormat(Set<String> outputFormats, String outputFormat) {
+        if (outputFormat == null || outputFormats.isEmpty()
+                || outputFormats.contains(outputFormat)) {
+            return true;
+        }
+        // must do a case insensitive check
+        for (Iterator<String> it = outputFormats.iterator(); it.hasNext();) {
+            if (outputFormat.equalsIgnoreCase(it.next())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static class OperationKey {
+        Class serviceClass;
+
+        String request;
+
+        OperationKey(Class serviceClass, String request) {
+            this.serviceClass = serviceClass;
+            this.request = request;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof OperationKey)) {
+                return false;
+            }
+            OperationKey other = (OperationKey) obj;
+            return serviceClass == other.serviceClass && request.equals(other.request);
+        }
+
+        @Override
+        public int hashCode() {
+            return serviceClass.hashCode() * 31 + request.hashCode();
+        }
+    }
+
+    static class ResponseKey {
+        Class resultClass;
+
+        String outputFormat;
+
+        ResponseKey(Class resultClass, String outputFormat) {
+            this.resultClass = resultClass;
+            this.outputFormat = outputFormat;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ResponseKey)) {
+                return false;
+            }
+            ResponseKey other = (ResponseKey) obj;
+            return resultClass == other.resultClass
+                    && (outputFormat == null ? other.outputFormat == null : outputFormat
+                            .equals(other.outputFormat));
+        }
+
+        @Override
+        public int hashCode() {
+            return resultClass.hashCode() * 31
+                    + (outputFormat != null ? outputFormat.hashCode() : 0);
+        }
+    }
+}
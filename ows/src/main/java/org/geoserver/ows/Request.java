@@ -11,6 +11,8 @@ import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.geoserver.platform.Operation;
+
 /**
  * A collection of the informations collected and parsed by the
  * {@link Dispatcher} while doing its dispatching work. In case of dispatching
@@ -81,6 +83,11 @@ public class Request {
      */
     protected Date timestamp;
     
+    /**
+     * The operation being executed, available once the request has been parsed
+     */
+    protected Operation operation;
+    
     public Request() {
         timestamp = new Date(); 
     }
@@ -325,4 +332,20 @@ public class Request {
     public void setTimestamp(Date timestamp) {
         this.timestamp = timestamp;
     }
-}
\ No newline at end of file
+
+    /**
+     * The operation being executed, or null if the request has not been parsed yet
+     * @return
+     */
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Sets the operation being executed
+     * @param operation
+     */
+    public void setOperation(Operation operation) {
+        this.operation = operation;
+    }
+}
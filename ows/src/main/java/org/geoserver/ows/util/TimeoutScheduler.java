@@ -0,0 +1,208 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.ows.util;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.util.logging.Logging;
+
+/**
+ * Tracks the deadlines of the requests being processed with a single shared thread, so that
+ * enforcing a timeout does not require a thread (or a {@link java.util.Timer}) per request.
+ * <p>
+ * The actions run by the scheduler thread when a timeout expires should just flag the request
+ * and ask it to stop, they delay the other timeouts otherwise.
+ * </p>
+ */
+public class TimeoutScheduler {
+    static final Logger LOGGER = Logging.getLogger(TimeoutScheduler.class);
+
+    /**
+     * Number of cancelled timeouts after which they are removed from the scheduler queue, so
+     * that the queue does not grow with the timeouts of completed requests
+     */
+    static final int PURGE_THRESHOLD = 1000;
+
+    static TimeoutScheduler INSTANCE;
+
+    /**
+     * Returns the shared scheduler
+     */
+    public static synchronized TimeoutScheduler get() {
+        if (INSTANCE == null) {
+            INSTANCE = new TimeoutScheduler();
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Stops the shared scheduler thread, a new one is started if timeouts are scheduled again
+     */
+    public static synchronized void dispose() {
+        if (INSTANCE != null) {
+            INSTANCE.executor.shutdownNow();
+            INSTANCE = null;
+        }
+    }
+
+    ScheduledThreadPoolExecutor executor;
+
+    AtomicLong scheduled = new AtomicLong();
+
+    AtomicLong expired = new AtomicLong();
+
+    AtomicLong cancelled = new AtomicLong();
+
+    AtomicInteger cancelledSincePurge = new AtomicInteger();
+
+    TimeoutScheduler() {
+        executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "GeoServer timeouts");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Schedules an action to be run when the timeout expires, unless the returned timeout is
+     * cancelled before. If the scheduler has been disposed in the meantime the returned timeout
+     * never expires.
+     *
+     * @param action the action to run
+     * @param timeout the timeout, in milliseconds
+     */
+    public Timeout schedule(Runnable action, long timeout) {
+        Timeout result = new Timeout(action);
+        scheduled.incrementAndGet();
+        try {
+            result.future = executor.schedule(result, timeout, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // disposed while the request was starting, let it go without a timeout
+            LOGGER.fine("Timeout scheduler disposed, the timeout will not be enforced");
+            result.action.set(null);
+            cancelled.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * The number of timeouts scheduled so far
+     */
+    public long getScheduledCount() {
+        return scheduled.get();
+    }
+
+    /**
+     * The number of timeouts that expired, running their action
+     */
+    public long getExpiredCount() {
+        return expired.get();
+    }
+
+    /**
+     * The number of timeouts cancelled before expiring
+     */
+    public long getCancelledCount() {
+        return cancelled.get();
+    }
+
+    /**
+     * The number of timeouts neither expired nor cancelled
+     */
+    public long getPendingCount() {
+        return scheduled.get() - expired.get() - cancelled.get();
+    }
+
+    void cancelled() {
+        cancelled.incrementAndGet();
+        if (cancelledSincePurge.incrementAndGet() >= PURGE_THRESHOLD) {
+            cancelledSincePurge.set(0);
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        executor.purge();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // disposed, nothing left to purge
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TimeoutScheduler(pending=" + getPendingCount() + ", expired="
+                + getExpiredCount() + ", cancelled=" + getCancelledCount() + ")";
+    }
+
+    /**
+     * A scheduled timeout
+     */
+    public class Timeout implements Runnable {
+
+        /**
+         * The action, cleared when the timeout expires or is cancelled, so that a cancelled
+         * timeout waiting to be purged does not hold onto the request resources
+         */
+        AtomicReference<Runnable> action;
+
+        volatile ScheduledFuture<?> future;
+
+        volatile boolean expired;
+
+        Timeout(Runnable action) {
+            this.action = new AtomicReference<Runnable>(action);
+        }
+
+        public void run() {
+            Runnable r = action.getAndSet(null);
+            if (r == null) {
+                return;
+            }
+            expired = true;
+            TimeoutScheduler.this.expired.incrementAndGet();
+            try {
+                r.run();
+            } catch (Throwable t) {
+                LOGGER.log(Level.WARNING, "Timeout action failed", t);
+            }
+        }
+
+        /**
+         * Cancels the timeout
+         *
+         * @return true if the timeout was cancelled, false if it already expired or was
+         *         cancelled before
+         */
+        public boolean cancel() {
+            if (action.getAndSet(null) == null) {
+                return false;
+            }
+            if (future != null) {
+                future.cancel(false);
+            }
+            cancelled();
+            return true;
+        }
+
+        /**
+         * Returns true if the timeout expired and its action has been run
+         */
+        public boolean isExpired() {
+            return expired;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.Service;
+import org.springframework.context.support.FileSystemXmlApplicationContext;
+
+import com.mockrunner.mock.web.MockHttpServletRequest;
+import com.mockrunner.mock.web.MockHttpServletResponse;
+
+/**
+ * Measures the dispatch overhead of a cheap request, whose response is ready right away as it
+ * would be for a cached tile, and compares the lookups made through the routing table with the
+ * extension scans the dispatcher used to perform. Not a test, run it manually with:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.geoserver.ows.DispatcherBenchmark
+ * </pre>
+ *
+ * The number of iterations can be passed as an argument.
+ */
+public class DispatcherBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+        URL url = DispatcherBenchmark.class.getResource("applicationContext.xml");
+        FileSystemXmlApplicationContext context = new FileSystemXmlApplicationContext(url
+                .toString());
+        Dispatcher dispatcher = (Dispatcher) context.getBean("dispatcher");
+
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            int found = 0;
+            for (int j = 0; j < iterations; j++) {
+                found += scanLookups(Message.class, "hello", "1.0.0");
+            }
+            report("Extension scans", start, iterations, found);
+
+            DispatcherRoutingTable routes = dispatcher.getRoutes();
+            start = System.nanoTime();
+            found = 0;
+            for (int j = 0; j < iterations; j++) {
+                found += routes.findService("hello", "1.0.0") != null ? 1 : 0;
+                found += routes.findKvpRequestReader(Message.class) != null ? 1 : 0;
+                found += routes.findResponses(Message.class, null).size();
+            }
+            report("Routing table", start, iterations, found);
+
+            start = System.nanoTime();
+            for (int j = 0; j < iterations / 10; j++) {
+                dispatcher.handleRequest(buildRequest(), new MockHttpServletResponse());
+            }
+            report("Full dispatch", start, iterations / 10, 0);
+        }
+    }
+
+    /**
+     * The lookups the dispatcher used to perform for each request
+     */
+    static int scanLookups(Class type, String serviceId, String version) {
+        int found = 0;
+        List<Service> services = GeoServerExtensions.extensions(Service.class);
+        if (new HashSet<Service>(services).size() == services.size()) {
+            for (Service service : services) {
+                if (service.getId().equalsIgnoreCase(serviceId)
+                        && service.getVersion().toString().equals(version)) {
+                    found++;
+                }
+            }
+        }
+        List<KvpRequestReader> readers = GeoServerExtensions.extensions(KvpRequestReader.class);
+        if (new HashSet<KvpRequestReader>(readers).size() == readers.size()) {
+            for (KvpRequestReader reader : readers) {
+                if (reader.getRequestBean().isAssignableFrom(type)) {
+                    found++;
+                }
+            }
+        }
+        List<Response> responses = new ArrayList<Response>(GeoServerExtensions
+                .extensions(Response.class));
+        for (Response response : responses) {
+            if (response.getBinding().isAssignableFrom(type)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    static MockHttpServletRequest buildRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest() {
+            String encoding;
+
+            public int getServerPort() {
+                return 8080;
+            }
+
+            public String getCharacterEncoding() {
+                return encoding;
+            }
+
+            public void setCharacterEncoding(String encoding) {
+                this.encoding = encoding;
+            }
+        };
+        request.setScheme("http");
+        request.setServerName("localhost");
+        request.setContextPath("/geoserver");
+        request.setMethod("GET");
+        request.setupAddParameter("service", "hello");
+        request.setupAddParameter("request", "Hello");
+        request.setupAddParameter("version", "1.0.0");
+        request.setupAddParameter("message", "Hello world!");
+        request.setRequestURI("http://localhost/geoserver/ows");
+        request.setQueryString("service=hello&request=hello&version=1.0.0&message=HelloWorld");
+        return request;
+    }
+
+    static void report(String name, long start, int iterations, int found) {
+        long elapsed = System.nanoTime() - start;
+        System.out.println(name + ": " + (elapsed / iterations) + " ns/op"
+                + (found > 0 ? " (" + found + " matches)" : ""));
+    }
+}
@@ -19,6 +19,7 @@ import javax.servlet.http.HttpServletResponse;
 import junit.framework.TestCase;
 
 import org.geoserver.test.CodeExpectingHttpServletResponse;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.support.FileSystemXmlApplicationContext;
 
 import com.mockrunner.mock.web.MockHttpServletRequest;
@@ -354,4 +355,32 @@ public class DispatcherTest extends TestCase {
         dispatcher.handleRequest(request, response);
         assertEquals(HttpServletResponse.SC_NO_CONTENT, response.getStatusCode());
     }
+
+    public void testRoutingTable() throws Exception {
+        URL url = getClass().getResource("applicationContext.xml");
+
+        FileSystemXmlApplicationContext context = new FileSystemXmlApplicationContext(url.toString());
+
+        Dispatcher dispatcher = (Dispatcher) context.getBean("dispatcher");
+
+        DispatcherRoutingTable routes = dispatcher.getRoutes();
+        assertSame(routes, dispatcher.getRoutes());
+
+        assertSame(context.getBean("helloWorldService"), dispatcher.findService("HELLO", null));
+        assertNull(dispatcher.findService("foo", null));
+        assertSame(context.getBean("messageKvpReader"), dispatcher.findKvpRequestReader(Message.class));
+        assertNotNull(dispatcher.findXmlReader("", "Hello", null, null));
+
+        assertEquals(1, routes.findResponses(Message.class, null).size());
+        assertSame(routes.findResponses(Message.class, null), routes.findResponses(Message.class, null));
+        assertTrue(routes.findResponses(String.class, null).isEmpty());
+
+        assertEquals(routes.findOperation(HelloWorld.class, "hello"),
+                routes.findOperation(HelloWorld.class, "hello"));
+        assertNull(routes.findOperation(HelloWorld.class, "foo"));
+
+        // a refresh discards the table
+        dispatcher.onApplicationEvent(new ContextRefreshedEvent(context));
+        assertNotSame(routes, dispatcher.getRoutes());
+    }
 }
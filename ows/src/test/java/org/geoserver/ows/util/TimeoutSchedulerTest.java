@@ -0,0 +1,97 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.ows.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class TimeoutSchedulerTest extends TestCase {
+
+    TimeoutScheduler scheduler;
+
+    @Override
+    protected void setUp() throws Exception {
+        scheduler = new TimeoutScheduler();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        scheduler.executor.shutdownNow();
+    }
+
+    public void testExpire() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        TimeoutScheduler.Timeout timeout = scheduler.schedule(new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        }, 10);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+        assertEquals(1, scheduler.getExpiredCount());
+        assertEquals(0, scheduler.getCancelledCount());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    public void testCancel() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        TimeoutScheduler.Timeout timeout = scheduler.schedule(new Runnable() {
+            public void run() {
+                runs.incrementAndGet();
+            }
+        }, 50);
+        assertEquals(1, scheduler.getPendingCount());
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        Thread.sleep(100);
+        assertEquals(0, runs.get());
+        assertFalse(timeout.isExpired());
+        assertEquals(1, scheduler.getCancelledCount());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    public void testPurge() throws Exception {
+        Runnable noop = new Runnable() {
+            public void run() {
+            }
+        };
+        for (int i = 0; i < TimeoutScheduler.PURGE_THRESHOLD; i++) {
+            scheduler.schedule(noop, 60000).cancel();
+        }
+
+        // the cancelled timeouts are removed from the queue in the background
+        long start = System.currentTimeMillis();
+        while (!scheduler.executor.getQueue().isEmpty()) {
+            if (System.currentTimeMillis() - start > 5000) {
+                fail("Cancelled timeouts have not been purged");
+            }
+            Thread.sleep(10);
+        }
+        assertEquals(TimeoutScheduler.PURGE_THRESHOLD, scheduler.getCancelledCount());
+    }
+
+    public void testScheduleAfterDispose() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        scheduler.executor.shutdownNow();
+
+        // no exception, the timeout is just not enforced
+        TimeoutScheduler.Timeout timeout = scheduler.schedule(new Runnable() {
+            public void run() {
+                runs.incrementAndGet();
+            }
+        }, 10);
+        Thread.sleep(50);
+        assertEquals(0, runs.get());
+        assertFalse(timeout.isExpired());
+        assertFalse(timeout.cancel());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+}
@@ -26,12 +26,29 @@ public class AlternativesResponseStream extends ServletOutputStream {
     HttpServletResponse myResponse;
     ServletOutputStream myStream;
     Set myCompressibleTypes;
+    boolean myStreaming;
+    int myCompressionLevel;
+    int myMinSize;
     Logger logger = org.geotools.util.logging.Logging.getLogger("org.geoserver.filters");
 
     public AlternativesResponseStream(HttpServletResponse response, Set compressible) throws IOException {
+        this(response, compressible, false, -1, 0);
+    }
+
+    /**
+     * @param streaming If true the output is compressed incrementally, see
+     *        {@link StreamingGZIPResponseStream}
+     * @param compressionLevel The compression level used when streaming
+     * @param minSize The min size of the responses compressed when streaming
+     */
+    public AlternativesResponseStream(HttpServletResponse response, Set compressible,
+            boolean streaming, int compressionLevel, int minSize) throws IOException {
         super();
         myResponse = response;
         myCompressibleTypes = compressible;
+        myStreaming = streaming;
+        myCompressionLevel = compressionLevel;
+        myMinSize = minSize;
     }
 
     public void close() throws IOException {
@@ -66,7 +83,12 @@ public class AlternativesResponseStream extends ServletOutputStream {
 
         if (type != null && isCompressible(type)){
 //            logger.info("Compressing output for mimetype: " + type);
-            myStream = new GZIPResponseStream(myResponse);
+            if (myStreaming) {
+                myStream = new StreamingGZIPResponseStream(myResponse, myCompressionLevel,
+                        myMinSize);
+            } else {
+                myStream = new GZIPResponseStream(myResponse);
+            }
         } else {
 //            logger.info("Not compressing output for mimetype: " + type);
             myStream = myResponse.getOutputStream();
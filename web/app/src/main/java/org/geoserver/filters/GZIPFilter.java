@@ -29,6 +29,12 @@ public class GZIPFilter implements Filter {
 
     private Set myCompressedTypes;
 
+    private boolean myStreaming;
+
+    private int myCompressionLevel = -1;
+
+    private int myMinSize;
+
     public void doFilter(ServletRequest req, ServletResponse res,
             FilterChain chain) throws IOException, ServletException {
         if (req instanceof HttpServletRequest) {
@@ -38,6 +44,9 @@ public class GZIPFilter implements Filter {
             if (ae != null && ae.indexOf("gzip") != -1) {
                 GZIPResponseWrapper wrappedResponse =
                     new GZIPResponseWrapper(response, myCompressedTypes, request.getRequestURL().toString());
+                if (myStreaming) {
+                    wrappedResponse.setStreaming(myCompressionLevel, myMinSize);
+                }
                 chain.doFilter(req, wrappedResponse);
                 wrappedResponse.finishResponse();
                 return;
@@ -57,6 +66,16 @@ public class GZIPFilter implements Filter {
             for (int i = 0; i < typeNames.length; i++){
                 myCompressedTypes.add(Pattern.compile(typeNames[i]));
             }
+
+            myStreaming = Boolean.valueOf(filterConfig.getInitParameter("streaming"));
+            String level = filterConfig.getInitParameter("compression-level");
+            if (level != null) {
+                myCompressionLevel = Integer.parseInt(level.trim());
+            }
+            String minSize = filterConfig.getInitParameter("min-size");
+            if (minSize != null) {
+                myMinSize = Integer.parseInt(minSize.trim());
+            }
         } catch (Exception e){
             System.out.println("Error while setting up GZIPFilter; " + e);
         }
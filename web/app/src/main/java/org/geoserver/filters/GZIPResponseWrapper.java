@@ -26,6 +26,9 @@ public class GZIPResponseWrapper extends HttpServletResponseWrapper {
     protected PrintWriter writer = null;
     protected Set formatsToCompress;
     protected String requestedURL;
+    protected boolean streaming;
+    protected int compressionLevel = -1;
+    protected int minSize;
     protected Logger logger = org.geotools.util.logging.Logging.getLogger("org.geoserver.filters");
 
     public GZIPResponseWrapper(HttpServletResponse response, Set toCompress, String url) {
@@ -37,7 +40,20 @@ public class GZIPResponseWrapper extends HttpServletResponseWrapper {
     }
 
     protected AlternativesResponseStream createOutputStream() throws IOException {
-        return new AlternativesResponseStream(origResponse, formatsToCompress);
+        return new AlternativesResponseStream(origResponse, formatsToCompress, streaming,
+                compressionLevel, minSize);
+    }
+
+    /**
+     * Enables the incremental compression of the output
+     * 
+     * @param compressionLevel The deflate level, between 1 and 9, or -1 for the default
+     * @param minSize The responses smaller than this number of bytes won't be compressed
+     */
+    public void setStreaming(int compressionLevel, int minSize) {
+        this.streaming = true;
+        this.compressionLevel = compressionLevel;
+        this.minSize = minSize;
     }
 
     public void setContentType(String type){
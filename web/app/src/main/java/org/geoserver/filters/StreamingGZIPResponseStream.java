@@ -0,0 +1,251 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.filters;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A GZIP response stream that compresses the output incrementally, writing the compressed chunks
+ * to the servlet output as they are produced instead of accumulating the whole response in
+ * memory like {@link GZIPResponseStream} does.
+ * <p>
+ * Since the length of the compressed output is not known in advance no Content-Length header is
+ * set, and the servlet container will use the chunked transfer encoding. The first
+ * <code>minSize</code> bytes are held back: if the response is closed before reaching that size
+ * it's sent uncompressed, as compressing small payloads is not worth the effort.
+ * </p>
+ * <p>
+ * The deflater and the buffers are recycled across requests thru a small pool, avoiding the
+ * allocation of native compression memory for each response.
+ * </p>
+ */
+public class StreamingGZIPResponseStream extends ServletOutputStream {
+
+    static final int GZIP_MAGIC = 0x8b1f;
+
+    static final int OUTPUT_BUFFER_SIZE = 8192;
+
+    static final int MAX_POOLED = Runtime.getRuntime().availableProcessors() * 4;
+
+    static final Queue<CompressionBuffers> POOL = new ConcurrentLinkedQueue<CompressionBuffers>();
+
+    static final AtomicInteger POOLED = new AtomicInteger();
+
+    HttpServletResponse response;
+
+    ServletOutputStream output;
+
+    int compressionLevel;
+
+    int minSize;
+
+    CompressionBuffers buffers;
+
+    /**
+     * The data held back until we know whether to compress or not
+     */
+    byte[] pending;
+
+    int pendingLength;
+
+    boolean compressing;
+
+    boolean closed;
+
+    byte[] single = new byte[1];
+
+    /**
+     * @param response The response to compress
+     * @param compressionLevel The deflate level, between 1 and 9, or -1 for the default one
+     * @param minSize The minimum response size, in bytes, that will be compressed
+     */
+    public StreamingGZIPResponseStream(HttpServletResponse response, int compressionLevel,
+            int minSize) throws IOException {
+        this.response = response;
+        this.output = response.getOutputStream();
+        this.compressionLevel = compressionLevel;
+        this.minSize = Math.max(minSize, 0);
+        this.buffers = acquire(this.minSize);
+        this.pending = buffers.pending;
+    }
+
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    public void write(byte b[]) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    public void write(byte b[], int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Cannot write to a closed output stream");
+        }
+        if (len == 0) {
+            return;
+        }
+
+        if (!compressing) {
+            if (pendingLength + len <= minSize) {
+                System.arraycopy(b, off, pending, pendingLength, len);
+                pendingLength += len;
+                return;
+            }
+            startCompression();
+        }
+        deflate(b, off, len);
+    }
+
+    /**
+     * Sets the headers, writes the GZIP header and compresses the held back data
+     */
+    void startCompression() throws IOException {
+        compressing = true;
+        response.addHeader("Content-Encoding", "gzip");
+
+        output.write(new byte[] { (byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED,
+                0, 0, 0, 0, 0, 0, 0 });
+        if (pendingLength > 0) {
+            deflate(pending, 0, pendingLength);
+            pendingLength = 0;
+        }
+    }
+
+    void deflate(byte[] b, int off, int len) throws IOException {
+        buffers.crc.update(b, off, len);
+        Deflater deflater = buffers.deflater;
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            drain();
+        }
+    }
+
+    void drain() throws IOException {
+        int count = buffers.deflater.deflate(buffers.output, 0, buffers.output.length);
+        if (count > 0) {
+            output.write(buffers.output, 0, count);
+        }
+    }
+
+    /**
+     * Sends out the compressed data produced so far. The deflater might still be holding some
+     * data, flushing it would require a sync flush, which is not available before Java 7.
+     */
+    public void flush() throws IOException {
+        if (closed) {
+            throw new IOException("Cannot flush a closed output stream");
+        }
+        if (compressing) {
+            output.flush();
+        }
+    }
+
+    public void close() throws IOException {
+        if (closed) {
+            throw new IOException("This output stream has already been closed");
+        }
+
+        try {
+            if (compressing) {
+                Deflater deflater = buffers.deflater;
+                deflater.finish();
+                while (!deflater.finished()) {
+                    drain();
+                }
+
+                // trailer, crc and uncompressed size in little endian order
+                byte[] trailer = new byte[8];
+                writeInt(trailer, 0, (int) buffers.crc.getValue());
+                writeInt(trailer, 4, (int) deflater.getBytesRead());
+                output.write(trailer);
+            } else {
+                // too small to be worth compressing
+                String contentLength = Integer.toString(pendingLength);
+                if (response.containsHeader("Content-Length")) {
+                    response.setHeader("Content-Length", contentLength);
+                } else {
+                    response.addHeader("Content-Length", contentLength);
+                }
+                output.write(pending, 0, pendingLength);
+            }
+            output.flush();
+            output.close();
+        } finally {
+            closed = true;
+            release(buffers);
+            buffers = null;
+            pending = null;
+        }
+    }
+
+    public boolean closed() {
+        return closed;
+    }
+
+    public void reset() {
+        // noop
+    }
+
+    /**
+     * Returns true if the output is being compressed
+     */
+    public boolean isCompressing() {
+        return compressing;
+    }
+
+    static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+        buffer[offset + 2] = (byte) (value >> 16);
+        buffer[offset + 3] = (byte) (value >> 24);
+    }
+
+    CompressionBuffers acquire(int minSize) {
+        CompressionBuffers result = POOL.poll();
+        if (result != null) {
+            POOLED.decrementAndGet();
+            result.deflater.reset();
+            result.crc.reset();
+        } else {
+            result = new CompressionBuffers();
+        }
+        result.deflater.setLevel(compressionLevel);
+        if (result.pending.length < minSize) {
+            result.pending = new byte[minSize];
+        }
+        return result;
+    }
+
+    static void release(CompressionBuffers buffers) {
+        if (POOLED.incrementAndGet() <= MAX_POOLED) {
+            POOL.offer(buffers);
+        } else {
+            POOLED.decrementAndGet();
+            buffers.deflater.end();
+        }
+    }
+
+    /**
+     * The reusable compression state
+     */
+    static class CompressionBuffers {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+        CRC32 crc = new CRC32();
+
+        byte[] output = new byte[OUTPUT_BUFFER_SIZE];
+
+        byte[] pending = new byte[0];
+    }
+}
@@ -0,0 +1,126 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.filters;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import junit.framework.TestCase;
+
+import com.mockrunner.mock.web.MockHttpServletResponse;
+
+public class StreamingGZIPResponseStreamTest extends TestCase {
+
+    public void testStream() throws Exception {
+        CapturingResponse response = new CapturingResponse(new MockHttpServletResponse());
+        StreamingGZIPResponseStream stream = new StreamingGZIPResponseStream(response, -1, 0);
+        stream.write("Hello world!".getBytes());
+        stream.flush();
+        stream.close();
+
+        assertTrue(stream.isCompressing());
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertFalse(response.containsHeader("Content-Length"));
+        assertEquals("Hello world!", new String(unzip(response.toByteArray())));
+    }
+
+    public void testBelowMinSize() throws Exception {
+        CapturingResponse response = new CapturingResponse(new MockHttpServletResponse());
+        StreamingGZIPResponseStream stream = new StreamingGZIPResponseStream(response, -1, 100);
+        stream.write("Hello world!".getBytes());
+        stream.close();
+
+        assertFalse(stream.isCompressing());
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals("12", response.getHeader("Content-Length"));
+        assertEquals("Hello world!", new String(response.toByteArray()));
+    }
+
+    public void testLargeOutput() throws Exception {
+        // goes over the min size and the internal buffers, and reuses the pooled ones
+        for (int level : new int[] { 1, 9 }) {
+            CapturingResponse response = new CapturingResponse(new MockHttpServletResponse());
+            StreamingGZIPResponseStream stream = new StreamingGZIPResponseStream(response,
+                    level, 1024);
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            for (int i = 0; i < 100000; i++) {
+                byte[] line = ("Line " + i + "\n").getBytes();
+                stream.write(line);
+                expected.write(line);
+                if (i % 1000 == 0) {
+                    stream.write('x');
+                    expected.write('x');
+                }
+            }
+            stream.close();
+
+            assertTrue(stream.isCompressing());
+            byte[] zipped = response.toByteArray();
+            assertTrue(zipped.length < expected.size());
+            assertEquals(expected.toString(), new String(unzip(zipped)));
+        }
+    }
+
+    public void testClosed() throws Exception {
+        CapturingResponse response = new CapturingResponse(new MockHttpServletResponse());
+        StreamingGZIPResponseStream stream = new StreamingGZIPResponseStream(response, -1, 0);
+        stream.close();
+        try {
+            stream.write(1);
+            fail("Should not be able to write on a closed stream");
+        } catch (IOException e) {
+            // fine
+        }
+    }
+
+    byte[] unzip(byte[] zipped) throws Exception {
+        InputStream stream = new GZIPInputStream(new ByteArrayInputStream(zipped));
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = stream.read(buffer)) > 0) {
+            result.write(buffer, 0, read);
+        }
+        return result.toByteArray();
+    }
+
+    static class CapturingOutputStream extends ServletOutputStream {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+        public void write(int b) {
+            bos.write(b);
+        }
+    }
+
+    static class CapturingResponse extends HttpServletResponseWrapper {
+        CapturingOutputStream output = new CapturingOutputStream();
+
+        MockHttpServletResponse mock;
+
+        public CapturingResponse(MockHttpServletResponse r) {
+            super(r);
+            this.mock = r;
+        }
+
+        public ServletOutputStream getOutputStream() throws IOException {
+            return output;
+        }
+
+        public String getHeader(String name) {
+            return mock.getHeader(name);
+        }
+
+        public byte[] toByteArray() {
+            return output.bos.toByteArray();
+        }
+    }
+}
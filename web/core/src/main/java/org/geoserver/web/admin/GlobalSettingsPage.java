@@ -50,6 +50,9 @@ public class GlobalSettingsPage extends ServerAdminPage {
         form.add(new TextField("loggingLocation", new PropertyModel( loggingInfoModel, "location")) );
         
         form.add(new TextField("featureTypeCacheSize"));
+        form.add(new TextField("styleCacheSize"));
+        form.add(new TextField("cRSCacheSize"));
+        form.add(new TextField("cacheIdleTime"));
         
         Button submit = new Button("submit", new StringResourceModel("submit", this, null)) {
             @Override
@@ -6,9 +6,11 @@ import java.util.logging.Logger;
 
 import org.apache.wicket.AttributeModifier;
 import org.apache.wicket.Component;
+import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.html.form.Button;
 import org.apache.wicket.markup.html.form.CheckBox;
 import org.apache.wicket.markup.html.form.Form;
+import org.apache.wicket.markup.html.form.TextField;
 import org.apache.wicket.markup.html.panel.Fragment;
 import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.LoadableDetachableModel;
@@ -18,6 +20,7 @@ import org.apache.wicket.model.StringResourceModel;
 import org.geoserver.catalog.MetadataMap;
 import org.geoserver.config.GeoServer;
 import org.geoserver.gwc.GWC;
+import org.geoserver.gwc.TileMemoryCache;
 import org.geoserver.web.GeoServerHomePage;
 import org.geoserver.web.GeoServerSecuredPage;
 import org.geoserver.web.util.MapModel;
@@ -81,6 +84,44 @@ public class GWCSettingsPage extends GeoServerSecuredPage {
                 "GWCSettingsPage.enableWMSIntegration.title");
         form.add(wmsIntegration);
 
+        IModel<Integer> memoryCacheSizeModel = new MapModel(metadataModel,
+                GWC.MEMORY_CACHE_SIZE_KEY);
+        TextField<Integer> memoryCacheSize = new TextField<Integer>("memoryCacheSize",
+                memoryCacheSizeModel, Integer.class);
+        memoryCacheSize.add(new AttributeModifier("title", true, new StringResourceModel(
+                "GWCSettingsPage.memoryCacheSize.title", (Component) null, null)));
+        form.add(memoryCacheSize);
+        IModel<Integer> memoryCacheMaxAgeModel = new MapModel(metadataModel,
+                GWC.MEMORY_CACHE_MAX_AGE_KEY);
+        TextField<Integer> memoryCacheMaxAge = new TextField<Integer>("memoryCacheMaxAge",
+                memoryCacheMaxAgeModel, Integer.class);
+        memoryCacheMaxAge.add(new AttributeModifier("title", true, new StringResourceModel(
+                "GWCSettingsPage.memoryCacheMaxAge.title", (Component) null, null)));
+        form.add(memoryCacheMaxAge);
+        IModel<Boolean> memoryCacheOffHeapModel = new MapModel(metadataModel,
+                GWC.MEMORY_CACHE_OFF_HEAP_KEY);
+        form.add(checkbox("memoryCacheOffHeap", memoryCacheOffHeapModel,
+                "GWCSettingsPage.memoryCacheOffHeap.title"));
+        form.add(new Label("memoryCacheStats", new LoadableDetachableModel<String>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected String load() {
+                TileMemoryCache cache = getGWC().getMemoryCache();
+                if (cache == null) {
+                    return new StringResourceModel("GWCSettingsPage.memoryCacheDisabled",
+                            (Component) null, null).getString();
+                }
+                Object[] params = { cache.getTileCount(),
+                        new Quota(BigInteger.valueOf(cache.getSize())).toNiceString(),
+                        new Quota(BigInteger.valueOf(cache.getMaxSize())).toNiceString(),
+                        cache.getHits(), cache.getMisses(), cache.getEvictions(),
+                        cache.getRejections() };
+                return new StringResourceModel("GWCSettingsPage.memoryCacheStats",
+                        (Component) null, null, params).getString();
+            }
+        }));
+
         final DiskQuotaConfig diskQuotaConfig = diskQuotaModel.getObject();
         Quota globalQuota = diskQuotaConfig.getGlobalQuota();
         if (globalQuota == null) {
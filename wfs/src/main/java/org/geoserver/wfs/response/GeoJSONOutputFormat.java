@@ -12,12 +12,13 @@ import java.util.logging.Logger;
 
 import net.opengis.wfs.FeatureCollectionType;
 import net.opengis.wfs.GetFeatureType;
-import net.sf.json.JSONException;
 
 import org.geoserver.config.GeoServer;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.Operation;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wfs.WFSGetFeatureOutputFormat;
+import org.geoserver.wfs.WFSException;
 import org.geoserver.wfs.WFSInfo;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureIterator;
@@ -38,6 +39,12 @@ public class GeoJSONOutputFormat extends WFSGetFeatureOutputFormat {
 
     public static final String FORMAT = "json";
 
+    /**
+     * The format option controlling the number of decimals used to encode the coordinates and
+     * the floating point attributes
+     */
+    public static final String DECIMALS = "DECIMALS";
+
     public GeoJSONOutputFormat(GeoServer gs) {
         super(gs, FORMAT);
     }
@@ -90,7 +97,7 @@ public class GeoJSONOutputFormat extends WFSGetFeatureOutputFormat {
             outWriter.write(callback + "(");
         }
 
-        GeoJSONBuilder jsonWriter = new GeoJSONBuilder(outWriter);
+        GeoJSONWriter jsonWriter = new GeoJSONWriter(outWriter, getDecimals(gft));
 
         // execute should of set all the header information
         // including the lockID
@@ -153,7 +160,7 @@ public class GeoJSONOutputFormat extends WFSGetFeatureOutputFormat {
                             jsonWriter.writeGeom(aGeom);
                             hasGeom = true;
                         } else {
-                            jsonWriter.value(null);
+                            jsonWriter.value((Object) null);
                         }
                         if (defaultGeomType != null)
                             jsonWriter.key("geometry_name").value(
@@ -189,7 +196,7 @@ public class GeoJSONOutputFormat extends WFSGetFeatureOutputFormat {
 
                             } else {
                                 jsonWriter.key(ad.getLocalName());
-                                jsonWriter.value(null);
+                                jsonWriter.value((Object) null);
                             }
                         }
                         // Bounding box for feature in properties
@@ -252,19 +259,45 @@ public class GeoJSONOutputFormat extends WFSGetFeatureOutputFormat {
             }
 
             jsonWriter.endObject(); // end featurecollection
-            outWriter.flush();
+            jsonWriter.flush();
             if(callback != null && !"".equals(callback)) {
                 outWriter.write(")");
                 outWriter.flush();
             }
 
-        } catch (JSONException jsonException) {
+        } catch (IllegalArgumentException e) {
+            // unknown geometry types
             ServiceException serviceException = new ServiceException("Error: "
-                    + jsonException.getMessage());
-            serviceException.initCause(jsonException);
+                    + e.getMessage());
+            serviceException.initCause(e);
             throw serviceException;
         }
 
     }
 
+    /**
+     * Returns the number of decimals requested with the DECIMALS format option, falling back on
+     * the GEOJSON_DECIMALS system variable, or -1 (full precision) if none is set
+     */
+    int getDecimals(GetFeatureType request) {
+        Object decimals = request.getFormatOptions().get(DECIMALS);
+        if (decimals == null) {
+            decimals = GeoServerExtensions.getProperty("GEOJSON_DECIMALS");
+        }
+        if (decimals == null || "".equals(decimals)) {
+            return -1;
+        }
+        int result;
+        try {
+            result = Integer.parseInt(decimals.toString());
+        } catch (NumberFormatException e) {
+            throw new WFSException("Invalid number of decimals " + decimals,
+                    "InvalidParameterValue", "format_options");
+        }
+        if (result > GeoJSONWriter.MAX_DECIMALS) {
+            throw new WFSException("The number of decimals cannot be greater than "
+                    + GeoJSONWriter.MAX_DECIMALS, "InvalidParameterValue", "format_options");
+        }
+        return result;
+    }
 }
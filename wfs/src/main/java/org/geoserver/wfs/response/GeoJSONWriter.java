@@ -0,0 +1,489 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org.  All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.wfs.response;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * A streaming JSON writer specialized in encoding simple features as GeoJSON.
+ * <p>
+ * Unlike {@link GeoJSONBuilder} this class does not go thru the json-lib value conversions: the
+ * output is accumulated in a private char buffer, the coordinate sequences are walked directly
+ * and the doubles are turned into characters without creating intermediate strings. When a
+ * number of decimals is set the coordinates are rounded to it, otherwise they are written at
+ * full precision, in the same format used by json-lib.
+ * </p>
+ * <p>
+ * The writer does not validate the structure of the document, calls to {@link #key(String)} and
+ * the value methods are expected to be properly nested.
+ * </p>
+ */
+public class GeoJSONWriter {
+
+    static final int BUFFER_SIZE = 8192;
+
+    static final int MAX_DECIMALS = 15;
+
+    static final long[] POWERS_OF_TEN = new long[MAX_DECIMALS + 1];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    final Writer out;
+
+    final char[] buffer = new char[BUFFER_SIZE];
+
+    int position;
+
+    /**
+     * Scratch space used to format numbers, filled from the end
+     */
+    final char[] digits = new char[32];
+
+    /**
+     * For each nesting level, whether the next value is the first one
+     */
+    boolean[] first = new boolean[16];
+
+    int depth;
+
+    boolean afterKey;
+
+    final int decimals;
+
+    final double scale;
+
+    /**
+     * Builds a writer encoding numbers at full precision
+     */
+    public GeoJSONWriter(Writer out) {
+        this(out, -1);
+    }
+
+    /**
+     * Builds a writer rounding the floating point numbers to the specified number of decimals
+     *
+     * @param out The destination
+     * @param decimals The number of decimals, or a negative number for full precision
+     */
+    public GeoJSONWriter(Writer out, int decimals) {
+        if (decimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException("The number of decimals cannot be greater than "
+                    + MAX_DECIMALS);
+        }
+        this.out = out;
+        this.decimals = decimals;
+        this.scale = decimals >= 0 ? POWERS_OF_TEN[decimals] : 0;
+        this.first[0] = true;
+    }
+
+    public GeoJSONWriter object() throws IOException {
+        beforeValue();
+        write('{');
+        push();
+        return this;
+    }
+
+    public GeoJSONWriter endObject() throws IOException {
+        depth--;
+        write('}');
+        return this;
+    }
+
+    public GeoJSONWriter array() throws IOException {
+        beforeValue();
+        write('[');
+        push();
+        return this;
+    }
+
+    public GeoJSONWriter endArray() throws IOException {
+        depth--;
+        write(']');
+        return this;
+    }
+
+    public GeoJSONWriter key(String key) throws IOException {
+        beforeValue();
+        writeQuoted(key);
+        write(':');
+        afterKey = true;
+        return this;
+    }
+
+    /**
+     * Writes a generic value: numbers and booleans are written as such, <code>null</code> as
+     * the JSON null, anything else as the quoted string representation
+     */
+    public GeoJSONWriter value(Object value) throws IOException {
+        if (value == null) {
+            beforeValue();
+            write("null");
+        } else if (value instanceof String) {
+            value((String) value);
+        } else if (value instanceof Double) {
+            value(((Double) value).doubleValue());
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte) {
+            value(((Number) value).longValue());
+        } else if (value instanceof Float && decimals >= 0) {
+            value(((Float) value).doubleValue());
+        } else if (value instanceof Number) {
+            // floats at full precision, big decimals and the like
+            beforeValue();
+            writeNumber(value.toString());
+        } else if (value instanceof Boolean) {
+            beforeValue();
+            write(((Boolean) value).booleanValue() ? "true" : "false");
+        } else {
+            value(value.toString());
+        }
+        return this;
+    }
+
+    public GeoJSONWriter value(String value) throws IOException {
+        beforeValue();
+        if (value == null) {
+            write("null");
+        } else {
+            writeQuoted(value);
+        }
+        return this;
+    }
+
+    public GeoJSONWriter value(long value) throws IOException {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    public GeoJSONWriter value(double value) throws IOException {
+        beforeValue();
+        writeDouble(value);
+        return this;
+    }
+
+    /**
+     * Writes any geometry as a GeoJSON geometry object
+     */
+    public GeoJSONWriter writeGeom(Geometry geometry) throws IOException {
+        object();
+        key("type").value(GeoJSONBuilder.getGeometryName(geometry));
+
+        final int geometryType = GeoJSONBuilder.getGeometryType(geometry);
+        if (geometryType == GeoJSONBuilder.MULTIGEOMETRY) {
+            key("geometries");
+            array();
+            for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                writeGeom(geometry.getGeometryN(i));
+            }
+            endArray();
+        } else {
+            key("coordinates");
+            switch (geometryType) {
+            case GeoJSONBuilder.POINT:
+                Point point = (Point) geometry;
+                writeCoordinate(point.getX(), point.getY());
+                break;
+            case GeoJSONBuilder.LINESTRING:
+                writeCoordinates(((LineString) geometry).getCoordinateSequence());
+                break;
+            case GeoJSONBuilder.MULTIPOINT:
+                array();
+                for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                    Point p = (Point) geometry.getGeometryN(i);
+                    writeCoordinate(p.getX(), p.getY());
+                }
+                endArray();
+                break;
+            case GeoJSONBuilder.POLYGON:
+                writePolygon((Polygon) geometry);
+                break;
+            case GeoJSONBuilder.MULTILINESTRING:
+                array();
+                for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                    writeCoordinates(((LineString) geometry.getGeometryN(i))
+                            .getCoordinateSequence());
+                }
+                endArray();
+                break;
+            case GeoJSONBuilder.MULTIPOLYGON:
+                array();
+                for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                    writePolygon((Polygon) geometry.getGeometryN(i));
+                }
+                endArray();
+                break;
+            }
+        }
+
+        return endObject();
+    }
+
+    void writePolygon(Polygon polygon) throws IOException {
+        array();
+        writeCoordinates(polygon.getExteriorRing().getCoordinateSequence());
+        for (int i = 0, n = polygon.getNumInteriorRing(); i < n; i++) {
+            writeCoordinates(polygon.getInteriorRingN(i).getCoordinateSequence());
+        }
+        endArray();
+    }
+
+    /**
+     * Writes the sequence as an array of [x,y] pairs, going straight to the buffer
+     */
+    void writeCoordinates(CoordinateSequence coords) throws IOException {
+        array();
+        final int size = coords.size();
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                write(',');
+            }
+            write('[');
+            writeDouble(coords.getX(i));
+            write(',');
+            writeDouble(coords.getY(i));
+            write(']');
+        }
+        if (size > 0) {
+            first[depth] = false;
+        }
+        endArray();
+    }
+
+    void writeCoordinate(double x, double y) throws IOException {
+        beforeValue();
+        write('[');
+        writeDouble(x);
+        write(',');
+        writeDouble(y);
+        write(']');
+    }
+
+    /**
+     * Writes the envelope as a "bbox" key followed by the [minX,minY,maxX,maxY] array
+     */
+    public GeoJSONWriter writeBoundingBox(Envelope env) throws IOException {
+        key("bbox");
+        array();
+        value(env.getMinX());
+        value(env.getMinY());
+        value(env.getMaxX());
+        value(env.getMaxY());
+        return endArray();
+    }
+
+    /**
+     * Writes out the buffered contents and flushes the underlying writer
+     */
+    public void flush() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+        out.flush();
+    }
+
+    void push() {
+        depth++;
+        if (depth == first.length) {
+            boolean[] grown = new boolean[first.length * 2];
+            System.arraycopy(first, 0, grown, 0, first.length);
+            first = grown;
+        }
+        first[depth] = true;
+    }
+
+    /**
+     * Adds the separator required before a value or a key, if any
+     */
+    void beforeValue() throws IOException {
+        if (afterKey) {
+            afterKey = false;
+        } else {
+            if (!first[depth]) {
+                write(',');
+            }
+            first[depth] = false;
+        }
+    }
+
+    void writeDouble(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            // not representable in JSON
+            write("null");
+            return;
+        }
+
+        if (decimals >= 0) {
+            double scaled = value * scale;
+            if (Math.abs(scaled) < 1e15) {
+                writeFixed(Math.round(scaled), decimals);
+                return;
+            }
+        } else if (Math.abs(value) < 1e7 && value == (long) value) {
+            // Double.toString would use the plain notation here too, but with a trailing .0
+            writeLong((long) value);
+            return;
+        }
+        writeNumber(Double.toString(value));
+    }
+
+    /**
+     * Writes value / 10^decimals, dropping the trailing zeroes of the fractional part
+     */
+    void writeFixed(long value, int decimals) throws IOException {
+        if (value == 0) {
+            write('0');
+            return;
+        }
+        if (value < 0) {
+            write('-');
+            value = -value;
+        }
+        long power = POWERS_OF_TEN[decimals];
+        long integer = value / power;
+        long fraction = value % power;
+
+        writePositiveLong(integer);
+        if (fraction != 0) {
+            int length = decimals;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                length--;
+            }
+            write('.');
+            int end = digits.length;
+            int start = end - length;
+            for (int i = end - 1; i >= start; i--) {
+                digits[i] = (char) ('0' + (fraction % 10));
+                fraction /= 10;
+            }
+            write(digits, start, length);
+        }
+    }
+
+    void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            write(Long.toString(value));
+        } else if (value < 0) {
+            write('-');
+            writePositiveLong(-value);
+        } else {
+            writePositiveLong(value);
+        }
+    }
+
+    void writePositiveLong(long value) throws IOException {
+        int i = digits.length;
+        do {
+            digits[--i] = (char) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        write(digits, i, digits.length - i);
+    }
+
+    /**
+     * Writes a number string, removing the trailing zeroes of the plain notation like json-lib
+     * does
+     */
+    void writeNumber(String number) throws IOException {
+        int length = number.length();
+        if (number.indexOf('.') > 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+            while (number.charAt(length - 1) == '0') {
+                length--;
+            }
+            if (number.charAt(length - 1) == '.') {
+                length--;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            write(number.charAt(i));
+        }
+    }
+
+    void writeQuoted(String value) throws IOException {
+        write('"');
+        char previous = 0;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+            case '\\':
+                write('\\');
+                write(c);
+                break;
+            case '/':
+                // avoid closing a script tag when the output is used as JSONP
+                if (previous == '<') {
+                    write('\\');
+                }
+                write(c);
+                break;
+            case '\b':
+                write("\\b");
+                break;
+            case '\t':
+                write("\\t");
+                break;
+            case '\n':
+                write("\\n");
+                break;
+            case '\f':
+                write("\\f");
+                break;
+            case '\r':
+                write("\\r");
+                break;
+            default:
+                if (c < ' ') {
+                    write("\\u00");
+                    write(HEX[c >> 4]);
+                    write(HEX[c & 0xF]);
+                } else {
+                    write(c);
+                }
+            }
+            previous = c;
+        }
+        write('"');
+    }
+
+    void write(char c) throws IOException {
+        if (position == BUFFER_SIZE) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+        buffer[position++] = c;
+    }
+
+    void write(char[] chars, int offset, int length) throws IOException {
+        if (position + length > BUFFER_SIZE) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+        System.arraycopy(chars, offset, buffer, position, length);
+        position += length;
+    }
+
+    void write(String s) throws IOException {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            write(s.charAt(i));
+        }
+    }
+}
@@ -13,6 +13,7 @@ import javax.xml.transform.TransformerException;
 
 import net.opengis.wfs.GetCapabilitiesType;
 
+import org.geoserver.ows.CapabilitiesCache;
 import org.geoserver.ows.Response;
 import org.geoserver.ows.util.OwsUtils;
 import org.geoserver.platform.Operation;
@@ -55,14 +56,26 @@ public class GetCapabilitiesResponse extends Response {
         return "application/xml";
     }
 
-    public void write(Object value, OutputStream output, Operation operation)
+    public void write(Object value, OutputStream output, final Operation operation)
         throws IOException {
-        TransformerBase tx = (TransformerBase) value;
+        final TransformerBase tx = (TransformerBase) value;
+        CapabilitiesCache.Generator generator = new CapabilitiesCache.Generator() {
+            public void write(OutputStream out) throws IOException {
+                try {
+                    tx.transform(operation.getParameters()[0], out);
+                } catch (TransformerException e) {
+                    throw (IOException) new IOException().initCause(e);
+                }
+            }
+        };
 
-        try {
-            tx.transform(operation.getParameters()[0], output);
-        } catch (TransformerException e) {
-            throw (IOException) new IOException().initCause(e);
+        GetCapabilitiesType request = (GetCapabilitiesType) operation.getParameters()[0];
+        if (request.getUpdateSequence() != null) {
+            // the transformer checks it and might report the document is current
+            generator.write(output);
+        } else {
+            CapabilitiesCache.write("wfs", operation.getService().getVersion().toString(),
+                    request.getBaseUrl(), "namespace=" + request.getNamespace(), output, generator);
         }
     }
 }
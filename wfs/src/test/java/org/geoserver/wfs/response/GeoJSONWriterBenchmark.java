@@ -0,0 +1,121 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org.  All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.wfs.response;
+
+import java.io.Writer;
+import java.util.Random;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Compares the time needed to encode a set of geometries with {@link GeoJSONBuilder} and
+ * {@link GeoJSONWriter}. Not a test, run it manually with:
+ * 
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.geoserver.wfs.response.GeoJSONWriterBenchmark
+ * </pre>
+ */
+public class GeoJSONWriterBenchmark {
+
+    static final int GEOMETRIES = 10000;
+
+    static final int POINTS = 50;
+
+    static final int ITERATIONS = 10;
+
+    public static void main(String[] args) throws Exception {
+        final Geometry[] geometries = buildGeometries();
+
+        for (int i = 0; i < 2; i++) {
+            run("GeoJSONBuilder", new Encoder() {
+                public void encode(Writer writer) throws Exception {
+                    GeoJSONBuilder builder = new GeoJSONBuilder(writer);
+                    builder.array();
+                    for (Geometry g : geometries) {
+                        builder.writeGeom(g);
+                    }
+                    builder.endArray();
+                }
+            });
+            for (final int decimals : new int[] { -1, 6 }) {
+                run("GeoJSONWriter/" + decimals, new Encoder() {
+                    public void encode(Writer writer) throws Exception {
+                        GeoJSONWriter json = new GeoJSONWriter(writer, decimals);
+                        json.array();
+                        for (Geometry g : geometries) {
+                            json.writeGeom(g);
+                        }
+                        json.endArray();
+                        json.flush();
+                    }
+                });
+            }
+        }
+    }
+
+    static Geometry[] buildGeometries() {
+        GeometryFactory gf = new GeometryFactory();
+        Random random = new Random(0);
+        Geometry[] geometries = new Geometry[GEOMETRIES];
+        for (int i = 0; i < GEOMETRIES; i++) {
+            Coordinate[] coords = new Coordinate[POINTS];
+            for (int j = 0; j < POINTS; j++) {
+                coords[j] = new Coordinate(random.nextDouble() * 360 - 180,
+                        random.nextDouble() * 180 - 90);
+            }
+            geometries[i] = gf.createLineString(coords);
+        }
+        return geometries;
+    }
+
+    static void run(String name, Encoder encoder) throws Exception {
+        CountingWriter writer = new CountingWriter();
+        encoder.encode(writer);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            writer.count = 0;
+            encoder.encode(writer);
+        }
+        double avg = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+        System.out.println(name + ": " + avg + " ms, " + writer.count + " chars");
+    }
+
+    interface Encoder {
+        void encode(Writer writer) throws Exception;
+    }
+
+    /**
+     * Discards the output, just counting the chars
+     */
+    static class CountingWriter extends Writer {
+        long count;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void write(int c) {
+            count++;
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
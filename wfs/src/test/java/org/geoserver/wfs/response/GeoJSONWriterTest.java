@@ -0,0 +1,105 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org.  All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.wfs.response;
+
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+import net.sf.json.JSONObject;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class GeoJSONWriterTest extends TestCase {
+
+    StringWriter writer;
+
+    @Override
+    protected void setUp() throws Exception {
+        writer = new StringWriter();
+    }
+
+    String encode(String wkt, int decimals) throws Exception {
+        Geometry g = new WKTReader().read(wkt);
+        GeoJSONWriter json = new GeoJSONWriter(writer, decimals);
+        json.writeGeom(g);
+        json.flush();
+        return writer.toString();
+    }
+
+    public void testSameOutputAsBuilder() throws Exception {
+        String[] wkts = new String[] { "POINT(1 2)", "LINESTRING(0 0, 1.5 1, 2 -3.25)",
+                "POLYGON((0 0, 10 0, 10 10, 0 0), (1 1, 2 1, 2 2, 1 1))",
+                "MULTILINESTRING((0 0, 1 1), (55.174 -0.001, 10000000 2))",
+                "MULTIPOLYGON(((0 0, 1 0, 1 1, 0 0)), ((2 2, 3 2, 3 3, 2 2)))" };
+        for (String wkt : wkts) {
+            StringWriter expected = new StringWriter();
+            new GeoJSONBuilder(expected).writeGeom(new WKTReader().read(wkt));
+
+            writer = new StringWriter();
+            assertEquals(wkt, expected.toString(), encode(wkt, -1));
+        }
+    }
+
+    public void testMultiPoint() throws Exception {
+        assertEquals("{\"type\":\"MultiPoint\",\"coordinates\":[[0,0],[1,2]]}", encode(
+                "MULTIPOINT(0 0, 1 2)", -1));
+    }
+
+    public void testGeometryCollection() throws Exception {
+        String json = encode("GEOMETRYCOLLECTION(POINT(1 2), LINESTRING(0 0, 1 1))", -1);
+        assertEquals("{\"type\":\"GeometryCollection\",\"geometries\":["
+                + "{\"type\":\"Point\",\"coordinates\":[1,2]},"
+                + "{\"type\":\"LineString\",\"coordinates\":[[0,0],[1,1]]}]}", json);
+    }
+
+    public void testDecimals() throws Exception {
+        assertEquals("{\"type\":\"LineString\",\"coordinates\":[[3.142,-2.718],[0,10.5]]}",
+                encode("LINESTRING(3.14159 -2.71828, -0.0001 10.5)", 3));
+        writer = new StringWriter();
+        assertEquals("{\"type\":\"Point\",\"coordinates\":[3,-3]}", encode(
+                "POINT(3.14159 -2.71828)", 0));
+    }
+
+    public void testValues() throws Exception {
+        GeoJSONWriter json = new GeoJSONWriter(writer);
+        json.object();
+        json.key("string").value("a \"quoted\" </string>\n");
+        json.key("int").value(Integer.valueOf(-12));
+        json.key("double").value(Double.valueOf(1.5));
+        json.key("float").value(Float.valueOf(1.1f));
+        json.key("bool").value(Boolean.TRUE);
+        json.key("null").value((Object) null);
+        json.key("nan").value(Double.NaN);
+        json.writeBoundingBox(new Envelope(0, 1, 0, 1));
+        json.endObject();
+        json.flush();
+
+        assertEquals("{\"string\":\"a \\\"quoted\\\" <\\/string>\\n\",\"int\":-12,"
+                + "\"double\":1.5,\"float\":1.1,\"bool\":true,\"null\":null,\"nan\":null,"
+                + "\"bbox\":[0,0,1,1]}", writer.toString());
+
+        // and it's valid json
+        JSONObject parsed = JSONObject.fromObject(writer.toString());
+        assertEquals("a \"quoted\" </string>\n", parsed.getString("string"));
+    }
+
+    public void testLargeOutput() throws Exception {
+        // goes over the internal buffer size
+        GeoJSONWriter json = new GeoJSONWriter(writer, 4);
+        json.array();
+        for (int i = 0; i < 10000; i++) {
+            json.value(i + 0.25);
+        }
+        json.endArray();
+        json.flush();
+
+        String[] values = writer.toString().substring(1, writer.toString().length() - 1)
+                .split(",");
+        assertEquals(10000, values.length);
+        assertEquals("9999.25", values[9999]);
+    }
+}
@@ -5,15 +5,12 @@
 package org.geoserver.kml;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,9 +28,7 @@ import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.map.MapLayer;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.operation.projection.ProjectionException;
-import org.geotools.util.CanonicalSet;
 import org.geotools.util.logging.Logging;
-import org.h2.tools.DeleteDbFiles;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.filter.Filter;
@@ -74,14 +69,6 @@ public abstract class CachedHierarchyRegionatingStrategy implements
 
     static final Set<String> NO_FIDS = Collections.emptySet();
 
-    /**
-     * This structure is used to make sure that multiple threads end up using
-     * the same table name object, so that we can use it as a synchonization
-     * token
-     */
-    static CanonicalSet<String> canonicalizer = CanonicalSet
-            .newInstance(String.class);
-
     static {
         try {
             // common geographic info
@@ -120,6 +107,11 @@ public abstract class CachedHierarchyRegionatingStrategy implements
      */
     protected String tableName;
 
+    /**
+     * The shared fid to tile cache of the layer
+     */
+    protected RegionatingTileIndex index;
+
     /**
      * geoserver configuration
      */
@@ -197,10 +189,9 @@ public abstract class CachedHierarchyRegionatingStrategy implements
 
     public void clearCache(FeatureTypeInfo cfg){
         try{
-            DeleteDbFiles.execute(
+            RegionatingTileIndex.clear(
                 GeoserverDataDirectory.findCreateConfigDir("geosearch").getCanonicalPath(),
-                "h2cache_" + getDatabaseName(cfg),
-                true
+                getDatabaseName(cfg)
                 );
         } catch (Exception ioe) {
             LOGGER.severe("Couldn't clear out config dir due to: " + ioe);
@@ -235,7 +226,7 @@ public abstract class CachedHierarchyRegionatingStrategy implements
     }
 
     /**
-     * Open/creates the db and then reads/computes the tile features
+     * Grabs the shared tile index of the layer and then reads/computes the tile features
      * 
      * @param dataDir
      * @param tile
@@ -244,36 +235,15 @@ public abstract class CachedHierarchyRegionatingStrategy implements
      */
     private Set<String> getFeaturesForTile(String dataDir, Tile tile)
             throws Exception {
+        index = RegionatingTileIndex.get(dataDir + "/geosearch", tableName);
+        index.acquire();
         Connection conn = null;
-        Statement st = null;
-
-        // build the synchonization token
-        canonicalizer.add(tableName);
-        tableName = canonicalizer.get(tableName);
-
         try {
-            // make sure no two thread in parallel can build the same db
-            synchronized (tableName) {
-                // get a hold to the database that contains the cache (this will
-                // eventually create the db)
-                conn = DriverManager.getConnection("jdbc:h2:file:" + dataDir
-                        + "/geosearch/h2cache_" + tableName, "geoserver",
-                        "geopass");
-
-                // try to create the table, if it's already there this will fail
-                st = conn.createStatement();
-                st.execute("CREATE TABLE IF NOT EXISTS TILECACHE( " //
-                        + "x BIGINT, " //
-                        + "y BIGINT, " //
-                        + "z INT, " //
-                        + "fid varchar (64))");
-                st.execute("CREATE INDEX IF NOT EXISTS IDX_TILECACHE ON TILECACHE(x, y, z)");
-            }
-
+            conn = index.getConnection();
             return readFeaturesForTile(tile, conn);
         } finally {
-            JDBCUtils.close(st);
             JDBCUtils.close(conn, null, null);
+            index.release();
         }
     }
 
@@ -287,75 +257,24 @@ public abstract class CachedHierarchyRegionatingStrategy implements
      * @return
      * @throws Exception
      */
-    protected Set<String> readFeaturesForTile(Tile tile, Connection conn)
+    protected Set<String> readFeaturesForTile(final Tile tile, final Connection conn)
             throws Exception {
-        // grab the fids and decide whether we have to compute them
-        Set<String> fids = readCachedTileFids(tile, conn);
-        if (fids != null) {
-            return fids;
-        } else {
-            // build the synchronization token
-            String tileKey = tableName + tile.x + "-" + tile.y + "-" + tile.z;
-            canonicalizer.add(tileKey);
-            tileKey = canonicalizer.get(tileKey);
-
-            synchronized (tileKey) {
-                // might have been built while we were waiting
-                fids = readCachedTileFids(tile, conn);
-                if (fids != null)
-                    return fids;
-
-                // still missing, we need to compute them
-                fids = computeFids(tile, conn);
-                storeFids(tile, fids, conn);
+        // the index makes sure only one request computes the tile, while the
+        // others wait for it
+        return index.getFids(tile.x, tile.y, tile.z, conn, new Callable<Set<String>>() {
+            public Set<String> call() throws Exception {
+                Set<String> fids = computeFids(tile, conn);
+                index.storeFids(tile.x, tile.y, tile.z, fids, conn);
 
                 // optimization, if we did not manage to fill up this tile,
                 // the ones below it will be empty -> mark them as such right
                 // away
                 if (fids.size() < featuresPerTile)
                     for (Tile child : tile.getChildren())
-                        storeFids(child, NO_FIDS, conn);
+                        index.storeFids(child.x, child.y, child.z, NO_FIDS, conn);
+                return fids;
             }
-        }
-        return fids;
-    }
-
-    /**
-     * Store the fids inside
-     * 
-     * @param t
-     * @param fids
-     * @param conn
-     * @throws SQLException
-     */
-    private void storeFids(Tile t, Set<String> fids, Connection conn)
-            throws SQLException {
-        PreparedStatement ps = null;
-        try {
-            // we are going to execute this one many times, 
-            // let's prepare it so that the db engine does 
-            // not have to parse it at every call
-            String stmt = "INSERT INTO TILECACHE VALUES (" + t.x + ", " + t.y
-                    + ", " + t.z + ", ?)";
-            ps = conn.prepareStatement(stmt);
-
-            if (fids.size() == 0) {
-                // we just have to mark the tile as empty
-                ps.setString(1, null);
-                ps.execute();
-            } else {
-                // store all the fids
-                conn.setAutoCommit(false);
-                for (String fid : fids) {
-                    ps.setString(1, fid);
-                    ps.execute();
-                }
-                conn.commit();
-            }
-        } finally {
-            conn.setAutoCommit(true);
-            JDBCUtils.close(ps);
-        }
+        });
     }
 
     /**
@@ -506,34 +425,7 @@ public abstract class CachedHierarchyRegionatingStrategy implements
      */
     protected Set<String> readCachedTileFids(Tile tile, Connection conn)
             throws SQLException {
-        Set<String> fids = null;
-        Statement st = null;
-        ResultSet rs = null;
-        try {
-            st = conn.createStatement();
-            rs = st.executeQuery("SELECT fid FROM TILECACHE where x = "
-                    + tile.x + " AND y = " + tile.y + " and z = " + tile.z);
-            // decide whether we have to collect the fids or just to
-            // return that the tile was empty
-            if (rs.next()) {
-                String fid = rs.getString(1);
-                if (fid == null) {
-                    return Collections.emptySet();
-                } else {
-                    fids = new HashSet<String>();
-                    fids.add(fid);
-                }
-            }
-            // fill the set with the collected fids
-            while (rs.next()) {
-                fids.add(rs.getString(1));
-            }
-        } finally {
-            JDBCUtils.close(rs);
-            JDBCUtils.close(st);
-        }
-
-        return fids;
+        return index.readFids(tile.x, tile.y, tile.z, conn);
     }
 
     /**
@@ -135,17 +135,20 @@ public class ExternalSortRegionatingStrategy extends
     public FeatureIterator getSortedFeatures(GeometryDescriptor geom, 
             ReferencedEnvelope latLongEnvelope, ReferencedEnvelope nativeEnvelope, 
             Connection cacheConn) throws Exception {
-        // first of all, let's check if the geometry index table is there
-        Statement st = null;
-        try {
-            st = cacheConn.createStatement();
+        // first of all, let's check if the geometry index table is there (tiles
+        // are computed in parallel, make sure only one builds it)
+        synchronized (index) {
+            Statement st = null;
             try {
-                st.executeQuery("SELECT * FROM FEATUREIDX LIMIT 1");
-            } catch (SQLException e) {
-                buildIndex(cacheConn);
+                st = cacheConn.createStatement();
+                try {
+                    st.executeQuery("SELECT * FROM FEATUREIDX LIMIT 1");
+                } catch (SQLException e) {
+                    buildIndex(cacheConn);
+                }
+            } finally {
+                JDBCUtils.close(st);
             }
-        } finally {
-            JDBCUtils.close(st);
         }
 
         return new IndexFeatureIterator(cacheConn, latLongEnvelope);
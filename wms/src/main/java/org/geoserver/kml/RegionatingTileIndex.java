@@ -0,0 +1,466 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.kml;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.jdbc.JDBCUtils;
+import org.geotools.util.logging.Logging;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.h2.tools.DeleteDbFiles;
+
+/**
+ * The tile to feature id cache of a regionated layer, an embedded H2 database shared by all the
+ * regionating requests hitting the layer.
+ * <p>
+ * The database is opened on first use and kept open, with a pool of connections, until it's
+ * invalidated or GeoServer shuts down. Each tile is computed by a single request, the other
+ * requests asking for the same tile wait for its result, while different tiles, and different
+ * tile levels, are computed in parallel.
+ * </p>
+ * <p>
+ * Requests use the index between {@link #acquire()} and {@link #release()}. A {@link #markStale()
+ * stale} index is wiped by the first request acquiring it after all the requests that were using
+ * it are done, so that marking it does not block the caller.
+ * </p>
+ */
+public class RegionatingTileIndex {
+    static Logger LOGGER = Logging.getLogger("org.geoserver.geosearch");
+
+    /**
+     * Prefix of the database names
+     */
+    static final String PREFIX = "h2cache_";
+
+    /**
+     * Max number of pooled connections per database
+     */
+    static final int MAX_CONNECTIONS = 8;
+
+    /**
+     * The open indexes, by database path
+     */
+    static final ConcurrentHashMap<String, RegionatingTileIndex> INDEXES = new ConcurrentHashMap<String, RegionatingTileIndex>();
+
+    /**
+     * The canonical paths of the directories passed in, resolving them hits the file system
+     */
+    static final ConcurrentHashMap<String, String> CANONICAL_PATHS = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Max number of remembered canonical paths, there is usually just one directory
+     */
+    static final int MAX_CANONICAL_PATHS = 100;
+
+    /**
+     * Returns the shared index for the specified database, creating it if missing
+     *
+     * @param directory the directory containing the databases
+     * @param name the database name, as returned by
+     *        {@link CachedHierarchyRegionatingStrategy#getDatabaseName}
+     */
+    public static RegionatingTileIndex get(String directory, String name) {
+        directory = normalize(directory);
+        String path = directory + "/" + PREFIX + name;
+        RegionatingTileIndex index = INDEXES.get(path);
+        if (index == null) {
+            // creation is serialized with the removal of the files of closed databases
+            synchronized (INDEXES) {
+                index = INDEXES.get(path);
+                if (index == null) {
+                    index = new RegionatingTileIndex(directory, name);
+                    INDEXES.put(path, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Wipes out the cache of the specified database
+     */
+    public static void clear(String directory, String name) throws SQLException {
+        directory = normalize(directory);
+        synchronized (INDEXES) {
+            RegionatingTileIndex index = INDEXES.get(directory + "/" + PREFIX + name);
+            if (index != null) {
+                index.clear();
+            } else {
+                DeleteDbFiles.execute(directory, PREFIX + name, true);
+            }
+        }
+    }
+
+    /**
+     * Invalidates the caches of a layer, open indexes are marked as stale, the ones that are not
+     * in use are deleted
+     *
+     * @param directory the directory containing the databases
+     * @param layerName the layer name, as <code>prefix_name</code>. All the databases of the
+     *        layer, regardless of the regionating attribute, are invalidated
+     */
+    public static void invalidate(String directory, String layerName) {
+        directory = normalize(directory);
+        synchronized (INDEXES) {
+            Set<String> names = new HashSet<String>();
+            for (RegionatingTileIndex index : INDEXES.values()) {
+                if (index.directory.equals(directory) && matches(index.name, layerName)) {
+                    index.markStale();
+                    names.add(index.name);
+                }
+            }
+
+            File[] files = new File(directory).listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                String fileName = file.getName();
+                if (!fileName.startsWith(PREFIX) || fileName.indexOf('.') < 0) {
+                    continue;
+                }
+                String name = fileName.substring(PREFIX.length(), fileName.indexOf('.'));
+                if (matches(name, layerName) && names.add(name)) {
+                    try {
+                        DeleteDbFiles.execute(directory, PREFIX + name, true);
+                    } catch (SQLException e) {
+                        LOGGER.log(Level.WARNING, "Could not delete the regionating cache "
+                                + name, e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the canonical path of the directory, so that the same databases are found no
+     * matter how the callers spell the directory (relative paths, symbolic links, separators)
+     */
+    static String normalize(String directory) {
+        String normalized = CANONICAL_PATHS.get(directory);
+        if (normalized == null) {
+            File file = new File(directory);
+            try {
+                normalized = file.getCanonicalPath();
+            } catch (IOException e) {
+                normalized = file.getAbsolutePath();
+            }
+            if (CANONICAL_PATHS.size() < MAX_CANONICAL_PATHS) {
+                CANONICAL_PATHS.put(directory, normalized);
+            }
+        }
+        return normalized;
+    }
+
+    static boolean matches(String name, String layerName) {
+        return name.equals(layerName) || name.startsWith(layerName + "_");
+    }
+
+    /**
+     * Closes all the open indexes
+     */
+    public static void disposeAll() {
+        synchronized (INDEXES) {
+            List<RegionatingTileIndex> indexes = new ArrayList<RegionatingTileIndex>(INDEXES
+                    .values());
+            INDEXES.clear();
+            for (RegionatingTileIndex index : indexes) {
+                index.dispose();
+            }
+        }
+    }
+
+    String directory;
+
+    String name;
+
+    JdbcConnectionPool pool;
+
+    ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Whether the TILECACHE table is known to be there
+     */
+    boolean ready;
+
+    volatile boolean stale;
+
+    /**
+     * The tiles being computed, by tile key
+     */
+    ConcurrentHashMap<String, FutureTask<Set<String>>> building = new ConcurrentHashMap<String, FutureTask<Set<String>>>();
+
+    RegionatingTileIndex(String directory, String name) {
+        this.directory = directory;
+        this.name = name;
+        // the default lock timeout is too short when several tiles are stored in parallel
+        pool = JdbcConnectionPool.create("jdbc:h2:file:" + directory + "/" + PREFIX + name
+                + ";LOCK_TIMEOUT=30000", "geoserver", "geopass");
+        pool.setMaxConnections(MAX_CONNECTIONS);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Starts using the index, creating the cache table or wiping a stale cache if necessary. Must
+     * be paired with a call to {@link #release()}.
+     */
+    public void acquire() throws SQLException {
+        lock.readLock().lock();
+        if (ready && !stale) {
+            return;
+        }
+
+        // upgrade to the write lock, this waits for the requests using the index to finish
+        lock.readLock().unlock();
+        lock.writeLock().lock();
+        boolean done = false;
+        try {
+            if (stale) {
+                stale = false;
+                try {
+                    dropAll();
+                } catch (SQLException e) {
+                    stale = true;
+                    throw e;
+                }
+            }
+            if (!ready) {
+                createTable();
+                ready = true;
+            }
+            done = true;
+        } finally {
+            // downgrade, or give up entirely if we failed
+            if (done) {
+                lock.readLock().lock();
+            }
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stops using the index
+     */
+    public void release() {
+        lock.readLock().unlock();
+    }
+
+    /**
+     * Returns a pooled connection to the database, closing it returns it to the pool
+     */
+    public Connection getConnection() throws SQLException {
+        return pool.getConnection();
+    }
+
+    /**
+     * Marks the cache as stale, it will be wiped before being used again
+     */
+    public void markStale() {
+        stale = true;
+    }
+
+    /**
+     * Wipes the cache right away, waiting for the requests using it to finish
+     */
+    public void clear() throws SQLException {
+        lock.writeLock().lock();
+        try {
+            dropAll();
+            stale = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void dispose() {
+        lock.writeLock().lock();
+        try {
+            pool.dispose();
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Error closing the regionating cache " + name, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void createTable() throws SQLException {
+        Connection conn = null;
+        Statement st = null;
+        try {
+            conn = getConnection();
+            st = conn.createStatement();
+            st.execute("CREATE TABLE IF NOT EXISTS TILECACHE( " //
+                    + "x BIGINT, " //
+                    + "y BIGINT, " //
+                    + "z INT, " //
+                    + "fid varchar (64))");
+            st.execute("CREATE INDEX IF NOT EXISTS IDX_TILECACHE ON TILECACHE(x, y, z)");
+        } finally {
+            JDBCUtils.close(st);
+            JDBCUtils.close(conn, null, null);
+        }
+    }
+
+    /**
+     * Drops the tile cache along with any other table the strategies built in the database
+     */
+    void dropAll() throws SQLException {
+        ready = false;
+        Connection conn = null;
+        Statement st = null;
+        try {
+            conn = getConnection();
+            st = conn.createStatement();
+            st.execute("DROP ALL OBJECTS");
+        } finally {
+            JDBCUtils.close(st);
+            JDBCUtils.close(conn, null, null);
+        }
+    }
+
+    /**
+     * Returns the fids cached for a tile, or null if the tile has not been computed yet. An empty
+     * set is returned for tiles that have been computed and found to be empty.
+     */
+    public Set<String> readFids(long x, long y, long z, Connection conn) throws SQLException {
+        Set<String> fids = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = conn.prepareStatement("SELECT fid FROM TILECACHE WHERE x = ? AND y = ? AND z = ?");
+            ps.setLong(1, x);
+            ps.setLong(2, y);
+            ps.setLong(3, z);
+            rs = ps.executeQuery();
+            // decide whether we have to collect the fids or just to
+            // return that the tile was empty
+            if (rs.next()) {
+                String fid = rs.getString(1);
+                if (fid == null) {
+                    return Collections.emptySet();
+                } else {
+                    fids = new HashSet<String>();
+                    fids.add(fid);
+                }
+            }
+            // fill the set with the collected fids
+            while (rs.next()) {
+                fids.add(rs.getString(1));
+            }
+        } finally {
+            JDBCUtils.close(rs);
+            JDBCUtils.close(ps);
+        }
+        return fids;
+    }
+
+    /**
+     * Stores the fids of a tile, an empty set marks the tile as empty
+     */
+    public void storeFids(long x, long y, long z, Set<String> fids, Connection conn)
+            throws SQLException {
+        PreparedStatement ps = null;
+        try {
+            ps = conn.prepareStatement("INSERT INTO TILECACHE VALUES (?, ?, ?, ?)");
+            ps.setLong(1, x);
+            ps.setLong(2, y);
+            ps.setLong(3, z);
+
+            if (fids.size() == 0) {
+                // we just have to mark the tile as empty
+                ps.setString(4, null);
+                ps.execute();
+            } else {
+                // store all the fids in a single transaction
+                conn.setAutoCommit(false);
+                for (String fid : fids) {
+                    ps.setString(4, fid);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                conn.commit();
+            }
+        } catch (SQLException e) {
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+            }
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+            JDBCUtils.close(ps);
+        }
+    }
+
+    /**
+     * Returns the fids of the specified tile, computing them with the builder if the tile is not
+     * cached. Concurrent calls for the same tile run the builder only once. The builder is
+     * expected to store the fids before returning them.
+     */
+    public Set<String> getFids(final long x, final long y, final long z,
+            final Connection conn, final Callable<Set<String>> builder) throws Exception {
+        Set<String> fids = readFids(x, y, z, conn);
+        if (fids != null) {
+            return fids;
+        }
+
+        String key = x + "-" + y + "-" + z;
+        FutureTask<Set<String>> task = new FutureTask<Set<String>>(new Callable<Set<String>>() {
+            public Set<String> call() throws Exception {
+                // might have been stored while we were setting up
+                Set<String> fids = readFids(x, y, z, conn);
+                return fids != null ? fids : builder.call();
+            }
+        });
+        FutureTask<Set<String>> existing = building.putIfAbsent(key, task);
+        if (existing != null) {
+            // someone else is computing it, wait for the result
+            return get(existing);
+        }
+
+        try {
+            task.run();
+            return get(task);
+        } finally {
+            building.remove(key);
+        }
+    }
+
+    Set<String> get(FutureTask<Set<String>> task) throws Exception {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RegionatingTileIndex(" + directory + "/" + PREFIX + name + ")";
+    }
+}
@@ -0,0 +1,118 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.kml;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.namespace.QName;
+
+import net.opengis.wfs.TransactionType;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.wfs.TransactionEvent;
+import org.geoserver.wfs.TransactionPlugin;
+import org.geoserver.wfs.WFSException;
+import org.geotools.util.logging.Logging;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Invalidates the regionating caches of the layers modified by a transaction, once the
+ * transaction is committed, and closes the shared regionating caches on shutdown.
+ */
+public class RegionatingTransactionListener implements TransactionPlugin, DisposableBean {
+    static Logger LOGGER = Logging.getLogger("org.geoserver.geosearch");
+
+    Catalog catalog;
+
+    /**
+     * The layers touched by each transaction element, as <code>prefix_name</code>
+     */
+    Map<Object, Set<String>> affectedLayers = new ConcurrentHashMap<Object, Set<String>>();
+
+    public RegionatingTransactionListener(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    public TransactionType beforeTransaction(TransactionType request) throws WFSException {
+        // nothing to do
+        return request;
+    }
+
+    public void beforeCommit(TransactionType request) throws WFSException {
+        // nothing to do
+    }
+
+    public void dataStoreChange(TransactionEvent event) throws WFSException {
+        String layerName = getLayerName(event.getLayerName());
+        if (layerName == null) {
+            return;
+        }
+        Object source = event.getSource();
+        if (source == null) {
+            // can't track it until the end of the transaction, invalidate right away
+            invalidate(layerName);
+            return;
+        }
+        Set<String> layers = affectedLayers.get(source);
+        if (layers == null) {
+            layers = new HashSet<String>();
+            affectedLayers.put(source, layers);
+        }
+        layers.add(layerName);
+    }
+
+    public void afterTransaction(TransactionType request, boolean committed) {
+        List<Object> elements = new ArrayList<Object>();
+        elements.addAll(request.getInsert());
+        elements.addAll(request.getUpdate());
+        elements.addAll(request.getDelete());
+        for (Object element : elements) {
+            Set<String> layers = affectedLayers.remove(element);
+            if (committed && layers != null) {
+                for (String layer : layers) {
+                    invalidate(layer);
+                }
+            }
+        }
+    }
+
+    public int getPriority() {
+        return 0;
+    }
+
+    String getLayerName(QName name) {
+        if (name == null) {
+            return null;
+        }
+        NamespaceInfo ns = catalog.getNamespaceByURI(name.getNamespaceURI());
+        String prefix = ns != null ? ns.getPrefix() : name.getPrefix();
+        return prefix + "_" + name.getLocalPart();
+    }
+
+    void invalidate(String layerName) {
+        try {
+            File dir = new File(catalog.getResourceLoader().getBaseDirectory(), "geosearch");
+            RegionatingTileIndex.invalidate(dir.getCanonicalPath(), layerName);
+        } catch (IOException e) {
+            // never make the transaction fail because of the regionating cache
+            LOGGER.log(Level.WARNING, "Could not invalidate the regionating cache of "
+                    + layerName, e);
+        }
+    }
+
+    public void destroy() throws Exception {
+        RegionatingTileIndex.disposeAll();
+    }
+}
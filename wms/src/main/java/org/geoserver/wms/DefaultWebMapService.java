@@ -14,6 +14,7 @@ import java.util.concurrent.TimeUnit;
 import net.opengis.wfs.FeatureCollectionType;
 
 import org.geoserver.kml.KMLReflector;
+import org.geoserver.ows.util.TimeoutScheduler;
 import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.sld.GetStyles;
@@ -21,6 +22,7 @@ import org.geoserver.sld.GetStylesRequest;
 import org.geoserver.wms.capabilities.Capabilities_1_3_0_Transformer;
 import org.geoserver.wms.capabilities.GetCapabilitiesTransformer;
 import org.geoserver.wms.describelayer.DescribeLayerTransformer;
+import org.geoserver.wms.map.MetatileMapOutputFormat;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
@@ -142,6 +144,21 @@ public class DefaultWebMapService implements WebMapService, ApplicationContextAw
      */
     private static Boolean USE_GLOBAL_RENDERING_POOL = null;
 
+    /**
+     * Render the map layers in parallel, each one on its own image, and then composite them
+     */
+    private static Boolean PARALLEL_LAYER_RENDERING = null;
+
+    /**
+     * The max number of threads used to render the layers in parallel
+     */
+    private static Integer LAYER_RENDERING_THREADS = null;
+
+    /**
+     * The bounded pool used for parallel layer rendering
+     */
+    private static ExecutorService LAYER_RENDERING_POOL;
+
     private GetCapabilities getCapabilities;
 
     private DescribeLayer describeLayer;
@@ -261,6 +278,24 @@ public class DefaultWebMapService implements WebMapService, ApplicationContextAw
             else
                 USE_GLOBAL_RENDERING_POOL = Boolean.valueOf(usePool);
         }
+
+        // parallel layer rendering
+        if (PARALLEL_LAYER_RENDERING == null) {
+            String parallel = GeoServerExtensions.getProperty("PARALLEL_LAYER_RENDERING", context);
+            // default to false, but allow switching on
+            if (parallel == null)
+                PARALLEL_LAYER_RENDERING = false;
+            else
+                PARALLEL_LAYER_RENDERING = Boolean.valueOf(parallel);
+        }
+        if (LAYER_RENDERING_THREADS == null) {
+            String threads = GeoServerExtensions.getProperty("LAYER_RENDERING_THREADS", context);
+            // default to twice the number of cores, layer rendering is often I/O bound
+            if (threads == null)
+                LAYER_RENDERING_THREADS = Runtime.getRuntime().availableProcessors() * 2;
+            else
+                LAYER_RENDERING_THREADS = Integer.valueOf(threads);
+        }
     }
 
     /**
@@ -302,6 +337,43 @@ public class DefaultWebMapService implements WebMapService, ApplicationContextAw
         return MAX_FILTER_RULES;
     }
     
+    /**
+     * Checks whether the map layers should be rendered in parallel and then composited (defaults
+     * to false unless the user sets the PARALLEL_LAYER_RENDERING property to true)
+     * 
+     * @return
+     */
+    public static boolean isParallelLayerRenderingEnabled() {
+        return Boolean.TRUE.equals(PARALLEL_LAYER_RENDERING);
+    }
+
+    /**
+     * Enables or disables the parallel layer rendering, overriding the PARALLEL_LAYER_RENDERING
+     * property
+     * 
+     * @param parallel
+     */
+    public static void setParallelLayerRenderingEnabled(boolean parallel) {
+        PARALLEL_LAYER_RENDERING = parallel;
+    }
+
+    /**
+     * Returns the app wide bounded pool used to render the map layers in parallel, its size is
+     * controlled by the LAYER_RENDERING_THREADS property
+     * 
+     * @return
+     */
+    public static ExecutorService getLayerRenderingPool() {
+        synchronized (DefaultWebMapService.class) {
+            if (LAYER_RENDERING_POOL == null) {
+                int threads = LAYER_RENDERING_THREADS != null ? LAYER_RENDERING_THREADS : Runtime
+                        .getRuntime().availableProcessors() * 2;
+                LAYER_RENDERING_POOL = Executors.newFixedThreadPool(threads);
+            }
+            return LAYER_RENDERING_POOL;
+        }
+    }
+
     /**
      * If true (default) the direct raster rendering path is enabled
      * @return
@@ -704,11 +776,20 @@ public class DefaultWebMapService implements WebMapService, ApplicationContextAw
     }
 
     public void destroy() throws Exception {
+        TimeoutScheduler.dispose();
+        MetatileMapOutputFormat.disposeEncodingPool();
         if (RENDERING_POOL != null) {
             RENDERING_POOL.shutdown();
             RENDERING_POOL.awaitTermination(10, TimeUnit.SECONDS);
             RENDERING_POOL = null;
         }
+        synchronized (DefaultWebMapService.class) {
+            if (LAYER_RENDERING_POOL != null) {
+                LAYER_RENDERING_POOL.shutdown();
+                LAYER_RENDERING_POOL.awaitTermination(10, TimeUnit.SECONDS);
+                LAYER_RENDERING_POOL = null;
+            }
+        }
     }
 
 }
@@ -9,6 +9,7 @@ import java.io.OutputStream;
 
 import javax.xml.transform.TransformerException;
 
+import org.geoserver.ows.CapabilitiesCache;
 import org.geoserver.ows.Response;
 import org.geoserver.platform.Operation;
 import org.geoserver.platform.ServiceException;
@@ -57,14 +58,19 @@ public class Capabilities_1_3_0_Response extends Response {
     public void write(final Object value, final OutputStream output, final Operation operation)
             throws IOException, ServiceException {
 
-        Capabilities_1_3_0_Transformer transformer = (Capabilities_1_3_0_Transformer) value;
+        final Capabilities_1_3_0_Transformer transformer = (Capabilities_1_3_0_Transformer) value;
+        final GetCapabilitiesRequest request = (GetCapabilitiesRequest) operation.getParameters()[0];
 
-        try {
-            GetCapabilitiesRequest request = (GetCapabilitiesRequest) operation.getParameters()[0];
-            transformer.transform(request, output);
-        } catch (TransformerException e) {
-            throw new ServiceException(e);
-        }
+        CapabilitiesCache.write("wms", request.getVersion(), request.getBaseUrl(), "namespace="
+                + request.getNamespace(), output, new CapabilitiesCache.Generator() {
+            public void write(OutputStream out) throws IOException {
+                try {
+                    transformer.transform(request, out);
+                } catch (TransformerException e) {
+                    throw new ServiceException(e);
+                }
+            }
+        });
     }
 
 }
@@ -21,6 +21,7 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
+import org.geoserver.ows.CapabilitiesCache;
 import org.geoserver.ows.Response;
 import org.geoserver.platform.Operation;
 import org.geoserver.platform.ServiceException;
@@ -110,9 +111,18 @@ public class GetCapabilitiesResponse extends Response {
     @Override
     public void write(final Object value, final OutputStream output, final Operation operation)
             throws IOException, ServiceException {
-
-        final GetCapabilitiesTransformer transformer = (GetCapabilitiesTransformer) value;
         final GetCapabilitiesRequest request = (GetCapabilitiesRequest) operation.getParameters()[0];
+        CapabilitiesCache.write("wms", request.getVersion(), request.getBaseUrl(), "namespace="
+                + request.getNamespace(), output, new CapabilitiesCache.Generator() {
+            public void write(OutputStream out) throws IOException {
+                encode((GetCapabilitiesTransformer) value, request, out);
+            }
+        });
+    }
+
+    void encode(final GetCapabilitiesTransformer transformer,
+            final GetCapabilitiesRequest request, final OutputStream output) throws IOException,
+            ServiceException {
 
         final String internalDTDDeclaration = getInternalDTDDeclaration(request);
 
@@ -0,0 +1,392 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org.  All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * Turns a true color {@link BufferedImage} into an 8 bit paletted one, working directly on the
+ * image raster.
+ * <p>
+ * If the image has no more than 256 distinct colors the palette is exact, otherwise it is built
+ * with a median cut over a 5 bits per channel histogram of the image colors. As in
+ * {@link ImageUtils#forceIndexed8Bitmask(java.awt.image.RenderedImage, org.geotools.image.palette.InverseColorMapOp)}
+ * the resulting palette is bitmask: fully transparent pixels map to a single transparent entry,
+ * all the other ones to opaque colors.
+ * </p>
+ * <p>
+ * Instances are not thread safe, they keep the working buffers around so that they can be reused
+ * for the next image.
+ * </p>
+ */
+class ColorQuantizer {
+
+    static final int MAX_COLORS = 256;
+
+    static final int HISTOGRAM_SIZE = 1 << 15;
+
+    /**
+     * The image pixels, as non premultiplied ARGB, with all the transparent ones set to 0
+     */
+    int[] pixels = new int[0];
+
+    // exact color lookup, open addressing hash table
+    int[] hashColors = new int[MAX_COLORS * 4];
+
+    int[] hashIndexes = new int[MAX_COLORS * 4];
+
+    // the 5 bits per channel histogram, with the channel sums for each cell
+    int[] counts = new int[HISTOGRAM_SIZE];
+
+    long[] sumR = new long[HISTOGRAM_SIZE];
+
+    long[] sumG = new long[HISTOGRAM_SIZE];
+
+    long[] sumB = new long[HISTOGRAM_SIZE];
+
+    int[] cells = new int[HISTOGRAM_SIZE];
+
+    byte[] lut = new byte[HISTOGRAM_SIZE];
+
+    /**
+     * Builds the paletted version of the image
+     */
+    BufferedImage quantize(BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int size = width * height;
+        if (pixels.length < size) {
+            pixels = new int[size];
+        }
+        readPixels(image, pixels);
+
+        byte[] indexes = new byte[size];
+        IndexColorModel icm = buildExactPalette(size, indexes);
+        if (icm == null) {
+            icm = buildMedianCutPalette(size, indexes);
+        }
+
+        DataBufferByte buffer = new DataBufferByte(indexes, size);
+        WritableRaster raster = Raster.createInterleavedRaster(buffer, width, height, width, 1,
+                new int[] { 0 }, null);
+        return new BufferedImage(icm, raster, false, null);
+    }
+
+    /**
+     * Reads the image pixels in ARGB form, with a fast path for byte interleaved images
+     */
+    static void readPixels(BufferedImage image, int[] pixels) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final WritableRaster raster = image.getRaster();
+        final SampleModel sm = raster.getSampleModel();
+
+        if (sm instanceof PixelInterleavedSampleModel && sm.getDataType() == DataBuffer.TYPE_BYTE
+                && image.getColorModel() instanceof ComponentColorModel
+                && !image.isAlphaPremultiplied()
+                && (sm.getNumBands() == 3 || sm.getNumBands() == 4)) {
+            final PixelInterleavedSampleModel pism = (PixelInterleavedSampleModel) sm;
+            final DataBufferByte db = (DataBufferByte) raster.getDataBuffer();
+            final byte[] data = db.getData();
+            final int scanline = pism.getScanlineStride();
+            final int pixelStride = pism.getPixelStride();
+            final int[] offsets = pism.getBandOffsets();
+            final int ro = offsets[0];
+            final int go = offsets[1];
+            final int bo = offsets[2];
+            final boolean hasAlpha = sm.getNumBands() == 4;
+            final int ao = hasAlpha ? offsets[3] : 0;
+            final int base = db.getOffset() - raster.getSampleModelTranslateY() * scanline
+                    - raster.getSampleModelTranslateX() * pixelStride;
+
+            int idx = 0;
+            for (int y = 0; y < height; y++) {
+                int pos = base + y * scanline;
+                for (int x = 0; x < width; x++, pos += pixelStride) {
+                    int a = hasAlpha ? data[pos + ao] & 0xFF : 0xFF;
+                    if (a == 0) {
+                        pixels[idx++] = 0;
+                    } else {
+                        pixels[idx++] = 0xFF000000 | ((data[pos + ro] & 0xFF) << 16)
+                                | ((data[pos + go] & 0xFF) << 8) | (data[pos + bo] & 0xFF);
+                    }
+                }
+            }
+        } else {
+            for (int y = 0; y < height; y++) {
+                int offset = y * width;
+                image.getRGB(0, y, width, 1, pixels, offset, width);
+                for (int i = offset; i < offset + width; i++) {
+                    if ((pixels[i] >>> 24) == 0) {
+                        pixels[i] = 0;
+                    } else {
+                        pixels[i] |= 0xFF000000;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds a palette with the exact image colors, returns null if there are more than 256 of
+     * them
+     */
+    IndexColorModel buildExactPalette(int size, byte[] indexes) {
+        final int mask = hashColors.length - 1;
+        Arrays.fill(hashIndexes, -1);
+
+        int[] palette = new int[MAX_COLORS];
+        int colors = 0;
+        int lastColor = 0;
+        int lastIndex = -1;
+        for (int i = 0; i < size; i++) {
+            final int color = pixels[i];
+            if (color != lastColor || lastIndex < 0) {
+                int slot = hash(color) & mask;
+                while (hashIndexes[slot] >= 0 && hashColors[slot] != color) {
+                    slot = (slot + 1) & mask;
+                }
+                if (hashIndexes[slot] < 0) {
+                    if (colors == MAX_COLORS) {
+                        return null;
+                    }
+                    hashColors[slot] = color;
+                    hashIndexes[slot] = colors;
+                    palette[colors++] = color;
+                }
+                lastColor = color;
+                lastIndex = hashIndexes[slot];
+            }
+            indexes[i] = (byte) lastIndex;
+        }
+
+        byte[] r = new byte[colors];
+        byte[] g = new byte[colors];
+        byte[] b = new byte[colors];
+        int transparent = -1;
+        for (int i = 0; i < colors; i++) {
+            final int color = palette[i];
+            if (color == 0) {
+                transparent = i;
+            }
+            r[i] = (byte) (color >> 16);
+            g[i] = (byte) (color >> 8);
+            b[i] = (byte) color;
+        }
+        return buildColorModel(colors, r, g, b, transparent);
+    }
+
+    static int hash(int color) {
+        int h = color * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Builds the palette using the median cut algorithm
+     */
+    IndexColorModel buildMedianCutPalette(int size, byte[] indexes) {
+        Arrays.fill(counts, 0);
+        Arrays.fill(sumR, 0);
+        Arrays.fill(sumG, 0);
+        Arrays.fill(sumB, 0);
+
+        boolean hasTransparent = false;
+        for (int i = 0; i < size; i++) {
+            final int color = pixels[i];
+            if (color == 0) {
+                hasTransparent = true;
+                continue;
+            }
+            final int r = (color >> 16) & 0xFF;
+            final int g = (color >> 8) & 0xFF;
+            final int b = color & 0xFF;
+            final int cell = ((r >> 3) << 10) | ((g >> 3) << 5) | (b >> 3);
+            counts[cell]++;
+            sumR[cell] += r;
+            sumG[cell] += g;
+            sumB[cell] += b;
+        }
+
+        int cellCount = 0;
+        for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+            if (counts[i] > 0) {
+                cells[cellCount++] = i;
+            }
+        }
+
+        // split the boxes until we run out of colors or of splittable boxes
+        final int maxBoxes = hasTransparent ? MAX_COLORS - 1 : MAX_COLORS;
+        Box[] boxes = new Box[maxBoxes];
+        boxes[0] = new Box(0, cellCount);
+        boxes[0].shrink();
+        int boxCount = 1;
+        while (boxCount < maxBoxes) {
+            Box target = null;
+            for (int i = 0; i < boxCount; i++) {
+                Box box = boxes[i];
+                if (box.end - box.start > 1 && (target == null || box.score > target.score)) {
+                    target = box;
+                }
+            }
+            if (target == null) {
+                break;
+            }
+            boxes[boxCount++] = target.split();
+        }
+
+        // build the palette and the cell lookup table
+        final int colors = hasTransparent ? boxCount + 1 : boxCount;
+        byte[] r = new byte[colors];
+        byte[] g = new byte[colors];
+        byte[] b = new byte[colors];
+        for (int i = 0; i < boxCount; i++) {
+            Box box = boxes[i];
+            long count = 0, sr = 0, sg = 0, sb = 0;
+            for (int j = box.start; j < box.end; j++) {
+                final int cell = cells[j];
+                count += counts[cell];
+                sr += sumR[cell];
+                sg += sumG[cell];
+                sb += sumB[cell];
+                lut[cell] = (byte) i;
+            }
+            r[i] = (byte) (sr / count);
+            g[i] = (byte) (sg / count);
+            b[i] = (byte) (sb / count);
+        }
+        final int transparent = hasTransparent ? boxCount : -1;
+
+        for (int i = 0; i < size; i++) {
+            final int color = pixels[i];
+            if (color == 0) {
+                indexes[i] = (byte) transparent;
+            } else {
+                final int cell = ((color >> 9) & 0x7C00) | ((color >> 6) & 0x3E0)
+                        | ((color >> 3) & 0x1F);
+                indexes[i] = lut[cell];
+            }
+        }
+
+        return buildColorModel(colors, r, g, b, transparent);
+    }
+
+    static IndexColorModel buildColorModel(int colors, byte[] r, byte[] g, byte[] b,
+            int transparent) {
+        // IndexColorModel wants at least two entries to be happy
+        if (colors == 1) {
+            return new IndexColorModel(8, 2, new byte[] { r[0], 0 }, new byte[] { g[0], 0 },
+                    new byte[] { b[0], 0 }, transparent);
+        }
+        return new IndexColorModel(8, colors, r, g, b, transparent);
+    }
+
+    /**
+     * A range of histogram cells in the {@link ColorQuantizer#cells} array
+     */
+    class Box {
+        int start;
+
+        int end;
+
+        int[] min = new int[3];
+
+        int[] max = new int[3];
+
+        long population;
+
+        long score;
+
+        Box(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Computes the box bounds and population, and the score used to choose the next box to
+         * split
+         */
+        void shrink() {
+            Arrays.fill(min, Integer.MAX_VALUE);
+            Arrays.fill(max, Integer.MIN_VALUE);
+            population = 0;
+            for (int i = start; i < end; i++) {
+                final int cell = cells[i];
+                for (int c = 0; c < 3; c++) {
+                    final int v = component(cell, c);
+                    min[c] = Math.min(min[c], v);
+                    max[c] = Math.max(max[c], v);
+                }
+                population += counts[cell];
+            }
+            int longest = 0;
+            for (int c = 0; c < 3; c++) {
+                longest = Math.max(longest, max[c] - min[c]);
+            }
+            score = population * (longest + 1);
+        }
+
+        /**
+         * Splits the box at the population median along its longest side, returns the upper half
+         */
+        Box split() {
+            int axis = 0;
+            for (int c = 1; c < 3; c++) {
+                if (max[c] - min[c] > max[axis] - min[axis]) {
+                    axis = c;
+                }
+            }
+            sortCells(axis);
+
+            long half = population / 2;
+            long accumulated = 0;
+            int median = start;
+            while (median < end - 1) {
+                accumulated += counts[cells[median]];
+                median++;
+                if (accumulated >= half) {
+                    break;
+                }
+            }
+
+            Box upper = new Box(median, end);
+            this.end = median;
+            shrink();
+            upper.shrink();
+            return upper;
+        }
+
+        /**
+         * Counting sort of the box cells on the specified axis
+         */
+        void sortCells(int axis) {
+            int[] buckets = new int[33];
+            for (int i = start; i < end; i++) {
+                buckets[component(cells[i], axis) + 1]++;
+            }
+            for (int i = 1; i < buckets.length; i++) {
+                buckets[i] += buckets[i - 1];
+            }
+            int[] sorted = new int[end - start];
+            for (int i = start; i < end; i++) {
+                final int cell = cells[i];
+                sorted[buckets[component(cell, axis)]++] = cell;
+            }
+            System.arraycopy(sorted, 0, cells, start, sorted.length);
+        }
+    }
+
+    static int component(int cell, int c) {
+        return (cell >> (10 - c * 5)) & 0x1F;
+    }
+}
@@ -0,0 +1,228 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.image.BufferedImage;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.util.logging.Logging;
+
+/**
+ * A pool of the true color {@link BufferedImage} canvases used to render the maps, keyed by
+ * width, height and image type.
+ * <p>
+ * The canvases are given back to the pool once the map has been encoded, so that the next request
+ * of the same size can paint on it instead of allocating a new one. The pool keeps at most the
+ * amount of memory set by the IMAGE_BUFFER_POOL_SIZE system variable (or servlet context
+ * parameter), in megabytes, canvases that would exceed it are left to the garbage collector. The
+ * pool is disabled by default.
+ * </p>
+ */
+public class ImageBufferPool {
+
+    static final Logger LOGGER = Logging.getLogger(ImageBufferPool.class);
+
+    private static ImageBufferPool INSTANCE;
+
+    ConcurrentHashMap<Key, Queue<BufferedImage>> pools = new ConcurrentHashMap<Key, Queue<BufferedImage>>();
+
+    volatile long maxMemory;
+
+    AtomicLong memory = new AtomicLong();
+
+    AtomicLong hits = new AtomicLong();
+
+    AtomicLong misses = new AtomicLong();
+
+    AtomicLong allocatedBytes = new AtomicLong();
+
+    AtomicLong savedBytes = new AtomicLong();
+
+    /**
+     * Returns the pool shared by all the map producers
+     */
+    public static synchronized ImageBufferPool getInstance() {
+        if (INSTANCE == null) {
+            long maxMemory = 0;
+            String size = GeoServerExtensions.getProperty("IMAGE_BUFFER_POOL_SIZE");
+            if (size != null) {
+                try {
+                    maxMemory = Long.parseLong(size) * 1024 * 1024;
+                } catch (NumberFormatException e) {
+                    LOGGER.warning("Invalid IMAGE_BUFFER_POOL_SIZE value " + size
+                            + ", the image pool will be disabled");
+                }
+            }
+            INSTANCE = new ImageBufferPool(maxMemory);
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Builds a pool holding at most the specified amount of memory, in bytes
+     */
+    public ImageBufferPool(long maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * Returns a canvas of the specified size and type, either from the pool or newly allocated.
+     * The contents of a pooled canvas are undefined, the caller is expected to paint the
+     * background.
+     */
+    public BufferedImage acquire(int width, int height, int imageType) {
+        Queue<BufferedImage> queue = pools.get(new Key(width, height, imageType));
+        BufferedImage image = queue != null ? queue.poll() : null;
+        if (image != null) {
+            long size = getMemoryUse(image);
+            memory.addAndGet(-size);
+            hits.incrementAndGet();
+            savedBytes.addAndGet(size);
+            return image;
+        }
+
+        image = new BufferedImage(width, height, imageType);
+        misses.incrementAndGet();
+        allocatedBytes.addAndGet(getMemoryUse(image));
+        return image;
+    }
+
+    /**
+     * Gives the canvas back to the pool. The caller must not use the image anymore after this
+     * call.
+     */
+    public void release(BufferedImage image) {
+        if (!isPoolable(image)) {
+            return;
+        }
+
+        final long size = getMemoryUse(image);
+        // reserve the memory, give up if the pool is full
+        if (memory.addAndGet(size) > maxMemory) {
+            memory.addAndGet(-size);
+            return;
+        }
+
+        Key key = new Key(image.getWidth(), image.getHeight(), image.getType());
+        Queue<BufferedImage> queue = pools.get(key);
+        if (queue == null) {
+            queue = new ConcurrentLinkedQueue<BufferedImage>();
+            Queue<BufferedImage> existing = pools.putIfAbsent(key, queue);
+            if (existing != null) {
+                queue = existing;
+            }
+        }
+        queue.offer(image);
+    }
+
+    /**
+     * Only the true color images whose raster is not shared with other images are pooled
+     */
+    boolean isPoolable(BufferedImage image) {
+        int type = image.getType();
+        return maxMemory > 0
+                && (type == BufferedImage.TYPE_4BYTE_ABGR || type == BufferedImage.TYPE_3BYTE_BGR)
+                && image.getRaster().getParent() == null;
+    }
+
+    static long getMemoryUse(BufferedImage image) {
+        long pixels = ((long) image.getWidth()) * image.getHeight();
+        return image.getType() == BufferedImage.TYPE_3BYTE_BGR ? pixels * 3 : pixels * 4;
+    }
+
+    /**
+     * Empties the pool
+     */
+    public void clear() {
+        for (Queue<BufferedImage> queue : pools.values()) {
+            BufferedImage image;
+            while ((image = queue.poll()) != null) {
+                memory.addAndGet(-getMemoryUse(image));
+            }
+        }
+    }
+
+    /**
+     * Number of canvases served from the pool
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Number of canvases that had to be allocated
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Bytes allocated for the canvases that were not found in the pool
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * Bytes whose allocation was avoided by reusing pooled canvases
+     */
+    public long getSavedBytes() {
+        return savedBytes.get();
+    }
+
+    /**
+     * Memory currently held by the pooled canvases, in bytes
+     */
+    public long getMemoryUsage() {
+        return memory.get();
+    }
+
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * Sets the max memory held by the pool, in bytes, zero disables pooling
+     */
+    public void setMaxMemory(long maxMemory) {
+        this.maxMemory = maxMemory;
+        if (memory.get() > maxMemory) {
+            clear();
+        }
+    }
+
+    static class Key {
+        final int width;
+
+        final int height;
+
+        final int type;
+
+        Key(int width, int height, int type) {
+            this.width = width;
+            this.height = height;
+            this.type = type;
+        }
+
+        @Override
+        public int hashCode() {
+            return (width * 31 + height) * 31 + type;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return width == other.width && height == other.height && type == other.type;
+        }
+    }
+}
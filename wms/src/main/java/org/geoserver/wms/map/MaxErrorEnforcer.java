@@ -4,6 +4,11 @@
  */
 package org.geoserver.wms.map;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.geotools.renderer.GTRenderer;
 import org.geotools.renderer.RenderListener;
 import org.opengis.feature.simple.SimpleFeature;
@@ -15,13 +20,13 @@ import org.opengis.feature.simple.SimpleFeature;
  */
 public class MaxErrorEnforcer {
 
-    GTRenderer renderer;
+    List<GTRenderer> renderers;
 
     int maxErrors;
 
-    int errors;
+    AtomicInteger errors = new AtomicInteger();
     
-    Exception lastException;
+    volatile Exception lastException;
 
     /**
      * Builds a new max errors enforcer. If maxErrors is not positive the enforcer will do nothing
@@ -30,24 +35,39 @@ public class MaxErrorEnforcer {
      * @param maxErrors
      */
     public MaxErrorEnforcer(GTRenderer renderer, int maxErrors) {
-        this.renderer = renderer;
+        this(Collections.singletonList(renderer), maxErrors);
+    }
+
+    /**
+     * Builds a new max errors enforcer counting the errors of a set of renderers working in
+     * parallel on the same map, and stopping all of them when the threshold is exceeded. If
+     * maxErrors is not positive the enforcer will do nothing
+     * 
+     * @param renderers
+     * @param maxErrors
+     */
+    public MaxErrorEnforcer(List<? extends GTRenderer> renderers, int maxErrors) {
+        this.renderers = new ArrayList<GTRenderer>(renderers);
         this.maxErrors = maxErrors;
-        this.errors = 0;
 
         if (maxErrors > 0) {
-            renderer.addRenderListener(new RenderListener() {
+            RenderListener listener = new RenderListener() {
 
                 public void featureRenderer(SimpleFeature feature) {
                 }
 
                 public void errorOccurred(Exception e) {
-                    errors++;
                     lastException = e;
-                    if (errors > MaxErrorEnforcer.this.maxErrors) {
-                        MaxErrorEnforcer.this.renderer.stopRendering();
+                    if (errors.incrementAndGet() > MaxErrorEnforcer.this.maxErrors) {
+                        for (GTRenderer renderer : MaxErrorEnforcer.this.renderers) {
+                            renderer.stopRendering();
+                        }
                     }
                 }
-            });
+            };
+            for (GTRenderer renderer : this.renderers) {
+                renderer.addRenderListener(listener);
+            }
         }
     }
 
@@ -56,7 +76,7 @@ public class MaxErrorEnforcer {
      * @return
      */
     public boolean exceedsMaxErrors() {
-        return maxErrors > 0 && errors > maxErrors;
+        return maxErrors > 0 && errors.get() > maxErrors;
     }
     
     /**
@@ -12,9 +12,20 @@ import java.awt.image.BufferedImage;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,6 +49,13 @@ import org.geotools.util.logging.Logging;
  * first peek inside a tile cache to see if the requested tile has already been computed, if so,
  * it'll encode and return that one, otherwise it'll build a meta tile, split it, and finally encode
  * just the requested tile, putting the others in the tile cache.
+ * <p>
+ * If the METATILE_PRE_ENCODE system variable (or servlet context parameter) is set to true, once
+ * the meta-tile is rendered all the tiles are cropped and encoded in parallel on a bounded pool of
+ * threads, and stored encoded in the tile cache, so that the requests for the sibling tiles are
+ * served without any further encoding. The pool size defaults to the number of available
+ * processors, and can be set with the METATILE_ENCODING_THREADS variable.
+ * </p>
  * 
  * @author Andrea Aime - TOPP
  * @author Simone Giannecchini - GeoSolutions
@@ -52,6 +70,13 @@ public final class MetatileMapOutputFormat implements GetMapOutputFormat {
 
     private static QuickTileCache tileCache;
 
+    /**
+     * Whether the tiles are stored pre-encoded, package visible for testing purposes
+     */
+    static Boolean preEncode;
+
+    private static ThreadPoolExecutor encodingPool;
+
     private GetMapRequest request;
 
     private RenderedImageMapOutputFormat delegate;
@@ -60,6 +85,9 @@ public final class MetatileMapOutputFormat implements GetMapOutputFormat {
         if (tileCache == null) {
             tileCache = (QuickTileCache) GeoServerExtensions.bean("metaTileCache");
         }
+        if (preEncode == null) {
+            preEncode = Boolean.valueOf(GeoServerExtensions.getProperty("METATILE_PRE_ENCODE"));
+        }
         this.request = request;
         this.delegate = delegate;
     }
@@ -77,7 +105,13 @@ public final class MetatileMapOutputFormat implements GetMapOutputFormat {
         // to be used)
         QuickTileCache.MetaTileKey key = tileCache.getMetaTileKey(request);
 
+        // look up the encoder out of the lock, it scans the application context
+        RenderedImageMapResponse encoder = preEncode ? getEncoder() : null;
         synchronized (key) {
+            if (encoder != null) {
+                return produceEncodedMap(mapContext, key, encoder);
+            }
+
             RenderedImage tile = tileCache.getTile(key, request);
             List<GridCoverage2D> renderedCoverages = null;
 
@@ -87,22 +121,7 @@ public final class MetatileMapOutputFormat implements GetMapOutputFormat {
             }
 
             if (tile == null) {
-                // compute the meta-tile
-                if (LOGGER.isLoggable(Level.FINER)) {
-                    LOGGER.finer("Building meta tile " + key.metaTileCoords.x + ", "
-                            + key.metaTileCoords.y);
-                }
-
-                // alter the map definition so that we build a meta-tile instead
-                // of just the tile
-                ReferencedEnvelope origEnv = mapContext.getAreaOfInterest();
-                mapContext.setAreaOfInterest(new ReferencedEnvelope(key.getMetaTileEnvelope(),
-                        origEnv.getCoordinateReferenceSystem()));
-                mapContext.setMapWidth(key.getTileSize() * key.getMetaFactor());
-                mapContext.setMapHeight(key.getTileSize() * key.getMetaFactor());
-                mapContext.setTileSize(key.getTileSize());
-
-                RenderedImageMap metaTileMap = delegate.produceMap(mapContext);
+                RenderedImageMap metaTileMap = renderMetaTile(mapContext, key);
 
                 RenderedImage metaTile = metaTileMap.getImage();
                 RenderedImage[] tiles = split(key, metaTile, mapContext);
@@ -116,6 +135,80 @@ public final class MetatileMapOutputFormat implements GetMapOutputFormat {
         }
     }
 
+    /**
+     * Returns the requested tile already encoded, building, splitting and encoding the whole
+     * meta-tile if it's not in the cache yet
+     */
+    private WebMap produceEncodedMap(WMSMapContext mapContext, MetaTileKey key,
+            RenderedImageMapResponse encoder) throws IOException {
+        byte[] tile = tileCache.getEncodedTile(key, request);
+
+        if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.finer("Looked for encoded meta tile " + key.metaTileCoords.x + ", "
+                    + key.metaTileCoords.y + "in cache: " + ((tile != null) ? "hit!" : "miss"));
+        }
+
+        if (tile == null) {
+            RenderedImageMap metaTileMap = renderMetaTile(mapContext, key);
+            RenderedImage metaTile = metaTileMap.getImage();
+            try {
+                byte[][] tiles = splitAndEncode(key, metaTile, mapContext, encoder);
+                tileCache.storeEncodedTiles(key, tiles);
+                tile = tiles[tileCache.getTileIndex(key, request)];
+            } finally {
+                // the tiles are encoded, we can let go of the meta tile and its sources
+                for (GridCoverage2D coverage : metaTileMap.getRenderedCoverages()) {
+                    coverage.dispose(true);
+                }
+                if (metaTile instanceof PlanarImage) {
+                    RenderedImageMapResponse.disposePlanarImageChain((PlanarImage) metaTile,
+                            new HashSet<PlanarImage>());
+                }
+                // release the canvas, the map context is shared with the returned tile map and
+                // will be disposed along with it
+                metaTileMap.disposeInternal();
+            }
+        }
+
+        return new RawMap(mapContext, tile, getMimeType());
+    }
+
+    /**
+     * Alters the map definition so that a meta-tile is built instead of just the tile, and renders
+     * it
+     */
+    private RenderedImageMap renderMetaTile(WMSMapContext mapContext, MetaTileKey key)
+            throws IOException {
+        if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.finer("Building meta tile " + key.metaTileCoords.x + ", "
+                    + key.metaTileCoords.y);
+        }
+
+        ReferencedEnvelope origEnv = mapContext.getAreaOfInterest();
+        mapContext.setAreaOfInterest(new ReferencedEnvelope(key.getMetaTileEnvelope(), origEnv
+                .getCoordinateReferenceSystem()));
+        mapContext.setMapWidth(key.getTileSize() * key.getMetaFactor());
+        mapContext.setMapHeight(key.getTileSize() * key.getMetaFactor());
+        mapContext.setTileSize(key.getTileSize());
+
+        return delegate.produceMap(mapContext);
+    }
+
+    /**
+     * Looks up the response that will encode the tiles in the requested format, or returns null
+     * if none is found
+     */
+    private RenderedImageMapResponse getEncoder() {
+        String format = request.getFormat();
+        for (RenderedImageMapResponse response : GeoServerExtensions
+                .extensions(RenderedImageMapResponse.class)) {
+            if (response.getOutputFormats().contains(format)) {
+                return response;
+            }
+        }
+        return null;
+    }
+
     /**
      * 
      * @see org.geoserver.wms.GetMapOutputFormat#getOutputFormatNames()
@@ -172,58 +265,161 @@ public final class MetatileMapOutputFormat implements GetMapOutputFormat {
     private RenderedImage[] split(MetaTileKey key, RenderedImage metaTile, WMSMapContext map) {
         final int metaFactor = key.getMetaFactor();
         final RenderedImage[] tiles = new RenderedImage[key.getMetaFactor() * key.getMetaFactor()];
-        final int tileSize = key.getTileSize();
         final RenderingHints no_cache = new RenderingHints(JAI.KEY_TILE_CACHE, null);
+        final boolean metatilingIsRespected = isMetatilingRespected(key, metaTile);
 
-        // get tile factors
-        final int tileW = metaTile.getTileWidth();
-        final int tileH = metaTile.getTileHeight();
-        final int tileGridXOffset = metaTile.getTileGridXOffset();
-        final int tileGridYOffset = metaTile.getTileGridYOffset();
-        final boolean metatilingIsRespected = tileGridXOffset == 0 && tileGridYOffset == 0
-                && tileH == tileSize && tileW == tileSize;
+        for (int i = 0; i < metaFactor; i++) {
+            for (int j = 0; j < metaFactor; j++) {
+                tiles[(i * key.getMetaFactor()) + j] = crop(key, metaTile, i, j,
+                        metatilingIsRespected, no_cache);
+            }
+        }
 
+        return tiles;
+    }
+
+    /**
+     * Splits the meta-tile and encodes the tiles in parallel, using the same layout as
+     * {@link #split(MetaTileKey, RenderedImage, WMSMapContext)}
+     */
+    private byte[][] splitAndEncode(final MetaTileKey key, final RenderedImage metaTile,
+            final WMSMapContext map, final RenderedImageMapResponse encoder) throws IOException {
+        final int metaFactor = key.getMetaFactor();
+        final RenderingHints no_cache = new RenderingHints(JAI.KEY_TILE_CACHE, null);
+        final boolean metatilingIsRespected = isMetatilingRespected(key, metaTile);
+
+        List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+        ThreadPoolExecutor pool = getEncodingPool();
         for (int i = 0; i < metaFactor; i++) {
             for (int j = 0; j < metaFactor; j++) {
-                int x = j * tileSize;
-                int y = (tileSize * (metaFactor - 1)) - (i * tileSize);
+                final int row = i;
+                final int col = j;
+                futures.add(pool.submit(new Callable<byte[]>() {
+                    public byte[] call() throws Exception {
+                        RenderedImage tile = crop(key, metaTile, row, col,
+                                metatilingIsRespected, no_cache);
+                        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                        encoder.formatImageOutputStream(tile, bos, map);
+                        return bos.toByteArray();
+                    }
+                }));
+            }
+        }
 
-                final Raster tile_;
-                RenderedImage tile;
-                if (metaTile instanceof PlanarImage) {
-                    final PlanarImage pImage = (PlanarImage) metaTile;
+        byte[][] tiles = new byte[futures.size()][];
+        try {
+            for (int i = 0; i < tiles.length; i++) {
+                tiles[i] = futures.get(i).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Interrupted while encoding the meta tile", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new ServiceException("Failed to encode the meta tile", cause);
+        } finally {
+            for (Future<byte[]> future : futures) {
+                future.cancel(true);
+            }
+        }
 
-                    if (metatilingIsRespected) {
-                        final int tileX = pImage.XToTileX(x);
-                        final int tileY = pImage.YToTileY(y);
-                        tile_ = pImage.getTile(tileX, tileY);
+        return tiles;
+    }
 
-                    } else {
-                        Rectangle sourceArea = new Rectangle(x, y, tileSize, tileSize);
-                        sourceArea = sourceArea.intersection(pImage.getBounds());
-                        tile_ = pImage.getData(sourceArea);
+    private static boolean isMetatilingRespected(MetaTileKey key, RenderedImage metaTile) {
+        final int tileSize = key.getTileSize();
+        return metaTile.getTileGridXOffset() == 0 && metaTile.getTileGridYOffset() == 0
+                && metaTile.getTileHeight() == tileSize && metaTile.getTileWidth() == tileSize;
+    }
 
-                    }
-                    WritableRaster wTile = WritableRaster.createWritableRaster(tile_
-                            .getSampleModel().createCompatibleSampleModel(tileSize, tileSize),
-                            tile_.getDataBuffer(), new Point(0, 0));
-                    tile = new BufferedImage(pImage.getColorModel(), wTile, pImage.getColorModel()
-                            .isAlphaPremultiplied(), null);
-
-                } else if (metaTile instanceof BufferedImage) {
-                    final BufferedImage image = (BufferedImage) metaTile;
-                    tile = image.getSubimage(x, y, tileSize, tileSize);
-                } else {
-                    tile = CropDescriptor.create(metaTile, new Float(x), new Float(y), new Float(
-                            tileSize), new Float(tileSize), no_cache);
+    /**
+     * Extracts the tile at the specified row and column of the meta-tile, where row zero is the
+     * lowest one
+     */
+    private static RenderedImage crop(MetaTileKey key, RenderedImage metaTile, int i, int j,
+            boolean metatilingIsRespected, RenderingHints no_cache) {
+        final int metaFactor = key.getMetaFactor();
+        final int tileSize = key.getTileSize();
+        int x = j * tileSize;
+        int y = (tileSize * (metaFactor - 1)) - (i * tileSize);
 
-                }
+        final Raster tile_;
+        RenderedImage tile;
+        if (metaTile instanceof PlanarImage) {
+            final PlanarImage pImage = (PlanarImage) metaTile;
+
+            if (metatilingIsRespected) {
+                final int tileX = pImage.XToTileX(x);
+                final int tileY = pImage.YToTileY(y);
+                tile_ = pImage.getTile(tileX, tileY);
+
+            } else {
+                Rectangle sourceArea = new Rectangle(x, y, tileSize, tileSize);
+                sourceArea = sourceArea.intersection(pImage.getBounds());
+                tile_ = pImage.getData(sourceArea);
 
-                tiles[(i * key.getMetaFactor()) + j] = tile;
             }
+            WritableRaster wTile = WritableRaster.createWritableRaster(tile_.getSampleModel()
+                    .createCompatibleSampleModel(tileSize, tileSize), tile_.getDataBuffer(),
+                    new Point(0, 0));
+            tile = new BufferedImage(pImage.getColorModel(), wTile, pImage.getColorModel()
+                    .isAlphaPremultiplied(), null);
+
+        } else if (metaTile instanceof BufferedImage) {
+            final BufferedImage image = (BufferedImage) metaTile;
+            tile = image.getSubimage(x, y, tileSize, tileSize);
+        } else {
+            tile = CropDescriptor.create(metaTile, new Float(x), new Float(y),
+                    new Float(tileSize), new Float(tileSize), no_cache);
+
         }
 
-        return tiles;
+        return tile;
+    }
+
+    /**
+     * Returns the pool used to encode the tiles, creating it on the first use. The queue is
+     * bounded, when full the tiles are encoded by the calling thread.
+     */
+    static synchronized ThreadPoolExecutor getEncodingPool() {
+        if (encodingPool == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            String value = GeoServerExtensions.getProperty("METATILE_ENCODING_THREADS");
+            if (value != null) {
+                try {
+                    threads = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    LOGGER.warning("Invalid METATILE_ENCODING_THREADS value " + value
+                            + ", using the default instead");
+                }
+            }
+            final AtomicInteger count = new AtomicInteger();
+            encodingPool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(threads * 16), new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "MetaTileEncoder-" + count.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    }, new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        return encodingPool;
+    }
+
+    /**
+     * Shuts down the tile encoding pool, if it was ever created. Called when the application
+     * context is destroyed.
+     */
+    public static synchronized void disposeEncodingPool() {
+        if (encodingPool != null) {
+            encodingPool.shutdown();
+            encodingPool = null;
+        }
     }
 
 }
@@ -0,0 +1,333 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org.  All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A minimal, fast PNG encoder for 8 bit paletted images, used by {@link PNGMapResponse} to encode
+ * the PNG8 maps without going through a JAI chain.
+ * <p>
+ * The deflater and the scanline buffers are kept in thread locals, so that encoding lots of small
+ * tiles does not result in lots of allocations (and, for the deflater, native memory churn).
+ * </p>
+ */
+class PNGEncoder {
+
+    /**
+     * The PNG scanline filter strategies
+     */
+    enum FilterType {
+        NONE, SUB, UP, AVERAGE, PAETH,
+        /**
+         * Picks the best filter for each scanline using the minimum sum of absolute differences
+         * heuristic
+         */
+        ADAPTIVE
+    }
+
+    static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+
+    static final int IDAT_SIZE = 32 * 1024;
+
+    static final ThreadLocal<EncoderBuffers> BUFFERS = new ThreadLocal<EncoderBuffers>() {
+        protected EncoderBuffers initialValue() {
+            return new EncoderBuffers();
+        }
+    };
+
+    /**
+     * Returns true if the image can be handled by this encoder, that is, it's a {@link BufferedImage}
+     * with an 8 bit {@link IndexColorModel} and a single band byte raster
+     */
+    static boolean canEncode(Object image) {
+        if (!(image instanceof BufferedImage)) {
+            return false;
+        }
+        BufferedImage bi = (BufferedImage) image;
+        SampleModel sm = bi.getSampleModel();
+        return bi.getColorModel() instanceof IndexColorModel
+                && sm instanceof PixelInterleavedSampleModel
+                && sm.getDataType() == DataBuffer.TYPE_BYTE && sm.getNumBands() == 1
+                && ((IndexColorModel) bi.getColorModel()).getMapSize() <= 256;
+    }
+
+    final int compressionLevel;
+
+    final FilterType filterType;
+
+    /**
+     * @param compressionLevel The deflate compression level, between 0 and 9
+     * @param filterType The scanline filter strategy
+     */
+    PNGEncoder(int compressionLevel, FilterType filterType) {
+        this.compressionLevel = compressionLevel;
+        this.filterType = filterType;
+    }
+
+    /**
+     * Encodes the image, which must satisfy {@link #canEncode(Object)}
+     */
+    void encode(BufferedImage image, OutputStream out) throws IOException {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final IndexColorModel icm = (IndexColorModel) image.getColorModel();
+        final EncoderBuffers buffers = BUFFERS.get();
+        buffers.ensureCapacity(width);
+
+        out.write(SIGNATURE);
+
+        // header
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 8; // bit depth
+        header[9] = 3; // indexed color
+        header[10] = 0; // deflate
+        header[11] = 0; // adaptive filtering
+        header[12] = 0; // no interlace
+        writeChunk(out, "IHDR", header, header.length, buffers.crc);
+
+        // palette and transparency
+        final int colors = icm.getMapSize();
+        byte[] palette = new byte[colors * 3];
+        byte[] alphas = new byte[colors];
+        int lastTranslucent = -1;
+        for (int i = 0; i < colors; i++) {
+            final int rgb = icm.getRGB(i);
+            palette[i * 3] = (byte) (rgb >> 16);
+            palette[i * 3 + 1] = (byte) (rgb >> 8);
+            palette[i * 3 + 2] = (byte) rgb;
+            alphas[i] = (byte) (rgb >>> 24);
+            if ((rgb >>> 24) != 0xFF) {
+                lastTranslucent = i;
+            }
+        }
+        writeChunk(out, "PLTE", palette, palette.length, buffers.crc);
+        if (lastTranslucent >= 0) {
+            writeChunk(out, "tRNS", alphas, lastTranslucent + 1, buffers.crc);
+        }
+
+        // image data
+        final WritableRaster raster = image.getRaster();
+        final PixelInterleavedSampleModel sm = (PixelInterleavedSampleModel) raster
+                .getSampleModel();
+        final DataBufferByte db = (DataBufferByte) raster.getDataBuffer();
+        final byte[] data = db.getData();
+        final int scanline = sm.getScanlineStride();
+        final int pixelStride = sm.getPixelStride();
+        final int base = db.getOffset() + sm.getBandOffsets()[0]
+                - raster.getSampleModelTranslateY() * scanline
+                - raster.getSampleModelTranslateX() * pixelStride;
+
+        final Deflater deflater = buffers.deflater;
+        deflater.reset();
+        deflater.setLevel(compressionLevel);
+        byte[] current = buffers.current;
+        byte[] previous = buffers.previous;
+        Arrays.fill(previous, 0, width + 1, (byte) 0);
+        buffers.idatLength = 0;
+        for (int y = 0; y < height; y++) {
+            // copy the row, the first byte is left for the filter type
+            int pos = base + y * scanline;
+            if (pixelStride == 1) {
+                System.arraycopy(data, pos, current, 1, width);
+            } else {
+                for (int x = 1; x <= width; x++, pos += pixelStride) {
+                    current[x] = data[pos];
+                }
+            }
+
+            byte[] filtered = filter(current, previous, width, buffers);
+            deflate(filtered, width + 1, buffers, out);
+
+            byte[] tmp = previous;
+            previous = current;
+            current = tmp;
+        }
+        buffers.current = current;
+        buffers.previous = previous;
+
+        deflater.finish();
+        while (!deflater.finished()) {
+            drain(buffers, out);
+        }
+        flushIdat(buffers, out);
+
+        writeChunk(out, "IEND", new byte[0], 0, buffers.crc);
+    }
+
+    /**
+     * Filters the scanline (which starts at index 1), returns the buffer holding the filter type
+     * in the first byte followed by the filtered scanline
+     */
+    byte[] filter(byte[] row, byte[] prior, int width, EncoderBuffers buffers) {
+        switch (filterType) {
+        case NONE:
+            row[0] = 0;
+            return row;
+        case ADAPTIVE:
+            byte[] best = null;
+            long bestSum = Long.MAX_VALUE;
+            for (int type = 0; type < 5; type++) {
+                byte[] candidate = type == 0 ? row : buffers.filtered[type];
+                if (type > 0) {
+                    applyFilter(type, row, prior, candidate, width);
+                } else {
+                    row[0] = 0;
+                }
+                long sum = 0;
+                for (int i = 1; i <= width && sum < bestSum; i++) {
+                    sum += Math.abs(candidate[i]);
+                }
+                if (sum < bestSum) {
+                    bestSum = sum;
+                    best = candidate;
+                }
+            }
+            return best;
+        default:
+            byte[] result = buffers.filtered[filterType.ordinal()];
+            applyFilter(filterType.ordinal(), row, prior, result, width);
+            return result;
+        }
+    }
+
+    /**
+     * Applies the filter, PNG style, assuming one byte per pixel
+     */
+    static void applyFilter(int type, byte[] row, byte[] prior, byte[] out, int width) {
+        out[0] = (byte) type;
+        switch (type) {
+        case 1:
+            out[1] = row[1];
+            for (int i = 2; i <= width; i++) {
+                out[i] = (byte) (row[i] - row[i - 1]);
+            }
+            break;
+        case 2:
+            for (int i = 1; i <= width; i++) {
+                out[i] = (byte) (row[i] - prior[i]);
+            }
+            break;
+        case 3:
+            out[1] = (byte) (row[1] - ((prior[1] & 0xFF) >> 1));
+            for (int i = 2; i <= width; i++) {
+                out[i] = (byte) (row[i] - (((row[i - 1] & 0xFF) + (prior[i] & 0xFF)) >> 1));
+            }
+            break;
+        case 4:
+            out[1] = (byte) (row[1] - prior[1]);
+            for (int i = 2; i <= width; i++) {
+                out[i] = (byte) (row[i] - paeth(row[i - 1] & 0xFF, prior[i] & 0xFF,
+                        prior[i - 1] & 0xFF));
+            }
+            break;
+        }
+    }
+
+    static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        } else if (pb <= pc) {
+            return b;
+        }
+        return c;
+    }
+
+    void deflate(byte[] input, int length, EncoderBuffers buffers, OutputStream out)
+            throws IOException {
+        final Deflater deflater = buffers.deflater;
+        deflater.setInput(input, 0, length);
+        while (!deflater.needsInput()) {
+            drain(buffers, out);
+        }
+    }
+
+    /**
+     * Moves the deflater output into the IDAT buffer, writing the chunk out when full
+     */
+    void drain(EncoderBuffers buffers, OutputStream out) throws IOException {
+        if (buffers.idatLength == IDAT_SIZE) {
+            flushIdat(buffers, out);
+        }
+        buffers.idatLength += buffers.deflater.deflate(buffers.idat, buffers.idatLength,
+                IDAT_SIZE - buffers.idatLength);
+    }
+
+    void flushIdat(EncoderBuffers buffers, OutputStream out) throws IOException {
+        if (buffers.idatLength > 0) {
+            writeChunk(out, "IDAT", buffers.idat, buffers.idatLength, buffers.crc);
+            buffers.idatLength = 0;
+        }
+    }
+
+    static void writeChunk(OutputStream out, String type, byte[] data, int length, CRC32 crc)
+            throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        byte[] buffer = new byte[4];
+        writeInt(buffer, 0, length);
+        out.write(buffer);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+
+        crc.reset();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        writeInt(buffer, 0, (int) crc.getValue());
+        out.write(buffer);
+    }
+
+    static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    /**
+     * The per thread encoding state
+     */
+    static class EncoderBuffers {
+        Deflater deflater = new Deflater();
+
+        CRC32 crc = new CRC32();
+
+        byte[] current = new byte[0];
+
+        byte[] previous = new byte[0];
+
+        byte[][] filtered = new byte[5][0];
+
+        byte[] idat = new byte[IDAT_SIZE];
+
+        int idatLength;
+
+        void ensureCapacity(int width) {
+            if (current.length < width + 1) {
+                current = new byte[width + 1];
+                previous = new byte[width + 1];
+                for (int i = 0; i < filtered.length; i++) {
+                    filtered[i] = new byte[width + 1];
+                }
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@
  */
 package org.geoserver.wms.map;
 
+import java.awt.image.BufferedImage;
 import java.awt.image.IndexColorModel;
 import java.awt.image.RenderedImage;
 import java.io.IOException;
@@ -11,6 +12,7 @@ import java.io.OutputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wms.WMS;
 import org.geoserver.wms.WMSMapContext;
@@ -19,7 +21,14 @@ import org.geotools.image.palette.InverseColorMapOp;
 import org.geotools.util.logging.Logging;
 
 /**
- * Handles a GetMap request that spects a map in GIF format.
+ * Handles a GetMap request that spects a map in PNG format.
+ * <p>
+ * If the PNG8_FAST_ENCODER system variable (or servlet context parameter) is set to true the
+ * PNG8 maps are quantized with a {@link ColorQuantizer} and encoded with a {@link PNGEncoder},
+ * instead of going through JAI. The scanline filter used by the encoder can be set with the
+ * PNG8_FILTER variable (one of NONE, SUB, UP, AVERAGE, PAETH, ADAPTIVE, defaults to NONE), the
+ * compression level is the one configured for the WMS service.
+ * </p>
  * 
  * @author Simone Giannecchini
  * @author Didier Richard
@@ -33,6 +42,19 @@ public class PNGMapResponse extends RenderedImageMapResponse {
 
     private static final String[] OUTPUT_FORMATS = { MIME_TYPE, "image/png8" };
 
+    private static volatile Boolean FAST_PNG8_ENCODER;
+
+    private static volatile PNGEncoder.FilterType PNG8_FILTER;
+
+    /**
+     * The per thread quantizers, they keep the work buffers around between runs
+     */
+    private static final ThreadLocal<ColorQuantizer> QUANTIZERS = new ThreadLocal<ColorQuantizer>() {
+        protected ColorQuantizer initialValue() {
+            return new ColorQuantizer();
+        }
+    };
+
     /**
      * @param format
      *            the format name as to be reported in the capabilities document
@@ -60,19 +82,52 @@ public class PNGMapResponse extends RenderedImageMapResponse {
 
         // get the one required by the GetMapRequest
         final String format = mapContext.getRequest().getFormat();
+        final boolean fast = isFastPNG8EncoderEnabled();
         if ("image/png8".equalsIgnoreCase(format) || (mapContext.getPaletteInverter() != null)) {
             InverseColorMapOp paletteInverter = mapContext.getPaletteInverter();
-            image = forceIndexed8Bitmask(image, paletteInverter);
-
+            if (fast && paletteInverter == null && image instanceof BufferedImage
+                    && !(image.getColorModel() instanceof IndexColorModel)) {
+                image = QUANTIZERS.get().quantize((BufferedImage) image);
+            } else {
+                image = forceIndexed8Bitmask(image, paletteInverter);
+            }
         }
 
-        Boolean PNGNativeAcc = wms.getPNGNativeAcceleration();
-        float quality = (100 - wms.getPngCompression()) / 100.0f;
-        new ImageWorker(image).writePNG(outStream, "FILTERED", quality,
-                PNGNativeAcc.booleanValue(), image.getColorModel() instanceof IndexColorModel);
+        if (fast && PNGEncoder.canEncode(image)) {
+            int level = Math.round(wms.getPngCompression() * 9 / 100f);
+            new PNGEncoder(level, PNG8_FILTER).encode((BufferedImage) image, outStream);
+        } else {
+            Boolean PNGNativeAcc = wms.getPNGNativeAcceleration();
+            float quality = (100 - wms.getPngCompression()) / 100.0f;
+            new ImageWorker(image).writePNG(outStream, "FILTERED", quality,
+                    PNGNativeAcc.booleanValue(), image.getColorModel() instanceof IndexColorModel);
+        }
 
         if (LOGGER.isLoggable(Level.FINE)) {
             LOGGER.fine("Writing png image ... done!");
         }
     }
+
+    /**
+     * Checks whether the fast PNG8 encoder is enabled, or not (defaults to false unless the user
+     * sets the PNG8_FAST_ENCODER property to true)
+     */
+    static boolean isFastPNG8EncoderEnabled() {
+        if (FAST_PNG8_ENCODER == null) {
+            String filter = GeoServerExtensions.getProperty("PNG8_FILTER");
+            PNGEncoder.FilterType filterType = PNGEncoder.FilterType.NONE;
+            if (filter != null) {
+                try {
+                    filterType = PNGEncoder.FilterType.valueOf(filter.toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    LOGGER.warning("Invalid PNG8_FILTER value " + filter
+                            + ", using NONE instead");
+                }
+            }
+            PNG8_FILTER = filterType;
+            FAST_PNG8_ENCODER = Boolean.valueOf(GeoServerExtensions
+                    .getProperty("PNG8_FAST_ENCODER"));
+        }
+        return FAST_PNG8_ENCODER;
+    }
 }
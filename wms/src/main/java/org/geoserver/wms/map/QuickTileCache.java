@@ -6,14 +6,27 @@ package org.geoserver.wms.map;
 
 import java.awt.Point;
 import java.awt.geom.Point2D;
+import java.awt.image.DataBuffer;
 import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
 
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
@@ -21,15 +34,45 @@ import org.geoserver.config.ConfigurationListenerAdapter;
 import org.geoserver.config.GeoServer;
 import org.geoserver.config.GeoServerInfo;
 import org.geoserver.config.ServiceInfo;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.wfs.TransactionEvent;
 import org.geoserver.wfs.TransactionListener;
 import org.geoserver.wfs.WFSException;
 import org.geoserver.wms.GetMapRequest;
 import org.geotools.util.CanonicalSet;
+import org.geotools.util.logging.Logging;
 
 import com.vividsolutions.jts.geom.Envelope;
 
+/**
+ * Keeps the sibling tiles of the recently computed meta-tiles, so that tiled clients asking for
+ * the other tiles in the same meta-tile get them without a new rendering.
+ * <p>
+ * The cache has an explicit memory budget, computed as the sum of the raster sizes of the cached
+ * tiles (or of their encoded size, if compression is enabled). When the budget is exceeded the
+ * least recently used meta-tiles are evicted. Lookups and stores do not lock the cache as a whole.
+ * The following system variables (or servlet context parameters) control the cache:
+ * <ul>
+ * <li>QUICK_TILE_CACHE_SIZE: the memory budget, in megabytes (defaults to 64)</li>
+ * <li>QUICK_TILE_CACHE_COMPRESS: if true the tiles are stored PNG encoded, trading some CPU for a
+ * much smaller memory footprint (defaults to false)</li>
+ * </ul>
+ * </p>
+ */
 public class QuickTileCache implements TransactionListener {
+    static final Logger LOGGER = Logging.getLogger(QuickTileCache.class);
+
+    /**
+     * Default memory budget, in megabytes
+     */
+    static final int DEFAULT_CACHE_SIZE = 64;
+
+    /**
+     * Percentage of the memory budget that gets freed in excess when evicting, so that the
+     * eviction cost is amortized over a number of stores
+     */
+    static final int EVICTION_BATCH_PERCENTAGE = 10;
+
     /**
      * Set of parameters that we can ignore, since they do not define a map, are either unrelated,
      * or define the tiling instead
@@ -53,22 +96,38 @@ public class QuickTileCache implements TransactionListener {
      */
     private CanonicalSet<MetaTileKey> metaTileKeys = CanonicalSet.newInstance(MetaTileKey.class);
 
-    private WeakHashMap tileCache = new WeakHashMap();
+    private ConcurrentHashMap<MetaTileKey, CacheElement> tileCache = new ConcurrentHashMap<MetaTileKey, CacheElement>();
+
+    private ReentrantLock evictionLock = new ReentrantLock();
+
+    private AtomicLong memory = new AtomicLong();
+
+    private AtomicLong hits = new AtomicLong();
+
+    private AtomicLong misses = new AtomicLong();
+
+    private AtomicLong evictions = new AtomicLong();
+
+    private volatile long maxMemory;
+
+    private volatile boolean compress;
 
     public QuickTileCache(GeoServer geoServer) {
+        this(getCacheSizeProperty(), Boolean.valueOf(GeoServerExtensions
+                .getProperty("QUICK_TILE_CACHE_COMPRESS")));
         geoServer.addListener(new ConfigurationListenerAdapter() {
             public void handleGlobalChange(GeoServerInfo global, List<String> propertyNames,
                     List<Object> oldValues, List<Object> newValues) {
-                tileCache.clear();
+                QuickTileCache.this.clear();
             }
 
             public void handleServiceChange(ServiceInfo service, List<String> propertyNames,
                     List<Object> oldValues, List<Object> newValues) {
-                tileCache.clear();
+                QuickTileCache.this.clear();
             }
 
             public void reloaded() {
-                tileCache.clear();
+                QuickTileCache.this.clear();
             }
         });
     }
@@ -77,6 +136,28 @@ public class QuickTileCache implements TransactionListener {
      * For testing only
      */
     QuickTileCache() {
+        this(DEFAULT_CACHE_SIZE * 1024 * 1024, false);
+    }
+
+    /**
+     * Builds a cache with the specified memory budget, in bytes
+     */
+    QuickTileCache(long maxMemory, boolean compress) {
+        this.maxMemory = maxMemory;
+        this.compress = compress;
+    }
+
+    static long getCacheSizeProperty() {
+        String size = GeoServerExtensions.getProperty("QUICK_TILE_CACHE_SIZE");
+        if (size != null) {
+            try {
+                return Long.parseLong(size) * 1024 * 1024;
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid QUICK_TILE_CACHE_SIZE value " + size
+                        + ", using the default instead");
+            }
+        }
+        return DEFAULT_CACHE_SIZE * 1024 * 1024;
     }
 
     /**
@@ -304,14 +385,24 @@ public class QuickTileCache implements TransactionListener {
      * @param request
      * @return
      */
-    public synchronized RenderedImage getTile(MetaTileKey key, GetMapRequest request) {
-        CacheElement ce = (CacheElement) tileCache.get(key);
+    public RenderedImage getTile(MetaTileKey key, GetMapRequest request) {
+        CacheElement ce = tileCache.get(key);
 
         if (ce == null) {
+            misses.incrementAndGet();
             return null;
         }
 
-        return getTile(key, request, ce.tiles);
+        RenderedImage tile = ce.getTile(getTileIndex(key, request));
+        if (tile == null) {
+            // could not decode it, drop the whole meta tile
+            remove(key, ce);
+            misses.incrementAndGet();
+            return null;
+        }
+        ce.lastAccess = System.currentTimeMillis();
+        hits.incrementAndGet();
+        return tile;
     }
 
     /**
@@ -322,30 +413,286 @@ public class QuickTileCache implements TransactionListener {
      * @return
      */
     public RenderedImage getTile(MetaTileKey key, GetMapRequest request, RenderedImage[] tiles) {
+        return tiles[getTileIndex(key, request)];
+    }
+
+    /**
+     * Gathers an already encoded tile from the cache, if available
+     * 
+     * @param key
+     * @param request
+     * @return the encoded tile, or null if the meta-tile is not cached or has not been stored
+     *         pre-encoded
+     */
+    public byte[] getEncodedTile(MetaTileKey key, GetMapRequest request) {
+        CacheElement ce = tileCache.get(key);
+
+        if (ce == null || !ce.preEncoded) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        ce.lastAccess = System.currentTimeMillis();
+        hits.incrementAndGet();
+        return ce.encoded[getTileIndex(key, request)];
+    }
+
+    int getTileIndex(MetaTileKey key, GetMapRequest request) {
         Point tileCoord = getTileCoordinates(request.getBbox(), key.mapKey.origin);
         Point metaCoord = key.metaTileCoords;
 
-        return tiles[tileCoord.x - metaCoord.x
-                + ((tileCoord.y - metaCoord.y) * key.getMetaFactor())];
+        return tileCoord.x - metaCoord.x + ((tileCoord.y - metaCoord.y) * key.getMetaFactor());
     }
 
     /**
-     * Puts the specified tile array in the cache, and returns the tile the request was looking for
+     * Puts the specified tile array in the cache, evicting the least recently used meta-tiles if
+     * the memory budget is exceeded
      * 
      * @param key
-     * @param request
      * @param tiles
-     * @return
      */
-    public synchronized void storeTiles(MetaTileKey key, RenderedImage[] tiles) {
-        tileCache.put(key, new CacheElement(tiles));
+    public void storeTiles(MetaTileKey key, RenderedImage[] tiles) {
+        store(key, new CacheElement(tiles, compress));
+    }
+
+    /**
+     * Puts the specified tiles, already encoded in the requested output format, in the cache
+     * 
+     * @param key
+     * @param tiles
+     */
+    public void storeEncodedTiles(MetaTileKey key, byte[][] tiles) {
+        store(key, new CacheElement(tiles));
+    }
+
+    void store(MetaTileKey key, CacheElement ce) {
+        if (ce.size > maxMemory) {
+            // would not fit anyways
+            return;
+        }
+
+        CacheElement old = tileCache.put(key, ce);
+        memory.addAndGet(ce.size);
+        if (old != null) {
+            memory.addAndGet(-old.size);
+        }
+        if (memory.get() > maxMemory) {
+            evict();
+        }
+    }
+
+    /**
+     * Removes the least recently used meta-tiles until the memory used is back under the budget
+     * (minus a small extra margin). Does nothing if another thread is already evicting.
+     */
+    void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            long target = maxMemory - maxMemory * EVICTION_BATCH_PERCENTAGE / 100;
+            if (memory.get() <= target) {
+                return;
+            }
+
+            // sort on a snapshot of the access times, the live ones keep on changing
+            List<EvictionCandidate> candidates = new ArrayList<EvictionCandidate>();
+            for (Map.Entry<MetaTileKey, CacheElement> e : tileCache.entrySet()) {
+                candidates.add(new EvictionCandidate(e.getKey(), e.getValue()));
+            }
+            Collections.sort(candidates);
+
+            for (EvictionCandidate c : candidates) {
+                if (memory.get() <= target) {
+                    break;
+                }
+                if (remove(c.key, c.element)) {
+                    evictions.incrementAndGet();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    boolean remove(MetaTileKey key, CacheElement ce) {
+        if (tileCache.remove(key, ce)) {
+            memory.addAndGet(-ce.size);
+            return true;
+        }
+        return false;
     }
 
-    class CacheElement {
+    /**
+     * Empties the cache
+     */
+    public void clear() {
+        for (Map.Entry<MetaTileKey, CacheElement> e : tileCache.entrySet()) {
+            remove(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Number of tile lookups satisfied by the cache
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Number of tile lookups that did not find the tile in the cache
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Number of meta-tiles evicted to respect the memory budget
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * The memory currently used by the cached tiles, in bytes
+     */
+    public long getMemoryUsage() {
+        return memory.get();
+    }
+
+    /**
+     * The memory budget, in bytes
+     */
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * Sets the memory budget, in bytes, evicting meta-tiles if necessary
+     */
+    public void setMaxMemory(long maxMemory) {
+        this.maxMemory = maxMemory;
+        if (memory.get() > maxMemory) {
+            evict();
+        }
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    /**
+     * Enables/disables the PNG compression of the tiles stored from now on
+     */
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    /**
+     * The number of meta-tiles in the cache
+     */
+    public int size() {
+        return tileCache.size();
+    }
+
+    static class CacheElement {
         RenderedImage[] tiles;
 
-        public CacheElement(RenderedImage[] tiles) {
-            this.tiles = tiles;
+        byte[][] encoded;
+
+        long size;
+
+        /**
+         * True if the encoded tiles are in the requested output format, and can be returned as is
+         */
+        boolean preEncoded;
+
+        volatile long lastAccess;
+
+        public CacheElement(byte[][] encoded) {
+            this.encoded = encoded;
+            this.preEncoded = true;
+            for (byte[] tile : encoded) {
+                size += tile.length;
+            }
+            lastAccess = System.currentTimeMillis();
+        }
+
+        public CacheElement(RenderedImage[] tiles, boolean compress) {
+            if (compress) {
+                encoded = encode(tiles);
+            }
+            if (encoded != null) {
+                for (byte[] tile : encoded) {
+                    size += tile.length;
+                }
+            } else {
+                this.tiles = tiles;
+                for (RenderedImage tile : tiles) {
+                    size += getRasterSize(tile);
+                }
+            }
+            lastAccess = System.currentTimeMillis();
+        }
+
+        RenderedImage getTile(int idx) {
+            if (tiles != null) {
+                return tiles[idx];
+            }
+            try {
+                return ImageIO.read(new ByteArrayInputStream(encoded[idx]));
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to decode cached tile", e);
+                return null;
+            }
+        }
+
+        /**
+         * Encodes the tiles in PNG format, returns null if any of them cannot be encoded
+         */
+        static byte[][] encode(RenderedImage[] tiles) {
+            byte[][] result = new byte[tiles.length][];
+            try {
+                for (int i = 0; i < tiles.length; i++) {
+                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                    if (!ImageIO.write(tiles[i], "png", bos)) {
+                        return null;
+                    }
+                    result[i] = bos.toByteArray();
+                }
+                return result;
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to PNG encode the tiles, storing them as is", e);
+                return null;
+            }
+        }
+
+        /**
+         * Estimates the memory used by the tile raster
+         */
+        static long getRasterSize(RenderedImage tile) {
+            SampleModel sm = tile.getSampleModel();
+            long pixelBits = (long) sm.getNumDataElements()
+                    * DataBuffer.getDataTypeSize(sm.getDataType());
+            return ((long) tile.getWidth()) * tile.getHeight() * pixelBits / 8;
+        }
+    }
+
+    static class EvictionCandidate implements Comparable<EvictionCandidate> {
+        MetaTileKey key;
+
+        CacheElement element;
+
+        long lastAccess;
+
+        EvictionCandidate(MetaTileKey key, CacheElement element) {
+            this.key = key;
+            this.element = element;
+            this.lastAccess = element.lastAccess;
+        }
+
+        public int compareTo(EvictionCandidate other) {
+            return lastAccess < other.lastAccess ? -1 : (lastAccess == other.lastAccess ? 0 : 1);
         }
     }
 
@@ -354,6 +701,6 @@ public class QuickTileCache implements TransactionListener {
         // contains a string with part of the map request where the layer
         // name is included, but we would have to parse it and consider
         // also that the namespace may be missing in the getmap request
-        tileCache.clear();
+        clear();
     }
 }
@@ -4,6 +4,7 @@
  */
 package org.geoserver.wms.map;
 
+import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
 import java.util.Collections;
 import java.util.List;
@@ -23,6 +24,8 @@ public class RenderedImageMap extends WebMap {
 
     private List<GridCoverage2D> renderedCoverages;
 
+    private ImageBufferPool imagePool;
+
     public RenderedImageMap(final WMSMapContext mapContext, final RenderedImage image,
             final String mimeType) {
         super(mapContext);
@@ -36,9 +39,20 @@ public class RenderedImageMap extends WebMap {
 
     @Override
     protected void disposeInternal() {
+        if (imagePool != null && image instanceof BufferedImage) {
+            imagePool.release((BufferedImage) image);
+        }
         image = null;
     }
 
+    /**
+     * Sets the pool the image has been taken from, the image will be given back to it when the
+     * map is disposed, that is, once it has been encoded
+     */
+    public void setImagePool(ImageBufferPool imagePool) {
+        this.imagePool = imagePool;
+    }
+
     /**
      * Returns the list of rendered coverages to produce this map, needed so they're disposed after
      * writing them down to the destination output stream when their rendered images are used
@@ -24,6 +24,10 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -65,6 +69,8 @@ import org.geotools.gce.imagemosaic.ImageMosaicFormat;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.image.ImageWorker;
 import org.geotools.image.palette.InverseColorMapOp;
+import org.geotools.map.DefaultMapContext;
+import org.geotools.map.MapContext;
 import org.geotools.map.MapLayer;
 import org.geotools.parameter.Parameter;
 import org.geotools.referencing.CRS;
@@ -265,6 +271,14 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         StreamingRenderer testRenderer = new StreamingRenderer();
         testRenderer.setContext(mapContext);
         memory += testRenderer.getMaxBackBufferMemory(paintArea.width, paintArea.height);
+        // ... and the per layer images, when rendering the layers in parallel
+        final boolean parallel = DefaultWebMapService.isParallelLayerRenderingEnabled()
+                && mapContext.getLayerCount() > 1;
+        if (parallel) {
+            memory += mapContext.getLayerCount()
+                    * ImageUtils.getDrawingSurfaceMemoryUse(paintArea.width, paintArea.height,
+                            null, true);
+        }
         if (maxMemory > 0 && memory > maxMemory) {
             long kbUsed = memory / KB;
             long kbMax = maxMemory / KB;
@@ -357,17 +371,6 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         graphic.setRenderingHints(hintsMap);
 
         RenderingHints hints = new RenderingHints(hintsMap);
-        GTRenderer renderer;
-        if (DefaultWebMapService.useShapefileRenderer()) {
-            renderer = new ShapefileRenderer();
-        } else {
-            StreamingRenderer sr = new StreamingRenderer();
-            sr.setThreadPool(DefaultWebMapService.getRenderingPool());
-            renderer = sr;
-        }
-        renderer.setContext(mapContext);
-        renderer.setJava2DHints(hints);
-
         // setup the renderer hints
         Map<Object, Object> rendererParams = new HashMap<Object, Object>();
         rendererParams.put("optimizedDataLoadingEnabled", new Boolean(true));
@@ -419,33 +422,70 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
                 layers[i].setStyle(copy);
             }
         }
-        renderer.setRendererHints(rendererParams);
-
         // if abort already requested bail out
         // if (this.abortRequested) {
         // graphic.dispose();
         // return null;
         // }
 
+        // set up the renderers, one for the whole map, or one per layer each painting on its
+        // own transparent image if the layers are rendered in parallel
+        final List<GTRenderer> renderers = new ArrayList<GTRenderer>();
+        final List<Graphics2D> graphics = new ArrayList<Graphics2D>();
+        final List<BufferedImage> layerImages = new ArrayList<BufferedImage>();
+        final List<MapContext> layerContexts = new ArrayList<MapContext>();
+        if (parallel) {
+            ImageBufferPool pool = ImageBufferPool.getInstance();
+            for (MapLayer layer : mapContext.getLayers()) {
+                BufferedImage layerImage = pool.acquire(paintArea.width, paintArea.height,
+                        BufferedImage.TYPE_4BYTE_ABGR);
+                Graphics2D layerGraphic = ImageUtils.prepareTransparency(true, bgColor,
+                        layerImage, hintsMap);
+                layerGraphic.setRenderingHints(hintsMap);
+                layerImages.add(layerImage);
+                graphics.add(layerGraphic);
+
+                MapContext layerContext = new DefaultMapContext(new MapLayer[] { layer },
+                        mapContext.getCoordinateReferenceSystem());
+                layerContexts.add(layerContext);
+                renderers.add(buildRenderer(layerContext, hints, rendererParams));
+            }
+        } else {
+            graphics.add(graphic);
+            renderers.add(buildRenderer(mapContext, hints, rendererParams));
+        }
+
         // enforce no more than x rendering errors
         int maxErrors = wms.getMaxRenderingErrors();
-        MaxErrorEnforcer errorChecker = new MaxErrorEnforcer(renderer, maxErrors);
+        MaxErrorEnforcer errorChecker = new MaxErrorEnforcer(renderers, maxErrors);
 
         // Add a render listener that ignores well known rendering exceptions and reports back non
         // ignorable ones
-        final RenderExceptionStrategy nonIgnorableExceptionListener;
-        nonIgnorableExceptionListener = new RenderExceptionStrategy(renderer);
-        renderer.addRenderListener(nonIgnorableExceptionListener);
+        final List<RenderExceptionStrategy> nonIgnorableExceptionListeners = new ArrayList<RenderExceptionStrategy>();
+        for (GTRenderer renderer : renderers) {
+            RenderExceptionStrategy listener = new RenderExceptionStrategy(renderer);
+            renderer.addRenderListener(listener);
+            nonIgnorableExceptionListeners.add(listener);
+        }
 
         // setup the timeout enforcer (the enforcer is neutral when the timeout is 0)
         int maxRenderingTime = wms.getMaxRenderingTime() * 1000;
-        RenderingTimeoutEnforcer timeout = new RenderingTimeoutEnforcer(maxRenderingTime, renderer,
-                graphic);
+        List<Graphics2D> timeoutGraphics = new ArrayList<Graphics2D>(graphics);
+        if (parallel) {
+            timeoutGraphics.add(graphic);
+        }
+        RenderingTimeoutEnforcer timeout = new RenderingTimeoutEnforcer(maxRenderingTime,
+                renderers, timeoutGraphics);
         timeout.start();
         try {
             // finally render the image;
-            renderer.paint(graphic, paintArea, mapContext.getRenderingArea(),
-                    mapContext.getRenderingTransform());
+            if (parallel) {
+                paintLayers(renderers, graphics, layerImages, layerContexts, graphic, paintArea,
+                        mapContext, timeout);
+            } else {
+                renderers.get(0).paint(graphic, paintArea, mapContext.getRenderingArea(),
+                        mapContext.getRenderingTransform());
+            }
 
             // apply watermarking
             if (layout != null) {
@@ -468,9 +508,12 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         }
 
         // check if a non ignorable error occurred
-        if (nonIgnorableExceptionListener.exceptionOccurred()) {
-            Exception renderError = nonIgnorableExceptionListener.getException();
-            throw new ServiceException("Rendering process failed", renderError, "internalError");
+        for (RenderExceptionStrategy nonIgnorableExceptionListener : nonIgnorableExceptionListeners) {
+            if (nonIgnorableExceptionListener.exceptionOccurred()) {
+                Exception renderError = nonIgnorableExceptionListener.getException();
+                throw new ServiceException("Rendering process failed", renderError,
+                        "internalError");
+            }
         }
 
         // check if too many errors occurred
@@ -488,9 +531,158 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         // }
 
         RenderedImageMap map = new RenderedImageMap(mapContext, image, getMimeType());
+        if (image == preparedImage && image instanceof BufferedImage) {
+            // give the canvas back to the pool once the map is encoded
+            map.setImagePool(ImageBufferPool.getInstance());
+        }
         return map;
     }
 
+    /**
+     * Builds and configures the renderer for the specified context
+     */
+    private GTRenderer buildRenderer(MapContext context, RenderingHints hints,
+            Map<Object, Object> rendererParams) {
+        GTRenderer renderer;
+        if (DefaultWebMapService.useShapefileRenderer()) {
+            renderer = new ShapefileRenderer();
+        } else {
+            StreamingRenderer sr = new StreamingRenderer();
+            sr.setThreadPool(DefaultWebMapService.getRenderingPool());
+            renderer = sr;
+        }
+        renderer.setContext(context);
+        renderer.setJava2DHints(hints);
+        renderer.setRendererHints(rendererParams);
+        return renderer;
+    }
+
+    /**
+     * Renders each layer on its own image in parallel, using the layer rendering pool, and then
+     * composites the images, in order, on the map graphics. Labels are resolved separately for
+     * each layer.
+     */
+    private void paintLayers(List<GTRenderer> renderers, List<Graphics2D> graphics,
+            List<BufferedImage> layerImages, List<MapContext> layerContexts, Graphics2D graphic,
+            Rectangle paintArea, WMSMapContext mapContext, RenderingTimeoutEnforcer timeout) {
+        List<LayerPainter> painters = new ArrayList<LayerPainter>();
+        for (int i = 0; i < renderers.size(); i++) {
+            painters.add(new LayerPainter(renderers.get(i), graphics.get(i), layerImages.get(i),
+                    layerContexts.get(i), paintArea, mapContext));
+        }
+
+        ExecutorService pool = DefaultWebMapService.getLayerRenderingPool();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        boolean completed = false;
+        try {
+            for (LayerPainter painter : painters) {
+                futures.add(pool.submit(painter));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Interrupted while rendering the map", e);
+        } catch (ExecutionException e) {
+            throw new ServiceException("Rendering process failed", e.getCause(), "internalError");
+        } finally {
+            if (!completed) {
+                stopRendering(renderers, futures);
+            }
+            // composite the layers in order if all went fine, and give back the images
+            for (LayerPainter painter : painters) {
+                if (completed && !timeout.isTimedOut()) {
+                    graphic.drawImage(painter.image, 0, 0, null);
+                }
+                painter.release();
+            }
+        }
+    }
+
+    private void stopRendering(List<GTRenderer> renderers, List<Future<?>> futures) {
+        for (GTRenderer renderer : renderers) {
+            renderer.stopRendering();
+        }
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Paints a single layer on its own image. The painter owns the image, the graphics and the
+     * layer context, and releases them when the painting is over, or right away if the painting
+     * never started.
+     */
+    static class LayerPainter implements Runnable {
+
+        static final int PENDING = 0;
+
+        static final int RUNNING = 1;
+
+        static final int DONE = 2;
+
+        static final int RELEASED = 3;
+
+        final GTRenderer renderer;
+
+        final Graphics2D graphic;
+
+        final BufferedImage image;
+
+        final MapContext context;
+
+        final Rectangle paintArea;
+
+        final WMSMapContext mapContext;
+
+        final AtomicInteger state = new AtomicInteger(PENDING);
+
+        LayerPainter(GTRenderer renderer, Graphics2D graphic, BufferedImage image,
+                MapContext context, Rectangle paintArea, WMSMapContext mapContext) {
+            this.renderer = renderer;
+            this.graphic = graphic;
+            this.image = image;
+            this.context = context;
+            this.paintArea = paintArea;
+            this.mapContext = mapContext;
+        }
+
+        public void run() {
+            if (!state.compareAndSet(PENDING, RUNNING)) {
+                // released before the painting started
+                return;
+            }
+            try {
+                renderer.paint(graphic, paintArea, mapContext.getRenderingArea(), mapContext
+                        .getRenderingTransform());
+            } finally {
+                graphic.dispose();
+                context.dispose();
+                if (!state.compareAndSet(RUNNING, DONE)) {
+                    // the map has been abandoned while painting, nobody will use the image
+                    ImageBufferPool.getInstance().release(image);
+                }
+            }
+        }
+
+        /**
+         * Gives back the image, or leaves it to the painting thread if the painting is still
+         * running
+         */
+        void release() {
+            int previous = state.getAndSet(RELEASED);
+            if (previous == PENDING) {
+                graphic.dispose();
+                context.dispose();
+                ImageBufferPool.getInstance().release(image);
+            } else if (previous == DONE) {
+                ImageBufferPool.getInstance().release(image);
+            }
+        }
+    }
+
     protected MapDecorationLayout findDecorationLayout(WMSMapContext mapContext, final boolean tiled) {
         String layoutName = null;
         if (mapContext.getRequest().getFormatOptions() != null) {
@@ -599,8 +791,14 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
      */
     final protected RenderedImage prepareImage(int width, int height, IndexColorModel palette,
             boolean transparent) {
-        return ImageUtils.createImage(width, height, isPaletteSupported() ? palette : null,
-                transparent && isTransparencySupported());
+        palette = isPaletteSupported() ? palette : null;
+        transparent = transparent && isTransparencySupported();
+        if (palette == null) {
+            // true color canvases can be reused, see ImageUtils.createImage for the types
+            int type = transparent ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR;
+            return ImageBufferPool.getInstance().acquire(width, height, type);
+        }
+        return ImageUtils.createImage(width, height, palette, transparent);
     }
 
     /**
@@ -5,29 +5,54 @@
 package org.geoserver.wms.map;
 
 import java.awt.Graphics;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.geoserver.ows.util.TimeoutScheduler;
 import org.geotools.renderer.GTRenderer;
 
 /**
  * An utility class that can be used to set a strict timeout on rendering operations:
  * if the timeout elapses, the renderer will be asked to stop rendering and the graphics
  * will be disposed of to make extra sure the renderer cannot keep going on.
+ * The deadlines of all the rendering requests are tracked by the shared {@link TimeoutScheduler}.
  * @author Andrea Aime - OpenGeo
  */
 public class RenderingTimeoutEnforcer {
     
+    /**
+     * Number of renderings stopped because of the timeout
+     */
+    static final AtomicLong TIMED_OUT_COUNT = new AtomicLong();
+    
     long timeout;
-    GTRenderer renderer;
-    Graphics graphics;
-    Timer timer;
-    boolean timedOut = false;
+    List<GTRenderer> renderers;
+    List<Graphics> graphics;
+    TimeoutScheduler.Timeout timer;
+    volatile boolean timedOut = false;
+
+    /**
+     * Returns the number of renderings stopped because of the timeout since startup
+     */
+    public static long getTimedOutCount() {
+        return TIMED_OUT_COUNT.get();
+    }
 
     public RenderingTimeoutEnforcer(long timeout, GTRenderer renderer, Graphics graphics) {
+        this(timeout, Collections.singletonList(renderer), Collections.singletonList(graphics));
+    }
+
+    /**
+     * Builds an enforcer that will stop a set of renderers working in parallel on the same map,
+     * and dispose all of their graphics
+     */
+    public RenderingTimeoutEnforcer(long timeout, List<? extends GTRenderer> renderers,
+            List<? extends Graphics> graphics) {
         this.timeout = timeout;
-        this.renderer = renderer;
-        this.graphics = graphics;
+        this.renderers = new ArrayList<GTRenderer>(renderers);
+        this.graphics = new ArrayList<Graphics>(graphics);
     }
 
     /**
@@ -39,8 +64,7 @@ public class RenderingTimeoutEnforcer {
         
         if(timeout > 0) {
             timedOut = false;
-            timer = new Timer();
-            timer.schedule(new StopRenderingTask(), timeout);
+            timer = TimeoutScheduler.get().schedule(new StopRenderingTask(), timeout);
         }
     }
     
@@ -50,8 +74,6 @@ public class RenderingTimeoutEnforcer {
     public void stop() {
         if(timer != null) {
             timer.cancel();
-            timer.purge();
-            // timer.getTheHellOutOfDodge();
             timer = null;
         }
     }
@@ -63,19 +85,23 @@ public class RenderingTimeoutEnforcer {
         return timedOut;
     }
     
-    class StopRenderingTask extends TimerTask {
+    class StopRenderingTask implements Runnable {
 
-        @Override
         public void run() {
             // mark as timed out
             timedOut = true;
+            TIMED_OUT_COUNT.incrementAndGet();
             
             // ask gently...
-            renderer.stopRendering();
+            for (GTRenderer renderer : renderers) {
+                renderer.stopRendering();
+            }
             // ... but also be rude for extra measure (coverage rendering is
             // an atomic call to the graphics, it cannot be stopped
             // by the above)
-            graphics.dispose();
+            for (Graphics g : graphics) {
+                g.dispose();
+            }
             
         }
         
@@ -0,0 +1,193 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.kml;
+
+import java.io.File;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+
+public class RegionatingTileIndexTest extends TestCase {
+
+    File directory;
+
+    String path;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("geosearch", "", new File("target"));
+        directory.delete();
+        directory.mkdir();
+        path = directory.getCanonicalPath();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        RegionatingTileIndex.disposeAll();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    public void testShared() throws Exception {
+        RegionatingTileIndex index = RegionatingTileIndex.get(path, "sf_states");
+        assertSame(index, RegionatingTileIndex.get(path, "sf_states"));
+        assertNotSame(index, RegionatingTileIndex.get(path, "sf_roads"));
+    }
+
+    public void testStoreAndRead() throws Exception {
+        RegionatingTileIndex index = RegionatingTileIndex.get(path, "sf_states");
+        index.acquire();
+        Connection conn = index.getConnection();
+        try {
+            assertNull(index.readFids(0, 0, 0, conn));
+
+            index.storeFids(0, 0, 0, fids("states.1", "states.2"), conn);
+            index.storeFids(1, 0, 1, Collections.<String> emptySet(), conn);
+
+            assertEquals(fids("states.1", "states.2"), index.readFids(0, 0, 0, conn));
+            assertEquals(0, index.readFids(1, 0, 1, conn).size());
+            assertNull(index.readFids(0, 0, 1, conn));
+        } finally {
+            conn.close();
+            index.release();
+        }
+    }
+
+    public void testBuildOnce() throws Exception {
+        final RegionatingTileIndex index = RegionatingTileIndex.get(path, "sf_states");
+        final AtomicInteger builds = new AtomicInteger();
+        final CountDownLatch building = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Set<String> expected = fids("states.1");
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        Thread[] threads = new Thread[4];
+        final Set<String>[] results = new Set[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int idx = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        index.acquire();
+                        final Connection conn = index.getConnection();
+                        try {
+                            results[idx] = index.getFids(0, 0, 0, conn,
+                                    new Callable<Set<String>>() {
+                                        public Set<String> call() throws Exception {
+                                            builds.incrementAndGet();
+                                            building.countDown();
+                                            release.await(5, TimeUnit.SECONDS);
+                                            index.storeFids(0, 0, 0, expected, conn);
+                                            return expected;
+                                        }
+                                    });
+                        } finally {
+                            conn.close();
+                            index.release();
+                        }
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        assertTrue(building.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        for (Thread t : threads) {
+            t.join(5000);
+            assertFalse(t.isAlive());
+        }
+
+        assertEquals(errors.toString(), 0, errors.size());
+        assertEquals(1, builds.get());
+        for (Set<String> result : results) {
+            assertEquals(expected, result);
+        }
+    }
+
+    public void testInvalidateOpen() throws Exception {
+        RegionatingTileIndex index = RegionatingTileIndex.get(path, "sf_states_PERSONS");
+        store(index, fids("states.1"));
+
+        // other layers are not touched
+        RegionatingTileIndex.invalidate(path, "sf_state");
+        assertEquals(fids("states.1"), read(index));
+
+        RegionatingTileIndex.invalidate(path, "sf_states");
+        assertNull(read(index));
+    }
+
+    public void testInvalidateClosed() throws Exception {
+        RegionatingTileIndex index = RegionatingTileIndex.get(path, "sf_states");
+        store(index, fids("states.1"));
+        RegionatingTileIndex.disposeAll();
+        assertTrue(directory.list().length > 0);
+
+        RegionatingTileIndex.invalidate(path, "sf_states");
+        assertNull(read(RegionatingTileIndex.get(path, "sf_states")));
+    }
+
+    public void testDirectorySpelling() throws Exception {
+        // a relative, non canonical path to the same directory
+        String relative = directory.getPath() + File.separator + ".";
+        RegionatingTileIndex index = RegionatingTileIndex.get(relative, "sf_states");
+        assertSame(index, RegionatingTileIndex.get(path, "sf_states"));
+        store(index, fids("states.1"));
+
+        // the open index is found and marked as stale, not deleted under its feet
+        RegionatingTileIndex.invalidate(path, "sf_states");
+        assertNull(read(index));
+        store(index, fids("states.2"));
+        RegionatingTileIndex.clear(path, "sf_states");
+        assertNull(read(index));
+    }
+
+    public void testClear() throws Exception {
+        RegionatingTileIndex index = RegionatingTileIndex.get(path, "sf_states");
+        store(index, fids("states.1"));
+
+        RegionatingTileIndex.clear(path, "sf_states");
+        assertNull(read(index));
+    }
+
+    void store(RegionatingTileIndex index, Set<String> fids) throws Exception {
+        index.acquire();
+        Connection conn = index.getConnection();
+        try {
+            index.storeFids(0, 0, 0, fids, conn);
+        } finally {
+            conn.close();
+            index.release();
+        }
+    }
+
+    Set<String> read(RegionatingTileIndex index) throws Exception {
+        index.acquire();
+        Connection conn = index.getConnection();
+        try {
+            return index.readFids(0, 0, 0, conn);
+        } finally {
+            conn.close();
+            index.release();
+        }
+    }
+
+    Set<String> fids(String... fids) {
+        Set<String> result = new HashSet<String>();
+        Collections.addAll(result, fids);
+        return result;
+    }
+}
@@ -0,0 +1,137 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org.  All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.wms.capabilities;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.Set;
+
+import org.geoserver.catalog.CatalogFactory;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ReadOnlyCatalogAccess;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.config.impl.ContactInfoImpl;
+import org.geoserver.config.impl.GeoServerImpl;
+import org.geoserver.config.impl.GeoServerInfoImpl;
+import org.geoserver.wms.GetCapabilitiesRequest;
+import org.geoserver.wms.WMS;
+import org.geoserver.wms.WMSInfoImpl;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+
+/**
+ * Compares the WMS capabilities generation time when the catalog hands out the modification
+ * proxies and when it hands out the read only views (see {@link ReadOnlyCatalogAccess}).
+ * <p>
+ * Not a unit test, run it with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=org.geoserver.wms.capabilities.CapabilitiesBenchmark -Dexec.args="5000 20"
+ * </pre>
+ * where the arguments are the number of layers and the number of documents generated for each
+ * mode.
+ * </p>
+ */
+public class CapabilitiesBenchmark {
+
+    static final String BASE_URL = "http://localhost/geoserver";
+
+    static final Set<String> FORMATS = Collections.singleton("image/png");
+
+    public static void main(String[] args) throws Exception {
+        int layers = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        WMS wms = setUp(layers);
+        GetCapabilitiesRequest request = new GetCapabilitiesRequest();
+        request.setBaseUrl(BASE_URL);
+
+        // warm up
+        run(wms, request, false, Math.max(runs / 4, 1));
+        run(wms, request, true, Math.max(runs / 4, 1));
+
+        long proxies = run(wms, request, false, runs);
+        long readOnly = run(wms, request, true, runs);
+        System.out.println(layers + " layers, " + runs + " capabilities documents");
+        System.out.println("Modification proxies: " + (proxies / runs) + " ms per document");
+        System.out.println("Read only views:      " + (readOnly / runs) + " ms per document");
+    }
+
+    static long run(WMS wms, GetCapabilitiesRequest request, boolean readOnly, int runs)
+            throws Exception {
+        ReadOnlyCatalogAccess.set(readOnly);
+        try {
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < runs; i++) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                new GetCapabilitiesTransformer(wms, BASE_URL, FORMATS, FORMATS, null).transform(
+                        request, out);
+            }
+            return System.currentTimeMillis() - start;
+        } finally {
+            ReadOnlyCatalogAccess.remove();
+        }
+    }
+
+    static WMS setUp(int layers) {
+        GeoServerImpl geoServer = new GeoServerImpl();
+        GeoServerInfoImpl global = new GeoServerInfoImpl(geoServer);
+        global.setContact(new ContactInfoImpl());
+        geoServer.setGlobal(global);
+        geoServer.add(new WMSInfoImpl());
+
+        CatalogImpl catalog = new CatalogImpl();
+        geoServer.setCatalog(catalog);
+        CatalogFactory factory = catalog.getFactory();
+
+        WorkspaceInfo ws = factory.createWorkspace();
+        ws.setName("bench");
+        catalog.add(ws);
+        NamespaceInfo ns = factory.createNamespace();
+        ns.setPrefix("bench");
+        ns.setURI("http://geoserver.org/bench");
+        catalog.add(ns);
+        DataStoreInfo ds = factory.createDataStore();
+        ds.setName("store");
+        ds.setWorkspace(ws);
+        ds.setEnabled(true);
+        catalog.add(ds);
+        StyleInfo style = factory.createStyle();
+        style.setName("point");
+        style.setFilename("point.sld");
+        catalog.add(style);
+
+        ReferencedEnvelope bbox = new ReferencedEnvelope(-180, 180, -90, 90,
+                DefaultGeographicCRS.WGS84);
+        for (int i = 0; i < layers; i++) {
+            FeatureTypeInfo ft = factory.createFeatureType();
+            ft.setName("layer" + i);
+            ft.setTitle("Layer " + i);
+            ft.setAbstract("Benchmark layer " + i);
+            ft.getKeywords().add("benchmark");
+            ft.setStore(ds);
+            ft.setNamespace(ns);
+            ft.setEnabled(true);
+            ft.setSRS("EPSG:4326");
+            ft.setNativeCRS(DefaultGeographicCRS.WGS84);
+            ft.setNativeBoundingBox(bbox);
+            ft.setLatLonBoundingBox(bbox);
+            catalog.add(ft);
+
+            LayerInfo layer = factory.createLayer();
+            layer.setResource(ft);
+            layer.setDefaultStyle(style);
+            layer.setEnabled(true);
+            catalog.add(layer);
+        }
+
+        return new WMS(geoServer);
+    }
+}
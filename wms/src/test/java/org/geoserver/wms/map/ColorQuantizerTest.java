@@ -0,0 +1,72 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+
+import junit.framework.TestCase;
+
+public class ColorQuantizerTest extends TestCase {
+
+    ColorQuantizer quantizer = new ColorQuantizer();
+
+    public void testExactPalette() {
+        BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, 50, 100);
+        g.setColor(Color.BLUE);
+        g.fillRect(50, 0, 25, 100);
+        g.dispose();
+
+        BufferedImage indexed = quantizer.quantize(image);
+        IndexColorModel icm = (IndexColorModel) indexed.getColorModel();
+        assertEquals(3, icm.getMapSize());
+        assertEquals(Color.RED.getRGB(), indexed.getRGB(10, 10));
+        assertEquals(Color.BLUE.getRGB(), indexed.getRGB(60, 10));
+        assertEquals(0, indexed.getRGB(90, 10) >>> 24);
+    }
+
+    public void testMedianCut() {
+        BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_3BYTE_BGR);
+        for (int x = 0; x < 256; x++) {
+            for (int y = 0; y < 256; y++) {
+                image.setRGB(x, y, new Color(x, y, (x + y) / 2).getRGB());
+            }
+        }
+
+        BufferedImage indexed = quantizer.quantize(image);
+        IndexColorModel icm = (IndexColorModel) indexed.getColorModel();
+        assertTrue(icm.getMapSize() <= 256);
+        assertEquals(-1, icm.getTransparentPixel());
+
+        // the colors should stay reasonably close to the original ones
+        for (int x = 0; x < 256; x += 17) {
+            for (int y = 0; y < 256; y += 17) {
+                Color expected = new Color(image.getRGB(x, y));
+                Color actual = new Color(indexed.getRGB(x, y));
+                assertTrue(Math.abs(expected.getRed() - actual.getRed()) < 32);
+                assertTrue(Math.abs(expected.getGreen() - actual.getGreen()) < 32);
+                assertTrue(Math.abs(expected.getBlue() - actual.getBlue()) < 32);
+            }
+        }
+    }
+
+    public void testSubImage() {
+        BufferedImage image = new BufferedImage(60, 60, BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.GREEN);
+        g.fillRect(20, 20, 20, 20);
+        g.dispose();
+
+        BufferedImage indexed = quantizer.quantize(image.getSubimage(20, 20, 20, 20));
+        assertEquals(20, indexed.getWidth());
+        assertEquals(Color.GREEN.getRGB(), indexed.getRGB(0, 0));
+        assertEquals(Color.GREEN.getRGB(), indexed.getRGB(19, 19));
+    }
+}
@@ -0,0 +1,56 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.image.BufferedImage;
+
+import junit.framework.TestCase;
+
+public class ImageBufferPoolTest extends TestCase {
+
+    public void testReuse() {
+        ImageBufferPool pool = new ImageBufferPool(1024 * 1024);
+        BufferedImage image = pool.acquire(256, 256, BufferedImage.TYPE_4BYTE_ABGR);
+        assertEquals(1, pool.getMissCount());
+        assertEquals(256 * 256 * 4, pool.getAllocatedBytes());
+
+        pool.release(image);
+        assertEquals(256 * 256 * 4, pool.getMemoryUsage());
+
+        // different size or type, not reused
+        assertNotSame(image, pool.acquire(256, 256, BufferedImage.TYPE_3BYTE_BGR));
+        assertNotSame(image, pool.acquire(512, 256, BufferedImage.TYPE_4BYTE_ABGR));
+
+        assertSame(image, pool.acquire(256, 256, BufferedImage.TYPE_4BYTE_ABGR));
+        assertEquals(1, pool.getHitCount());
+        assertEquals(256 * 256 * 4, pool.getSavedBytes());
+        assertEquals(0, pool.getMemoryUsage());
+    }
+
+    public void testMemoryCap() {
+        ImageBufferPool pool = new ImageBufferPool(256 * 256 * 4);
+        BufferedImage image1 = pool.acquire(256, 256, BufferedImage.TYPE_4BYTE_ABGR);
+        BufferedImage image2 = pool.acquire(256, 256, BufferedImage.TYPE_4BYTE_ABGR);
+        pool.release(image1);
+        pool.release(image2);
+        assertEquals(256 * 256 * 4, pool.getMemoryUsage());
+
+        assertSame(image1, pool.acquire(256, 256, BufferedImage.TYPE_4BYTE_ABGR));
+        assertNotSame(image2, pool.acquire(256, 256, BufferedImage.TYPE_4BYTE_ABGR));
+    }
+
+    public void testNotPoolable() {
+        ImageBufferPool pool = new ImageBufferPool(1024 * 1024);
+        BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_4BYTE_ABGR);
+        pool.release(image.getSubimage(0, 0, 128, 128));
+        pool.release(new BufferedImage(256, 256, BufferedImage.TYPE_BYTE_INDEXED));
+        assertEquals(0, pool.getMemoryUsage());
+
+        // disabled pool
+        pool = new ImageBufferPool(0);
+        pool.release(image);
+        assertEquals(0, pool.getMemoryUsage());
+    }
+}
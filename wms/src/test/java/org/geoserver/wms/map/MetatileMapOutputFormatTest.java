@@ -0,0 +1,73 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.image.BufferedImage;
+
+import javax.imageio.ImageIO;
+
+import org.geoserver.data.test.MockData;
+import org.geoserver.wms.WMSTestSupport;
+
+import com.mockrunner.mock.web.MockHttpServletResponse;
+
+public class MetatileMapOutputFormatTest extends WMSTestSupport {
+
+    public void testPreEncodedTilesMatch() throws Exception {
+        QuickTileCache tileCache = (QuickTileCache) applicationContext.getBean("metaTileCache");
+        Boolean preEncode = MetatileMapOutputFormat.preEncode;
+        try {
+            MetatileMapOutputFormat.preEncode = Boolean.FALSE;
+            tileCache.clear();
+            BufferedImage[] expected = getMetaTileTiles();
+
+            MetatileMapOutputFormat.preEncode = Boolean.TRUE;
+            tileCache.clear();
+            BufferedImage[] actual = getMetaTileTiles();
+            // the tiles have been cached as pngs, not as 256x256 4 bytes per pixel images
+            assertTrue(tileCache.getMemoryUsage() < 9 * 256 * 256);
+
+            for (int i = 0; i < expected.length; i++) {
+                assertSameImage("tile " + i, expected[i], actual[i]);
+            }
+        } finally {
+            MetatileMapOutputFormat.preEncode = preEncode;
+            tileCache.clear();
+        }
+    }
+
+    /**
+     * Requests the 9 tiles of the meta tile whose lower left corner is at -6,-6
+     */
+    BufferedImage[] getMetaTileTiles() throws Exception {
+        BufferedImage[] tiles = new BufferedImage[9];
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 3; x++) {
+                double minx = -6 + x * 4;
+                double miny = -6 + y * 4;
+                MockHttpServletResponse response = getAsServletResponse("wms?service=WMS"
+                        + "&version=1.1.1&request=GetMap&layers="
+                        + getLayerId(MockData.BASIC_POLYGONS)
+                        + "&styles=&format=image/png&srs=EPSG:4326&width=256&height=256"
+                        + "&tiled=true&tilesorigin=-6,-6&bbox=" + minx + "," + miny + ","
+                        + (minx + 4) + "," + (miny + 4));
+                assertEquals("image/png", response.getContentType());
+                tiles[y * 3 + x] = ImageIO.read(getBinaryInputStream(response));
+            }
+        }
+        return tiles;
+    }
+
+    void assertSameImage(String message, BufferedImage expected, BufferedImage actual) {
+        assertEquals(message, expected.getWidth(), actual.getWidth());
+        assertEquals(message, expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(message + " at " + x + "," + y, expected.getRGB(x, y), actual
+                        .getRGB(x, y));
+            }
+        }
+    }
+}
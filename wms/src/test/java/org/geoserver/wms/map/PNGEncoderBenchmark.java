@@ -0,0 +1,75 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.RenderedImage;
+import java.io.ByteArrayOutputStream;
+
+import org.geotools.image.ImageWorker;
+
+/**
+ * Compares the time needed to produce a PNG8 tile with the JAI based path and the
+ * {@link ColorQuantizer} / {@link PNGEncoder} one. Not a test, run it manually with:
+ * 
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.geoserver.wms.map.PNGEncoderBenchmark
+ * </pre>
+ */
+public class PNGEncoderBenchmark {
+
+    static final int WARMUP = 500;
+
+    static final int ITERATIONS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        BufferedImage tile = PNGEncoderTest.buildTile();
+
+        for (int i = 0; i < 2; i++) {
+            run("JAI", tile, new Encoder() {
+                public int encode(BufferedImage image) throws Exception {
+                    RenderedImage indexed = ImageUtils.forceIndexed8Bitmask(image, null);
+                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                    new ImageWorker(indexed).writePNG(bos, "FILTERED", 0.75f, false,
+                            indexed.getColorModel() instanceof IndexColorModel);
+                    return bos.size();
+                }
+            });
+
+            for (final PNGEncoder.FilterType filter : new PNGEncoder.FilterType[] {
+                    PNGEncoder.FilterType.NONE, PNGEncoder.FilterType.ADAPTIVE }) {
+                final ColorQuantizer quantizer = new ColorQuantizer();
+                final PNGEncoder encoder = new PNGEncoder(2, filter);
+                run("Fast/" + filter, tile, new Encoder() {
+                    public int encode(BufferedImage image) throws Exception {
+                        BufferedImage indexed = quantizer.quantize(image);
+                        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                        encoder.encode(indexed, bos);
+                        return bos.size();
+                    }
+                });
+            }
+        }
+    }
+
+    static void run(String name, BufferedImage tile, Encoder encoder) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            encoder.encode(tile);
+        }
+        long size = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            size = encoder.encode(tile);
+        }
+        double avg = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+        System.out.println(name + ": " + avg + " ms/tile, " + size + " bytes");
+    }
+
+    interface Encoder {
+        int encode(BufferedImage image) throws Exception;
+    }
+}
@@ -0,0 +1,62 @@
+/* Copyright (c) 2001 - 2011 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+
+public class PNGEncoderTest extends TestCase {
+
+    public void testRoundTrip() throws Exception {
+        BufferedImage indexed = new ColorQuantizer().quantize(buildTile());
+
+        for (PNGEncoder.FilterType filter : PNGEncoder.FilterType.values()) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            new PNGEncoder(6, filter).encode(indexed, bos);
+
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(bos.toByteArray()));
+            assertEquals(indexed.getWidth(), decoded.getWidth());
+            assertEquals(indexed.getHeight(), decoded.getHeight());
+            for (int x = 0; x < indexed.getWidth(); x++) {
+                for (int y = 0; y < indexed.getHeight(); y++) {
+                    assertEquals(filter + " at " + x + "," + y, indexed.getRGB(x, y), decoded
+                            .getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    public void testCanEncode() {
+        assertFalse(PNGEncoder.canEncode(buildTile()));
+        assertTrue(PNGEncoder.canEncode(new ColorQuantizer().quantize(buildTile())));
+        assertTrue(PNGEncoder.canEncode(new BufferedImage(10, 10,
+                BufferedImage.TYPE_BYTE_INDEXED)));
+    }
+
+    /**
+     * Builds a map like tile, with anti-aliased lines over a transparent background
+     */
+    static BufferedImage buildTile() {
+        BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(new Color(200, 230, 200));
+        g.fillRect(0, 128, 256, 128);
+        for (int i = 0; i < 20; i++) {
+            g.setColor(new Color(i * 12, 50, 255 - i * 12));
+            g.drawLine(0, i * 13, 255, 255 - i * 7);
+        }
+        g.dispose();
+        return image;
+    }
+}
@@ -6,9 +6,15 @@ package org.geoserver.wms.map;
 
 import java.awt.Point;
 import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
 
 import junit.framework.TestCase;
 
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.map.QuickTileCache.MapKey;
+import org.geoserver.wms.map.QuickTileCache.MetaTileKey;
+
 import com.vividsolutions.jts.geom.Envelope;
 
 public class QuickTileCacheTest extends TestCase {
@@ -53,4 +59,94 @@ public class QuickTileCacheTest extends TestCase {
         tc = cache.getTileCoordinates(env, origin);
         assertEquals(new Point(-1, -1), tc);
     }
+
+    public void testStoreAndRetrieve() {
+        MetaTileKey key = buildKey(0);
+        RenderedImage[] tiles = buildTiles();
+        cache.storeTiles(key, tiles);
+
+        assertSame(tiles[4], cache.getTile(key, buildRequest(1, 1)));
+        assertEquals(1, cache.getHitCount());
+        assertNull(cache.getTile(buildKey(3), buildRequest(4, 1)));
+        assertEquals(1, cache.getMissCount());
+        // 9 tiles, 256x256, 4 bytes per pixel
+        assertEquals(9 * 256 * 256 * 4, cache.getMemoryUsage());
+
+        cache.clear();
+        assertEquals(0, cache.getMemoryUsage());
+        assertNull(cache.getTile(key, buildRequest(1, 1)));
+    }
+
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        long metaTileSize = 9 * 256 * 256 * 4;
+        cache = new QuickTileCache(metaTileSize * 3, false);
+
+        cache.storeTiles(buildKey(0), buildTiles());
+        Thread.sleep(2);
+        cache.storeTiles(buildKey(3), buildTiles());
+        Thread.sleep(2);
+        cache.storeTiles(buildKey(6), buildTiles());
+        Thread.sleep(2);
+        // touch the oldest one, it should survive
+        assertNotNull(cache.getTile(buildKey(0), buildRequest(0, 0)));
+        Thread.sleep(2);
+
+        cache.storeTiles(buildKey(9), buildTiles());
+        assertTrue(cache.getMemoryUsage() <= metaTileSize * 3);
+        assertTrue(cache.getEvictionCount() > 0);
+        assertNotNull(cache.getTile(buildKey(9), buildRequest(9, 0)));
+        assertNotNull(cache.getTile(buildKey(0), buildRequest(0, 0)));
+        assertNull(cache.getTile(buildKey(3), buildRequest(3, 0)));
+    }
+
+    public void testCompressed() {
+        cache = new QuickTileCache(1024 * 1024, true);
+        MetaTileKey key = buildKey(0);
+        cache.storeTiles(key, buildTiles());
+
+        // a blank tile compresses very well
+        assertTrue(cache.getMemoryUsage() < 9 * 256 * 256);
+        RenderedImage tile = cache.getTile(key, buildRequest(2, 2));
+        assertNotNull(tile);
+        assertEquals(256, tile.getWidth());
+        assertEquals(256, tile.getHeight());
+    }
+
+    public void testEncoded() {
+        MetaTileKey key = buildKey(0);
+        byte[][] tiles = new byte[9][];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = new byte[] { (byte) i };
+        }
+        cache.storeEncodedTiles(key, tiles);
+
+        assertEquals(9, cache.getMemoryUsage());
+        assertSame(tiles[5], cache.getEncodedTile(key, buildRequest(2, 1)));
+        assertEquals(1, cache.getHitCount());
+
+        // raw tiles are not returned as encoded ones
+        cache.storeTiles(buildKey(3), buildTiles());
+        assertNull(cache.getEncodedTile(buildKey(3), buildRequest(3, 0)));
+        assertEquals(1, cache.getMissCount());
+    }
+
+    MetaTileKey buildKey(int x) {
+        MapKey mapKey = new MapKey("LAYERS=test", 1, new Point2D.Double(0, 0));
+        return new MetaTileKey(mapKey, new Point(x, 0), new Envelope(x * 256, x * 256 + 768, 0,
+                768));
+    }
+
+    GetMapRequest buildRequest(int x, int y) {
+        GetMapRequest request = new GetMapRequest();
+        request.setBbox(new Envelope(x * 256, x * 256 + 256, y * 256, y * 256 + 256));
+        return request;
+    }
+
+    RenderedImage[] buildTiles() {
+        RenderedImage[] tiles = new RenderedImage[9];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = new BufferedImage(256, 256, BufferedImage.TYPE_4BYTE_ABGR);
+        }
+        return tiles;
+    }
 }
@@ -26,6 +26,7 @@ import org.geoserver.catalog.StyleInfo;
 import org.geoserver.data.test.MockData;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.security.decorators.DecoratingFeatureSource;
+import org.geoserver.wms.DefaultWebMapService;
 import org.geoserver.wms.GetMapRequest;
 import org.geoserver.wms.WMS;
 import org.geoserver.wms.WMSMapContext;
@@ -161,6 +162,105 @@ public class RenderedImageMapOutputFormatTest extends WMSTestSupport {
         assertNotBlank("testBlueLake", image);
     }
 
+    public void testParallelLayerRendering() throws Exception {
+        boolean parallel = DefaultWebMapService.isParallelLayerRenderingEnabled();
+        try {
+            DefaultWebMapService.setParallelLayerRenderingEnabled(false);
+            int[] expected = getPixels(buildLayersMap());
+            DefaultWebMapService.setParallelLayerRenderingEnabled(true);
+            int[] actual = getPixels(buildLayersMap());
+            assertEquals(expected.length, actual.length);
+            for (int i = 0; i < expected.length; i++) {
+                // compositing might round the semi transparent colors slightly differently
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int e = (expected[i] >> shift) & 0xFF;
+                    int a = (actual[i] >> shift) & 0xFF;
+                    assertTrue("Pixel " + i + " differs", Math.abs(e - a) <= 2);
+                }
+            }
+        } finally {
+            DefaultWebMapService.setParallelLayerRenderingEnabled(parallel);
+        }
+    }
+
+    public void testParallelLayerRenderingInterrupted() throws Exception {
+        boolean parallel = DefaultWebMapService.isParallelLayerRenderingEnabled();
+        ImageBufferPool pool = ImageBufferPool.getInstance();
+        long maxMemory = pool.getMaxMemory();
+        try {
+            DefaultWebMapService.setParallelLayerRenderingEnabled(true);
+            pool.setMaxMemory(64 * 1024 * 1024);
+            pool.clear();
+
+            WMSMapContext map = buildLayersMap();
+            Thread.currentThread().interrupt();
+            try {
+                this.rasterMapProducer.produceMap(map);
+                fail("Should have failed, the rendering thread has been interrupted");
+            } catch (ServiceException e) {
+                assertTrue(e.getCause() instanceof InterruptedException);
+            } finally {
+                Thread.interrupted();
+            }
+
+            // the layer images are given back, the ones still being painted once they are done
+            long expected = map.getLayerCount() * map.getMapWidth() * map.getMapHeight() * 4;
+            for (int i = 0; i < 100 && pool.getMemoryUsage() < expected; i++) {
+                Thread.sleep(50);
+            }
+            assertEquals(expected, pool.getMemoryUsage());
+            map.dispose();
+        } finally {
+            DefaultWebMapService.setParallelLayerRenderingEnabled(parallel);
+            pool.setMaxMemory(maxMemory);
+            pool.clear();
+        }
+    }
+
+    /**
+     * Builds a non antialiased map with a few unlabelled layers, so that the parallel and
+     * sequential rendering can be compared pixel by pixel
+     */
+    private WMSMapContext buildLayersMap() throws Exception {
+        final Catalog catalog = getCatalog();
+        FeatureTypeInfo typeInfo = catalog.getFeatureTypeByName(MockData.LAKES.getNamespaceURI(),
+                MockData.LAKES.getLocalPart());
+        Envelope env = typeInfo.getFeatureSource(null, null).getBounds();
+        double shift = env.getWidth() / 6;
+        env = new Envelope(env.getMinX() - shift, env.getMaxX() + shift, env.getMinY() - shift,
+                env.getMaxY() + shift);
+
+        GetMapRequest request = new GetMapRequest();
+        request.setFormat(getMapFormat());
+        request.getFormatOptions().put("antialias", "none");
+        final WMSMapContext map = new WMSMapContext();
+        int w = 400;
+        int h = (int) Math.round((env.getHeight() * w) / env.getWidth());
+        map.setMapWidth(w);
+        map.setMapHeight(h);
+        map.setBgColor(BG_COLOR);
+        map.setTransparent(false);
+        map.setRequest(request);
+
+        addToMap(map, MockData.FORESTS);
+        addToMap(map, MockData.LAKES);
+        addToMap(map, MockData.STREAMS);
+        addToMap(map, MockData.ROAD_SEGMENTS);
+
+        map.setAreaOfInterest(new ReferencedEnvelope(env, DefaultGeographicCRS.WGS84));
+        return map;
+    }
+
+    private int[] getPixels(WMSMapContext map) throws Exception {
+        RenderedImageMap imageMap = this.rasterMapProducer.produceMap(map);
+        BufferedImage image = (BufferedImage) imageMap.getImage();
+        // grab the pixels before disposing, the image might go back to the pool
+        int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image
+                .getWidth());
+        imageMap.dispose();
+        return pixels;
+    }
+
     private void addToMap(final WMSMapContext map, final QName typeName) throws IOException {
         final FeatureTypeInfo ftInfo = getCatalog().getFeatureTypeByName(
                 typeName.getNamespaceURI(), typeName.getLocalPart());